@@ -0,0 +1,54 @@
+package com.scienceminer.lookup.command;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.lookup.*;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for building the identifier crosswalk from the loaded databases, it must be run
+ * again each time one of the fatcat, istex, pmid or unpaywall databases is reloaded
+ *  - doi, pmid, pmc, pii, istexid -> fatcat ident, doi, pmid, pmc, pii, istexid, ark, mesh, oa link
+ */
+public class BuildCrosswalkCommand extends ConfiguredCommand<LookupConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildCrosswalkCommand.class);
+
+    public BuildCrosswalkCommand() {
+        super("crosswalk", "Build the identifier crosswalk database from the loaded databases");
+    }
+
+    @Override
+    protected void run(Bootstrap bootstrap, Namespace namespace, LookupConfiguration configuration) throws Exception {
+
+        final MetricRegistry metrics = new MetricRegistry();
+
+        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+
+        reporter.start(15, TimeUnit.SECONDS);
+
+        LOGGER.info("Preparing the system. Building the identifier crosswalk.");
+
+        StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+
+        long start = System.nanoTime();
+
+        CrosswalkLookup crosswalkLookup = new CrosswalkLookup(storageEnvFactory);
+        crosswalkLookup.build(new MetadataLookup(storageEnvFactory), new IstexIdsLookup(storageEnvFactory),
+                new PMIdsLookup(storageEnvFactory), new OALookup(storageEnvFactory), metrics.meter("crosswalkLookup"));
+        LOGGER.info("Crosswalk built with " + crosswalkLookup.getSize() + " records. ");
+
+        LOGGER.info("Finished in " +
+                TimeUnit.SECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) + " s");
+    }
+}
@@ -0,0 +1,117 @@
+package com.scienceminer.lookup.command;
+
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.storage.StorageCompactor;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.Env;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for writing a compacted copy of the environments of the storage directory, without
+ * the pages freed by the previous loads and updates.
+ * <p>
+ * The copy is written in a new storage directory (by default the storage directory with the suffix .compacted),
+ * which the running service can switch to with the switch-storage task. With --replace, each environment is
+ * replaced by its copy and the original one is kept with the suffix .bak, the service must then be stopped.
+ */
+public class CompactStorageCommand extends ConfiguredCommand<LookupConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactStorageCommand.class);
+
+    public static final String ENV_NAMES = "envNames";
+    public static final String TARGET = "target";
+    public static final String REPLACE = "replace";
+
+    public CompactStorageCommand() {
+        super("compact", "Write a compacted copy of the databases in the storage directory");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+
+        subparser.addArgument("--env")
+                .dest(ENV_NAMES)
+                .type(String.class)
+                .nargs("*")
+                .required(false)
+                .help("The names of the environments to compact (e.g. fatcat, istex, pmid, unpayWall). Default: all.");
+
+        subparser.addArgument("--target")
+                .dest(TARGET)
+                .type(String.class)
+                .required(false)
+                .help("The storage directory receiving the compacted copy. Default: the storage directory with the suffix .compacted");
+
+        subparser.addArgument("--replace")
+                .dest(REPLACE)
+                .action(Arguments.storeTrue())
+                .help("Replace the environments by their compacted copy, keeping the original ones with the suffix .bak");
+    }
+
+    @Override
+    protected void run(Bootstrap bootstrap, Namespace namespace, LookupConfiguration configuration) throws Exception {
+        StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        StorageCompactor compactor = new StorageCompactor(storageEnvFactory);
+        long start = System.nanoTime();
+
+        final boolean replace = namespace.getBoolean(REPLACE);
+        final String target = namespace.getString(TARGET);
+        if (replace && target != null) {
+            throw new IllegalArgumentException("--replace compacts the environments in place, it cannot be used with --target.");
+        }
+        final File targetStorage = new File(target != null ? target : storageEnvFactory.getStoragePath() + ".compacted");
+
+        List<String> envNames = namespace.getList(ENV_NAMES);
+        File[] envDirectories = new File(storageEnvFactory.getStoragePath())
+                .listFiles(file -> StorageEnvFactory.isEnvDirectory(file)
+                        && (envNames == null || envNames.isEmpty() || envNames.contains(file.getName())));
+
+        if (envDirectories == null || envDirectories.length == 0) {
+            LOGGER.info("No environment to compact in " + storageEnvFactory.getStoragePath());
+            return;
+        }
+
+        long sizeBefore = 0;
+        long sizeAfter = 0;
+        for (File envDirectory : envDirectories) {
+            final File targetDirectory = replace
+                    ? new File(envDirectory.getPath() + ".compacting")
+                    : new File(targetStorage, envDirectory.getName());
+            if (replace && targetDirectory.exists()) {
+                FileUtils.deleteDirectory(targetDirectory);
+            }
+
+            final StorageCompactor.Report report;
+            try (Env<ByteBuffer> source = storageEnvFactory.createEnv(envDirectory)) {
+                report = compactor.compact(source, source.openDbi((String) null), envDirectory, targetDirectory);
+            }
+            sizeBefore += report.getSizeBefore();
+            sizeAfter += report.getSizeAfter();
+
+            if (replace) {
+                final File backupDirectory = new File(envDirectory.getPath() + ".bak");
+                FileUtils.moveDirectory(envDirectory, backupDirectory);
+                FileUtils.moveDirectory(targetDirectory, envDirectory);
+                LOGGER.info("Environment " + envDirectory.getName() + " compacted, the previous version is kept in "
+                        + backupDirectory.getPath());
+            }
+        }
+
+        LOGGER.info("Storage compacted from " + FileUtils.byteCountToDisplaySize(sizeBefore) + " to "
+                + FileUtils.byteCountToDisplaySize(sizeAfter) + (replace ? "" : " in " + targetStorage.getPath()));
+        LOGGER.info("Finished in " +
+                TimeUnit.SECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) + " s");
+    }
+}
@@ -0,0 +1,165 @@
+package com.scienceminer.lookup.command;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.reader.FatcatJsonReader;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
+import com.scienceminer.lookup.storage.lookup.MetadataIndexer;
+import com.scienceminer.lookup.storage.lookup.MetadataLookup;
+import com.scienceminer.lookup.utils.DumpInputStreams;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for building the Elasticsearch matching index from the fatcat dump, and optionally
+ * loading the dump in lmdb in the same pass.
+ */
+public class IndexFatcatCommand extends ConfiguredCommand<LookupConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexFatcatCommand.class);
+
+    public static final String FATCAT_SOURCE = "fatcat.dump";
+    public static final String APPEND = "append";
+    public static final String SETTINGS = "settings";
+    public static final String MAPPING = "mapping";
+    public static final String CONCURRENT_BULKS = "concurrentBulks";
+    public static final String BULK_ACTIONS = "bulkActions";
+    public static final String LOAD_LOOKUP = "loadLookup";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String WORKERS = "workers";
+    public static final String DECOMPRESSION_THREADS = "decompressionThreads";
+
+    public IndexFatcatCommand() {
+        super("fatcatIndex", "Build the Elasticsearch matching index from the fatcat dump");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+
+        subparser.addArgument("--input")
+                .dest(FATCAT_SOURCE)
+                .type(String.class)
+                .required(true)
+                .help("The path to the source file of fatcat dump.");
+
+        subparser.addArgument("--append")
+                .dest(APPEND)
+                .action(Arguments.storeTrue())
+                .help("Add the releases to the existing index instead of deleting and creating it again.");
+
+        subparser.addArgument("--settings")
+                .dest(SETTINGS)
+                .type(String.class)
+                .setDefault("../matching_fatcat/resources/settings.json")
+                .help("The settings of the created index. Default: the settings of matching_fatcat.");
+
+        subparser.addArgument("--mapping")
+                .dest(MAPPING)
+                .type(String.class)
+                .setDefault("../matching_fatcat/resources/fatcat_glutton_mapping.json")
+                .help("The mapping of the created index. Default: the mapping of matching_fatcat.");
+
+        subparser.addArgument("--concurrent-bulks")
+                .dest(CONCURRENT_BULKS)
+                .type(Integer.class)
+                .setDefault(MetadataIndexer.DEFAULT_CONCURRENT_BULKS)
+                .help("Number of bulks sent to Elasticsearch at the same time, the parsing waits when they are " +
+                        "all pending. Default: " + MetadataIndexer.DEFAULT_CONCURRENT_BULKS + ".");
+
+        subparser.addArgument("--bulk-actions")
+                .dest(BULK_ACTIONS)
+                .type(Integer.class)
+                .setDefault(MetadataIndexer.DEFAULT_BULK_ACTIONS)
+                .help("Number of documents per bulk. Default: " + MetadataIndexer.DEFAULT_BULK_ACTIONS + ".");
+
+        subparser.addArgument("--lmdb")
+                .dest(LOAD_LOOKUP)
+                .action(Arguments.storeTrue())
+                .help("Also load the releases in the fatcat lmdb database, like the fatcat command, in the same " +
+                        "pass over the dump.");
+
+        subparser.addArgument("--bulk")
+                .dest(BULK_LOAD)
+                .action(Arguments.storeTrue())
+                .help("With --lmdb, load in bulk: records are sorted on disk then appended, without syncing " +
+                        "before the end. The databases should be empty.");
+
+        subparser.addArgument("--workers")
+                .dest(WORKERS)
+                .type(Integer.class)
+                .setDefault(LoadPipeline.defaultWorkers())
+                .help("Number of threads parsing the records and building the documents. " +
+                        "Default: the number of processors minus 2.");
+
+        subparser.addArgument("--decompression-threads")
+                .dest(DECOMPRESSION_THREADS)
+                .type(Integer.class)
+                .setDefault(DumpInputStreams.defaultThreads())
+                .help("Number of threads decompressing the input when it is made of independent blocks (bgzip, " +
+                        "multi-block xz), otherwise it is decompressed by one thread. Default: a quarter of the processors.");
+    }
+
+    @Override
+    protected void run(Bootstrap bootstrap, Namespace namespace, LookupConfiguration configuration) throws Exception {
+
+        final MetricRegistry metrics = new MetricRegistry();
+
+        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+
+        reporter.start(15, TimeUnit.SECONDS);
+
+        final boolean loadLookup = namespace.getBoolean(LOAD_LOOKUP);
+        if (namespace.getBoolean(BULK_LOAD) && !loadLookup) {
+            throw new IllegalArgumentException("--bulk is only used with --lmdb");
+        }
+
+        long start = System.nanoTime();
+        final String fatcatFilePath = namespace.get(FATCAT_SOURCE);
+        LOGGER.info("Indexing the fatcat dump from " + fatcatFilePath + " in " + configuration.getElastic().getIndex()
+                + (loadLookup ? ", and loading it in lmdb" : ""));
+
+        final MetadataIndexer indexer = new MetadataIndexer(configuration, metrics, "fatcatIndex",
+                namespace.getInt(CONCURRENT_BULKS), namespace.getInt(BULK_ACTIONS));
+        try (InputStream inputStreamFatcat = DumpInputStreams.open(Paths.get(fatcatFilePath), namespace.getInt(DECOMPRESSION_THREADS))) {
+            indexer.prepareIndex(Paths.get(namespace.getString(SETTINGS)), Paths.get(namespace.getString(MAPPING)),
+                    !namespace.getBoolean(APPEND));
+
+            final LoadPipeline pipeline = new LoadPipeline(metrics, "fatcatIndex", namespace.getInt(WORKERS));
+            if (loadLookup) {
+                StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+                storageEnvFactory.setBulkLoad(namespace.getBoolean(BULK_LOAD));
+                MetadataLookup metadataLookup = new MetadataLookup(storageEnvFactory);
+                metadataLookup.setLoadInput(Paths.get(fatcatFilePath).getFileName().toString(), false);
+                metadataLookup.loadFromFile(inputStreamFatcat, new FatcatJsonReader(configuration), pipeline,
+                        indexer, metrics.meter("fatcatLookup"));
+                LOGGER.info("Fatcat lookup loaded " + metadataLookup.getSize() + " records. ");
+            } else {
+                indexer.indexFromFile(inputStreamFatcat, new FatcatJsonReader(configuration), pipeline);
+            }
+        } finally {
+            indexer.close();
+        }
+
+        if (indexer.getFailedCount() > 0) {
+            throw new IllegalStateException(indexer.getFailedCount() + " releases could not be indexed, the first " +
+                    "failure: " + indexer.getFirstFailure());
+        }
+
+        LOGGER.info("Finished in " +
+                TimeUnit.SECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) + " s");
+    }
+}
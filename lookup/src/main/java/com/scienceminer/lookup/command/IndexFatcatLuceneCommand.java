@@ -0,0 +1,105 @@
+package com.scienceminer.lookup.command;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.MetricRegistry;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.reader.FatcatJsonReader;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
+import com.scienceminer.lookup.storage.lookup.matching.LuceneMatchingIndexer;
+import com.scienceminer.lookup.utils.DumpInputStreams;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for building the embedded Lucene matching index from the fatcat dump, used in place
+ * of Elasticsearch when the matching backend is lucene.
+ */
+public class IndexFatcatLuceneCommand extends ConfiguredCommand<LookupConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexFatcatLuceneCommand.class);
+
+    public static final String FATCAT_SOURCE = "fatcat.dump";
+    public static final String OUTPUT = "output";
+    public static final String RAM_BUFFER = "ramBuffer";
+    public static final String WORKERS = "workers";
+    public static final String DECOMPRESSION_THREADS = "decompressionThreads";
+
+    public IndexFatcatLuceneCommand() {
+        super("fatcatLuceneIndex", "Build the embedded Lucene matching index from the fatcat dump");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+
+        subparser.addArgument("--input")
+                .dest(FATCAT_SOURCE)
+                .type(String.class)
+                .required(true)
+                .help("The path to the source file of fatcat dump.");
+
+        subparser.addArgument("--output")
+                .dest(OUTPUT)
+                .type(String.class)
+                .help("The directory of the index, an existing index being replaced. Default: luceneIndex of " +
+                        "the configuration.");
+
+        subparser.addArgument("--ram-buffer")
+                .dest(RAM_BUFFER)
+                .type(Integer.class)
+                .setDefault(LuceneMatchingIndexer.DEFAULT_RAM_BUFFER_MB)
+                .help("Memory in MB buffering the documents before they are written in a segment. " +
+                        "Default: " + LuceneMatchingIndexer.DEFAULT_RAM_BUFFER_MB + ".");
+
+        subparser.addArgument("--workers")
+                .dest(WORKERS)
+                .type(Integer.class)
+                .setDefault(LoadPipeline.defaultWorkers())
+                .help("Number of threads parsing the records and indexing the documents. " +
+                        "Default: the number of processors minus 2.");
+
+        subparser.addArgument("--decompression-threads")
+                .dest(DECOMPRESSION_THREADS)
+                .type(Integer.class)
+                .setDefault(DumpInputStreams.defaultThreads())
+                .help("Number of threads decompressing the input when it is made of independent blocks (bgzip, " +
+                        "multi-block xz), otherwise it is decompressed by one thread. Default: a quarter of the processors.");
+    }
+
+    @Override
+    protected void run(Bootstrap bootstrap, Namespace namespace, LookupConfiguration configuration) throws Exception {
+
+        final MetricRegistry metrics = new MetricRegistry();
+
+        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+
+        reporter.start(15, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        final String fatcatFilePath = namespace.get(FATCAT_SOURCE);
+        final Path output = Paths.get(namespace.getString(OUTPUT) != null
+                ? namespace.getString(OUTPUT) : configuration.getLuceneIndex());
+        LOGGER.info("Indexing the fatcat dump from " + fatcatFilePath + " in " + output);
+
+        try (InputStream inputStreamFatcat = DumpInputStreams.open(Paths.get(fatcatFilePath), namespace.getInt(DECOMPRESSION_THREADS));
+             LuceneMatchingIndexer indexer = new LuceneMatchingIndexer(output, metrics, "fatcatLuceneIndex",
+                     namespace.getInt(RAM_BUFFER))) {
+            final LoadPipeline pipeline = new LoadPipeline(metrics, "fatcatLuceneIndex", namespace.getInt(WORKERS));
+            indexer.indexFromFile(inputStreamFatcat, new FatcatJsonReader(configuration), pipeline);
+        }
+
+        LOGGER.info("Finished in " +
+                TimeUnit.SECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) + " s");
+    }
+}
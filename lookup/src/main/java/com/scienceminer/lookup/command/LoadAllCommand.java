@@ -0,0 +1,328 @@
+package com.scienceminer.lookup.command;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.reader.FatcatJsonReader;
+import com.scienceminer.lookup.reader.IstexIdsReader;
+import com.scienceminer.lookup.reader.PmidReader;
+import com.scienceminer.lookup.reader.UnpayWallReader;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.lookup.IstexIdsLookup;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
+import com.scienceminer.lookup.storage.lookup.MetadataLookup;
+import com.scienceminer.lookup.storage.lookup.OALookup;
+import com.scienceminer.lookup.storage.lookup.PMIdsLookup;
+import com.scienceminer.lookup.utils.DumpInputStreams;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for loading several sources in their lmdb environments at the same time, e.g. to build
+ * a fresh storage directory in one command.
+ * <p>
+ * Each source is loaded in its own environment by its own thread, the threads of the load pipelines being shared
+ * out of the CPU budget between the loads running together. The number of loads running together bounds the
+ * IO of the load, the largest sources being started first. At the end, a manifest with the number of records and
+ * the duration of each load is written in the storage directory.
+ */
+public class LoadAllCommand extends ConfiguredCommand<LookupConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadAllCommand.class);
+
+    public static final String FATCAT_SOURCE = "fatcatSource";
+    public static final String PMID_SOURCE = "pmidSource";
+    public static final String UNPAYWALL_SOURCE = "unpaywallSource";
+    public static final String ISTEX_SOURCE = "istexSource";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String RESUME = "resume";
+    public static final String THREADS = "threads";
+    public static final String PARALLEL_LOADS = "parallelLoads";
+    public static final String MANIFEST = "manifest";
+
+    public static final String MANIFEST_FILE = "load-manifest.json";
+
+    /**
+     * Reader and writer threads of each load pipeline, out of the CPU budget
+     */
+    private static final int PIPELINE_THREADS = 2;
+
+    public LoadAllCommand() {
+        super("loadAll", "Prepare the fatcat, pmid, unpaywall and istex databases at the same time");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+
+        subparser.addArgument("--fatcat")
+                .dest(FATCAT_SOURCE)
+                .type(String.class)
+                .required(false)
+                .help("The path to the source file of fatcat dump.");
+
+        subparser.addArgument("--pmid")
+                .dest(PMID_SOURCE)
+                .type(String.class)
+                .required(false)
+                .help("The path to the source file for pmid mapping.");
+
+        subparser.addArgument("--unpaywall")
+                .dest(UNPAYWALL_SOURCE)
+                .type(String.class)
+                .required(false)
+                .help("The path to the source file for unpaywall.");
+
+        subparser.addArgument("--istex")
+                .dest(ISTEX_SOURCE)
+                .type(String.class)
+                .required(false)
+                .help("The path to the source file for mapping (istex.all).");
+
+        subparser.addArgument("--bulk")
+                .dest(BULK_LOAD)
+                .action(Arguments.storeTrue())
+                .help("Load in bulk: records are sorted on disk then appended, without syncing before the end. " +
+                        "The databases should be empty.");
+
+        subparser.addArgument("--resume")
+                .dest(RESUME)
+                .action(Arguments.storeTrue())
+                .help("Resume the interrupted loads of the same input files from their last committed batch.");
+
+        subparser.addArgument("--threads")
+                .dest(THREADS)
+                .type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .help("CPU budget: number of threads shared out between the loads running together. " +
+                        "Default: the number of processors.");
+
+        subparser.addArgument("--parallel-loads")
+                .dest(PARALLEL_LOADS)
+                .type(Integer.class)
+                .setDefault(2)
+                .help("IO budget: number of sources loaded at the same time. Default: 2.");
+
+        subparser.addArgument("--manifest")
+                .dest(MANIFEST)
+                .type(String.class)
+                .required(false)
+                .help("The path of the manifest of the loads. Default: " + MANIFEST_FILE + " in the storage directory.");
+    }
+
+    @Override
+    protected void run(Bootstrap bootstrap, Namespace namespace, LookupConfiguration configuration) throws Exception {
+
+        final MetricRegistry metrics = new MetricRegistry();
+
+        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+
+        // the sources in decreasing order of size, the largest ones being the longest to load
+        final List<Source> sources = new ArrayList<>();
+        addSource(sources, "fatcat", namespace.getString(FATCAT_SOURCE));
+        addSource(sources, "pmid", namespace.getString(PMID_SOURCE));
+        addSource(sources, "unpaywall", namespace.getString(UNPAYWALL_SOURCE));
+        addSource(sources, "istex", namespace.getString(ISTEX_SOURCE));
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one of --fatcat, --pmid, --unpaywall and --istex is required");
+        }
+        final boolean resume = namespace.getBoolean(RESUME);
+        if (resume && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --resume cannot be combined");
+        }
+
+        StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        storageEnvFactory.setBulkLoad(namespace.getBoolean(BULK_LOAD));
+
+        int parallelLoads = Math.max(1, Math.min(namespace.getInt(PARALLEL_LOADS), sources.size()));
+        if (configuration.isSingleEnvironment() && parallelLoads > 1) {
+            LOGGER.warn("With the single environment storage, the loads share the same write lock: they are run one after another.");
+            parallelLoads = 1;
+        }
+        final int threadsPerLoad = Math.max(PIPELINE_THREADS + 1, namespace.getInt(THREADS) / parallelLoads);
+        final int workers = threadsPerLoad - PIPELINE_THREADS;
+        final int decompressionThreads = Math.max(1, threadsPerLoad / 4);
+
+        LOGGER.info("Loading " + sources.size() + " sources, " + parallelLoads + " at the same time, with "
+                + workers + " parsing threads and " + decompressionThreads + " decompression threads each");
+
+        // combined progress of the loads, reported with the meters of each load
+        metrics.register("loadAll.records", (Gauge<Long>) () -> {
+            long records = 0;
+            for (Source source : sources) {
+                records += source.meter.getCount();
+            }
+            return records;
+        });
+        metrics.register("loadAll.finished", (Gauge<String>) () -> {
+            int finished = 0;
+            for (Source source : sources) {
+                finished += source.end > 0 ? 1 : 0;
+            }
+            return finished + "/" + sources.size();
+        });
+        for (Source source : sources) {
+            source.meter = metrics.meter(source.metricName());
+        }
+        reporter.start(15, TimeUnit.SECONDS);
+
+        final long start = System.nanoTime();
+        final Instant started = Instant.now();
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelLoads);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (Source source : sources) {
+            futures.add(executor.submit(() -> {
+                source.start = System.nanoTime();
+                try {
+                    load(source, storageEnvFactory, configuration, metrics, workers, decompressionThreads, resume);
+                } catch (Exception e) {
+                    LOGGER.error("The load of " + source.name + " from " + source.input + " failed", e);
+                    source.error = e.toString();
+                } finally {
+                    source.end = System.nanoTime();
+                }
+                LOGGER.info("Source " + source.name + " loaded in "
+                        + TimeUnit.SECONDS.convert(source.end - source.start, TimeUnit.NANOSECONDS) + " s");
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        reporter.report();
+        reporter.stop();
+
+        final File manifest = namespace.getString(MANIFEST) != null
+                ? new File(namespace.getString(MANIFEST))
+                : new File(storageEnvFactory.getStoragePath(), MANIFEST_FILE);
+        writeManifest(manifest, sources, started, System.nanoTime() - start);
+        LOGGER.info("Manifest of the loads written in " + manifest.getPath());
+
+        LOGGER.info("Finished in " +
+                TimeUnit.SECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) + " s");
+
+        final List<String> failed = new ArrayList<>();
+        for (Source source : sources) {
+            if (source.error != null) {
+                failed.add(source.name);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("The loads of " + failed + " failed, see the log and the manifest.");
+        }
+    }
+
+    private static void addSource(List<Source> sources, String name, String input) {
+        if (input != null) {
+            sources.add(new Source(name, input));
+        }
+    }
+
+    private static void load(Source source, StorageEnvFactory storageEnvFactory, LookupConfiguration configuration,
+                             MetricRegistry metrics, int workers, int decompressionThreads, boolean resume) throws Exception {
+        final LoadPipeline pipeline = new LoadPipeline(metrics, source.metricName(), workers);
+        final String inputName = Paths.get(source.input).getFileName().toString();
+
+        LOGGER.info("Loading " + source.name + " from " + source.input);
+        try (InputStream input = DumpInputStreams.open(Paths.get(source.input), decompressionThreads)) {
+            switch (source.name) {
+                case "fatcat":
+                    final MetadataLookup metadataLookup = new MetadataLookup(storageEnvFactory);
+                    metadataLookup.setLoadInput(inputName, resume);
+                    metadataLookup.loadFromFile(input, new FatcatJsonReader(configuration), pipeline, source.meter);
+                    source.sizes = metadataLookup.getSize();
+                    break;
+                case "pmid":
+                    final PMIdsLookup pmidLookup = new PMIdsLookup(storageEnvFactory);
+                    pmidLookup.setLoadInput(inputName, resume);
+                    pmidLookup.loadFromFile(input, new PmidReader(), pipeline, source.meter);
+                    source.sizes = pmidLookup.getSize();
+                    break;
+                case "unpaywall":
+                    final OALookup openAccessLookup = new OALookup(storageEnvFactory);
+                    openAccessLookup.setLoadInput(inputName, resume);
+                    openAccessLookup.loadFromFile(input, new UnpayWallReader(), pipeline, source.meter);
+                    source.sizes = openAccessLookup.getSize();
+                    break;
+                case "istex":
+                    final IstexIdsLookup istexLookup = new IstexIdsLookup(storageEnvFactory);
+                    istexLookup.setLoadInput(inputName, resume);
+                    istexLookup.loadFromFile(input, new IstexIdsReader(), pipeline, source.meter);
+                    source.sizes = istexLookup.getSize();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown source " + source.name);
+            }
+        }
+    }
+
+    private static void writeManifest(File file, List<Source> sources, Instant started, long duration) throws Exception {
+        final Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("started", started.toString());
+        manifest.put("durationSeconds", TimeUnit.SECONDS.convert(duration, TimeUnit.NANOSECONDS));
+        final Map<String, Object> loads = new LinkedHashMap<>();
+        for (Source source : sources) {
+            final Map<String, Object> load = new LinkedHashMap<>();
+            load.put("input", source.input);
+            load.put("records", source.meter.getCount());
+            load.put("durationSeconds", TimeUnit.SECONDS.convert(source.end - source.start, TimeUnit.NANOSECONDS));
+            if (source.sizes != null) {
+                load.put("databases", source.sizes);
+            }
+            load.put("status", source.error == null ? "loaded" : "failed");
+            if (source.error != null) {
+                load.put("error", source.error);
+            }
+            loads.put(source.name, load);
+        }
+        manifest.put("sources", loads);
+
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, manifest);
+    }
+
+    /**
+     * Source to load and the outcome of its load
+     */
+    private static class Source {
+        private final String name;
+        private final String input;
+        private Meter meter;
+        private volatile long start;
+        private volatile long end;
+        private volatile Map<String, Long> sizes;
+        private volatile String error;
+
+        Source(String name, String input) {
+            this.name = name;
+            this.input = input;
+        }
+
+        String metricName() {
+            return name + "Lookup";
+        }
+    }
+}
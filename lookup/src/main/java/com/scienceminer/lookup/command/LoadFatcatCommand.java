@@ -5,18 +5,18 @@ import com.codahale.metrics.MetricRegistry;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.reader.FatcatJsonReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
 import com.scienceminer.lookup.storage.lookup.MetadataLookup;
+import com.scienceminer.lookup.utils.DumpInputStreams;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.tukaani.xz.XZInputStream;
-import java.util.zip.GZIPInputStream;
 
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 
@@ -28,6 +28,12 @@ public class LoadFatcatCommand extends ConfiguredCommand<LookupConfiguration> {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadFatcatCommand.class);
 
     public static final String fatcat_SOURCE = "fatcat.dump";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String RESUME = "resume";
+    public static final String INCREMENTAL = "incremental";
+    public static final String FEED_POSITION = "feedPosition";
+    public static final String WORKERS = "workers";
+    public static final String DECOMPRESSION_THREADS = "decompressionThreads";
 
     public LoadFatcatCommand() {
         super("fatcat", "Prepare the fatcat database");
@@ -42,6 +48,42 @@ public class LoadFatcatCommand extends ConfiguredCommand<LookupConfiguration> {
                 .type(String.class)
                 .required(true)
                 .help("The path to the source file of fatcat dump.");
+
+        subparser.addArgument("--bulk")
+                .dest(BULK_LOAD)
+                .action(Arguments.storeTrue())
+                .help("Load in bulk: records are sorted on disk then appended, without syncing before the end. " +
+                        "The databases should be empty.");
+
+        subparser.addArgument("--resume")
+                .dest(RESUME)
+                .action(Arguments.storeTrue())
+                .help("Resume an interrupted load of the same input file from its last committed batch.");
+
+        subparser.addArgument("--workers")
+                .dest(WORKERS)
+                .type(Integer.class)
+                .setDefault(LoadPipeline.defaultWorkers())
+                .help("Number of threads parsing and encoding the records, while one thread reads the input " +
+                        "and one writes the database. Default: the number of processors minus 2.");
+
+        subparser.addArgument("--decompression-threads")
+                .dest(DECOMPRESSION_THREADS)
+                .type(Integer.class)
+                .setDefault(DumpInputStreams.defaultThreads())
+                .help("Number of threads decompressing the input when it is made of independent blocks (bgzip, " +
+                        "multi-block xz), otherwise it is decompressed by one thread. Default: a quarter of the processors.");
+
+        subparser.addArgument("--incremental")
+                .dest(INCREMENTAL)
+                .action(Arguments.storeTrue())
+                .help("Apply the input as a change feed on the existing database: records are upserted or deleted.");
+
+        subparser.addArgument("--position")
+                .dest(FEED_POSITION)
+                .type(String.class)
+                .required(false)
+                .help("Position of the change feed, recorded to skip feeds already applied. Default: the input file name.");
     }
 
     @Override
@@ -57,21 +99,35 @@ public class LoadFatcatCommand extends ConfiguredCommand<LookupConfiguration> {
         reporter.start(15, TimeUnit.SECONDS);
 
         StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        final boolean incremental = namespace.getBoolean(INCREMENTAL);
+        if (incremental && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --incremental cannot be combined");
+        }
+        if (incremental && namespace.getBoolean(RESUME)) {
+            throw new IllegalArgumentException("--incremental and --resume cannot be combined");
+        }
+        if (namespace.getBoolean(RESUME) && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --resume cannot be combined");
+        }
+        storageEnvFactory.setBulkLoad(namespace.getBoolean(BULK_LOAD));
         MetadataLookup metadataLookup = new MetadataLookup(storageEnvFactory);
         long start = System.nanoTime();
         final String fatcatFilePath = namespace.get(fatcat_SOURCE);
 
-        LOGGER.info("Preparing the system. Loading data from Fatcat dump from " + fatcatFilePath);
+        LOGGER.info("Preparing the system. Loading data from Fatcat dump from " + fatcatFilePath
+                + ", records compressed with " + configuration.getFatcatCompression());
 
         // fatcat IDs
-        InputStream inputStreamFatcat = Files.newInputStream(Paths.get(fatcatFilePath));
-        if (fatcatFilePath.endsWith(".xz")) {
-            inputStreamFatcat = new XZInputStream(inputStreamFatcat);
-        } else if (fatcatFilePath.endsWith(".gz")) {
-            inputStreamFatcat = new GZIPInputStream(inputStreamFatcat);
+        InputStream inputStreamFatcat = DumpInputStreams.open(Paths.get(fatcatFilePath), namespace.getInt(DECOMPRESSION_THREADS));
+        if (incremental) {
+            final String position = namespace.getString(FEED_POSITION) != null
+                    ? namespace.getString(FEED_POSITION) : Paths.get(fatcatFilePath).getFileName().toString();
+            metadataLookup.applyChanges(inputStreamFatcat, new FatcatJsonReader(configuration), position, metrics.meter("fatcatLookup"));
+        } else {
+            metadataLookup.setLoadInput(Paths.get(fatcatFilePath).getFileName().toString(), namespace.getBoolean(RESUME));
+            metadataLookup.loadFromFile(inputStreamFatcat, new FatcatJsonReader(configuration),
+                    new LoadPipeline(metrics, "fatcatLookup", namespace.getInt(WORKERS)), metrics.meter("fatcatLookup"));
         }
-        metadataLookup.loadFromFile(inputStreamFatcat, new FatcatJsonReader(configuration),
-                metrics.meter("fatcatLookup"));
         LOGGER.info("Fatcat lookup loaded " + metadataLookup.getSize() + " records. ");
 
         LOGGER.info("Finished in " +
@@ -6,18 +6,19 @@ import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.reader.IstexIdsReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
 import com.scienceminer.lookup.storage.lookup.IstexIdsLookup;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
+import com.scienceminer.lookup.utils.DumpInputStreams;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
 
 /**
  * This class is responsible for loading data for the istex mappings, in particular
@@ -28,7 +29,11 @@ public class LoadIstexIdsCommand extends ConfiguredCommand<LookupConfiguration>
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadIstexIdsCommand.class);
 
     public static final String ISTEX_SOURCE = "istex.all_source";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String RESUME = "resume";
     public static final String ISTEX_SOURCE_ADDITIONAL = "istex2pmid_source";
+    public static final String WORKERS = "workers";
+    public static final String DECOMPRESSION_THREADS = "decompressionThreads";
 
     public LoadIstexIdsCommand() {
         super("istex", "Prepare the istex lookp database");
@@ -44,6 +49,31 @@ public class LoadIstexIdsCommand extends ConfiguredCommand<LookupConfiguration>
                 .required(true)
                 .help("The path to the source file for mapping (istex.all).");
 
+        subparser.addArgument("--bulk")
+                .dest(BULK_LOAD)
+                .action(Arguments.storeTrue())
+                .help("Load in bulk: records are sorted on disk then appended, without syncing before the end. " +
+                        "The databases should be empty.");
+
+        subparser.addArgument("--resume")
+                .dest(RESUME)
+                .action(Arguments.storeTrue())
+                .help("Resume an interrupted load of the same input file from its last committed batch.");
+
+        subparser.addArgument("--workers")
+                .dest(WORKERS)
+                .type(Integer.class)
+                .setDefault(LoadPipeline.defaultWorkers())
+                .help("Number of threads parsing and encoding the records, while one thread reads the input " +
+                        "and one writes the database. Default: the number of processors minus 2.");
+
+        subparser.addArgument("--decompression-threads")
+                .dest(DECOMPRESSION_THREADS)
+                .type(Integer.class)
+                .setDefault(DumpInputStreams.defaultThreads())
+                .help("Number of threads decompressing the input when it is made of independent blocks (bgzip, " +
+                        "multi-block xz), otherwise it is decompressed by one thread. Default: a quarter of the processors.");
+
         /*subparser.addArgument("--additional")
                 .dest(ISTEX_SOURCE_ADDITIONAL)
                 .type(String.class)
@@ -64,6 +94,10 @@ public class LoadIstexIdsCommand extends ConfiguredCommand<LookupConfiguration>
         reporter.start(15, TimeUnit.SECONDS);
 
         StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        if (namespace.getBoolean(RESUME) && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --resume cannot be combined");
+        }
+        storageEnvFactory.setBulkLoad(namespace.getBoolean(BULK_LOAD));
         IstexIdsLookup istexLookup = new IstexIdsLookup(storageEnvFactory);
         long start = System.nanoTime();
         final String istexFilePath = namespace.get(ISTEX_SOURCE);
@@ -71,12 +105,10 @@ public class LoadIstexIdsCommand extends ConfiguredCommand<LookupConfiguration>
         LOGGER.info("Preparing the system. Loading data for Istex from " + istexFilePath);
 
         // Istex IDs
-        InputStream inputStreamIstexIds = Files.newInputStream(Paths.get(istexFilePath));
-        if (istexFilePath.endsWith(".gz")) {
-            inputStreamIstexIds = new GZIPInputStream(inputStreamIstexIds);
-        }
+        InputStream inputStreamIstexIds = DumpInputStreams.open(Paths.get(istexFilePath), namespace.getInt(DECOMPRESSION_THREADS));
+        istexLookup.setLoadInput(Paths.get(istexFilePath).getFileName().toString(), namespace.getBoolean(RESUME));
         istexLookup.loadFromFile(inputStreamIstexIds, new IstexIdsReader(),
-                metrics.meter("istexLookup"));
+                new LoadPipeline(metrics, "istexLookup", namespace.getInt(WORKERS)), metrics.meter("istexLookup"));
         LOGGER.info("Istex lookup loaded " + istexLookup.getSize() + " records. ");
 
         /*final String istexAdditionalFilePath = namespace.get(ISTEX_SOURCE_ADDITIONAL);
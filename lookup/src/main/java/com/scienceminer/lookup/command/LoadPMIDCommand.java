@@ -5,19 +5,20 @@ import com.codahale.metrics.MetricRegistry;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.reader.PmidReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
 import com.scienceminer.lookup.storage.lookup.PMIdsLookup;
+import com.scienceminer.lookup.utils.DumpInputStreams;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
 
 /**
  * This class is responsible for loading data for the istex mappings, in particular
@@ -28,6 +29,10 @@ public class LoadPMIDCommand extends ConfiguredCommand<LookupConfiguration> {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadPMIDCommand.class);
 
     public static final String PMID_SOURCE = "pmidSource";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String RESUME = "resume";
+    public static final String WORKERS = "workers";
+    public static final String DECOMPRESSION_THREADS = "decompressionThreads";
 
     public LoadPMIDCommand() {
         super("pmid", "Prepare the pmid database lookup");
@@ -42,6 +47,31 @@ public class LoadPMIDCommand extends ConfiguredCommand<LookupConfiguration> {
                 .type(String.class)
                 .required(true)
                 .help("The path to the source file for pmid mapping");
+
+        subparser.addArgument("--bulk")
+                .dest(BULK_LOAD)
+                .action(Arguments.storeTrue())
+                .help("Load in bulk: records are sorted on disk then appended, without syncing before the end. " +
+                        "The databases should be empty.");
+
+        subparser.addArgument("--resume")
+                .dest(RESUME)
+                .action(Arguments.storeTrue())
+                .help("Resume an interrupted load of the same input file from its last committed batch.");
+
+        subparser.addArgument("--workers")
+                .dest(WORKERS)
+                .type(Integer.class)
+                .setDefault(LoadPipeline.defaultWorkers())
+                .help("Number of threads parsing and encoding the records, while one thread reads the input " +
+                        "and one writes the database. Default: the number of processors minus 2.");
+
+        subparser.addArgument("--decompression-threads")
+                .dest(DECOMPRESSION_THREADS)
+                .type(Integer.class)
+                .setDefault(DumpInputStreams.defaultThreads())
+                .help("Number of threads decompressing the input when it is made of independent blocks (bgzip, " +
+                        "multi-block xz), otherwise it is decompressed by one thread. Default: a quarter of the processors.");
     }
 
     @Override
@@ -60,15 +90,18 @@ public class LoadPMIDCommand extends ConfiguredCommand<LookupConfiguration> {
         LOGGER.info("Preparing the system. Loading data for PMID from " + pmidMappingPath);
 
         StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        if (namespace.getBoolean(RESUME) && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --resume cannot be combined");
+        }
+        storageEnvFactory.setBulkLoad(namespace.getBoolean(BULK_LOAD));
 
         long start = System.nanoTime();
         
         PMIdsLookup pmidLookup = new PMIdsLookup(storageEnvFactory);
-        InputStream inputStreampmidMapping = Files.newInputStream(Paths.get(pmidMappingPath));
-        if (pmidMappingPath.endsWith(".gz")) {
-            inputStreampmidMapping = new GZIPInputStream(inputStreampmidMapping);
-        }
-        pmidLookup.loadFromFile(inputStreampmidMapping, new PmidReader(), metrics.meter("pmidLookup"));
+        InputStream inputStreampmidMapping = DumpInputStreams.open(Paths.get(pmidMappingPath), namespace.getInt(DECOMPRESSION_THREADS));
+        pmidLookup.setLoadInput(Paths.get(pmidMappingPath).getFileName().toString(), namespace.getBoolean(RESUME));
+        pmidLookup.loadFromFile(inputStreampmidMapping, new PmidReader(),
+                new LoadPipeline(metrics, "pmidLookup", namespace.getInt(WORKERS)), metrics.meter("pmidLookup"));
         LOGGER.info("Istex lookup loaded " + pmidLookup.getSize() + " records. ");
 
         LOGGER.info("Finished in " +
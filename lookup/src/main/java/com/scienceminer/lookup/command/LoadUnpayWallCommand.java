@@ -5,24 +5,31 @@ import com.codahale.metrics.MetricRegistry;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.reader.UnpayWallReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
 import com.scienceminer.lookup.storage.lookup.OALookup;
+import com.scienceminer.lookup.utils.DumpInputStreams;
 import io.dropwizard.cli.ConfiguredCommand;
 import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.Namespace;
 import net.sourceforge.argparse4j.inf.Subparser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
-import java.util.zip.GZIPInputStream;
 
 public class LoadUnpayWallCommand extends ConfiguredCommand<LookupConfiguration> {
     private static final Logger LOGGER = LoggerFactory.getLogger(LoadUnpayWallCommand.class);
 
     public static final String UNPAYWALL_SOURCE = "unpaywallSource";
+    public static final String BULK_LOAD = "bulkLoad";
+    public static final String RESUME = "resume";
+    public static final String INCREMENTAL = "incremental";
+    public static final String FEED_POSITION = "feedPosition";
+    public static final String WORKERS = "workers";
+    public static final String DECOMPRESSION_THREADS = "decompressionThreads";
 
     public LoadUnpayWallCommand() {
         super("unpaywall", "Prepare the unpayWall database");
@@ -38,6 +45,42 @@ public class LoadUnpayWallCommand extends ConfiguredCommand<LookupConfiguration>
                 .type(String.class)
                 .required(true)
                 .help("The path to the source file for unpaywall");
+
+        subparser.addArgument("--bulk")
+                .dest(BULK_LOAD)
+                .action(Arguments.storeTrue())
+                .help("Load in bulk: records are sorted on disk then appended, without syncing before the end. " +
+                        "The databases should be empty.");
+
+        subparser.addArgument("--resume")
+                .dest(RESUME)
+                .action(Arguments.storeTrue())
+                .help("Resume an interrupted load of the same input file from its last committed batch.");
+
+        subparser.addArgument("--workers")
+                .dest(WORKERS)
+                .type(Integer.class)
+                .setDefault(LoadPipeline.defaultWorkers())
+                .help("Number of threads parsing and encoding the records, while one thread reads the input " +
+                        "and one writes the database. Default: the number of processors minus 2.");
+
+        subparser.addArgument("--decompression-threads")
+                .dest(DECOMPRESSION_THREADS)
+                .type(Integer.class)
+                .setDefault(DumpInputStreams.defaultThreads())
+                .help("Number of threads decompressing the input when it is made of independent blocks (bgzip, " +
+                        "multi-block xz), otherwise it is decompressed by one thread. Default: a quarter of the processors.");
+
+        subparser.addArgument("--incremental")
+                .dest(INCREMENTAL)
+                .action(Arguments.storeTrue())
+                .help("Apply the input as a change feed on the existing database: records are upserted or deleted.");
+
+        subparser.addArgument("--position")
+                .dest(FEED_POSITION)
+                .type(String.class)
+                .required(false)
+                .help("Position of the change feed, recorded to skip feeds already applied. Default: the input file name.");
     }
 
     @Override
@@ -56,14 +99,30 @@ public class LoadUnpayWallCommand extends ConfiguredCommand<LookupConfiguration>
         LOGGER.info("Preparing the system. Loading data for unpaywall from " + unpayWallFilePath);
 
         StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        final boolean incremental = namespace.getBoolean(INCREMENTAL);
+        if (incremental && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --incremental cannot be combined");
+        }
+        if (incremental && namespace.getBoolean(RESUME)) {
+            throw new IllegalArgumentException("--incremental and --resume cannot be combined");
+        }
+        if (namespace.getBoolean(RESUME) && namespace.getBoolean(BULK_LOAD)) {
+            throw new IllegalArgumentException("--bulk and --resume cannot be combined");
+        }
+        storageEnvFactory.setBulkLoad(namespace.getBoolean(BULK_LOAD));
 
         long start = System.nanoTime();
         OALookup openAccessLookup = new OALookup(storageEnvFactory);
-        InputStream inputStreamUnpayWall = Files.newInputStream(Paths.get(unpayWallFilePath));
-        if (unpayWallFilePath.endsWith(".gz")) {
-            inputStreamUnpayWall = new GZIPInputStream(inputStreamUnpayWall);
+        InputStream inputStreamUnpayWall = DumpInputStreams.open(Paths.get(unpayWallFilePath), namespace.getInt(DECOMPRESSION_THREADS));
+        if (incremental) {
+            final String position = namespace.getString(FEED_POSITION) != null
+                    ? namespace.getString(FEED_POSITION) : Paths.get(unpayWallFilePath).getFileName().toString();
+            openAccessLookup.applyChanges(inputStreamUnpayWall, new UnpayWallReader(), position, metrics.meter("openAccessLookup"));
+        } else {
+            openAccessLookup.setLoadInput(Paths.get(unpayWallFilePath).getFileName().toString(), namespace.getBoolean(RESUME));
+            openAccessLookup.loadFromFile(inputStreamUnpayWall, new UnpayWallReader(),
+                    new LoadPipeline(metrics, "openAccessLookup", namespace.getInt(WORKERS)), metrics.meter("openAccessLookup"));
         }
-        openAccessLookup.loadFromFile(inputStreamUnpayWall, new UnpayWallReader(), metrics.meter("openAccessLookup"));
         LOGGER.info("Doi lookup (doi -> oa url) loaded " + openAccessLookup.getSize() + " records. ");
         
         LOGGER.info("Finished in " +
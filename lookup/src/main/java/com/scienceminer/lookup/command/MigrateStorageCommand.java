@@ -0,0 +1,277 @@
+package com.scienceminer.lookup.command;
+
+import com.codahale.metrics.ConsoleReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.data.IstexData;
+import com.scienceminer.lookup.data.PmidData;
+import com.scienceminer.lookup.storage.StorageCompactor;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageMetadata;
+import com.scienceminer.lookup.storage.codec.IstexDataCodec;
+import com.scienceminer.lookup.storage.codec.PmidDataCodec;
+import com.scienceminer.lookup.storage.lookup.CrosswalkLookup;
+import com.scienceminer.lookup.storage.lookup.IstexIdsLookup;
+import com.scienceminer.lookup.storage.lookup.MetadataLookup;
+import com.scienceminer.lookup.storage.lookup.PMIdsLookup;
+import com.scienceminer.lookup.utils.BinarySerialiser;
+import com.scienceminer.lookup.utils.KeyEncoder;
+import com.scienceminer.lookup.utils.ValueCompressor;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * This class is responsible for rewriting an existing storage directory in the current format version:
+ * - keys serialised with FST -> raw UTF-8 keys
+ * - istex and pmid records serialised with FST -> compact binary records
+ * - fatcat records serialised with FST and compressed with snappy -> UTF-8 compressed with the configured codec,
+ * behind a codec header byte. A zstd dictionary can only be trained when loading the dump, zstd without dictionary
+ * is then used instead.
+ * - pmid and pmc keys of the pmid databases stored as strings -> native integer keys (MDB_INTEGERKEY)
+ * <p>
+ * Each environment is copied in a side directory, the original one is kept with the suffix .bak
+ */
+public class MigrateStorageCommand extends ConfiguredCommand<LookupConfiguration> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MigrateStorageCommand.class);
+
+    public static final String ENV_NAMES = "envNames";
+
+    public MigrateStorageCommand() {
+        super("migrate", "Rewrite the databases in the storage directory in the current format");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        super.configure(subparser);
+
+        subparser.addArgument("--env")
+                .dest(ENV_NAMES)
+                .type(String.class)
+                .nargs("*")
+                .required(false)
+                .help("The names of the environments to migrate (e.g. fatcat, istex, pmid, unpayWall). Default: all.");
+    }
+
+    @Override
+    protected void run(Bootstrap bootstrap, Namespace namespace, LookupConfiguration configuration) throws Exception {
+
+        final MetricRegistry metrics = new MetricRegistry();
+
+        ConsoleReporter reporter = ConsoleReporter.forRegistry(metrics)
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+
+        reporter.start(15, TimeUnit.SECONDS);
+
+        StorageEnvFactory storageEnvFactory = new StorageEnvFactory(configuration);
+        long start = System.nanoTime();
+
+        List<String> envNames = namespace.getList(ENV_NAMES);
+        File[] envDirectories = new File(storageEnvFactory.getStoragePath())
+                .listFiles(file -> StorageEnvFactory.isEnvDirectory(file)
+                        && (envNames == null || envNames.isEmpty() || envNames.contains(file.getName())));
+
+        if (envDirectories == null || envDirectories.length == 0) {
+            LOGGER.info("No environment to migrate in " + storageEnvFactory.getStoragePath());
+            return;
+        }
+
+        for (File envDirectory : envDirectories) {
+            migrate(storageEnvFactory, envDirectory, metrics.meter(envDirectory.getName()));
+        }
+
+        LOGGER.info("Finished in " +
+                TimeUnit.SECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS) + " s");
+    }
+
+    private void migrate(StorageEnvFactory storageEnvFactory, File envDirectory, Meter meter) throws Exception {
+        final String envName = envDirectory.getName();
+        final File targetDirectory = new File(envDirectory.getPath() + ".migrating");
+        final File backupDirectory = new File(envDirectory.getPath() + ".bak");
+
+        try (Env<ByteBuffer> source = storageEnvFactory.createEnv(envDirectory)) {
+            final boolean isEmpty = source.stat().entries == 0;
+            final Long recordedVersion = new StorageMetadata(source).getLong(StorageEnvFactory.METADATA_FORMAT_VERSION);
+            final int version = recordedVersion == null ? StorageEnvFactory.FORMAT_VERSION_FST_KEYS : recordedVersion.intValue();
+            if (isEmpty || version >= StorageEnvFactory.CURRENT_FORMAT_VERSION) {
+                LOGGER.info("Environment " + envName + " is already in the current format, skipping it.");
+                return;
+            }
+
+            if (backupDirectory.exists()) {
+                throw new IllegalStateException("The backup directory " + backupDirectory.getPath()
+                        + " already exists, remove it before migrating " + envName + ".");
+            }
+
+            LOGGER.info("Migrating " + envName + " from format version " + version
+                    + " to " + StorageEnvFactory.CURRENT_FORMAT_VERSION);
+
+            if (targetDirectory.exists()) {
+                FileUtils.deleteDirectory(targetDirectory);
+            }
+
+            try (Env<ByteBuffer> target = storageEnvFactory.createEnv(targetDirectory)) {
+                for (String dbName : StorageCompactor.getDatabaseNames(source)) {
+                    if (StorageMetadata.NAME_METADATA.equals(dbName)) {
+                        continue;
+                    }
+                    copyDatabase(source, target, dbName, version, storageEnvFactory.getConfiguration(), meter);
+                }
+                new StorageMetadata(target).putLong(StorageEnvFactory.METADATA_FORMAT_VERSION,
+                        StorageEnvFactory.CURRENT_FORMAT_VERSION);
+                target.sync(true);
+            }
+        }
+
+        FileUtils.moveDirectory(envDirectory, backupDirectory);
+        FileUtils.moveDirectory(targetDirectory, envDirectory);
+        LOGGER.info("Environment " + envName + " migrated, the previous version is kept in " + backupDirectory.getPath());
+    }
+
+    /**
+     * Return the conversion of the values of the database, null if the values are kept as they are.
+     */
+    private Function<ByteBuffer, byte[]> getValueConverter(String dbName, int version, LookupConfiguration configuration) {
+        if (version < StorageEnvFactory.FORMAT_VERSION_COMPACT_VALUES) {
+            if (dbName.startsWith(IstexIdsLookup.ENV_NAME + "_")) {
+                return value -> IstexDataCodec.encode((IstexData) BinarySerialiser.deserialize(value));
+            }
+            if (dbName.startsWith(PMIdsLookup.ENV_NAME + "_")) {
+                return value -> PmidDataCodec.encode((PmidData) BinarySerialiser.deserialize(value));
+            }
+        }
+        if (version < StorageEnvFactory.FORMAT_VERSION_CODEC_HEADER) {
+            if (dbName.equals(MetadataLookup.NAME_FATCAT_JSON)) {
+                ValueCompressor.Codec codec = ValueCompressor.Codec.fromName(configuration.getFatcatCompression());
+                if (codec == ValueCompressor.Codec.ZSTD_DICTIONARY) {
+                    codec = ValueCompressor.Codec.ZSTD;
+                }
+                final ValueCompressor compressor = new ValueCompressor(codec);
+                return value -> compress(compressor, value, compressor.getCodec());
+            }
+            if (dbName.startsWith(MetadataLookup.ENV_NAME + "_")) {
+                final ValueCompressor compressor = new ValueCompressor(ValueCompressor.Codec.NONE);
+                return value -> compress(compressor, value, ValueCompressor.Codec.NONE);
+            }
+        }
+        return null;
+    }
+
+    private static byte[] compress(ValueCompressor compressor, ByteBuffer legacyValue, ValueCompressor.Codec codec) {
+        try {
+            final String value = (String) BinarySerialiser.deserializeAndDecompress(legacyValue);
+            return compressor.compress(value.getBytes(UTF_8), codec);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return the conversion of a string key to the integer key of the database, null if the database does not
+     * move to integer keys.
+     */
+    private Function<String, Integer> getIntegerKeyConverter(String dbName, int version) {
+        if (version < StorageEnvFactory.FORMAT_VERSION_INTEGER_KEYS) {
+            if (dbName.equals(PMIdsLookup.NAME_PMID2IDS) || dbName.equals(CrosswalkLookup.NAME_PMID2IDS)) {
+                return PMIdsLookup::toPmidKey;
+            }
+            if (dbName.equals(PMIdsLookup.NAME_PMC2IDS) || dbName.equals(CrosswalkLookup.NAME_PMC2IDS)) {
+                return PMIdsLookup::toPmcKey;
+            }
+        }
+        return null;
+    }
+
+    private void copyDatabase(Env<ByteBuffer> source, Env<ByteBuffer> target, String dbName, int version,
+                              LookupConfiguration configuration, Meter meter) {
+        final int batchSize = configuration.getBatchSize();
+        final Dbi<ByteBuffer> sourceDb = source.openDbi(dbName);
+        final Function<String, Integer> integerKeyConverter = getIntegerKeyConverter(dbName, version);
+        final Dbi<ByteBuffer> targetDb = integerKeyConverter == null
+                ? target.openDbi(dbName, DbiFlags.MDB_CREATE)
+                : target.openDbi(dbName, DbiFlags.MDB_CREATE, DbiFlags.MDB_INTEGERKEY);
+        final ByteBuffer keyBuffer = allocateDirect(target.getMaxKeySize());
+        ByteBuffer valueBuffer = allocateDirect(4096);
+        final boolean fstKeys = version < StorageEnvFactory.FORMAT_VERSION_UTF8_KEYS;
+        final Function<ByteBuffer, byte[]> valueConverter = getValueConverter(dbName, version, configuration);
+
+        int counter = 0;
+        Txn<ByteBuffer> writeTxn = target.txnWrite();
+        try (Txn<ByteBuffer> readTxn = source.txnRead();
+             CursorIterator<ByteBuffer> it = sourceDb.iterate(readTxn, KeyRange.all())) {
+            for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
+                if (counter == batchSize) {
+                    writeTxn.commit();
+                    writeTxn.close();
+                    writeTxn = target.txnWrite();
+                    counter = 0;
+                }
+                ByteBuffer key = kv.key();
+                if (integerKeyConverter != null) {
+                    final String decodedKey = fstKeys
+                            ? (String) BinarySerialiser.deserialize(kv.key()) : KeyEncoder.decode(kv.key());
+                    final int integerKey = integerKeyConverter.apply(decodedKey);
+                    if (integerKey < 0) {
+                        LOGGER.warn("Invalid identifier in " + dbName + ", skipping it: " + decodedKey);
+                        continue;
+                    }
+                    keyBuffer.clear();
+                    KeyEncoder.encodeInteger(integerKey, keyBuffer);
+                    keyBuffer.flip();
+                    key = keyBuffer;
+                } else if (fstKeys) {
+                    final String decodedKey = (String) BinarySerialiser.deserialize(kv.key());
+                    try {
+                        keyBuffer.clear();
+                        KeyEncoder.encode(decodedKey, keyBuffer);
+                        keyBuffer.flip();
+                    } catch (BufferOverflowException e) {
+                        LOGGER.warn("Key too long for LMDB in " + dbName + ", skipping it: " + decodedKey);
+                        continue;
+                    }
+                    key = keyBuffer;
+                }
+
+                ByteBuffer value = kv.val();
+                if (valueConverter != null) {
+                    final byte[] convertedValue = valueConverter.apply(kv.val());
+                    if (valueBuffer.capacity() < convertedValue.length) {
+                        valueBuffer = allocateDirect(Math.max(convertedValue.length, valueBuffer.capacity() * 2));
+                    }
+                    valueBuffer.clear();
+                    valueBuffer.put(convertedValue).flip();
+                    value = valueBuffer;
+                }
+                targetDb.put(writeTxn, key, value);
+                meter.mark();
+                counter++;
+            }
+            writeTxn.commit();
+        } finally {
+            // aborts the batch not committed when the copy failed
+            writeTxn.close();
+        }
+
+        LOGGER.info("Database " + dbName + " migrated, " + meter.getCount() + " records processed so far.");
+    }
+}
@@ -3,6 +3,8 @@ package com.scienceminer.lookup.configuration;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
 import io.dropwizard.client.HttpClientConfiguration;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -14,6 +16,8 @@ public class LookupConfiguration extends Configuration {
 
     private String storage;
 
+    private boolean singleEnvironment = false;
+
     private String version;
 
     private Source source;
@@ -22,6 +26,14 @@ public class LookupConfiguration extends Configuration {
 
     private String grobidPath;
 
+    private String fatcatCompression = "zstd-dictionary";
+
+    private String matchingBackend = "elasticsearch";
+
+    private String luceneIndex = "data/lucene";
+
+    private Cache cache = new Cache();
+
     @Valid
     @NotNull
     private HttpClientConfiguration httpClient = new HttpClientConfiguration();
@@ -49,6 +61,14 @@ public class LookupConfiguration extends Configuration {
         this.storage = storage;
     }
 
+    public boolean isSingleEnvironment() {
+        return singleEnvironment;
+    }
+
+    public void setSingleEnvironment(boolean singleEnvironment) {
+        this.singleEnvironment = singleEnvironment;
+    }
+
     public String getVersion() {
         return version;
     }
@@ -106,6 +126,38 @@ public class LookupConfiguration extends Configuration {
         this.grobidPath = grobidPath;
     }
 
+    public String getFatcatCompression() {
+        return fatcatCompression;
+    }
+
+    public void setFatcatCompression(String fatcatCompression) {
+        this.fatcatCompression = fatcatCompression;
+    }
+
+    public String getMatchingBackend() {
+        return matchingBackend;
+    }
+
+    public void setMatchingBackend(String matchingBackend) {
+        this.matchingBackend = matchingBackend;
+    }
+
+    public String getLuceneIndex() {
+        return luceneIndex;
+    }
+
+    public void setLuceneIndex(String luceneIndex) {
+        this.luceneIndex = luceneIndex;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
     public class Source {
 
         private String unpaywall;
@@ -135,6 +187,16 @@ public class LookupConfiguration extends Configuration {
 
         private String type;
 
+        // window during which the concurrent matching searches are gathered in one _msearch request, 0 to send
+        // each search on its own
+        private Duration multiSearchWindow = Duration.milliseconds(0);
+
+        // maximum number of searches of a _msearch request, a full batch is sent without waiting for its window
+        private int multiSearchMaxSearches = 64;
+
+        // number of hits of a matching search scored with the post-validation, the best passing one is returned
+        private int matchingCandidates = 1;
+
         public String getHost() {
             return host;
         }
@@ -159,5 +221,85 @@ public class LookupConfiguration extends Configuration {
             this.type = type;
         }
 
+        public Duration getMultiSearchWindow() {
+            return multiSearchWindow;
+        }
+
+        public void setMultiSearchWindow(Duration multiSearchWindow) {
+            this.multiSearchWindow = multiSearchWindow;
+        }
+
+        public int getMultiSearchMaxSearches() {
+            return multiSearchMaxSearches;
+        }
+
+        public void setMultiSearchMaxSearches(int multiSearchMaxSearches) {
+            this.multiSearchMaxSearches = multiSearchMaxSearches;
+        }
+
+        public int getMatchingCandidates() {
+            return matchingCandidates;
+        }
+
+        public void setMatchingCandidates(int matchingCandidates) {
+            this.matchingCandidates = matchingCandidates;
+        }
+
+    }
+
+    public static class Cache {
+
+        // budget of the cache of the identifier lookup responses, 0 to disable the cache
+        private Size responseMaxSize = Size.megabytes(256);
+
+        // responses larger than this budget are not cached
+        private Size responseMaxEntrySize = Size.kilobytes(256);
+
+        // maximum number of identifier misses, and of matching misses, kept to answer the same requests with a 404
+        private long negativeMaxEntries = 1000000;
+
+        // time to live of the identifier and matching misses, 0 to not cache them
+        private Duration identifierMissTtl = Duration.minutes(10);
+        private Duration matchingMissTtl = Duration.hours(1);
+
+        public Size getResponseMaxSize() {
+            return responseMaxSize;
+        }
+
+        public void setResponseMaxSize(Size responseMaxSize) {
+            this.responseMaxSize = responseMaxSize;
+        }
+
+        public Size getResponseMaxEntrySize() {
+            return responseMaxEntrySize;
+        }
+
+        public void setResponseMaxEntrySize(Size responseMaxEntrySize) {
+            this.responseMaxEntrySize = responseMaxEntrySize;
+        }
+
+        public long getNegativeMaxEntries() {
+            return negativeMaxEntries;
+        }
+
+        public void setNegativeMaxEntries(long negativeMaxEntries) {
+            this.negativeMaxEntries = negativeMaxEntries;
+        }
+
+        public Duration getIdentifierMissTtl() {
+            return identifierMissTtl;
+        }
+
+        public void setIdentifierMissTtl(Duration identifierMissTtl) {
+            this.identifierMissTtl = identifierMissTtl;
+        }
+
+        public Duration getMatchingMissTtl() {
+            return matchingMissTtl;
+        }
+
+        public void setMatchingMissTtl(Duration matchingMissTtl) {
+            this.matchingMissTtl = matchingMissTtl;
+        }
     }
 }
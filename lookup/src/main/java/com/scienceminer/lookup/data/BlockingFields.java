@@ -0,0 +1,107 @@
+package com.scienceminer.lookup.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Metadata of a fatcat release the blocking keys of the exact matching are built from, see
+ * {@link com.scienceminer.lookup.storage.lookup.MatchingKeys}.
+ */
+public class BlockingFields {
+
+    private String title;
+
+    private String subtitle;
+
+    private String originalTitle;
+
+    private String firstAuthor;
+
+    private String journal;
+
+    private String abbreviatedJournal;
+
+    private final List<String> issns = new ArrayList<>();
+
+    private String volume;
+
+    private String firstPage;
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getSubtitle() {
+        return subtitle;
+    }
+
+    public void setSubtitle(String subtitle) {
+        this.subtitle = subtitle;
+    }
+
+    public String getOriginalTitle() {
+        return originalTitle;
+    }
+
+    public void setOriginalTitle(String originalTitle) {
+        this.originalTitle = originalTitle;
+    }
+
+    /**
+     * Surname of the first author, as in the first_author field of the matching index
+     */
+    public String getFirstAuthor() {
+        return firstAuthor;
+    }
+
+    public void setFirstAuthor(String firstAuthor) {
+        this.firstAuthor = firstAuthor;
+    }
+
+    public String getJournal() {
+        return journal;
+    }
+
+    public void setJournal(String journal) {
+        this.journal = journal;
+    }
+
+    public String getAbbreviatedJournal() {
+        return abbreviatedJournal;
+    }
+
+    public void setAbbreviatedJournal(String abbreviatedJournal) {
+        this.abbreviatedJournal = abbreviatedJournal;
+    }
+
+    /**
+     * ISSNs of the container, as given in the release
+     */
+    public List<String> getIssns() {
+        return issns;
+    }
+
+    public void addIssn(String issn) {
+        issns.add(issn);
+    }
+
+    public String getVolume() {
+        return volume;
+    }
+
+    public void setVolume(String volume) {
+        this.volume = volume;
+    }
+
+    public String getFirstPage() {
+        return firstPage;
+    }
+
+    public void setFirstPage(String firstPage) {
+        this.firstPage = firstPage;
+    }
+}
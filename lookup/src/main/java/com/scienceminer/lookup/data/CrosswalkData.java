@@ -0,0 +1,91 @@
+package com.scienceminer.lookup.data;
+
+import java.io.Serializable;
+
+/**
+ * All the identifiers known for a work, gathered from the different sources when the crosswalk is built.
+ */
+public class CrosswalkData implements Serializable {
+
+    private String fatcatIdent;
+    private String doi;
+    private String pmid;
+    private String pmcid;
+    private String pii;
+    private String istexId;
+    private String ark;
+    private String mesh;
+    private String oaLink;
+
+    public String getFatcatIdent() {
+        return fatcatIdent;
+    }
+
+    public void setFatcatIdent(String fatcatIdent) {
+        this.fatcatIdent = fatcatIdent;
+    }
+
+    public String getDoi() {
+        return doi;
+    }
+
+    public void setDoi(String doi) {
+        this.doi = doi;
+    }
+
+    public String getPmid() {
+        return pmid;
+    }
+
+    public void setPmid(String pmid) {
+        this.pmid = pmid;
+    }
+
+    public String getPmcid() {
+        return pmcid;
+    }
+
+    public void setPmcid(String pmcid) {
+        this.pmcid = pmcid;
+    }
+
+    public String getPii() {
+        return pii;
+    }
+
+    public void setPii(String pii) {
+        this.pii = pii;
+    }
+
+    public String getIstexId() {
+        return istexId;
+    }
+
+    public void setIstexId(String istexId) {
+        this.istexId = istexId;
+    }
+
+    public String getArk() {
+        return ark;
+    }
+
+    public void setArk(String ark) {
+        this.ark = ark;
+    }
+
+    public String getMesh() {
+        return mesh;
+    }
+
+    public void setMesh(String mesh) {
+        this.mesh = mesh;
+    }
+
+    public String getOaLink() {
+        return oaLink;
+    }
+
+    public void setOaLink(String oaLink) {
+        this.oaLink = oaLink;
+    }
+}
@@ -0,0 +1,54 @@
+package com.scienceminer.lookup.data;
+
+/**
+ * Fatcat release record as stored, with the fields needed to index it extracted while reading it.
+ */
+public class FatcatRelease {
+
+    private final String ident;
+
+    private final String doi;
+
+    private final String releaseType;
+
+    private final String json;
+
+    private final BlockingFields blockingFields;
+
+    public FatcatRelease(String ident, String doi, String releaseType, String json, BlockingFields blockingFields) {
+        this.ident = ident;
+        this.doi = doi;
+        this.releaseType = releaseType;
+        this.json = json;
+        this.blockingFields = blockingFields;
+    }
+
+    public String getIdent() {
+        return ident;
+    }
+
+    /**
+     * DOI of ext_ids, null if the release has none
+     */
+    public String getDoi() {
+        return doi;
+    }
+
+    public String getReleaseType() {
+        return releaseType;
+    }
+
+    /**
+     * JSON of the release without the ignored fields
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Metadata of the blocking keys of the release, null when it is not in the matching index (e.g. a component)
+     */
+    public BlockingFields getBlockingFields() {
+        return blockingFields;
+    }
+}
@@ -1,5 +1,7 @@
 package com.scienceminer.lookup.data;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.Serializable;
 import java.util.List;
 
@@ -83,4 +85,38 @@ public class IstexData implements Serializable {
     public void setPii(List<String> pii) {
         this.pii = pii;
     }
+
+    @JsonIgnore
+    public String getFirstDoi() {
+        return first(getDoi());
+    }
+
+    @JsonIgnore
+    public String getFirstPmid() {
+        return first(getPmid());
+    }
+
+    @JsonIgnore
+    public String getFirstArk() {
+        return first(getArk());
+    }
+
+    @JsonIgnore
+    public String getFirstPmc() {
+        return first(getPmc());
+    }
+
+    @JsonIgnore
+    public String getFirstMesh() {
+        return first(getMesh());
+    }
+
+    @JsonIgnore
+    public String getFirstPii() {
+        return first(getPii());
+    }
+
+    private static String first(List<String> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
 }
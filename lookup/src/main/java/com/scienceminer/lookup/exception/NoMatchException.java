@@ -0,0 +1,12 @@
+package com.scienceminer.lookup.exception;
+
+/**
+ * The matching found no candidate for the query, or none passing the post-validation. Unlike the other
+ * {@link NotFoundException}, e.g. when GROBID is not available, the outcome only depends on the query and the
+ * storage, so it can be recorded in the negative cache.
+ */
+public class NoMatchException extends NotFoundException {
+    public NoMatchException(String message) {
+        super(message);
+    }
+}
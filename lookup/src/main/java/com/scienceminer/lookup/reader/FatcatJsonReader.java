@@ -1,13 +1,19 @@
 package com.scienceminer.lookup.reader;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.data.BlockingFields;
+import com.scienceminer.lookup.data.FatcatRelease;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,19 +22,40 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
 public class FatcatJsonReader {
     private static final Logger LOGGER = LoggerFactory.getLogger(FatcatJsonReader.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES);
+    private static final Pattern FIRST_PAGE_SEPARATORS = Pattern.compile("[,\\- ]");
+    private static final ObjectMapper MAPPER = new ObjectMapper(JSON_FACTORY)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
+
     private LookupConfiguration configuration;
+    private final Set<String> ignoredFields;
 
     public FatcatJsonReader(LookupConfiguration configuration) {
         this.configuration = configuration;
+        if (configuration != null && configuration.getIgnoreFatcatFields() != null) {
+            this.ignoredFields = new HashSet<>(configuration.getIgnoreFatcatFields());
+        } else {
+            this.ignoredFields = Collections.emptySet();
+        }
     }
 
     public void load(String input, Consumer<String> closure) {
@@ -46,47 +73,282 @@ public class FatcatJsonReader {
 
             //br returns as stream and convert it into a List
             br.lines().forEach(line -> {
-                final JsonNode fatcatData = fromJson(line);
-                if (fatcatData == null) {
-                    return;
+                final JsonNode fatcatData = parse(line);
+                if (fatcatData != null) {
+                    closure.accept(fatcatData);
                 }
+            });
 
-                // Don't ignore empty DOI
-                /*
-                if (fatcatData.get("DOI") == null || isBlank(fatcatData.get("DOI").asText())) {
-                    return;
-                }
-                */
+        } catch (IOException e) {
+            LOGGER.error("Some serious error when processing the input Fatcat file.", e);
+        }
+    }
+
+    /**
+     * Parse a line of the fatcat dump into the record to store, null if the line cannot be parsed or the release
+     * is ignored. The ignored fields of the configuration are removed from the record.
+     */
+    public JsonNode parse(String line) {
+        final JsonNode fatcatData = fromJson(line);
+        if (fatcatData == null) {
+            return null;
+        }
+
+        // Don't ignore empty DOI
+        /*
+        if (fatcatData.get("DOI") == null || isBlank(fatcatData.get("DOI").asText())) {
+            return null;
+        }
+        */
 
-                //Ignoring document of type component
-                if (fatcatData.get("release_type") != null && 
-                    (StringUtils.equals(fatcatData.get("release_type").asText(), "stub")
-                     || StringUtils.equals(fatcatData.get("release_type").asText(), "abstract"))) {
-                    return;
+        //Ignoring document of type component
+        if (fatcatData.get("release_type") != null &&
+            (StringUtils.equals(fatcatData.get("release_type").asText(), "stub")
+             || StringUtils.equals(fatcatData.get("release_type").asText(), "abstract"))) {
+            return null;
+        }
+
+        ObjectNode object = (ObjectNode) fatcatData;
+        for (String field : ignoredFields) {
+            object.remove(field);
+        }
+        //object.remove("_id");
+
+        return fatcatData;
+    }
+
+    /**
+     * Parse a line of the fatcat dump into the release to store, like {@link #parse(String)} but streaming: the
+     * ignored fields are skipped without being built, the other tokens are copied as they are read into the JSON
+     * of the release, and the ident, DOI, release type and the metadata of the blocking keys are picked on the way,
+     * with the same rules as the fields of the matching index.
+     *
+     * @return null if the line cannot be parsed or the release is ignored
+     */
+    public FatcatRelease parseRelease(String line) {
+        String ident = null;
+        String doi = null;
+        String releaseType = null;
+        String type = null;
+        final BlockingFields blockingFields = new BlockingFields();
+        final ContainerFields container = new ContainerFields();
+        final StringWriter json = new StringWriter(line.length());
+
+        try (JsonParser parser = JSON_FACTORY.createParser(line);
+             JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                LOGGER.error("The input line is not a JSON object\n " + line);
+                return null;
+            }
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (ignoredFields.contains(field)) {
+                    parser.skipChildren();
+                    continue;
                 }
+                generator.writeFieldName(field);
 
-                ObjectNode object = (ObjectNode) fatcatData;
-                if (configuration != null && configuration.getIgnoreFatcatFields() != null) {
-                    for(String field : configuration.getIgnoreFatcatFields()) {
-                        object.remove(field);
+                if ("ext_ids".equals(field) && value == JsonToken.START_OBJECT) {
+                    generator.writeStartObject();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        final String idField = parser.getCurrentName();
+                        if (parser.nextToken() == JsonToken.VALUE_STRING && "doi".equals(idField)) {
+                            doi = parser.getText();
+                        }
+                        generator.writeFieldName(idField);
+                        generator.copyCurrentStructure(parser);
                     }
+                    generator.writeEndObject();
+                    continue;
                 }
-                //object.remove("_id");
 
-                closure.accept(fatcatData);
-            });
+                if (value == JsonToken.START_OBJECT && "container".equals(field)) {
+                    container.present = true;
+                    copyObject(parser, generator, "", (name, text) -> container.put(name, text, blockingFields));
+                    continue;
+                }
+                if (value == JsonToken.START_OBJECT && "extra".equals(field)) {
+                    copyObject(parser, generator, "", (name, text) -> {
+                        if ("container_name".equals(name)) {
+                            container.extraName = text;
+                        }
+                    });
+                    continue;
+                }
+                if (value == JsonToken.START_ARRAY && "contribs".equals(field)) {
+                    copyContribs(parser, generator, blockingFields);
+                    continue;
+                }
 
+                if (value == JsonToken.VALUE_STRING) {
+                    if ("ident".equals(field)) {
+                        ident = parser.getText();
+                    } else if ("release_type".equals(field)) {
+                        releaseType = parser.getText();
+                    }
+                }
+                final String text = text(parser);
+                if (text != null) {
+                    switch (field) {
+                        case "type":
+                            type = text;
+                            break;
+                        case "title":
+                            blockingFields.setTitle(text);
+                            break;
+                        case "subtitle":
+                            blockingFields.setSubtitle(text);
+                            break;
+                        case "original_title":
+                            blockingFields.setOriginalTitle(text);
+                            break;
+                        case "volume":
+                            blockingFields.setVolume(text);
+                            break;
+                        case "pages":
+                            blockingFields.setFirstPage(FIRST_PAGE_SEPARATORS.split(text, -1)[0]);
+                            break;
+                    }
+                }
+                generator.copyCurrentStructure(parser);
+            }
+            generator.writeEndObject();
+        } catch (JsonProcessingException e) {
+            LOGGER.error("The input line cannot be processed\n " + line + "\n ", e);
+            return null;
         } catch (IOException e) {
-            LOGGER.error("Some serious error when processing the input Fatcat file.", e);
+            LOGGER.error("Some serious error when deserialize the JSON object: \n" + line, e);
+            return null;
+        }
+
+        //Ignoring document of type component
+        if (StringUtils.equals(releaseType, "stub") || StringUtils.equals(releaseType, "abstract")) {
+            return null;
+        }
+        if (ident == null) {
+            LOGGER.warn("Ignoring the fatcat release without ident: " + line);
+            return null;
+        }
+        // like the matching index, the journal title comes from the extra fields only without container
+        blockingFields.setJournal(container.present ? container.name : container.extraName);
+        // component entities are a part of a publication, which are not in the matching index
+        final boolean component = "component".equals(type) || "component".equals(releaseType);
+        return new FatcatRelease(ident, doi, releaseType, json.toString(), component ? null : blockingFields);
+    }
+
+    /**
+     * Text of a scalar value, null when it is null or empty, like the text of the fields of the matching index.
+     */
+    private static String text(JsonParser parser) throws IOException {
+        final JsonToken token = parser.getCurrentToken();
+        if (token == null || !token.isScalarValue() || token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        final String text = parser.getText();
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * Copy the object of the current token, giving the text of its scalar fields to the consumer. The fields of
+     * its nested extra object are given too, prefixed with "extra.".
+     */
+    private static void copyObject(JsonParser parser, JsonGenerator generator, String prefix,
+                                   BiConsumer<String, String> fields) throws IOException {
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            generator.writeFieldName(name);
+            if (value == JsonToken.START_OBJECT && prefix.isEmpty() && "extra".equals(name)) {
+                copyObject(parser, generator, "extra.", fields);
+                continue;
+            }
+            final String text = text(parser);
+            if (text != null) {
+                fields.accept(prefix + name, text);
+            }
+            generator.copyCurrentStructure(parser);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Copy the contributors of the release, picking the surname of the first author: the surname of the
+     * contributor of index 0, or the last token of its raw name when it has no family name.
+     */
+    private static void copyContribs(JsonParser parser, JsonGenerator generator, BlockingFields blockingFields)
+            throws IOException {
+        generator.writeStartArray();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+                generator.copyCurrentStructure(parser);
+                continue;
+            }
+            final Map<String, String> contrib = new HashMap<>();
+            boolean first = false;
+            generator.writeStartObject();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                generator.writeFieldName(name);
+                if ("index".equals(name) && value.isNumeric()) {
+                    first = parser.getIntValue() == 0;
+                }
+                final String text = text(parser);
+                if (text != null) {
+                    contrib.put(name, text);
+                }
+                generator.copyCurrentStructure(parser);
+            }
+            generator.writeEndObject();
+
+            if (first) {
+                if (contrib.get("family") != null) {
+                    if (contrib.get("surname") != null) {
+                        blockingFields.setFirstAuthor(contrib.get("surname"));
+                    }
+                } else if (contrib.get("raw_name") != null) {
+                    final String[] tokens = contrib.get("raw_name").split(" ", -1);
+                    blockingFields.setFirstAuthor(tokens[tokens.length - 1]);
+                }
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Journal fields of the container of a release.
+     */
+    private static class ContainerFields {
+        private boolean present = false;
+        private String name;
+        private String extraName;
+
+        void put(String field, String text, BlockingFields blockingFields) {
+            switch (field) {
+                case "name":
+                    name = text;
+                    break;
+                case "extra.abbrev":
+                    blockingFields.setAbbreviatedJournal(text);
+                    break;
+                case "issnl":
+                case "issne":
+                case "issnp":
+                case "extra.issnl":
+                case "extra.issne":
+                case "extra.issnp":
+                    blockingFields.addIssn(text);
+                    break;
+            }
         }
     }
 
     public JsonNode fromJson(String inputLine) {
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true);
-            mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
-            return mapper.readTree(inputLine);
+            return MAPPER.readTree(inputLine);
         } catch (JsonGenerationException | JsonMappingException e) {
             LOGGER.error("The input line cannot be processed\n " + inputLine + "\n ", e);
         } catch (IOException e) {
@@ -41,8 +41,8 @@ public class IstexIdsReader {
 
             //br returns as stream and convert it into a List
             br.lines().forEach(line -> {
-                final IstexData istexData = fromJson(line);
-                if (istexData != null && CollectionUtils.isNotEmpty(istexData.getDoi())) {
+                final IstexData istexData = parse(line);
+                if (istexData != null) {
                     closure.accept(istexData);
                 }
             });
@@ -52,6 +52,17 @@ public class IstexIdsReader {
         }
     }
 
+    /**
+     * Parse a line of the Istex identifiers file, null if the line cannot be parsed or has no DOI.
+     */
+    public IstexData parse(String line) {
+        final IstexData istexData = fromJson(line);
+        if (istexData == null || CollectionUtils.isEmpty(istexData.getDoi())) {
+            return null;
+        }
+        return istexData;
+    }
+
     public IstexData fromJson(String inputLine) {
         try {
             ObjectMapper mapper = new ObjectMapper();
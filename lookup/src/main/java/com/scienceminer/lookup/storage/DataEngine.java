@@ -17,6 +17,7 @@ public class DataEngine {
     private MetadataLookup metadataLookup = null;
     private MetadataMatching metadataMatching = null;
     private PMIdsLookup pmidLookup = null;
+    private CrosswalkLookup crosswalkLookup = null;
 
     public static Pattern DOIPattern = Pattern.compile("\"DOI\":\"(10\\.\\d{4,5}\\/[^\"\\s]+[^;,.\\s])\"");
 
@@ -29,6 +30,16 @@ public class DataEngine {
         this.metadataLookup = new MetadataLookup(storageFactory);
         this.metadataMatching = new MetadataMatching(storageFactory.getConfiguration(), metadataLookup);
         this.pmidLookup = new PMIdsLookup(storageFactory);
+        this.crosswalkLookup = new CrosswalkLookup(storageFactory);
+    }
+
+    /**
+     * Release the resources not bound to the storage, the lookups are closed with their environments.
+     */
+    public void close() {
+        if (metadataMatching != null) {
+            metadataMatching.close();
+        }
     }
 
 
@@ -40,6 +51,7 @@ public class DataEngine {
         returnMap.put("Metadata Matching Fatcat size", String.valueOf(metadataMatching.getSize()));
         returnMap.put("Pmid lookup size", String.valueOf(pmidLookup.getSize()));
         returnMap.put("Istex size", String.valueOf(istexLookup.getSize()));
+        returnMap.put("Crosswalk size", String.valueOf(crosswalkLookup.getSize()));
 
         return returnMap;
     }
@@ -52,6 +64,10 @@ public class DataEngine {
         return pmidLookup.retrieveList_pmidToIds(total);
     }
 
+    public List<Pair<String, PmidData>> retrievePmid_pmidRange(int from, int to, Integer total) {
+        return pmidLookup.retrieveIdsByPmidRange(from, to, total);
+    }
+
     public List<Pair<String, PmidData>> retrievePmid_doiToIds(Integer total) {
         return pmidLookup.retrieveList_doiToIds(total);
     }
@@ -89,4 +105,8 @@ public class DataEngine {
     protected void setPmidLookup(PMIdsLookup pmidLookup) {
         this.pmidLookup = pmidLookup;
     }
+
+    protected void setCrosswalkLookup(CrosswalkLookup crosswalkLookup) {
+        this.crosswalkLookup = crosswalkLookup;
+    }
 }
@@ -0,0 +1,43 @@
+package com.scienceminer.lookup.storage;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Metrics of the title and first author matching answered from the title blocking index of LMDB, without
+ * searching the matching index, shared by the snapshots of the storage: the lookups of the index, the lookups
+ * answered, and the rate of the lookups answered since the start.
+ */
+public class FastPathMetrics {
+
+    private final Meter lookups = new Meter();
+    private final Meter hits = new Meter();
+
+    public void lookup(boolean hit) {
+        lookups.mark();
+        if (hit) {
+            hits.mark();
+        }
+    }
+
+    public Meter getLookups() {
+        return lookups;
+    }
+
+    public Meter getHits() {
+        return hits;
+    }
+
+    public double getHitRate() {
+        final long count = lookups.getCount();
+        return count == 0 ? 0 : (double) hits.getCount() / count;
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        final String prefix = MetricRegistry.name(FastPathMetrics.class);
+        metrics.register(MetricRegistry.name(prefix, "lookups"), lookups);
+        metrics.register(MetricRegistry.name(prefix, "hits"), hits);
+        metrics.register(MetricRegistry.name(prefix, "hitRate"), (Gauge<Double>) this::getHitRate);
+    }
+}
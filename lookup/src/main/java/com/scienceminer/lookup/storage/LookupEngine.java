@@ -5,17 +5,21 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.rockymadden.stringmetric.similarity.RatcliffObershelpMetric;
+import com.scienceminer.lookup.data.CrosswalkData;
 import com.scienceminer.lookup.data.IstexData;
 import com.scienceminer.lookup.data.MatchingDocument;
 import com.scienceminer.lookup.data.PmidData;
+import com.scienceminer.lookup.exception.NoMatchException;
 import com.scienceminer.lookup.exception.NotFoundException;
 import com.scienceminer.lookup.storage.lookup.*;
+import com.scienceminer.lookup.storage.lookup.async.MultiSearchMetrics;
 import com.scienceminer.lookup.utils.grobid.GrobidClient;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import scala.Option;
 
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,8 +34,12 @@ public class LookupEngine {
     private MetadataLookup metadataLookup = null;
     private MetadataMatching metadataMatching = null;
     private PMIdsLookup pmidLookup = null;
+    private CrosswalkLookup crosswalkLookup = null;
     public static Pattern DOIPattern = Pattern.compile("\"DOI\"\\s?:\\s?\"(10\\.\\d{4,5}\\/[^\"\\s]+[^;,.\\s])\"");
     private GrobidClient grobidClient = null;
+    private ResponseCache responseCache = null;
+    private NegativeCache negativeCache = null;
+    private FastPathMetrics fastPathMetrics = null;
 
     public LookupEngine() {
     }
@@ -42,25 +50,41 @@ public class LookupEngine {
         this.metadataLookup = new MetadataLookup(storageFactory);
         this.metadataMatching = new MetadataMatching(storageFactory.getConfiguration(), metadataLookup);
         this.pmidLookup = new PMIdsLookup(storageFactory);
+        this.crosswalkLookup = new CrosswalkLookup(storageFactory);
+        this.crosswalkLookup.setSources(metadataLookup, istexLookup, pmidLookup, oaDoiLookup);
+    }
+
+    /**
+     * Release the resources not bound to the storage, the lookups are closed with their environments.
+     */
+    public void close() {
+        if (metadataMatching != null) {
+            metadataMatching.close();
+        }
     }
 
 
     public String retrieveByArticleMetadata(String title, String firstAuthor, Boolean postValidate) {
-        MatchingDocument outputData = metadataMatching.retrieveByMetadata(title, firstAuthor);
+        final ToDoubleFunction<MatchingDocument> scorer = postValidationScorer(postValidate, title, firstAuthor, false);
+        MatchingDocument outputData = retrieveByExactMetadata(title, firstAuthor, scorer);
+        if (outputData == null) {
+            outputData = metadataMatching.retrieveByMetadata(title, firstAuthor, scorer);
+        }
         if (postValidate != null && postValidate) {
             if (!areMetadataMatching(title, firstAuthor, outputData)) {
-                throw new NotFoundException("Best bibliographical record did not passed the post-validation");
+                throw new NoMatchException("Best bibliographical record did not passed the post-validation");
             }
         }
         return injectIdsByDoi(outputData.getJsonObject(), outputData.getDOI());
     }
 
     public void retrieveByArticleMetadataAsync(String title, String firstAuthor, Boolean postValidate, Consumer<MatchingDocument> callback) {
-        metadataMatching.retrieveByMetadataAsync(title, firstAuthor, matchingDocument -> {
+        final ToDoubleFunction<MatchingDocument> scorer = postValidationScorer(postValidate, title, firstAuthor, false);
+        final Consumer<MatchingDocument> onMatch = matchingDocument -> {
             if (!matchingDocument.isException()) {
                 if (postValidate != null && postValidate) {
                     if (!areMetadataMatching(title, firstAuthor, matchingDocument)) {
-                        callback.accept(new MatchingDocument(new NotFoundException("Best bibliographical record did not passed the post-validation")));
+                        callback.accept(new MatchingDocument(new NoMatchException("Best bibliographical record did not passed the post-validation")));
                         return;
                     }
                 }
@@ -69,7 +93,30 @@ public class LookupEngine {
                 matchingDocument.setFinalJsonObject(s);
             }
             callback.accept(matchingDocument);
-        });
+        };
+
+        final MatchingDocument exactMatch = retrieveByExactMetadata(title, firstAuthor, scorer);
+        if (exactMatch != null) {
+            onMatch.accept(exactMatch);
+            return;
+        }
+        metadataMatching.retrieveByMetadataAsync(title, firstAuthor, scorer, onMatch);
+    }
+
+    /**
+     * The release with exactly this title and first author, once normalised, from the title blocking index of
+     * LMDB, null when there is none, several of them, or it does not pass the post-validation.
+     */
+    private MatchingDocument retrieveByExactMetadata(String title, String firstAuthor,
+                                                     ToDoubleFunction<MatchingDocument> scorer) {
+        if (isBlank(title) || isBlank(firstAuthor)) {
+            return null;
+        }
+        final MatchingDocument exactMatch = metadataMatching.retrieveByExactMetadata(title, firstAuthor, scorer);
+        if (fastPathMetrics != null) {
+            fastPathMetrics.lookup(exactMatch != null);
+        }
+        return exactMatch;
     }
 
 
@@ -79,11 +126,12 @@ public class LookupEngine {
     }
 
     public void retrieveByJournalMetadataAsync(String jtitle, String volume, String firstPage, String atitle, String firstAuthor, Boolean postValidate, Consumer<MatchingDocument> callback) {
-        metadataMatching.retrieveByMetadataAsync(jtitle, volume, firstPage, matchingDocument -> {
+        metadataMatching.retrieveByMetadataAsync(jtitle, volume, firstPage,
+                postValidationScorer(postValidate, atitle, firstAuthor, true), matchingDocument -> {
             if (!matchingDocument.isException()) {
                 if (postValidate != null && postValidate) {
                     if (!areMetadataMatching(atitle, firstAuthor, matchingDocument, true)) {
-                        callback.accept(new MatchingDocument(new NotFoundException("Best bibliographical record did not passed the post-validation")));
+                        callback.accept(new MatchingDocument(new NoMatchException("Best bibliographical record did not passed the post-validation")));
                         return;
                     }
                 }
@@ -122,27 +170,102 @@ public class LookupEngine {
     }
 
     public String retrieveByFatcatIdent(String fatcatIdent, Boolean postValidate, String firstAuthor, String atitle) {
-        MatchingDocument outputData = metadataLookup.retrieveByFatcat(fatcatIdent);
-        outputData = validateJsonBody(postValidate, firstAuthor, atitle, outputData);
+        return retrieveCached(ResponseCache.FATCAT, fatcatIdent, postValidate, firstAuthor, atitle, this::lookupByFatcatIdent);
+    }
 
-        if (outputData.getDOI() != null) {
-            return injectIdsByDoi(outputData.getJsonObject(), outputData.getDOI());
-        } else {
-            return outputData.getJsonObject();
+    private String lookupByFatcatIdent(String fatcatIdent) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            MatchingDocument outputData = metadataLookup.retrieveByFatcat(fatcatIdent);
+            requireJsonBody(outputData);
+
+            if (outputData.getDOI() != null) {
+                return injectIdsByDoi(outputData.getJsonObject(), outputData.getDOI());
+            } else {
+                return outputData.getJsonObject();
+            }
         }
     }
 
     public String retrieveByDoi(String doi, Boolean postValidate, String firstAuthor, String atitle) {
-        MatchingDocument outputData = metadataLookup.retrieveByDoi(doi);
-        outputData = validateJsonBody(postValidate, firstAuthor, atitle, outputData);
+        return retrieveCached(ResponseCache.DOI, doi, postValidate, firstAuthor, atitle, this::lookupByDoi);
+    }
 
-        return injectIdsByDoi(outputData.getJsonObject(), outputData.getDOI());
+    private String lookupByDoi(String doi) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByDoi(doi);
+                if (crosswalkData != null) {
+                    return retrieveByCrosswalkData(crosswalkData);
+                }
+            }
+
+            MatchingDocument outputData = metadataLookup.retrieveByDoi(doi);
+            requireJsonBody(outputData);
+
+            return injectIdsByDoi(outputData.getJsonObject(), outputData.getDOI());
+        }
     }
 
-    private MatchingDocument validateJsonBody(Boolean postValidate, String firstAuthor, String atitle, MatchingDocument outputData) {
+    /**
+     * The crosswalk record gives directly the fatcat ident and all the identifiers to inject.
+     */
+    private String retrieveByCrosswalkData(CrosswalkData crosswalkData) {
+        MatchingDocument outputData = metadataLookup.retrieveByFatcat(crosswalkData.getFatcatIdent());
+        requireJsonBody(outputData);
+
+        return injectIdsByCrosswalkData(outputData.getJsonObject(), crosswalkData);
+    }
+
+    private boolean isCrosswalkAvailable() {
+        return crosswalkLookup != null && crosswalkLookup.isAvailable();
+    }
+
+    /**
+     * Return the response of an identifier lookup from the response cache, or look it up and cache it. The response
+     * is cached before the post-validation, which depends on the request and is then done on each call.
+     * The identifiers not found are recorded in the negative cache and answered directly with the same 404.
+     * The identifier is looked up normalised as in the cache key, so that a miss recorded for a variant of the
+     * identifier (e.g. padded with spaces) is a miss for all of them.
+     */
+    private String retrieveCached(String type, String identifier, Boolean postValidate, String firstAuthor, String atitle,
+                                  Function<String, String> lookup) {
+        String response = responseCache != null ? responseCache.get(type, identifier) : null;
+        if (response == null) {
+            if (negativeCache != null) {
+                final String miss = negativeCache.getIdentifierMiss(type, identifier);
+                if (miss != null) {
+                    throw new NotFoundException(miss);
+                }
+            }
+
+            final long generation = responseCache != null ? responseCache.getGeneration() : 0;
+            final long negativeGeneration = negativeCache != null ? negativeCache.getGeneration() : 0;
+            try {
+                final String normalised = ResponseCache.normalise(type, identifier);
+                response = lookup.apply(normalised != null ? normalised : identifier);
+            } catch (NotFoundException e) {
+                if (negativeCache != null) {
+                    negativeCache.putIdentifierMiss(type, identifier, e.getMessage(), negativeGeneration);
+                }
+                throw e;
+            }
+            if (responseCache != null) {
+                responseCache.put(type, identifier, response, generation);
+            }
+        }
+
+        validateJsonBody(postValidate, firstAuthor, atitle, new MatchingDocument(null, response));
+        return response;
+    }
+
+    private void requireJsonBody(MatchingDocument outputData) {
         if (isBlank(outputData.getJsonObject())) {
             throw new NotFoundException("No bibliographical record found");
         }
+    }
+
+    private MatchingDocument validateJsonBody(Boolean postValidate, String firstAuthor, String atitle, MatchingDocument outputData) {
+        requireJsonBody(outputData);
 
         if (postValidate != null && postValidate && isNotBlank(firstAuthor)) {
             outputData = extractTitleAndFirstAuthorFromJson(outputData);
@@ -194,61 +317,113 @@ public class LookupEngine {
     }
 
     public String retrieveByPmid(String pmid, Boolean postValidate, String firstAuthor, String atitle) {
-        final PmidData pmidData = pmidLookup.retrieveIdsByPmid(pmid);
+        return retrieveCached(ResponseCache.PMID, pmid, postValidate, firstAuthor, atitle, this::lookupByPmid);
+    }
 
-        if (pmidData != null && isNotBlank(pmidData.getDoi())) {
-            return retrieveByDoi(pmidData.getDoi(), postValidate, firstAuthor, atitle);
-        }
+    private String lookupByPmid(String pmid) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByPmid(pmid);
+                if (crosswalkData != null) {
+                    return retrieveByCrosswalkData(crosswalkData);
+                }
+            }
+
+            final PmidData pmidData = pmidLookup.retrieveIdsByPmid(pmid);
+
+            if (pmidData != null && isNotBlank(pmidData.getDoi())) {
+                return retrieveByDoi(pmidData.getDoi(), null, null, null);
+            }
 
-        throw new NotFoundException("Cannot find bibliographical record with PMID " + pmid);
+            throw new NotFoundException("Cannot find bibliographical record with PMID " + pmid);
+        }
     }
 
     public String retrieveByPmc(String pmc, Boolean postValidate, String firstAuthor, String atitle) {
-        if (!StringUtils.startsWithIgnoreCase(pmc, "pmc")) {
-            pmc = "PMC" + pmc;
-        }
+        return retrieveCached(ResponseCache.PMC, pmc, postValidate, firstAuthor, atitle, this::lookupByPmc);
+    }
 
-        final PmidData pmidData = pmidLookup.retrieveIdsByPmc(pmc);
+    private String lookupByPmc(String pmc) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (!StringUtils.startsWithIgnoreCase(pmc, "pmc")) {
+                pmc = "PMC" + pmc;
+            }
 
-        if (pmidData != null && isNotBlank(pmidData.getDoi())) {
-            return retrieveByDoi(pmidData.getDoi(), postValidate, firstAuthor, atitle);
-        }
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByPmc(pmc);
+                if (crosswalkData != null) {
+                    return retrieveByCrosswalkData(crosswalkData);
+                }
+            }
+
+            final PmidData pmidData = pmidLookup.retrieveIdsByPmc(pmc);
+
+            if (pmidData != null && isNotBlank(pmidData.getDoi())) {
+                return retrieveByDoi(pmidData.getDoi(), null, null, null);
+            }
 
-        throw new NotFoundException("Cannot find bibliographical record with PMC ID " + pmc);
+            throw new NotFoundException("Cannot find bibliographical record with PMC ID " + pmc);
+        }
     }
 
     public String retrieveByIstexid(String istexid, Boolean postValidate, String firstAuthor, String atitle) {
-        final IstexData istexData = istexLookup.retrieveByIstexId(istexid);
+        return retrieveCached(ResponseCache.ISTEX, istexid, postValidate, firstAuthor, atitle, this::lookupByIstexid);
+    }
 
-        if (istexData != null && CollectionUtils.isNotEmpty(istexData.getDoi()) && isNotBlank(istexData.getDoi().get(0))) {
-            final String doi = istexData.getDoi().get(0);
-            MatchingDocument outputData = metadataLookup.retrieveByDoi(doi);
+    private String lookupByIstexid(String istexid) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByIstexId(istexid);
+                if (crosswalkData != null) {
+                    return retrieveByCrosswalkData(crosswalkData);
+                }
+            }
 
-            outputData = validateJsonBody(postValidate, firstAuthor, atitle, outputData);
-            //return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData);
+            final IstexData istexData = istexLookup.retrieveByIstexId(istexid);
 
-            final String oaLink = oaDoiLookup.retrieveOALinkByDoi(doi);
-            return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData, oaLink);
-        }
+            if (istexData != null && isNotBlank(istexData.getFirstDoi())) {
+                final String doi = istexData.getFirstDoi();
+                MatchingDocument outputData = metadataLookup.retrieveByDoi(doi);
+
+                requireJsonBody(outputData);
+                //return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData);
+
+                final String oaLink = oaDoiLookup.retrieveOALinkByDoi(doi);
+                return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData, oaLink);
+            }
 
-        throw new NotFoundException("Cannot find bibliographical record with ISTEX ID " + istexid);
+            throw new NotFoundException("Cannot find bibliographical record with ISTEX ID " + istexid);
+        }
     }
 
     public String retrieveByPii(String pii, Boolean postValidate, String firstAuthor, String atitle) {
-        final IstexData istexData = istexLookup.retrieveByPii(pii);
+        return retrieveCached(ResponseCache.PII, pii, postValidate, firstAuthor, atitle, this::lookupByPii);
+    }
 
-        if (istexData != null && CollectionUtils.isNotEmpty(istexData.getDoi()) && isNotBlank(istexData.getDoi().get(0))) {
-            final String doi = istexData.getDoi().get(0);
-            MatchingDocument outputData = metadataLookup.retrieveByDoi(doi);
+    private String lookupByPii(String pii) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByPii(pii);
+                if (crosswalkData != null) {
+                    return retrieveByCrosswalkData(crosswalkData);
+                }
+            }
 
-            outputData = validateJsonBody(postValidate, firstAuthor, atitle, outputData);
-            //return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData);
+            final IstexData istexData = istexLookup.retrieveByPii(pii);
 
-            final String oaLink = oaDoiLookup.retrieveOALinkByDoi(doi);
-            return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData, oaLink);
-        }
+            if (istexData != null && isNotBlank(istexData.getFirstDoi())) {
+                final String doi = istexData.getFirstDoi();
+                MatchingDocument outputData = metadataLookup.retrieveByDoi(doi);
 
-        throw new NotFoundException("Cannot find bibliographical record by PII " + pii);
+                requireJsonBody(outputData);
+                //return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData);
+
+                final String oaLink = oaDoiLookup.retrieveOALinkByDoi(doi);
+                return injectIdsByIstexData(outputData.getJsonObject(), doi, istexData, oaLink);
+            }
+
+            throw new NotFoundException("Cannot find bibliographical record by PII " + pii);
+        }
     }
 
 
@@ -275,44 +450,73 @@ public class LookupEngine {
     }
 
     public String retrieveOAUrlByDoi(String doi) {
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
 
-        final String output = oaDoiLookup.retrieveOALinkByDoi(doi);
+            final String output = oaDoiLookup.retrieveOALinkByDoi(doi);
 
-        if (isBlank(output)) {
-            throw new NotFoundException("Open Access URL was not found for DOI " + doi);
-        }
+            if (isBlank(output)) {
+                throw new NotFoundException("Open Access URL was not found for DOI " + doi);
+            }
 
-        return output;
+            return output;
+        }
     }
 
     public String retrieveOAUrlByPmid(String pmid) {
-        final PmidData pmidData = pmidLookup.retrieveIdsByPmid(pmid);
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByPmid(pmid);
+                if (crosswalkData != null) {
+                    return crosswalkData.getOaLink();
+                }
+            }
 
-        if (pmidData != null && isNotBlank(pmidData.getDoi())) {
-            return oaDoiLookup.retrieveOALinkByDoi(pmidData.getDoi());
-        }
+            final PmidData pmidData = pmidLookup.retrieveIdsByPmid(pmid);
+
+            if (pmidData != null && isNotBlank(pmidData.getDoi())) {
+                return oaDoiLookup.retrieveOALinkByDoi(pmidData.getDoi());
+            }
 
-        throw new NotFoundException("Open Access URL was not found for PM ID " + pmid);
+            throw new NotFoundException("Open Access URL was not found for PM ID " + pmid);
+        }
     }
 
     public String retrieveOAUrlByPmc(String pmc) {
-        final PmidData pmidData = pmidLookup.retrieveIdsByPmc(pmc);
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByPmc(pmc);
+                if (crosswalkData != null) {
+                    return crosswalkData.getOaLink();
+                }
+            }
 
-        if (pmidData != null && isNotBlank(pmidData.getDoi())) {
-            return oaDoiLookup.retrieveOALinkByDoi(pmidData.getDoi());
-        }
+            final PmidData pmidData = pmidLookup.retrieveIdsByPmc(pmc);
 
-        throw new NotFoundException("Open Access URL was not found for PM ID " + pmc);
+            if (pmidData != null && isNotBlank(pmidData.getDoi())) {
+                return oaDoiLookup.retrieveOALinkByDoi(pmidData.getDoi());
+            }
+
+            throw new NotFoundException("Open Access URL was not found for PM ID " + pmc);
+        }
     }
 
     public String retrieveOAUrlByPii(String pii) {
-        final IstexData istexData = istexLookup.retrieveByPii(pii);
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByPii(pii);
+                if (crosswalkData != null) {
+                    return crosswalkData.getOaLink();
+                }
+            }
 
-        if (istexData != null && CollectionUtils.isNotEmpty(istexData.getDoi())) {
-            return oaDoiLookup.retrieveOALinkByDoi(istexData.getDoi().get(0));
-        }
+            final IstexData istexData = istexLookup.retrieveByPii(pii);
+
+            if (istexData != null && istexData.getFirstDoi() != null) {
+                return oaDoiLookup.retrieveOALinkByDoi(istexData.getFirstDoi());
+            }
 
-        throw new NotFoundException("Open Access URL was not found for pii " + pii);
+            throw new NotFoundException("Open Access URL was not found for pii " + pii);
+        }
     }
 
 
@@ -322,7 +526,10 @@ public class LookupEngine {
     }
 
     public void retrieveByBiblioAsync(String biblio, Boolean postValidate, String firstAuthor, String title, Boolean parseReference, Consumer<MatchingDocument> callback) {
-        metadataMatching.retrieveByBiblioAsync(biblio, matchingDocument -> {
+        // without title and author, the reference is parsed by grobid to validate the selected record
+        final boolean grobidValidation = isBlank(firstAuthor) && Boolean.TRUE.equals(parseReference);
+        metadataMatching.retrieveByBiblioAsync(biblio,
+                grobidValidation ? null : postValidationScorer(postValidate, title, firstAuthor, true), matchingDocument -> {
             if (!matchingDocument.isException()) {
                 if (postValidate != null && postValidate) {
                     //no title and author, extract with grobid. if grobid unavailable... it will fail.
@@ -332,7 +539,7 @@ public class LookupEngine {
                             grobidClient.processCitation(biblio, "0", response -> {
                                 final String firstAuthor1 = isNotBlank(response.getFirstAuthor()) ? response.getFirstAuthor() : response.getFirstAuthorMonograph();
                                 if (!areMetadataMatching(response.getAtitle(), firstAuthor1, matchingDocument, true)) {
-                                    callback.accept(new MatchingDocument(new NotFoundException("Best bibliographical record did not passed the post-validation")));
+                                    callback.accept(new MatchingDocument(new NoMatchException("Best bibliographical record did not passed the post-validation")));
                                     return;
                                 }
                                 final String s = injectIdsByDoi(matchingDocument.getJsonObject(), matchingDocument.getDOI());
@@ -345,7 +552,7 @@ public class LookupEngine {
                         }
                     } else {
                         if (!areMetadataMatching(title, firstAuthor, matchingDocument, true)) {
-                            callback.accept(new MatchingDocument(new NotFoundException("Best bibliographical record did not passed the post-validation")));
+                            callback.accept(new MatchingDocument(new NoMatchException("Best bibliographical record did not passed the post-validation")));
                             return;
                         }
                         final String s = injectIdsByDoi(matchingDocument.getJsonObject(), matchingDocument.getDOI());
@@ -399,21 +606,38 @@ public class LookupEngine {
      * inconsistent results.
      */
     private boolean areMetadataMatching(String title, String firstAuthor, MatchingDocument result, boolean ignoreTitleIfNotPresent) {
-        boolean valid = true;
+        return matchingScore(title, firstAuthor, result, ignoreTitleIfNotPresent) >= 0;
+    }
 
+    /**
+     * Similarity of the result with the title and the first author of the request, -1 if it does not pass the
+     * post-validation: the candidates of a matching are ranked with it.
+     **/
+    protected double matchingScore(String title, String firstAuthor, MatchingDocument result, boolean ignoreTitleIfNotPresent) {
+        double score = 0.0;
 
         if (isNotBlank(title)) {
-            if (ratcliffObershelpDistance(title, result.getTitle(), false) < 0.7)
-                return false;
+            final double titleSimilarity = ratcliffObershelpDistance(title, result.getTitle(), false);
+            if (titleSimilarity < 0.7)
+                return -1;
+            score += titleSimilarity;
         } else if (!ignoreTitleIfNotPresent) {
-            return false;
+            return -1;
         }
 
+        final double authorSimilarity = ratcliffObershelpDistance(firstAuthor, result.getFirstAuthor(), false);
+        if (authorSimilarity < 0.7)
+            return -1;
 
-        if (ratcliffObershelpDistance(firstAuthor, result.getFirstAuthor(), false) < 0.7)
-            return false;
+        return score + authorSimilarity;
+    }
 
-        return valid;
+    private ToDoubleFunction<MatchingDocument> postValidationScorer(Boolean postValidate, String title, String firstAuthor,
+                                                                   boolean ignoreTitleIfNotPresent) {
+        if (postValidate == null || !postValidate) {
+            return null;
+        }
+        return candidate -> matchingScore(title, firstAuthor, candidate, ignoreTitleIfNotPresent);
     }
 
     /**
@@ -448,11 +672,20 @@ public class LookupEngine {
 
 
     protected String injectIdsByDoi(String jsonobj, String doi) {
-        final IstexData istexData = istexLookup.retrieveByDoi(doi);
+        try (RequestTransaction ignored = RequestTransaction.begin()) {
+            if (isCrosswalkAvailable()) {
+                final CrosswalkData crosswalkData = crosswalkLookup.retrieveByDoi(doi);
+                if (crosswalkData != null) {
+                    return injectIdsByCrosswalkData(jsonobj, crosswalkData);
+                }
+            }
 
-        final String oaLink = oaDoiLookup.retrieveOALinkByDoi(doi);
+            final IstexData istexData = istexLookup.retrieveByDoi(doi);
+
+            final String oaLink = oaDoiLookup.retrieveOALinkByDoi(doi);
 
-        return injectIdsByIstexData(jsonobj, doi, istexData, oaLink);
+            return injectIdsByIstexData(jsonobj, doi, istexData, oaLink);
+        }
     }
 
 
@@ -482,49 +715,49 @@ public class LookupEngine {
                 sb.append("\"istexId\":\"" + istexData.getIstexId() + "\"");
                 foundIstexData = true;
             }
-            if (CollectionUtils.isNotEmpty(istexData.getArk())) {
+            if (istexData.getFirstArk() != null) {
                 if (!first) {
                     sb.append(", ");
                 } else {
                     first = false;
                 }
-                sb.append("\"ark\":\"" + istexData.getArk().get(0) + "\"");
+                sb.append("\"ark\":\"" + istexData.getFirstArk() + "\"");
                 foundIstexData = true;
             }
-            if (CollectionUtils.isNotEmpty(istexData.getPmid())) {
+            if (istexData.getFirstPmid() != null) {
                 if (!first) {
                     sb.append(", ");
                 } else {
                     first = false;
                 }
-                sb.append("\"pmid\":\"" + istexData.getPmid().get(0) + "\"");
+                sb.append("\"pmid\":\"" + istexData.getFirstPmid() + "\"");
                 pmid = true;
                 foundIstexData = true;
             }
-            if (CollectionUtils.isNotEmpty(istexData.getPmc())) {
+            if (istexData.getFirstPmc() != null) {
                 if (!first) {
                     sb.append(", ");
                 } else {
                     first = false;
                 }
-                sb.append("\"pmcid\":\"" + istexData.getPmc().get(0) + "\"");
+                sb.append("\"pmcid\":\"" + istexData.getFirstPmc() + "\"");
                 pmc = true;
                 foundIstexData = true;
             }
-            if (CollectionUtils.isNotEmpty(istexData.getMesh())) {
+            if (istexData.getFirstMesh() != null) {
                 if (!first) {
                     sb.append(", ");
                 }
-                sb.append("\"mesh\":\"" + istexData.getMesh().get(0) + "\"");
+                sb.append("\"mesh\":\"" + istexData.getFirstMesh() + "\"");
                 foundIstexData = true;
             }
-            if (CollectionUtils.isNotEmpty(istexData.getPii())) {
+            if (istexData.getFirstPii() != null) {
                 if (!first) {
                     sb.append(", ");
                 } else {
                     first = false;
                 }
-                sb.append("\"pii\":\"" + istexData.getPii().get(0) + "\"");
+                sb.append("\"pii\":\"" + istexData.getFirstPii() + "\"");
                 foundIstexData = true;
             }
         }
@@ -573,6 +806,40 @@ public class LookupEngine {
         }
     }
 
+    protected String injectIdsByCrosswalkData(String jsonobj, CrosswalkData crosswalkData) {
+        StringBuilder sb = new StringBuilder();
+        if (isBlank(jsonobj)) {
+            sb.append("{");
+        } else {
+            sb.append(jsonobj, 0, length(jsonobj) - 1);
+        }
+        final int initialLength = sb.length();
+
+        appendId(sb, "istexId", crosswalkData.getIstexId());
+        appendId(sb, "ark", crosswalkData.getArk());
+        appendId(sb, "pmid", crosswalkData.getPmid());
+        appendId(sb, "pmcid", crosswalkData.getPmcid());
+        appendId(sb, "mesh", crosswalkData.getMesh());
+        appendId(sb, "pii", crosswalkData.getPii());
+        appendId(sb, "oaLink", crosswalkData.getOaLink());
+
+        if (sb.length() == initialLength) {
+            return jsonobj;
+        }
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private void appendId(StringBuilder sb, String name, String value) {
+        if (isBlank(value)) {
+            return;
+        }
+        if (sb.charAt(sb.length() - 1) != '{') {
+            sb.append(", ");
+        }
+        sb.append("\"").append(name).append("\":\"").append(value).append("\"");
+    }
+
     public void setMetadataMatching(MetadataMatching metadataMatching) {
         this.metadataMatching = metadataMatching;
     }
@@ -593,6 +860,28 @@ public class LookupEngine {
         this.pmidLookup = pmidLookup;
     }
 
+    public void setCrosswalkLookup(CrosswalkLookup crosswalkLookup) {
+        this.crosswalkLookup = crosswalkLookup;
+    }
+
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public void setNegativeCache(NegativeCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    public void setFastPathMetrics(FastPathMetrics fastPathMetrics) {
+        this.fastPathMetrics = fastPathMetrics;
+    }
+
+    public void setMultiSearchMetrics(MultiSearchMetrics multiSearchMetrics) {
+        if (metadataMatching != null) {
+            metadataMatching.setMultiSearchMetrics(multiSearchMetrics);
+        }
+    }
+
     public void setGrobidClient(GrobidClient grobidClient) {
         this.grobidClient = grobidClient;
     }
@@ -0,0 +1,186 @@
+package com.scienceminer.lookup.storage;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang3.StringUtils.lowerCase;
+import static org.apache.commons.lang3.StringUtils.normalizeSpace;
+
+/**
+ * Cache of the requests known to end with a 404, so that they are answered without repeating the lookups:
+ * - identifier misses, keyed by the type and the normalised identifier, checked before the storage lookups
+ * - matching misses, keyed by the normalised metadata of the request, checked before the Elasticsearch queries
+ * <p>
+ * Each kind of miss has its own time to live, and all the misses are invalidated when the storage is written.
+ */
+public class NegativeCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NegativeCache.class);
+
+    private static final char SEPARATOR = '\u0001';
+
+    private final Cache<String, String> identifierMisses;
+    private final Cache<String, String> matchingMisses;
+    private final StorageGeneration storageGeneration;
+
+    private volatile long generation;
+
+    private final Meter identifierHits = new Meter();
+    private final Meter matchingHits = new Meter();
+    private final Meter savedQueries = new Meter();
+
+    /**
+     * @param maxEntries            maximum number of misses of each kind
+     * @param identifierTtlMillis   time to live of the identifier misses, 0 to not cache them
+     * @param matchingTtlMillis     time to live of the matching misses, 0 to not cache them
+     * @param storageGeneration     generation of the served storage, the misses are invalidated when it changes
+     */
+    public NegativeCache(long maxEntries, long identifierTtlMillis, long matchingTtlMillis, StorageGeneration storageGeneration) {
+        this.identifierMisses = build(maxEntries, identifierTtlMillis);
+        this.matchingMisses = build(maxEntries, matchingTtlMillis);
+        this.storageGeneration = storageGeneration;
+        this.generation = storageGeneration.get();
+    }
+
+    private static Cache<String, String> build(long maxEntries, long ttlMillis) {
+        if (ttlMillis <= 0 || maxEntries <= 0) {
+            return null;
+        }
+        return Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Return the message of the 404 if the identifier is a known miss, null otherwise.
+     */
+    public String getIdentifierMiss(String type, String identifier) {
+        if (identifierMisses == null) {
+            return null;
+        }
+        final String key = ResponseCache.key(type, identifier);
+        if (key == null) {
+            return null;
+        }
+        checkGeneration();
+        final String message = identifierMisses.getIfPresent(key);
+        if (message != null) {
+            identifierHits.mark();
+        }
+        return message;
+    }
+
+    /**
+     * Return the generation of the storage, to be read before the lookup of an identifier recorded with
+     * {@link #putIdentifierMiss(String, String, String, long)}.
+     */
+    public long getGeneration() {
+        checkGeneration();
+        return generation;
+    }
+
+    /**
+     * Record the identifier miss, unless the storage has been written since the generation was read.
+     */
+    public void putIdentifierMiss(String type, String identifier, String message, long generation) {
+        final String key = ResponseCache.key(type, identifier);
+        if (identifierMisses == null || key == null) {
+            return;
+        }
+        checkGeneration();
+        if (generation == this.generation) {
+            identifierMisses.put(key, message == null ? "" : message);
+        }
+    }
+
+    /**
+     * Return the message of the 404 if the matching request is a known miss, null otherwise.
+     *
+     * @param queries number of Elasticsearch queries the matching of the request would run
+     */
+    public String getMatchingMiss(String key, int queries) {
+        if (matchingMisses == null || key == null) {
+            return null;
+        }
+        checkGeneration();
+        final String message = matchingMisses.getIfPresent(key);
+        if (message != null) {
+            matchingHits.mark();
+            savedQueries.mark(queries);
+        }
+        return message;
+    }
+
+    public void putMatchingMiss(String key, String message) {
+        if (matchingMisses == null || key == null) {
+            return;
+        }
+        matchingMisses.put(key, message == null ? "" : message);
+    }
+
+    public void invalidateAll() {
+        if (identifierMisses != null) {
+            identifierMisses.invalidateAll();
+        }
+        if (matchingMisses != null) {
+            matchingMisses.invalidateAll();
+        }
+    }
+
+    /**
+     * Expose the number of requests answered from the cache, and the number of Elasticsearch queries saved.
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        final String prefix = MetricRegistry.name(NegativeCache.class);
+        metrics.register(MetricRegistry.name(prefix, "identifierHits"), identifierHits);
+        metrics.register(MetricRegistry.name(prefix, "matchingHits"), matchingHits);
+        metrics.register(MetricRegistry.name(prefix, "savedElasticsearchQueries"), savedQueries);
+    }
+
+    public long getSavedQueries() {
+        return savedQueries.getCount();
+    }
+
+    private void checkGeneration() {
+        final long current = storageGeneration.get();
+        if (current == generation) {
+            return;
+        }
+        synchronized (this) {
+            if (current != generation) {
+                LOGGER.info("The storage has been updated, invalidating the cached misses");
+                generation = current;
+                invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * Key of the metadata of a matching request, null if there is no metadata to match. The values are compared
+     * case insensitively and with the whitespaces normalised.
+     */
+    public static String matchingKey(String atitle, String firstAuthor, String jtitle, String volume, String firstPage,
+                                     String biblio, Boolean postValidate, Boolean parseReference) {
+        final StringBuilder sb = new StringBuilder();
+        boolean empty = true;
+        for (String value : new String[]{atitle, firstAuthor, jtitle, volume, firstPage, biblio}) {
+            final String normalised = normalizeSpace(lowerCase(value));
+            if (normalised != null && !normalised.isEmpty()) {
+                sb.append(normalised);
+                empty = false;
+            }
+            sb.append(SEPARATOR);
+        }
+        if (empty) {
+            return null;
+        }
+        return sb.append(Boolean.TRUE.equals(postValidate)).append(SEPARATOR)
+                .append(Boolean.TRUE.equals(parseReference)).toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.scienceminer.lookup.storage;
+
+import org.lmdbjava.Env;
+import org.lmdbjava.Txn;
+
+import java.nio.ByteBuffer;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Read transactions shared by all the lookups performed while processing a request.
+ * <p>
+ * The scope is bound to the calling thread: once opened with {@link #begin()}, every read of the lookups from
+ * the same thread reuses a single read transaction per environment, opened on first use and closed with the scope.
+ * With the single environment storage, a request then holds only one reader slot and sees a consistent
+ * snapshot of all the sources. Scopes can be nested, only the outermost one closes the transactions.
+ */
+public class RequestTransaction implements AutoCloseable {
+
+    private static final ThreadLocal<RequestTransaction> ACTIVE = new ThreadLocal<>();
+
+    private final Map<Env<ByteBuffer>, Txn<ByteBuffer>> transactions;
+    private final boolean owner;
+
+    private RequestTransaction(Map<Env<ByteBuffer>, Txn<ByteBuffer>> transactions, boolean owner) {
+        this.transactions = transactions;
+        this.owner = owner;
+    }
+
+    public static RequestTransaction begin() {
+        final RequestTransaction active = ACTIVE.get();
+        if (active != null) {
+            return new RequestTransaction(active.transactions, false);
+        }
+        final RequestTransaction created = new RequestTransaction(new IdentityHashMap<>(), true);
+        ACTIVE.set(created);
+        return created;
+    }
+
+    /**
+     * Return the read transaction of the current scope for the environment, null if no scope is open
+     * on the calling thread.
+     */
+    public static Txn<ByteBuffer> current(Env<ByteBuffer> environment) {
+        final RequestTransaction active = ACTIVE.get();
+        if (active == null) {
+            return null;
+        }
+        return active.transactions.computeIfAbsent(environment, Env::txnRead);
+    }
+
+    @Override
+    public void close() {
+        if (!owner) {
+            return;
+        }
+        ACTIVE.remove();
+        for (Txn<ByteBuffer> txn : transactions.values()) {
+            txn.close();
+        }
+        transactions.clear();
+    }
+}
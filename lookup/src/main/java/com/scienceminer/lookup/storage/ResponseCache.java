@@ -0,0 +1,184 @@
+package com.scienceminer.lookup.storage;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.scienceminer.lookup.storage.lookup.PMIdsLookup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.apache.commons.lang3.StringUtils.lowerCase;
+import static org.apache.commons.lang3.StringUtils.trim;
+
+/**
+ * Cache of the final JSON responses of the identifier lookups, keyed by the type and the normalised identifier.
+ * The cache is bounded by the size of the cached responses and evicts with W-TinyLFU (Caffeine), which keeps the
+ * frequently requested records even when a burst of one-off identifiers goes through.
+ * <p>
+ * The responses are invalidated when the storage is written, e.g. an incremental update by another process, see
+ * {@link StorageGeneration}.
+ */
+public class ResponseCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+
+    public static final String DOI = "doi";
+    public static final String PMID = "pmid";
+    public static final String PMC = "pmc";
+    public static final String ISTEX = "istex";
+    public static final String PII = "pii";
+    public static final String FATCAT = "fatcat";
+
+    // approximate overhead of an entry in the cache, on top of the characters of the key and the value
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final Cache<String, String> cache;
+    private final long maxEntryBytes;
+    private final StorageGeneration storageGeneration;
+
+    private volatile long generation;
+
+    /**
+     * @param maxBytes          budget of the whole cache, in bytes
+     * @param maxEntryBytes     responses larger than this budget are not cached
+     * @param storageGeneration generation of the served storage, the responses are invalidated when it changes
+     */
+    public ResponseCache(long maxBytes, long maxEntryBytes, StorageGeneration storageGeneration) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, String value) -> weigh(key, value))
+                .recordStats()
+                .build();
+        this.maxEntryBytes = maxEntryBytes;
+        this.storageGeneration = storageGeneration;
+        this.generation = storageGeneration.get();
+    }
+
+    /**
+     * Return the cached response, null if the identifier is not cached.
+     */
+    public String get(String type, String identifier) {
+        final String key = key(type, identifier);
+        if (key == null) {
+            return null;
+        }
+        checkGeneration();
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Return the generation of the storage, to be read before looking up a response to cache with
+     * {@link #put(String, String, String, long)}.
+     */
+    public long getGeneration() {
+        checkGeneration();
+        return generation;
+    }
+
+    /**
+     * Cache the response, unless the storage has been written since the generation was read: the response could
+     * then be already outdated.
+     */
+    public void put(String type, String identifier, String response, long generation) {
+        final String key = key(type, identifier);
+        if (key == null || response == null || weigh(key, response) > maxEntryBytes) {
+            return;
+        }
+        checkGeneration();
+        if (generation == this.generation) {
+            cache.put(key, response);
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Approximate size of the cached responses, in bytes.
+     */
+    public long getWeightedSize() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * Expose the hits, misses and size of the cache as gauges of the registry.
+     */
+    public void registerMetrics(MetricRegistry metrics) {
+        final String prefix = MetricRegistry.name(ResponseCache.class);
+        metrics.register(MetricRegistry.name(prefix, "hits"), (Gauge<Long>) () -> stats().hitCount());
+        metrics.register(MetricRegistry.name(prefix, "misses"), (Gauge<Long>) () -> stats().missCount());
+        metrics.register(MetricRegistry.name(prefix, "hitRate"), (Gauge<Double>) () -> stats().hitRate());
+        metrics.register(MetricRegistry.name(prefix, "evictions"), (Gauge<Long>) () -> stats().evictionCount());
+        metrics.register(MetricRegistry.name(prefix, "entries"), (Gauge<Long>) this::getSize);
+        metrics.register(MetricRegistry.name(prefix, "bytes"), (Gauge<Long>) this::getWeightedSize);
+    }
+
+    private void checkGeneration() {
+        final long current = storageGeneration.get();
+        if (current == generation) {
+            return;
+        }
+        synchronized (this) {
+            if (current != generation) {
+                LOGGER.info("The storage has been updated, invalidating the cached responses");
+                generation = current;
+                cache.invalidateAll();
+            }
+        }
+    }
+
+    private static int weigh(String key, String value) {
+        return ENTRY_OVERHEAD + 2 * (key.length() + value.length());
+    }
+
+    /**
+     * Normalise the identifier as the lookups do, so that the variants of an identifier share the same entry.
+     */
+    static String key(String type, String identifier) {
+        final String normalised = normalise(type, identifier);
+        return normalised == null ? null : type + ':' + normalised;
+    }
+
+    /**
+     * Return the identifier trimmed, lower-cased for the DOI and PII, and as a plain number (PMC number prefixed
+     * with PMC) for the PMID and PMC ID, null if it is blank or not a valid number.
+     */
+    static String normalise(String type, String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        final String normalised;
+        switch (type) {
+            case DOI:
+            case PII:
+                normalised = lowerCase(trim(identifier));
+                break;
+            case PMID:
+                final int pmid = PMIdsLookup.toPmidKey(trim(identifier));
+                normalised = pmid < 0 ? null : String.valueOf(pmid);
+                break;
+            case PMC:
+                final int pmc = PMIdsLookup.toPmcKey(trim(identifier));
+                normalised = pmc < 0 ? null : "PMC" + pmc;
+                break;
+            default:
+                normalised = trim(identifier);
+        }
+        if (normalised == null || normalised.isEmpty()) {
+            return null;
+        }
+        return normalised;
+    }
+}
@@ -0,0 +1,166 @@
+package com.scienceminer.lookup.storage;
+
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Write a compacted copy of LMDB environments: the copy omits the free pages and renumbers the pages sequentially
+ * (mdb_env_copy2 with MDB_CP_COMPACT), so the data file is shrunk to the live size of the databases. The copy
+ * is taken within a read transaction and can then be done while the environment is in use.
+ */
+public class StorageCompactor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageCompactor.class);
+
+    public static final String DATA_FILE = "data.mdb";
+
+    /**
+     * Size of the record (MDB_db) describing a named database in the main database on 64-bit platforms: flags and
+     * depth, then the numbers of branch, leaf and overflow pages, the number of entries and the root page.
+     */
+    private static final int DATABASE_RECORD_SIZE = 48;
+
+    private final StorageEnvFactory storageEnvFactory;
+
+    public StorageCompactor(StorageEnvFactory storageEnvFactory) {
+        this.storageEnvFactory = storageEnvFactory;
+    }
+
+    /**
+     * Write the compacted copy of the environment in the target directory, which must not exist. The filter files
+     * next to the data file are copied with it. The main database handle of the source, opened beforehand, is used
+     * to read the database sizes without taking the write lock of an environment in use.
+     */
+    public Report compact(Env<ByteBuffer> source, Dbi<ByteBuffer> sourceMainDb, File sourceDirectory, File targetDirectory) {
+        if (targetDirectory.exists()) {
+            throw new IllegalArgumentException("The target directory " + targetDirectory.getPath() + " already exists. ");
+        }
+        targetDirectory.mkdirs();
+
+        final Report report = new Report(sourceDirectory.getName());
+        report.sizeBefore = new File(sourceDirectory, DATA_FILE).length();
+        report.databasesBefore = getDatabaseSizes(source, sourceMainDb);
+
+        LOGGER.info("Compacting " + sourceDirectory.getPath() + " into " + targetDirectory.getPath());
+        source.copy(targetDirectory, CopyFlags.MDB_CP_COMPACT);
+
+        final File[] filters = sourceDirectory.listFiles((dir, name) -> name.endsWith(".bloom"));
+        if (filters != null) {
+            for (File filter : filters) {
+                try {
+                    FileUtils.copyFileToDirectory(filter, targetDirectory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot copy the filter " + filter.getPath(), e);
+                }
+            }
+        }
+
+        report.sizeAfter = new File(targetDirectory, DATA_FILE).length();
+        try (Env<ByteBuffer> target = storageEnvFactory.createEnv(targetDirectory)) {
+            report.databasesAfter = getDatabaseSizes(target, target.openDbi((String) null));
+        }
+        LOGGER.info(report.toString());
+        return report;
+    }
+
+    /**
+     * Return the size in bytes of the pages used by each database of the environment, read from the records of the
+     * main database in a read transaction: opening the databases would take the write lock of the environment.
+     */
+    public static Map<String, Long> getDatabaseSizes(Env<ByteBuffer> environment, Dbi<ByteBuffer> mainDb) {
+        final long pageSize = environment.stat().pageSize;
+        final Map<String, Long> sizes = new LinkedHashMap<>();
+        try (Txn<ByteBuffer> txn = environment.txnRead();
+             CursorIterator<ByteBuffer> it = mainDb.iterate(txn, KeyRange.all())) {
+            for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
+                final ByteBuffer record = kv.val().order(ByteOrder.nativeOrder());
+                if (record.remaining() != DATABASE_RECORD_SIZE) {
+                    continue;
+                }
+                final long pages = record.getLong(record.position() + 8)
+                        + record.getLong(record.position() + 16)
+                        + record.getLong(record.position() + 24);
+                sizes.put(UTF_8.decode(kv.key()).toString(), pages * pageSize);
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Return the names of the databases of the environment, listed as the keys of its main database.
+     */
+    public static List<String> getDatabaseNames(Env<ByteBuffer> environment) {
+        final List<String> names = new ArrayList<>();
+        final Dbi<ByteBuffer> mainDb = environment.openDbi((String) null);
+        try (Txn<ByteBuffer> txn = environment.txnRead();
+             CursorIterator<ByteBuffer> it = mainDb.iterate(txn, KeyRange.all())) {
+            for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
+                names.add(UTF_8.decode(kv.key()).toString());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Sizes of the data file and of each database, before and after the compaction.
+     */
+    public static class Report {
+        private final String envName;
+        private long sizeBefore;
+        private long sizeAfter;
+        private Map<String, Long> databasesBefore;
+        private Map<String, Long> databasesAfter;
+
+        Report(String envName) {
+            this.envName = envName;
+        }
+
+        public String getEnvName() {
+            return envName;
+        }
+
+        public long getSizeBefore() {
+            return sizeBefore;
+        }
+
+        public long getSizeAfter() {
+            return sizeAfter;
+        }
+
+        public Map<String, Long> getDatabasesBefore() {
+            return databasesBefore;
+        }
+
+        public Map<String, Long> getDatabasesAfter() {
+            return databasesAfter;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("Environment ").append(envName).append(": ")
+                    .append(FileUtils.byteCountToDisplaySize(sizeBefore)).append(" -> ")
+                    .append(FileUtils.byteCountToDisplaySize(sizeAfter));
+            for (Map.Entry<String, Long> database : databasesBefore.entrySet()) {
+                final Long after = databasesAfter.get(database.getKey());
+                sb.append("\n  ").append(database.getKey()).append(": ")
+                        .append(FileUtils.byteCountToDisplaySize(database.getValue())).append(" -> ")
+                        .append(after == null ? "-" : FileUtils.byteCountToDisplaySize(after));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -1,41 +1,228 @@
 package com.scienceminer.lookup.storage;
 
 import com.scienceminer.lookup.configuration.LookupConfiguration;
+import org.lmdbjava.Dbi;
 import org.lmdbjava.Env;
 import org.lmdbjava.EnvFlags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Singleton
 public class StorageEnvFactory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageEnvFactory.class);
+
+    /**
+     * Keys serialised as java objects with FST (storage created before the format version was recorded)
+     **/
+    public static final int FORMAT_VERSION_FST_KEYS = 1;
+
+    /**
+     * Keys stored as raw normalised UTF-8 bytes
+     **/
+    public static final int FORMAT_VERSION_UTF8_KEYS = 2;
+
+    /**
+     * Istex and PubMed identifier records stored with the compact binary codecs instead of FST
+     **/
+    public static final int FORMAT_VERSION_COMPACT_VALUES = 3;
+
+    /**
+     * Fatcat records stored as UTF-8 with a header byte identifying the compression codec
+     **/
+    public static final int FORMAT_VERSION_CODEC_HEADER = 4;
+
+    /**
+     * PubMed and PMC identifiers of the pmid databases stored as native integer keys (MDB_INTEGERKEY)
+     **/
+    public static final int FORMAT_VERSION_INTEGER_KEYS = 5;
+
+    public static final int CURRENT_FORMAT_VERSION = FORMAT_VERSION_INTEGER_KEYS;
+
+    public static final String METADATA_FORMAT_VERSION = "formatVersion";
+
+    /**
+     * Name of the environment holding all the databases when the single environment storage is enabled
+     **/
+    public static final String SINGLE_ENV_NAME = "glutton";
+
+    /**
+     * Suffixes of the working copies written next to the environments: backups, migrated or compacted copies in
+     * progress, and bulk load directories
+     **/
+    private static final String[] WORKING_COPY_SUFFIXES = {".bak", ".migrating", ".compacting", ".bulk"};
 
     private final String storagePath;
     private LookupConfiguration configuration;
+    private boolean bulkLoad = false;
+
+    private final Map<String, Env<ByteBuffer>> environments = new ConcurrentHashMap<>();
+    private final Map<String, StorageMetadata> metadata = new ConcurrentHashMap<>();
+    private final Map<String, Integer> formatVersions = new ConcurrentHashMap<>();
+    private final Map<String, Dbi<ByteBuffer>> mainDbs = new ConcurrentHashMap<>();
 
     @Inject
     public StorageEnvFactory(LookupConfiguration configuration) {
+        this(configuration, configuration.getStorage());
+    }
+
+    /**
+     * Factory of the environments of another storage directory than the configured one, e.g. a snapshot built
+     * offline.
+     */
+    public StorageEnvFactory(LookupConfiguration configuration, String storagePath) {
         this.configuration = configuration;
-        this.storagePath = configuration.getStorage();
+        this.storagePath = storagePath;
     }
 
+    /**
+     * Return the environment with the given name, the environment is opened only once per factory.
+     * With the single environment storage, the same environment is returned for all the names.
+     */
     public Env<ByteBuffer> getEnv(String envName) {
-        Env<ByteBuffer> environment = null;
+        return environments.computeIfAbsent(resolveEnvName(envName), name -> {
+            final Env<ByteBuffer> environment = createEnv(getEnvDirectory(name));
+
+            // A fresh environment has no database yet, it is then written directly in the current format
+            final boolean isNew = environment.stat().entries == 0;
+            final StorageMetadata storageMetadata = new StorageMetadata(environment);
+            Long version = storageMetadata.getLong(METADATA_FORMAT_VERSION);
+            if (version == null) {
+                version = (long) (isNew ? CURRENT_FORMAT_VERSION : FORMAT_VERSION_FST_KEYS);
+                if (isNew) {
+                    storageMetadata.putLong(METADATA_FORMAT_VERSION, version);
+                }
+            }
+            if (version < CURRENT_FORMAT_VERSION) {
+                LOGGER.warn("The storage " + name + " is in format version " + version + ", current version is "
+                        + CURRENT_FORMAT_VERSION + ". Run the migrate command to rewrite it in the new format.");
+            }
+            metadata.put(name, storageMetadata);
+            formatVersions.put(name, version.intValue());
+            mainDbs.put(name, environment.openDbi((String) null));
+
+            return environment;
+        });
+    }
 
-        File thePath = new File(this.storagePath + File.separator + envName);
+    /**
+     * Open an LMDB environment in the given directory, creating it if needed.
+     */
+    public Env<ByteBuffer> createEnv(File thePath) {
         if (!thePath.exists()) {
             thePath.mkdirs();
         }
 
-        environment = Env.create()
+        final EnvFlags[] flags = bulkLoad
+                ? new EnvFlags[]{EnvFlags.MDB_NOTLS, EnvFlags.MDB_NOSYNC, EnvFlags.MDB_WRITEMAP}
+                : new EnvFlags[]{EnvFlags.MDB_NOTLS};
+
+        return Env.create()
                 .setMapSize(300L * 1024L * 1024L * 1024L)
                 .setMaxReaders(configuration.getMaxAcceptedRequests())
-                .setMaxDbs(10)
-                .open(thePath, EnvFlags.MDB_NOTLS);
+                .setMaxDbs(32)
+                .open(thePath, flags);
+    }
+
+    /**
+     * In bulk load mode the environments are opened without syncing to disk on commit and with a writable memory
+     * map, and the loaders write their records sorted with MDB_APPEND. The environments are synced once at the end
+     * of the load. To be set before opening any environment, and only when loading.
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    public int getFormatVersion(String envName) {
+        getEnv(envName);
+        return formatVersions.get(resolveEnvName(envName));
+    }
+
+    public StorageMetadata getMetadata(String envName) {
+        getEnv(envName);
+        return metadata.get(resolveEnvName(envName));
+    }
+
+    /**
+     * Return the handle of the main database of the environment, listing its named databases. It is opened with the
+     * environment, so that it can be read later without taking the write lock.
+     */
+    public Dbi<ByteBuffer> getMainDb(String envName) {
+        getEnv(envName);
+        return mainDbs.get(resolveEnvName(envName));
+    }
+
+    /**
+     * Return the directory of the environment with the given name.
+     */
+    public File getEnvDirectory(String envName) {
+        return new File(this.storagePath + File.separator + resolveEnvName(envName));
+    }
+
+    /**
+     * Return true if the directory holds an environment of the storage, and not one of its working copies.
+     */
+    public static boolean isEnvDirectory(File directory) {
+        if (!directory.isDirectory() || !new File(directory, "data.mdb").exists()) {
+            return false;
+        }
+        for (String suffix : WORKING_COPY_SUFFIXES) {
+            if (directory.getName().endsWith(suffix)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the environments opened so far by the factory, by name.
+     */
+    public Map<String, Env<ByteBuffer>> getOpenedEnvironments() {
+        return Collections.unmodifiableMap(environments);
+    }
+
+    /**
+     * Return a value changing each time one of the opened environments is written, by this process or another one:
+     * the sum of the last transaction ids of the environments.
+     */
+    public long getStorageGeneration() {
+        long generation = 0;
+        for (Env<ByteBuffer> environment : environments.values()) {
+            generation += environment.info().lastTransactionId;
+        }
+        return generation;
+    }
+
+    private String resolveEnvName(String envName) {
+        return configuration.isSingleEnvironment() ? SINGLE_ENV_NAME : envName;
+    }
+
+    /**
+     * Close all the environments opened by the factory, no read or write transaction must be in progress.
+     */
+    public void close() {
+        for (Env<ByteBuffer> environment : environments.values()) {
+            environment.close();
+        }
+        environments.clear();
+        metadata.clear();
+        formatVersions.clear();
+        mainDbs.clear();
+    }
 
-        return environment;
+    public String getStoragePath() {
+        return storagePath;
     }
 
     public LookupConfiguration getConfiguration() {
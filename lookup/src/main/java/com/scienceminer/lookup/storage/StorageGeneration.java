@@ -0,0 +1,49 @@
+package com.scienceminer.lookup.storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Generation of the served storage, changing each time the storage is written (e.g. an incremental update by another
+ * process) or switched. Reading the generation goes through the LMDB environments, it is then refreshed at most once
+ * per check interval, and the caches compare it with the generation of their entries.
+ */
+public class StorageGeneration {
+
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongSupplier storageGeneration;
+
+    private volatile long generation;
+    private volatile long lastCheck;
+
+    /**
+     * @param storageGeneration value changing each time the storage is written, see
+     *                          {@link StorageEnvFactory#getStorageGeneration()}
+     */
+    public StorageGeneration(LongSupplier storageGeneration) {
+        this.storageGeneration = storageGeneration;
+        this.generation = storageGeneration.getAsLong();
+        this.lastCheck = System.nanoTime();
+    }
+
+    public long get() {
+        final long now = System.nanoTime();
+        if (now - lastCheck >= CHECK_INTERVAL) {
+            synchronized (this) {
+                if (now - lastCheck >= CHECK_INTERVAL) {
+                    generation = storageGeneration.getAsLong();
+                    lastCheck = now;
+                }
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Read the generation again on the next access, e.g. after a switch of the storage.
+     */
+    public void refresh() {
+        lastCheck = System.nanoTime() - CHECK_INTERVAL;
+    }
+}
@@ -0,0 +1,83 @@
+package com.scienceminer.lookup.storage;
+
+import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.Env;
+import org.lmdbjava.Txn;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Small key/value database stored in each LMDB environment, holding information about the environment itself
+ * (format version, etc.).
+ */
+public class StorageMetadata {
+
+    public static final String NAME_METADATA = "metadata";
+
+    private final Env<ByteBuffer> environment;
+    private final Dbi<ByteBuffer> dbMetadata;
+
+    public StorageMetadata(Env<ByteBuffer> environment) {
+        this.environment = environment;
+        this.dbMetadata = environment.openDbi(NAME_METADATA, DbiFlags.MDB_CREATE);
+    }
+
+    public byte[] get(String key) {
+        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+            return get(txn, key);
+        }
+    }
+
+    public byte[] get(Txn<ByteBuffer> txn, String key) {
+        final ByteBuffer value = dbMetadata.get(txn, toBuffer(key.getBytes(UTF_8)));
+        if (value == null) {
+            return null;
+        }
+        byte[] result = new byte[value.remaining()];
+        value.get(result);
+        return result;
+    }
+
+    public void put(String key, byte[] value) {
+        try (Txn<ByteBuffer> txn = environment.txnWrite()) {
+            put(txn, key, value);
+            txn.commit();
+        }
+    }
+
+    public void put(Txn<ByteBuffer> txn, String key, byte[] value) {
+        dbMetadata.put(txn, toBuffer(key.getBytes(UTF_8)), toBuffer(value));
+    }
+
+    public void delete(Txn<ByteBuffer> txn, String key) {
+        dbMetadata.delete(txn, toBuffer(key.getBytes(UTF_8)));
+    }
+
+    public String getString(String key) {
+        final byte[] value = get(key);
+        return value == null ? null : new String(value, UTF_8);
+    }
+
+    public void putString(String key, String value) {
+        put(key, value.getBytes(UTF_8));
+    }
+
+    public Long getLong(String key) {
+        final String value = getString(key);
+        return value == null ? null : Long.valueOf(value);
+    }
+
+    public void putLong(String key, long value) {
+        putString(key, String.valueOf(value));
+    }
+
+    private static ByteBuffer toBuffer(byte[] bytes) {
+        final ByteBuffer buffer = allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,232 @@
+package com.scienceminer.lookup.storage;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.storage.lookup.async.MultiSearchMetrics;
+import com.scienceminer.lookup.utils.grobid.GrobidClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Storage snapshot served by the service. A snapshot is a storage directory with its environments and the engines
+ * reading them; the service can be switched at runtime to another storage directory built offline.
+ * <p>
+ * Each request works on a {@link Lease} of the current snapshot. After a switch, new requests get the new snapshot
+ * while the requests in flight complete on the previous one, which is closed when its last lease is released.
+ */
+@Singleton
+public class StorageSnapshots {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StorageSnapshots.class);
+
+    private final LookupConfiguration configuration;
+    private final StorageGeneration storageGeneration;
+    private final ResponseCache responseCache;
+    private final NegativeCache negativeCache;
+    private final MultiSearchMetrics multiSearchMetrics = new MultiSearchMetrics();
+    private final FastPathMetrics fastPathMetrics = new FastPathMetrics();
+
+    private volatile Snapshot current;
+
+    @Inject
+    public StorageSnapshots(LookupConfiguration configuration) {
+        this.configuration = configuration;
+        this.current = new Snapshot(new StorageEnvFactory(configuration), configuration, this);
+
+        final LookupConfiguration.Cache cache = configuration.getCache();
+        this.storageGeneration = new StorageGeneration(this::getLastTransactionIds);
+        this.responseCache = cache.getResponseMaxSize().toBytes() > 0
+                ? new ResponseCache(cache.getResponseMaxSize().toBytes(), cache.getResponseMaxEntrySize().toBytes(),
+                storageGeneration)
+                : null;
+        this.negativeCache = new NegativeCache(cache.getNegativeMaxEntries(),
+                cache.getIdentifierMissTtl().toMilliseconds(), cache.getMatchingMissTtl().toMilliseconds(),
+                storageGeneration);
+    }
+
+    private long getLastTransactionIds() {
+        try (Lease lease = acquire()) {
+            return lease.getStorageEnvFactory().getStorageGeneration();
+        }
+    }
+
+    /**
+     * Lease the current snapshot, the lease must be closed once the request is completed.
+     */
+    public Lease acquire() {
+        while (true) {
+            final Snapshot snapshot = current;
+            if (snapshot.retain()) {
+                return new Lease(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Switch the service to the storage directory. The environments of the new snapshot are opened before
+     * the switch, the previous snapshot is closed once the requests using it are completed.
+     *
+     * @return the storage directory of the previous snapshot
+     */
+    public synchronized String switchTo(String storagePath) {
+        if (!new File(storagePath).isDirectory()) {
+            throw new IllegalArgumentException("The storage directory " + storagePath + " does not exist. ");
+        }
+        final Snapshot next = new Snapshot(new StorageEnvFactory(configuration, storagePath), configuration, this);
+        try {
+            next.getLookupEngine();
+            next.getDataEngine();
+        } catch (RuntimeException e) {
+            next.release();
+            throw e;
+        }
+
+        final Snapshot previous = current;
+        current = next;
+        storageGeneration.refresh();
+        if (responseCache != null) {
+            responseCache.invalidateAll();
+        }
+        negativeCache.invalidateAll();
+        LOGGER.info("Storage switched from " + previous.getStoragePath() + " to " + storagePath);
+        previous.release();
+        return previous.getStoragePath();
+    }
+
+    public String getStoragePath() {
+        return current.getStoragePath();
+    }
+
+    /**
+     * Cache of the identifier lookup responses shared by the snapshots, null if disabled.
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Cache of the requests known to end with a 404, shared by the snapshots.
+     */
+    public NegativeCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Metrics of the matching searches gathered in _msearch requests, shared by the snapshots.
+     */
+    public MultiSearchMetrics getMultiSearchMetrics() {
+        return multiSearchMetrics;
+    }
+
+    /**
+     * Metrics of the title and first author matching answered without the matching index, shared by the snapshots.
+     */
+    public FastPathMetrics getFastPathMetrics() {
+        return fastPathMetrics;
+    }
+
+    /**
+     * Use of a snapshot by a request, closing it more than once has no effect.
+     */
+    public static class Lease implements AutoCloseable {
+        private final Snapshot snapshot;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Lease(Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public LookupEngine getLookupEngine() {
+            return snapshot.getLookupEngine();
+        }
+
+        public DataEngine getDataEngine() {
+            return snapshot.getDataEngine();
+        }
+
+        public StorageEnvFactory getStorageEnvFactory() {
+            return snapshot.storageEnvFactory;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                snapshot.release();
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final StorageEnvFactory storageEnvFactory;
+        private final LookupConfiguration configuration;
+        private final StorageSnapshots snapshots;
+
+        // one reference is held by the manager as long as the snapshot is the current one
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private LookupEngine lookupEngine;
+        private DataEngine dataEngine;
+
+        Snapshot(StorageEnvFactory storageEnvFactory, LookupConfiguration configuration, StorageSnapshots snapshots) {
+            this.storageEnvFactory = storageEnvFactory;
+            this.configuration = configuration;
+            this.snapshots = snapshots;
+        }
+
+        boolean retain() {
+            while (true) {
+                final int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                close();
+            }
+        }
+
+        synchronized LookupEngine getLookupEngine() {
+            if (lookupEngine == null) {
+                lookupEngine = new LookupEngine(storageEnvFactory);
+                lookupEngine.setGrobidClient(new GrobidClient(configuration.getGrobidPath()));
+                lookupEngine.setResponseCache(snapshots.responseCache);
+                lookupEngine.setNegativeCache(snapshots.negativeCache);
+                lookupEngine.setMultiSearchMetrics(snapshots.multiSearchMetrics);
+                lookupEngine.setFastPathMetrics(snapshots.fastPathMetrics);
+            }
+            return lookupEngine;
+        }
+
+        synchronized DataEngine getDataEngine() {
+            if (dataEngine == null) {
+                dataEngine = new DataEngine(storageEnvFactory);
+            }
+            return dataEngine;
+        }
+
+        String getStoragePath() {
+            return storageEnvFactory.getStoragePath();
+        }
+
+        private synchronized void close() {
+            LOGGER.info("Closing the storage " + getStoragePath());
+            if (lookupEngine != null) {
+                lookupEngine.close();
+            }
+            if (dataEngine != null) {
+                dataEngine.close();
+            }
+            storageEnvFactory.close();
+        }
+    }
+}
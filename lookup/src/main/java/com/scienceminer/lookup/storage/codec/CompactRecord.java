@@ -0,0 +1,177 @@
+package com.scienceminer.lookup.storage.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compact binary layout shared by the identifier records (istex, pmid):
+ * <pre>
+ *  schema version (1 byte) | number of fields (1 byte) | field 0 | field 1 | ...
+ * </pre>
+ * Each field is a list of strings written as <code>varint(size + 1)</code> (0 meaning null) followed by each value
+ * as <code>varint(length in bytes) UTF-8 bytes</code>. Single valued fields are lists of at most one value.
+ * <p>
+ * Readers ignore the fields they don't know and consider the missing ones as null, so that records written
+ * by an older or newer version of a class can still be read. A field can be read without decoding the other
+ * ones, by skipping over the fields before it.
+ */
+public class CompactRecord {
+
+    public static final int HEADER_SIZE = 2;
+
+    private final byte[] data;
+
+    public CompactRecord(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Copy the record out of the buffer (typically memory mapped by LMDB, and only valid within the transaction).
+     */
+    public static CompactRecord fromBuffer(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new CompactRecord(data);
+    }
+
+    public int getSchemaVersion() {
+        return data[0] & 0xFF;
+    }
+
+    public int getFieldCount() {
+        return data[1] & 0xFF;
+    }
+
+    /**
+     * Return the list of values of the field, null if the field is null or missing from the record
+     */
+    public List<String> readList(int field) {
+        int position = seek(field);
+        if (position < 0) {
+            return null;
+        }
+        final long header = readVarint(position);
+        position = nextPosition(header);
+        final int size = (int) (header & 0xFFFFFFFFL) - 1;
+        if (size < 0) {
+            return null;
+        }
+        if (size == 0) {
+            return new ArrayList<>();
+        }
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final long length = readVarint(position);
+            position = nextPosition(length);
+            final int byteLength = (int) (length & 0xFFFFFFFFL);
+            values.add(new String(data, position, byteLength, UTF_8));
+            position += byteLength;
+        }
+        return values;
+    }
+
+    /**
+     * Return only the first value of the field, without decoding the others.
+     */
+    public String readFirst(int field) {
+        int position = seek(field);
+        if (position < 0) {
+            return null;
+        }
+        final long header = readVarint(position);
+        position = nextPosition(header);
+        if ((int) (header & 0xFFFFFFFFL) - 1 < 1) {
+            return null;
+        }
+        final long length = readVarint(position);
+        position = nextPosition(length);
+        return new String(data, position, (int) (length & 0xFFFFFFFFL), UTF_8);
+    }
+
+    /**
+     * Position of the field in the record, -1 if the record does not contain it
+     */
+    private int seek(int field) {
+        if (field >= getFieldCount()) {
+            return -1;
+        }
+        int position = HEADER_SIZE;
+        for (int i = 0; i < field; i++) {
+            final long header = readVarint(position);
+            position = nextPosition(header);
+            final int size = (int) (header & 0xFFFFFFFFL) - 1;
+            for (int j = 0; j < size; j++) {
+                final long length = readVarint(position);
+                position = nextPosition(length) + (int) (length & 0xFFFFFFFFL);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Read an unsigned varint at the position. The value is returned in the lower 32 bits, the position
+     * following the varint in the upper 32 bits.
+     */
+    private long readVarint(int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return ((long) position << 32) | (value & 0xFFFFFFFFL);
+    }
+
+    private static int nextPosition(long varint) {
+        return (int) (varint >>> 32);
+    }
+
+    /**
+     * Writer of records in the compact layout. Fields must be written in order.
+     */
+    public static class Writer {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(128);
+
+        public Writer(int schemaVersion, int fieldCount) {
+            output.write(schemaVersion);
+            output.write(fieldCount);
+        }
+
+        public Writer writeString(String value) {
+            return writeList(value == null ? null : Collections.singletonList(value));
+        }
+
+        public Writer writeList(List<String> values) {
+            if (values == null) {
+                writeVarint(0);
+                return this;
+            }
+            writeVarint(values.size() + 1);
+            for (String value : values) {
+                final byte[] bytes = value == null ? new byte[0] : value.getBytes(UTF_8);
+                writeVarint(bytes.length);
+                output.write(bytes, 0, bytes.length);
+            }
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return output.toByteArray();
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                output.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            output.write(value);
+        }
+    }
+}
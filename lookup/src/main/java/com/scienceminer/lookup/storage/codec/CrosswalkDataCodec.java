@@ -0,0 +1,54 @@
+package com.scienceminer.lookup.storage.codec;
+
+import com.scienceminer.lookup.data.CrosswalkData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Versioned binary codec of the {@link CrosswalkData} records, see {@link CompactRecord} for the layout.
+ */
+public class CrosswalkDataCodec {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    static final int FIELD_FATCAT_IDENT = 0;
+    static final int FIELD_DOI = 1;
+    static final int FIELD_PMID = 2;
+    static final int FIELD_PMCID = 3;
+    static final int FIELD_PII = 4;
+    static final int FIELD_ISTEX_ID = 5;
+    static final int FIELD_ARK = 6;
+    static final int FIELD_MESH = 7;
+    static final int FIELD_OA_LINK = 8;
+
+    static final int FIELD_COUNT = 9;
+
+    public static byte[] encode(CrosswalkData crosswalkData) {
+        return new CompactRecord.Writer(SCHEMA_VERSION, FIELD_COUNT)
+                .writeString(crosswalkData.getFatcatIdent())
+                .writeString(crosswalkData.getDoi())
+                .writeString(crosswalkData.getPmid())
+                .writeString(crosswalkData.getPmcid())
+                .writeString(crosswalkData.getPii())
+                .writeString(crosswalkData.getIstexId())
+                .writeString(crosswalkData.getArk())
+                .writeString(crosswalkData.getMesh())
+                .writeString(crosswalkData.getOaLink())
+                .toByteArray();
+    }
+
+    public static CrosswalkData decode(ByteBuffer buffer) {
+        final CompactRecord record = CompactRecord.fromBuffer(buffer);
+        final CrosswalkData crosswalkData = new CrosswalkData();
+        crosswalkData.setFatcatIdent(record.readFirst(FIELD_FATCAT_IDENT));
+        crosswalkData.setDoi(record.readFirst(FIELD_DOI));
+        crosswalkData.setPmid(record.readFirst(FIELD_PMID));
+        crosswalkData.setPmcid(record.readFirst(FIELD_PMCID));
+        crosswalkData.setPii(record.readFirst(FIELD_PII));
+        crosswalkData.setIstexId(record.readFirst(FIELD_ISTEX_ID));
+        crosswalkData.setArk(record.readFirst(FIELD_ARK));
+        crosswalkData.setMesh(record.readFirst(FIELD_MESH));
+        crosswalkData.setOaLink(record.readFirst(FIELD_OA_LINK));
+        return crosswalkData;
+    }
+}
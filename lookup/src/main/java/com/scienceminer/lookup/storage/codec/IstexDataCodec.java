@@ -0,0 +1,44 @@
+package com.scienceminer.lookup.storage.codec;
+
+import com.scienceminer.lookup.data.IstexData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Versioned binary codec of the {@link IstexData} records, see {@link CompactRecord} for the layout.
+ */
+public class IstexDataCodec {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    static final int FIELD_CORPUS_NAME = 0;
+    static final int FIELD_ISTEX_ID = 1;
+    static final int FIELD_DOI = 2;
+    static final int FIELD_PMID = 3;
+    static final int FIELD_ARK = 4;
+    static final int FIELD_PMC = 5;
+    static final int FIELD_MESH = 6;
+    static final int FIELD_PII = 7;
+
+    static final int FIELD_COUNT = 8;
+
+    public static byte[] encode(IstexData istexData) {
+        return new CompactRecord.Writer(SCHEMA_VERSION, FIELD_COUNT)
+                .writeString(istexData.getCorpusName())
+                .writeString(istexData.getIstexId())
+                .writeList(istexData.getDoi())
+                .writeList(istexData.getPmid())
+                .writeList(istexData.getArk())
+                .writeList(istexData.getPmc())
+                .writeList(istexData.getMesh())
+                .writeList(istexData.getPii())
+                .toByteArray();
+    }
+
+    /**
+     * The returned object decodes each field only when it is accessed.
+     */
+    public static IstexData decode(ByteBuffer buffer) {
+        return new LazyIstexData(CompactRecord.fromBuffer(buffer));
+    }
+}
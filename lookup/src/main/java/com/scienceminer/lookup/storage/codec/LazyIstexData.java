@@ -0,0 +1,171 @@
+package com.scienceminer.lookup.storage.codec;
+
+import com.scienceminer.lookup.data.IstexData;
+
+import java.util.List;
+
+import static com.scienceminer.lookup.storage.codec.IstexDataCodec.*;
+
+/**
+ * {@link IstexData} backed by an encoded record: the fields are decoded the first time they are accessed,
+ * and the first value of a list can be read without decoding the list.
+ */
+class LazyIstexData extends IstexData {
+
+    private final transient CompactRecord record;
+    private final transient boolean[] decoded = new boolean[FIELD_COUNT];
+
+    LazyIstexData(CompactRecord record) {
+        this.record = record;
+    }
+
+    @Override
+    public String getCorpusName() {
+        if (!decoded[FIELD_CORPUS_NAME]) {
+            super.setCorpusName(record.readFirst(FIELD_CORPUS_NAME));
+            decoded[FIELD_CORPUS_NAME] = true;
+        }
+        return super.getCorpusName();
+    }
+
+    @Override
+    public void setCorpusName(String corpusName) {
+        super.setCorpusName(corpusName);
+        decoded[FIELD_CORPUS_NAME] = true;
+    }
+
+    @Override
+    public String getIstexId() {
+        if (!decoded[FIELD_ISTEX_ID]) {
+            super.setIstexId(record.readFirst(FIELD_ISTEX_ID));
+            decoded[FIELD_ISTEX_ID] = true;
+        }
+        return super.getIstexId();
+    }
+
+    @Override
+    public void setIstexId(String istexId) {
+        super.setIstexId(istexId);
+        decoded[FIELD_ISTEX_ID] = true;
+    }
+
+    @Override
+    public List<String> getDoi() {
+        if (!decoded[FIELD_DOI]) {
+            super.setDoi(record.readList(FIELD_DOI));
+            decoded[FIELD_DOI] = true;
+        }
+        return super.getDoi();
+    }
+
+    @Override
+    public void setDoi(List<String> doi) {
+        super.setDoi(doi);
+        decoded[FIELD_DOI] = true;
+    }
+
+    @Override
+    public String getFirstDoi() {
+        return decoded[FIELD_DOI] ? super.getFirstDoi() : record.readFirst(FIELD_DOI);
+    }
+
+    @Override
+    public List<String> getPmid() {
+        if (!decoded[FIELD_PMID]) {
+            super.setPmid(record.readList(FIELD_PMID));
+            decoded[FIELD_PMID] = true;
+        }
+        return super.getPmid();
+    }
+
+    @Override
+    public void setPmid(List<String> pmid) {
+        super.setPmid(pmid);
+        decoded[FIELD_PMID] = true;
+    }
+
+    @Override
+    public String getFirstPmid() {
+        return decoded[FIELD_PMID] ? super.getFirstPmid() : record.readFirst(FIELD_PMID);
+    }
+
+    @Override
+    public List<String> getArk() {
+        if (!decoded[FIELD_ARK]) {
+            super.setArk(record.readList(FIELD_ARK));
+            decoded[FIELD_ARK] = true;
+        }
+        return super.getArk();
+    }
+
+    @Override
+    public void setArk(List<String> ark) {
+        super.setArk(ark);
+        decoded[FIELD_ARK] = true;
+    }
+
+    @Override
+    public String getFirstArk() {
+        return decoded[FIELD_ARK] ? super.getFirstArk() : record.readFirst(FIELD_ARK);
+    }
+
+    @Override
+    public List<String> getPmc() {
+        if (!decoded[FIELD_PMC]) {
+            super.setPmc(record.readList(FIELD_PMC));
+            decoded[FIELD_PMC] = true;
+        }
+        return super.getPmc();
+    }
+
+    @Override
+    public void setPmc(List<String> pmc) {
+        super.setPmc(pmc);
+        decoded[FIELD_PMC] = true;
+    }
+
+    @Override
+    public String getFirstPmc() {
+        return decoded[FIELD_PMC] ? super.getFirstPmc() : record.readFirst(FIELD_PMC);
+    }
+
+    @Override
+    public List<String> getMesh() {
+        if (!decoded[FIELD_MESH]) {
+            super.setMesh(record.readList(FIELD_MESH));
+            decoded[FIELD_MESH] = true;
+        }
+        return super.getMesh();
+    }
+
+    @Override
+    public void setMesh(List<String> mesh) {
+        super.setMesh(mesh);
+        decoded[FIELD_MESH] = true;
+    }
+
+    @Override
+    public String getFirstMesh() {
+        return decoded[FIELD_MESH] ? super.getFirstMesh() : record.readFirst(FIELD_MESH);
+    }
+
+    @Override
+    public List<String> getPii() {
+        if (!decoded[FIELD_PII]) {
+            super.setPii(record.readList(FIELD_PII));
+            decoded[FIELD_PII] = true;
+        }
+        return super.getPii();
+    }
+
+    @Override
+    public void setPii(List<String> pii) {
+        super.setPii(pii);
+        decoded[FIELD_PII] = true;
+    }
+
+    @Override
+    public String getFirstPii() {
+        return decoded[FIELD_PII] ? super.getFirstPii() : record.readFirst(FIELD_PII);
+    }
+}
@@ -0,0 +1,32 @@
+package com.scienceminer.lookup.storage.codec;
+
+import com.scienceminer.lookup.data.PmidData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Versioned binary codec of the {@link PmidData} records, see {@link CompactRecord} for the layout.
+ */
+public class PmidDataCodec {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    static final int FIELD_PMID = 0;
+    static final int FIELD_PMCID = 1;
+    static final int FIELD_DOI = 2;
+
+    static final int FIELD_COUNT = 3;
+
+    public static byte[] encode(PmidData pmidData) {
+        return new CompactRecord.Writer(SCHEMA_VERSION, FIELD_COUNT)
+                .writeString(pmidData.getPmid())
+                .writeString(pmidData.getPmcid())
+                .writeString(pmidData.getDoi())
+                .toByteArray();
+    }
+
+    public static PmidData decode(ByteBuffer buffer) {
+        final CompactRecord record = CompactRecord.fromBuffer(buffer);
+        return new PmidData(record.readFirst(FIELD_PMID), record.readFirst(FIELD_PMCID), record.readFirst(FIELD_DOI));
+    }
+}
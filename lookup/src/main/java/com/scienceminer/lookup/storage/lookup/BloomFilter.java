@@ -0,0 +1,143 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Bloom filter of the keys of a database, memory mapped from a file next to the environment, so that a lookup of a
+ * missing key can be answered without any access to the LMDB pages. The filter never gives false negatives as long
+ * as it is built from the current content of the database.
+ * <p>
+ * File layout: magic (int), number of hash functions (int), number of bits (long), number of keys (long),
+ * then the bit array as longs.
+ */
+public class BloomFilter {
+
+    private static final int MAGIC = 0x474C4246;
+    private static final int HEADER_SIZE = 24;
+    private static final long MAX_BITS = (Integer.MAX_VALUE - HEADER_SIZE) / Long.BYTES * (long) Long.SIZE;
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private final MappedByteBuffer buffer;
+    private final int hashCount;
+    private final long bitCount;
+
+    private BloomFilter(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+        this.hashCount = buffer.getInt(4);
+        this.bitCount = buffer.getLong(8);
+    }
+
+    /**
+     * Create an empty filter sized for the expected number of keys, overwriting the file if it exists.
+     */
+    public static BloomFilter create(File file, long expectedKeys, double falsePositiveRate) {
+        final long keys = Math.max(expectedKeys, 1);
+        final double optimalBits = -keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        final long bitCount = Math.min(MAX_BITS, Math.max(Long.SIZE, ((long) Math.ceil(optimalBits) + Long.SIZE - 1) / Long.SIZE * Long.SIZE));
+        final int hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * Math.log(2)));
+
+        file.delete();
+        final MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_WRITE, HEADER_SIZE + bitCount / Byte.SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, hashCount);
+        buffer.putLong(8, bitCount);
+        buffer.putLong(16, 0);
+        return new BloomFilter(buffer);
+    }
+
+    /**
+     * Open an existing filter in read only mode, null if the file does not exist or is not a filter.
+     */
+    public static BloomFilter open(File file) {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        final MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, file.length());
+        if (buffer.getInt(0) != MAGIC || buffer.getLong(8) / Byte.SIZE + HEADER_SIZE != file.length()) {
+            return null;
+        }
+        return new BloomFilter(buffer);
+    }
+
+    private static MappedByteBuffer map(File file, FileChannel.MapMode mode, long size) {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            return channel.map(mode, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map the filter " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Add the key, between its position and limit, the buffer position is not modified.
+     */
+    public void add(ByteBuffer key) {
+        final long hash = hash(key);
+        long combined = hash;
+        final long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = (combined & Long.MAX_VALUE) % bitCount;
+            final int index = HEADER_SIZE + (int) (bit >>> 6) * Long.BYTES;
+            buffer.putLong(index, buffer.getLong(index) | (1L << (bit & 63)));
+            combined += step;
+        }
+        buffer.putLong(16, buffer.getLong(16) + 1);
+    }
+
+    /**
+     * Return false when the key is certainly not in the database, the buffer position is not modified.
+     */
+    public boolean mightContain(ByteBuffer key) {
+        final long hash = hash(key);
+        long combined = hash;
+        final long step = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            final long bit = (combined & Long.MAX_VALUE) % bitCount;
+            if ((buffer.getLong(HEADER_SIZE + (int) (bit >>> 6) * Long.BYTES) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+            combined += step;
+        }
+        return true;
+    }
+
+    /**
+     * Number of keys added to the filter, used to check that the filter matches the database.
+     */
+    public long getKeyCount() {
+        return buffer.getLong(16);
+    }
+
+    /**
+     * Flush the filter to its file.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    private static long hash(ByteBuffer key) {
+        // FNV-1a over the bytes, followed by the murmur3 finalizer for a good avalanche of the high bits
+        long hash = 0xCBF29CE484222325L;
+        for (int i = key.position(); i < key.limit(); i++) {
+            hash ^= key.get(i) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE1A85EC9L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
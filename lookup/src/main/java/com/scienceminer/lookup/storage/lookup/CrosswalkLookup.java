@@ -0,0 +1,295 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.codahale.metrics.Meter;
+import com.scienceminer.lookup.data.CrosswalkData;
+import com.scienceminer.lookup.data.IstexData;
+import com.scienceminer.lookup.data.PmidData;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageGeneration;
+import com.scienceminer.lookup.storage.codec.CrosswalkDataCodec;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.DbiFlags;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+import static org.apache.commons.lang3.StringUtils.lowerCase;
+
+/**
+ * Lookup any identifier (doi, pmid, pmc, pii, istex) -> all the identifiers of the work.
+ * <p>
+ * The crosswalk is built after the other databases are loaded, by joining on the DOI the fatcat, istex, pmid and
+ * unpaywall databases. The full record is stored under each identifier so that it is resolved with a single get.
+ * <p>
+ * The load generations of the fatcat, istex, pmid and unpaywall databases are recorded with the crosswalk: once one
+ * of them is reloaded or receives a change feed, the crosswalk would serve moved or deleted records, so it is
+ * reported as not available until it is built again.
+ */
+public class CrosswalkLookup extends LmdbStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CrosswalkLookup.class);
+
+    public static final String ENV_NAME = "crosswalk";
+
+    public static final String NAME_DOI2IDS = ENV_NAME + "_doi2ids";
+    public static final String NAME_PMID2IDS = ENV_NAME + "_pmid2ids";
+    public static final String NAME_PMC2IDS = ENV_NAME + "_pmc2ids";
+    public static final String NAME_PII2IDS = ENV_NAME + "_pii2ids";
+    public static final String NAME_ISTEX2IDS = ENV_NAME + "_istex2ids";
+
+    private Dbi<ByteBuffer> dbDoiToIds;
+    private Dbi<ByteBuffer> dbPmidToIds;
+    private Dbi<ByteBuffer> dbPmcToIds;
+    private Dbi<ByteBuffer> dbPiiToIds;
+    private Dbi<ByteBuffer> dbIstexToIds;
+
+    /**
+     * Prefix of the key of the load generation of a source database when the crosswalk was built, in the environment
+     * metadata
+     **/
+    public static final String METADATA_SOURCE_LOAD_GENERATION = "sourceLoadGeneration";
+
+    private final boolean integerKeys;
+
+    private volatile boolean available;
+
+    private final StorageGeneration storageGeneration;
+    private List<LmdbStore> sources = Collections.emptyList();
+    private volatile long checkedGeneration;
+    private volatile boolean outdated;
+
+    public CrosswalkLookup(StorageEnvFactory storageEnvFactory) {
+        super(storageEnvFactory, ENV_NAME);
+        storageGeneration = new StorageGeneration(storageEnvFactory::getStorageGeneration);
+
+        dbDoiToIds = this.environment.openDbi(NAME_DOI2IDS, DbiFlags.MDB_CREATE);
+        // same integer keys as the pmid databases
+        integerKeys = formatVersion >= StorageEnvFactory.FORMAT_VERSION_INTEGER_KEYS;
+        if (integerKeys) {
+            dbPmidToIds = openIntegerKeyDbi(NAME_PMID2IDS);
+            dbPmcToIds = openIntegerKeyDbi(NAME_PMC2IDS);
+        } else {
+            dbPmidToIds = this.environment.openDbi(NAME_PMID2IDS, DbiFlags.MDB_CREATE);
+            dbPmcToIds = this.environment.openDbi(NAME_PMC2IDS, DbiFlags.MDB_CREATE);
+        }
+        dbPiiToIds = this.environment.openDbi(NAME_PII2IDS, DbiFlags.MDB_CREATE);
+        dbIstexToIds = this.environment.openDbi(NAME_ISTEX2IDS, DbiFlags.MDB_CREATE);
+
+        available = read(txn -> dbDoiToIds.stat(txn).entries > 0);
+    }
+
+    /**
+     * Rebuild the crosswalk from the content of the other lookups, the previous content is dropped.
+     */
+    public void build(MetadataLookup metadataLookup, IstexIdsLookup istexLookup, PMIdsLookup pmidLookup,
+                      OALookup oaDoiLookup, Meter meter) {
+        // read before joining, a load or a feed applied meanwhile makes the crosswalk outdated
+        final Map<String, Long> loadGenerations = new HashMap<>();
+        for (LmdbStore source : Arrays.asList(metadataLookup, istexLookup, pmidLookup, oaDoiLookup)) {
+            loadGenerations.put(source.getEnvName(), source.getLoadGeneration());
+        }
+
+        try (Txn<ByteBuffer> txn = environment.txnWrite()) {
+            dbDoiToIds.drop(txn);
+            dbPmidToIds.drop(txn);
+            dbPmcToIds.drop(txn);
+            dbPiiToIds.drop(txn);
+            dbIstexToIds.drop(txn);
+            txn.commit();
+        }
+
+        final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
+        final AtomicInteger counter = new AtomicInteger(0);
+
+        metadataLookup.forEachDoi((doi, fatcatIdent) -> {
+            if (counter.get() == batchSize) {
+                transactionWrapper.tx.commit();
+                transactionWrapper.tx.close();
+                transactionWrapper.tx = environment.txnWrite();
+                counter.set(0);
+            }
+
+            final CrosswalkData crosswalkData = join(doi, fatcatIdent, istexLookup.retrieveByDoi(doi),
+                    pmidLookup.retrieveIdsByDoi(doi), oaDoiLookup.retrieveOALinkByDoi(doi));
+            final byte[] value = CrosswalkDataCodec.encode(crosswalkData);
+
+            store(dbDoiToIds, lowerCase(doi), value, transactionWrapper.tx);
+            if (isNotBlank(crosswalkData.getPmid())) {
+                storeIdentifier(dbPmidToIds, crosswalkData.getPmid(), PMIdsLookup.toPmidKey(crosswalkData.getPmid()),
+                        value, transactionWrapper.tx);
+            }
+            if (isNotBlank(crosswalkData.getPmcid())) {
+                storeIdentifier(dbPmcToIds, crosswalkData.getPmcid(), PMIdsLookup.toPmcKey(crosswalkData.getPmcid()),
+                        value, transactionWrapper.tx);
+            }
+            if (isNotBlank(crosswalkData.getPii())) {
+                store(dbPiiToIds, lowerCase(crosswalkData.getPii()), value, transactionWrapper.tx);
+            }
+            if (isNotBlank(crosswalkData.getIstexId())) {
+                store(dbIstexToIds, crosswalkData.getIstexId(), value, transactionWrapper.tx);
+            }
+            meter.mark();
+            counter.incrementAndGet();
+        });
+        for (Map.Entry<String, Long> loadGeneration : loadGenerations.entrySet()) {
+            storageMetadata.put(transactionWrapper.tx, METADATA_SOURCE_LOAD_GENERATION + "_" + loadGeneration.getKey(),
+                    String.valueOf(loadGeneration.getValue()).getBytes(UTF_8));
+        }
+        transactionWrapper.tx.commit();
+        transactionWrapper.tx.close();
+
+        available = read(txn -> dbDoiToIds.stat(txn).entries > 0);
+        outdated = false;
+        LOGGER.info("Cross checking number of records processed: " + meter.getCount());
+    }
+
+    /**
+     * Merge the identifiers of the different sources, the istex identifiers take precedence over the pubmed ones
+     * as when injecting them in the response.
+     */
+    protected static CrosswalkData join(String doi, String fatcatIdent, IstexData istexData, PmidData pmidData, String oaLink) {
+        final CrosswalkData crosswalkData = new CrosswalkData();
+        crosswalkData.setDoi(doi);
+        crosswalkData.setFatcatIdent(fatcatIdent);
+        crosswalkData.setOaLink(oaLink);
+
+        if (istexData != null) {
+            crosswalkData.setIstexId(istexData.getIstexId());
+            crosswalkData.setArk(istexData.getFirstArk());
+            crosswalkData.setPmid(istexData.getFirstPmid());
+            crosswalkData.setPmcid(istexData.getFirstPmc());
+            crosswalkData.setMesh(istexData.getFirstMesh());
+            crosswalkData.setPii(istexData.getFirstPii());
+        }
+
+        if (pmidData != null) {
+            if (crosswalkData.getPmid() == null && isNotBlank(pmidData.getPmid())) {
+                crosswalkData.setPmid(pmidData.getPmid());
+            }
+            if (crosswalkData.getPmcid() == null && isNotBlank(pmidData.getPmcid())) {
+                crosswalkData.setPmcid(pmidData.getPmcid());
+            }
+        }
+        return crosswalkData;
+    }
+
+    private void store(Dbi<ByteBuffer> db, String key, byte[] value, Txn<ByteBuffer> tx) {
+        try {
+            put(db, tx, key, value);
+        } catch (Exception e) {
+            LOGGER.warn("Some serious issues when writing on LMDB database "
+                    + db.toString() + " key: " + key, e);
+        }
+    }
+
+    private void storeIdentifier(Dbi<ByteBuffer> db, String identifier, int key, byte[] value, Txn<ByteBuffer> tx) {
+        if (!integerKeys) {
+            store(db, identifier, value, tx);
+            return;
+        }
+        if (key < 0) {
+            LOGGER.warn("Invalid identifier, not stored in " + new String(db.getName(), UTF_8) + ": " + identifier);
+            return;
+        }
+        try {
+            put(db, tx, key, value);
+        } catch (Exception e) {
+            LOGGER.warn("Some serious issues when writing on LMDB database "
+                    + db.toString() + " key: " + key, e);
+        }
+    }
+
+    /**
+     * Follow the loads and change feeds applied to these databases, see {@link #isAvailable()}.
+     */
+    public void setSources(LmdbStore... sources) {
+        this.sources = Arrays.asList(sources);
+        this.checkedGeneration = storageGeneration.get();
+        this.outdated = isOutdated();
+    }
+
+    /**
+     * Return true when the crosswalk has been built, and none of the followed databases was loaded or received a
+     * change feed since then.
+     */
+    public boolean isAvailable() {
+        if (!available) {
+            return false;
+        }
+        final long generation = storageGeneration.get();
+        if (generation != checkedGeneration) {
+            synchronized (this) {
+                if (generation != checkedGeneration) {
+                    outdated = isOutdated();
+                    checkedGeneration = generation;
+                }
+            }
+        }
+        return !outdated;
+    }
+
+    private boolean isOutdated() {
+        for (LmdbStore source : sources) {
+            final Long builtGeneration = storageMetadata.getLong(METADATA_SOURCE_LOAD_GENERATION + "_" + source.getEnvName());
+            if (source.getLoadGeneration() != (builtGeneration == null ? 0 : builtGeneration)) {
+                if (!outdated) {
+                    LOGGER.warn("The database " + source.getEnvName() + " was loaded or received a change feed after "
+                            + "the crosswalk was built, it is not used until it is built again.");
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public CrosswalkData retrieveByDoi(String doi) {
+        return get(dbDoiToIds, lowerCase(doi), CrosswalkDataCodec::decode);
+    }
+
+    public CrosswalkData retrieveByPmid(String pmid) {
+        if (!integerKeys) {
+            return get(dbPmidToIds, pmid, CrosswalkDataCodec::decode);
+        }
+        final int key = PMIdsLookup.toPmidKey(pmid);
+        return key < 0 ? null : get(dbPmidToIds, key, CrosswalkDataCodec::decode);
+    }
+
+    public CrosswalkData retrieveByPmc(String pmc) {
+        if (!integerKeys) {
+            return get(dbPmcToIds, pmc, CrosswalkDataCodec::decode);
+        }
+        final int key = PMIdsLookup.toPmcKey(pmc);
+        return key < 0 ? null : get(dbPmcToIds, key, CrosswalkDataCodec::decode);
+    }
+
+    public CrosswalkData retrieveByPii(String pii) {
+        return get(dbPiiToIds, lowerCase(pii), CrosswalkDataCodec::decode);
+    }
+
+    public CrosswalkData retrieveByIstexId(String istexId) {
+        return get(dbIstexToIds, istexId, CrosswalkDataCodec::decode);
+    }
+
+    public Map<String, Long> getSize() {
+        Map<String, Long> size = new HashMap<>();
+        read(txn -> {
+            size.put(NAME_DOI2IDS, dbDoiToIds.stat(txn).entries);
+            size.put(NAME_PMID2IDS, dbPmidToIds.stat(txn).entries);
+            size.put(NAME_PMC2IDS, dbPmcToIds.stat(txn).entries);
+            size.put(NAME_PII2IDS, dbPiiToIds.stat(txn).entries);
+            size.put(NAME_ISTEX2IDS, dbIstexToIds.stat(txn).entries);
+            return size;
+        });
+
+        return size;
+    }
+}
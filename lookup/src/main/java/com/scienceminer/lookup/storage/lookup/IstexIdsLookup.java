@@ -3,9 +3,9 @@ package com.scienceminer.lookup.storage.lookup;
 import com.codahale.metrics.Meter;
 import com.google.inject.servlet.ServletScopes;
 import com.scienceminer.lookup.data.IstexData;
-import com.scienceminer.lookup.exception.ServiceOverloadedException;
 import com.scienceminer.lookup.reader.IstexIdsReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.codec.IstexDataCodec;
 import com.scienceminer.lookup.utils.BinarySerialiser;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
@@ -22,7 +22,6 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.scienceminer.lookup.web.resource.DataController.DEFAULT_MAX_SIZE_LIST;
-import static java.nio.ByteBuffer.allocateDirect;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.lowerCase;
 
@@ -32,11 +31,10 @@ import static org.apache.commons.lang3.StringUtils.lowerCase;
  * - istexID -> doi, pmid, ark, etc...
  * - pii -> doi, istex ID, pmid, ark, etc...
  */
-public class IstexIdsLookup {
+public class IstexIdsLookup extends LmdbStore {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(IstexIdsLookup.class);
 
-    protected Env<ByteBuffer> environment;
     protected Dbi<ByteBuffer> dbDoiToIds;
     protected Dbi<ByteBuffer> dbIstexToIds;
     protected Dbi<ByteBuffer> dbPiiToIds;
@@ -47,23 +45,23 @@ public class IstexIdsLookup {
     public static final String NAME_ISTEX2IDS = ENV_NAME + "_istex2ids";
     public static final String NAME_PII2IDS = ENV_NAME + "_pii2ids";
 
-    private final int batchSize;
-
     public IstexIdsLookup(StorageEnvFactory storageEnvFactory) {
-        this.environment = storageEnvFactory.getEnv(ENV_NAME);
-        batchSize = storageEnvFactory.getConfiguration().getBatchSize();
+        super(storageEnvFactory, ENV_NAME);
 
-        dbDoiToIds = this.environment.openDbi(NAME_DOI2IDS, DbiFlags.MDB_CREATE);
-        dbIstexToIds = this.environment.openDbi(NAME_ISTEX2IDS, DbiFlags.MDB_CREATE);
-        dbPiiToIds = this.environment.openDbi(NAME_PII2IDS, DbiFlags.MDB_CREATE);
+        dbDoiToIds = withFilter(this.environment.openDbi(NAME_DOI2IDS, DbiFlags.MDB_CREATE));
+        dbIstexToIds = withFilter(this.environment.openDbi(NAME_ISTEX2IDS, DbiFlags.MDB_CREATE));
+        dbPiiToIds = withFilter(this.environment.openDbi(NAME_PII2IDS, DbiFlags.MDB_CREATE));
     }
 
-    public void loadFromFile(InputStream is, IstexIdsReader reader, Meter metric) {
+    public void loadFromFile(InputStream is, IstexIdsReader reader, LoadPipeline pipeline, Meter metric) {
+        dropFilters();
+        pipeline.setSkipLines(getResumeLine());
         final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
         final AtomicInteger counter = new AtomicInteger(0);
 
-        reader.load(is, istexData -> {
+        pipeline.run(is, reader::parse, istexData -> {
                     if (counter.get() == batchSize) {
+                        saveLoadCheckpoint(transactionWrapper.tx, pipeline.getLineIndex(), metric.getCount());
                         transactionWrapper.tx.commit();
                         transactionWrapper.tx.close();
                         transactionWrapper.tx = environment.txnWrite();
@@ -94,8 +92,11 @@ public class IstexIdsLookup {
                     counter.incrementAndGet();
                 }
         );
+        clearLoadCheckpoint(transactionWrapper.tx);
         transactionWrapper.tx.commit();
         transactionWrapper.tx.close();
+        finishBulkLoad();
+        buildFilters();
 
         LOGGER.info("Cross checking number of records processed: " + metric.getCount());
     }
@@ -138,87 +139,49 @@ public class IstexIdsLookup {
 
     public Map<String, Long> getSize() {
         Map<String, Long> size = new HashMap<>();
-        try (final Txn<ByteBuffer> txn = this.environment.txnRead()) {
+        read(txn -> {
             size.put(NAME_DOI2IDS, dbDoiToIds.stat(txn).entries);
             size.put(NAME_ISTEX2IDS, dbIstexToIds.stat(txn).entries);
             size.put(NAME_PII2IDS, dbPiiToIds.stat(txn).entries);
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            return size;
+        });
 
         return size;
     }
 
     private void store(Dbi<ByteBuffer> db, String key, IstexData value, Txn<ByteBuffer> tx) {
         try {
-            final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-            keyBuffer.put(BinarySerialiser.serialize(key)).flip();
-            final byte[] serializedValue = BinarySerialiser.serialize(value);
-            final ByteBuffer valBuffer = allocateDirect(serializedValue.length);
-            valBuffer.put(serializedValue).flip();
-            db.put(tx, keyBuffer, valBuffer);
+            put(db, tx, key, encode(value));
         } catch (Exception e) {
             LOGGER.warn("Some serious issues when writing on LMDB database "
                     + db.toString() + " key: " + key + ", value: " + value, e);
         }
     }
 
-    public IstexData retrieveByDoi(String doi) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        IstexData record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(lowerCase(doi))).flip();
-            cachedData = dbDoiToIds.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (IstexData) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve ISTEX identifiers by doi:  " + doi, e);
+    private byte[] encode(IstexData value) {
+        if (formatVersion < StorageEnvFactory.FORMAT_VERSION_COMPACT_VALUES) {
+            return BinarySerialiser.serialize(value);
         }
+        return IstexDataCodec.encode(value);
+    }
 
-        return record;
+    private IstexData decode(ByteBuffer value) {
+        if (formatVersion < StorageEnvFactory.FORMAT_VERSION_COMPACT_VALUES) {
+            return (IstexData) BinarySerialiser.deserialize(value);
+        }
+        return IstexDataCodec.decode(value);
+    }
 
+    public IstexData retrieveByDoi(String doi) {
+        return get(dbDoiToIds, lowerCase(doi), this::decode);
     }
 
     public IstexData retrieveByIstexId(String istexId) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        IstexData record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(istexId)).flip();
-            cachedData = dbIstexToIds.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (IstexData) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve ISTEX identifiers by istexId:  " + istexId, e);
-        }
-
-        return record;
+        return get(dbIstexToIds, istexId, this::decode);
     }
 
     public IstexData retrieveByPii(String pii) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        IstexData record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(lowerCase(pii))).flip();
-            cachedData = dbPiiToIds.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (IstexData) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve ISTEX identifiers by pii:  " + pii, e);
-        }
-
-        return record;
+        return get(dbPiiToIds, lowerCase(pii), this::decode);
     }
 
     public List<Pair<String, IstexData>> retrieveList_doiToIds(Integer total) {
@@ -240,22 +203,21 @@ public class IstexIdsLookup {
         }
 
         List<Pair<String, IstexData>> values = new ArrayList<>();
-        int counter = 0;
+        final int max = total;
 
-        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+        read(txn -> {
+            int counter = 0;
             try (CursorIterator<ByteBuffer> it = db.iterate(txn, KeyRange.all())) {
                 for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
-                    values.add(new ImmutablePair<>((String) BinarySerialiser.deserialize(kv.key()), (IstexData) BinarySerialiser.deserialize(kv.val())));
-                    if (counter == total) {
-                        txn.close();
+                    values.add(new ImmutablePair<>(decodeKey(kv.key()), decode(kv.val())));
+                    if (counter == max) {
                         break;
                     }
                     counter++;
                 }
             }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            return values;
+        });
 
         return values;
     }
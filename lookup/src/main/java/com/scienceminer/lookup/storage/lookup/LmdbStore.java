@@ -0,0 +1,568 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.scienceminer.lookup.exception.ServiceOverloadedException;
+import com.scienceminer.lookup.storage.RequestTransaction;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageGeneration;
+import com.scienceminer.lookup.storage.StorageMetadata;
+import com.scienceminer.lookup.utils.BinarySerialiser;
+import com.scienceminer.lookup.utils.KeyEncoder;
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Common base of the LMDB backed lookups.
+ * <p>
+ * Key and value buffers are direct buffers confined to the calling thread and reused across calls,
+ * values are decoded straight from the memory mapped buffer returned by LMDB, so a lookup does not allocate
+ * anything beyond the decoded object. All the read accesses go through {@link #read(Function)} which takes care of
+ * translating a full reader table into a {@link ServiceOverloadedException}.
+ * <p>
+ * Databases registered with {@link #withFilter(Dbi)} get a Bloom filter of their keys, stored in the environment
+ * directory and rebuilt by {@link #buildFilters()} at the end of each load: the keys rejected by the filter are
+ * answered as missing before opening any transaction. The filters are loaded again once the environment or their files
+ * are written, e.g. by a change feed applied by another process, so that the keys added are not filtered out.
+ */
+public abstract class LmdbStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LmdbStore.class);
+
+    private static final int INITIAL_VALUE_BUFFER_SIZE = 4096;
+
+    /**
+     * Prefix of the key of the last change feed position applied to a store, in the environment metadata
+     **/
+    public static final String METADATA_FEED_POSITION = "feedPosition";
+
+    /**
+     * Prefix of the key of the checkpoint of the load of a store, in the environment metadata
+     **/
+    public static final String METADATA_LOAD_CHECKPOINT = "loadCheckpoint";
+
+    /**
+     * Prefix of the key of the number of loads and change feeds applied to a store, in the environment metadata
+     **/
+    public static final String METADATA_LOAD_GENERATION = "loadGeneration";
+
+    protected Env<ByteBuffer> environment;
+
+    protected int batchSize;
+
+    protected int formatVersion = StorageEnvFactory.CURRENT_FORMAT_VERSION;
+
+    protected StorageMetadata storageMetadata;
+
+    private String envName;
+
+    /**
+     * Directory of the sorted runs, when the store is loaded in bulk
+     **/
+    private File bulkDirectory;
+    private final Map<Dbi<ByteBuffer>, SortedBulkWriter> bulkWriters = new LinkedHashMap<>();
+
+    private final Set<Dbi<ByteBuffer>> integerKeyDbis = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private File filterDirectory;
+    private final List<Dbi<ByteBuffer>> filteredDbis = new ArrayList<>();
+    private final Map<Dbi<ByteBuffer>, BloomFilter> filters = new ConcurrentHashMap<>();
+    private final Set<Dbi<ByteBuffer>> ignoredFilters = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private StorageGeneration filtersState;
+    private volatile long loadedFiltersState;
+
+    /**
+     * Input of the load, recorded in its checkpoints, and records loaded before the load was resumed
+     **/
+    private String loadInput;
+    private boolean resumeLoad;
+    private long resumedRecords;
+
+    private final ThreadLocal<ByteBuffer> keyBuffer = new ThreadLocal<>();
+    private final ThreadLocal<ByteBuffer> valueBuffer = new ThreadLocal<>();
+
+    /**
+     * Decode a value directly from the buffer returned by LMDB. The buffer is only valid
+     * within the read transaction and must not escape the decoder.
+     */
+    @FunctionalInterface
+    public interface ValueDecoder<T> {
+        T decode(ByteBuffer value) throws Exception;
+    }
+
+    protected LmdbStore() {
+    }
+
+    protected LmdbStore(StorageEnvFactory storageEnvFactory, String envName) {
+        this.environment = storageEnvFactory.getEnv(envName);
+        this.batchSize = storageEnvFactory.getConfiguration().getBatchSize();
+        this.formatVersion = storageEnvFactory.getFormatVersion(envName);
+        this.storageMetadata = storageEnvFactory.getMetadata(envName);
+        this.envName = envName;
+        this.filterDirectory = storageEnvFactory.getEnvDirectory(envName);
+        if (filterDirectory != null) {
+            this.filtersState = new StorageGeneration(this::readFiltersState);
+            this.loadedFiltersState = filtersState.get();
+        }
+        if (storageEnvFactory.isBulkLoad()) {
+            this.bulkDirectory = new File(storageEnvFactory.getStoragePath(), envName + ".bulk");
+        }
+    }
+
+    /**
+     * Open (or create) a database whose keys are native integers, ordered numerically by LMDB.
+     */
+    protected Dbi<ByteBuffer> openIntegerKeyDbi(String name) {
+        final Dbi<ByteBuffer> db = environment.openDbi(name, DbiFlags.MDB_CREATE, DbiFlags.MDB_INTEGERKEY);
+        integerKeyDbis.add(db);
+        return db;
+    }
+
+    /**
+     * Register the database for a Bloom filter of its keys, and load the filter when it exists and matches
+     * the content of the database.
+     */
+    protected Dbi<ByteBuffer> withFilter(Dbi<ByteBuffer> db) {
+        filteredDbis.add(db);
+        if (filterDirectory == null) {
+            return db;
+        }
+        loadFilter(db);
+        return db;
+    }
+
+    private void loadFilter(Dbi<ByteBuffer> db) {
+        final File file = filterFile(db);
+        final BloomFilter filter = BloomFilter.open(file);
+        if (filter == null) {
+            filters.remove(db);
+            if (!file.exists()) {
+                ignoredFilters.remove(db);
+            }
+            return;
+        }
+        // counted in a transaction of its own, the one of the current request may be older than the filter
+        final long entries;
+        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+            entries = db.stat(txn).entries;
+        }
+        if (filter.getKeyCount() == entries) {
+            filters.put(db, filter);
+            ignoredFilters.remove(db);
+        } else {
+            filters.remove(db);
+            if (ignoredFilters.add(db)) {
+                LOGGER.warn("The filter " + file.getPath() + " does not match the database, it is ignored. ");
+            }
+        }
+    }
+
+    /**
+     * Return a value changing once the environment is written or a filter file is written or removed. While a filter
+     * file exists but is not loaded, e.g. it was read while being built, the value changes at each call so that the
+     * filter is loaded again on the next check. It is read through {@link StorageGeneration}, at most once per second.
+     */
+    private long readFiltersState() {
+        long state = environment.info().lastTransactionId;
+        for (Dbi<ByteBuffer> db : filteredDbis) {
+            final File file = filterFile(db);
+            state = 31 * state + file.lastModified();
+            state = 31 * state + file.length();
+            if (!filters.containsKey(db) && file.exists()) {
+                state = 31 * state + System.nanoTime();
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Load the filters again when the environment or the filter files changed since they were loaded. While the
+     * filters are rebuilt, their files are missing or do not match the number of keys of the databases yet, which
+     * are then read without filter.
+     */
+    private synchronized void reloadFilters(long state) {
+        if (state == loadedFiltersState) {
+            return;
+        }
+        for (Dbi<ByteBuffer> db : filteredDbis) {
+            loadFilter(db);
+        }
+        loadedFiltersState = state;
+    }
+
+    /**
+     * Drop the filters of the registered databases, to be called before writing in them.
+     */
+    protected void dropFilters() {
+        for (Dbi<ByteBuffer> db : filteredDbis) {
+            filters.remove(db);
+            if (filterDirectory != null) {
+                FileUtils.deleteQuietly(filterFile(db));
+            }
+        }
+    }
+
+    /**
+     * Build the filters of the registered databases from their keys, to be called once the load is finished.
+     */
+    protected void buildFilters() {
+        if (filterDirectory == null) {
+            return;
+        }
+        for (Dbi<ByteBuffer> db : filteredDbis) {
+            final File file = filterFile(db);
+            read(txn -> {
+                final BloomFilter filter = BloomFilter.create(file, db.stat(txn).entries, BloomFilter.DEFAULT_FALSE_POSITIVE_RATE);
+                try (CursorIterator<ByteBuffer> it = db.iterate(txn, KeyRange.all())) {
+                    for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
+                        filter.add(kv.key());
+                    }
+                }
+                filter.force();
+                filters.put(db, filter);
+                LOGGER.info("Filter built for " + filter.getKeyCount() + " keys of " + new String(db.getName(), UTF_8));
+                return filter;
+            });
+        }
+    }
+
+    private File filterFile(Dbi<ByteBuffer> db) {
+        return new File(filterDirectory, new String(db.getName(), UTF_8) + ".bloom");
+    }
+
+    private boolean isFilteredOut(Dbi<ByteBuffer> db, ByteBuffer encodedKey) {
+        if (filtersState != null && !filteredDbis.isEmpty()) {
+            final long state = filtersState.get();
+            if (state != loadedFiltersState) {
+                reloadFilters(state);
+            }
+        }
+        final BloomFilter filter = filters.get(db);
+        return filter != null && !filter.mightContain(encodedKey);
+    }
+
+    /**
+     * Run the operation within a read transaction, the one of the current {@link RequestTransaction} if a scope
+     * is open on the calling thread, a dedicated one otherwise.
+     */
+    protected <T> T read(Function<Txn<ByteBuffer>, T> operation) {
+        try {
+            final Txn<ByteBuffer> requestTxn = RequestTransaction.current(environment);
+            if (requestTxn != null) {
+                return operation.apply(requestTxn);
+            }
+            try (Txn<ByteBuffer> txn = environment.txnRead()) {
+                return operation.apply(txn);
+            }
+        } catch (Env.ReadersFullException e) {
+            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
+        }
+    }
+
+    /**
+     * Fetch the value associated to the key and decode it. Returns null when the key is not found or the value
+     * cannot be decoded.
+     */
+    protected <T> T get(Dbi<ByteBuffer> db, String key, ValueDecoder<T> decoder) {
+        final ByteBuffer encodedKey = keyBuffer(key);
+        if (isFilteredOut(db, encodedKey)) {
+            return null;
+        }
+        return read(txn -> get(txn, db, encodedKey, key, decoder));
+    }
+
+    protected <T> T get(Txn<ByteBuffer> txn, Dbi<ByteBuffer> db, String key, ValueDecoder<T> decoder) {
+        final ByteBuffer encodedKey = keyBuffer(key);
+        if (isFilteredOut(db, encodedKey)) {
+            return null;
+        }
+        return get(txn, db, encodedKey, key, decoder);
+    }
+
+    protected <T> T get(Dbi<ByteBuffer> db, int key, ValueDecoder<T> decoder) {
+        final ByteBuffer encodedKey = keyBuffer(key);
+        if (isFilteredOut(db, encodedKey)) {
+            return null;
+        }
+        return read(txn -> get(txn, db, encodedKey, key, decoder));
+    }
+
+    private <T> T get(Txn<ByteBuffer> txn, Dbi<ByteBuffer> db, ByteBuffer encodedKey, Object key, ValueDecoder<T> decoder) {
+        try {
+            final ByteBuffer cachedData = db.get(txn, encodedKey);
+            if (cachedData != null) {
+                return decoder.decode(cachedData);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Cannot retrieve record from " + new String(db.getName(), UTF_8) + " with key: " + key, e);
+        }
+        return null;
+    }
+
+    /**
+     * Return the end of the keys starting with the prefix, in key order, at most max of them. Nothing is found in
+     * the storage built before the format version was recorded, whose keys cannot be scanned by prefix.
+     */
+    protected List<String> getKeySuffixes(Dbi<ByteBuffer> db, String prefix, int max) {
+        final List<String> suffixes = new ArrayList<>();
+        if (formatVersion == StorageEnvFactory.FORMAT_VERSION_FST_KEYS) {
+            return suffixes;
+        }
+        return read(txn -> {
+            try (CursorIterator<ByteBuffer> it = db.iterate(txn, KeyRange.atLeast(keyBuffer(prefix)))) {
+                for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
+                    final String key = decodeKey(kv.key());
+                    if (!key.startsWith(prefix) || suffixes.size() == max) {
+                        break;
+                    }
+                    suffixes.add(key.substring(prefix.length()));
+                }
+            }
+            return suffixes;
+        });
+    }
+
+    /**
+     * Write the record in the transaction or, when loading in bulk, keep it for {@link #finishBulkLoad()}.
+     */
+    protected void put(Dbi<ByteBuffer> db, Txn<ByteBuffer> tx, String key, byte[] value) {
+        put(db, tx, keyBuffer(key), value);
+    }
+
+    protected void put(Dbi<ByteBuffer> db, Txn<ByteBuffer> tx, int key, byte[] value) {
+        put(db, tx, keyBuffer(key), value);
+    }
+
+    private void put(Dbi<ByteBuffer> db, Txn<ByteBuffer> tx, ByteBuffer encodedKey, byte[] value) {
+        if (bulkDirectory != null) {
+            final byte[] keyBytes = new byte[encodedKey.remaining()];
+            encodedKey.get(keyBytes);
+            bulkWriters.computeIfAbsent(db, d -> new SortedBulkWriter(new File(bulkDirectory, new String(d.getName(), UTF_8)),
+                    integerKeyDbis.contains(d) ? SortedBulkWriter.INTEGER_KEY_ORDER : SortedBulkWriter.KEY_ORDER))
+                    .add(keyBytes, value);
+            return;
+        }
+        db.put(tx, encodedKey, valueBuffer(value));
+    }
+
+    /**
+     * Delete the record in the transaction, return false if the key was not found. Not supported when loading
+     * in bulk.
+     */
+    protected boolean delete(Dbi<ByteBuffer> db, Txn<ByteBuffer> tx, String key) {
+        if (bulkDirectory != null) {
+            throw new IllegalStateException("Records cannot be deleted when loading in bulk. ");
+        }
+        return db.delete(tx, keyBuffer(key));
+    }
+
+    /**
+     * Return the position (e.g. file name or changelog index) of the last change feed applied to the store,
+     * null if no change feed has been applied.
+     */
+    public String getFeedPosition() {
+        return storageMetadata.getString(METADATA_FEED_POSITION + "_" + envName);
+    }
+
+    /**
+     * Name of the environment of the store, the one of its metadata when the environments are merged.
+     */
+    public String getEnvName() {
+        return envName;
+    }
+
+    protected void setFeedPosition(Txn<ByteBuffer> tx, String position) {
+        storageMetadata.put(tx, METADATA_FEED_POSITION + "_" + envName, position.getBytes(UTF_8));
+        incrementLoadGeneration(tx);
+    }
+
+    /**
+     * Return the number of loads and change feeds applied to the store, 0 if none was recorded.
+     */
+    public long getLoadGeneration() {
+        final Long generation = storageMetadata.getLong(METADATA_LOAD_GENERATION + "_" + envName);
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * Count a load or a change feed of the store, within its last transaction.
+     */
+    protected void incrementLoadGeneration(Txn<ByteBuffer> tx) {
+        final byte[] value = storageMetadata.get(tx, METADATA_LOAD_GENERATION + "_" + envName);
+        final long generation = value == null ? 0 : Long.parseLong(new String(value, UTF_8));
+        storageMetadata.put(tx, METADATA_LOAD_GENERATION + "_" + envName, String.valueOf(generation + 1).getBytes(UTF_8));
+    }
+
+    /**
+     * Record the checkpoints of the next load under the name of its input, and resume it from the last checkpoint
+     * of this input if asked.
+     */
+    public void setLoadInput(String input, boolean resume) {
+        this.loadInput = input;
+        this.resumeLoad = resume;
+    }
+
+    /**
+     * Return the last checkpoint of an interrupted load of the store, null if there is none.
+     */
+    public LoadCheckpoint getLoadCheckpoint() {
+        return LoadCheckpoint.parse(storageMetadata.getString(METADATA_LOAD_CHECKPOINT + "_" + envName));
+    }
+
+    /**
+     * Return the number of input lines to skip to resume the load from its last checkpoint, 0 when the load is
+     * not resumed or has no checkpoint.
+     */
+    protected long getResumeLine() {
+        resumedRecords = 0;
+        final LoadCheckpoint checkpoint = getLoadCheckpoint();
+        if (!resumeLoad) {
+            if (checkpoint != null) {
+                LOGGER.warn("The interrupted load of " + checkpoint.getInput() + " is restarted from the beginning.");
+            }
+            return 0;
+        }
+        if (bulkDirectory != null) {
+            throw new IllegalStateException("A load in bulk cannot be resumed.");
+        }
+        if (checkpoint == null) {
+            LOGGER.warn("No checkpoint of an interrupted load of " + envName + ", loading from the beginning.");
+            return 0;
+        }
+        if (!checkpoint.getInput().equals(loadInput)) {
+            throw new IllegalStateException("The last checkpoint of " + envName + " is a load of " + checkpoint.getInput()
+                    + ", not of " + loadInput + ".");
+        }
+        LOGGER.info("Resuming the load of " + loadInput + " after " + checkpoint.getLines() + " lines, "
+                + checkpoint.getRecords() + " records loaded.");
+        resumedRecords = checkpoint.getRecords();
+        return checkpoint.getLines();
+    }
+
+    /**
+     * Record the position of the load in the transaction about to be committed: all the records of the input lines
+     * before this one are in the transaction. Nothing is recorded when loading in bulk, the records being written
+     * at the end of the load.
+     *
+     * @param records records loaded since the start, or the resume, of the load
+     */
+    protected void saveLoadCheckpoint(Txn<ByteBuffer> tx, long lines, long records) {
+        if (loadInput == null || bulkDirectory != null) {
+            return;
+        }
+        final LoadCheckpoint checkpoint = new LoadCheckpoint(loadInput, lines, resumedRecords + records);
+        storageMetadata.put(tx, METADATA_LOAD_CHECKPOINT + "_" + envName, checkpoint.toString().getBytes(UTF_8));
+    }
+
+    /**
+     * Remove the checkpoint within the last transaction of the load, and count the load.
+     */
+    protected void clearLoadCheckpoint(Txn<ByteBuffer> tx) {
+        storageMetadata.delete(tx, METADATA_LOAD_CHECKPOINT + "_" + envName);
+        incrementLoadGeneration(tx);
+    }
+
+    /**
+     * Return true if the change feed position comes after the last applied one. Positions are compared
+     * as numbers when both are numeric (changelog indexes), as strings otherwise (dated file names).
+     */
+    protected boolean isNewFeedPosition(String position) {
+        final String appliedPosition = getFeedPosition();
+        if (appliedPosition == null) {
+            return true;
+        }
+        if (position.matches("\\d+") && appliedPosition.matches("\\d+")) {
+            return new BigInteger(position).compareTo(new BigInteger(appliedPosition)) > 0;
+        }
+        return position.compareTo(appliedPosition) > 0;
+    }
+
+    /**
+     * Write the records kept by the bulk load, in key order, then flush the environment to disk. Nothing is done
+     * when the store is not loaded in bulk.
+     */
+    protected void finishBulkLoad() {
+        if (bulkDirectory == null) {
+            return;
+        }
+        for (Map.Entry<Dbi<ByteBuffer>, SortedBulkWriter> entry : bulkWriters.entrySet()) {
+            final String dbName = new String(entry.getKey().getName(), UTF_8);
+            LOGGER.info("Writing the sorted records of " + dbName);
+            final long written = entry.getValue().write(environment, entry.getKey(), batchSize);
+            LOGGER.info(written + " records written in " + dbName);
+        }
+        bulkWriters.clear();
+        environment.sync(true);
+        FileUtils.deleteQuietly(bulkDirectory);
+    }
+
+    /**
+     * Encode the key in the thread confined key buffer, as raw UTF-8 or, for storage built before the format
+     * version was recorded, as FST serialised string. The buffer is valid until the next call from the same thread.
+     */
+    protected ByteBuffer keyBuffer(String key) {
+        final ByteBuffer buffer = clearedKeyBuffer();
+        if (formatVersion == StorageEnvFactory.FORMAT_VERSION_FST_KEYS) {
+            BinarySerialiser.serialize(key, buffer);
+        } else {
+            KeyEncoder.encode(key, buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Encode the integer key in the thread confined key buffer, for the databases opened with
+     * {@link #openIntegerKeyDbi(String)}.
+     */
+    protected ByteBuffer keyBuffer(int key) {
+        final ByteBuffer buffer = clearedKeyBuffer();
+        KeyEncoder.encodeInteger(key, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    private ByteBuffer clearedKeyBuffer() {
+        ByteBuffer buffer = keyBuffer.get();
+        if (buffer == null) {
+            buffer = allocateDirect(environment.getMaxKeySize());
+            keyBuffer.set(buffer);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    protected String decodeKey(ByteBuffer key) {
+        if (formatVersion == StorageEnvFactory.FORMAT_VERSION_FST_KEYS) {
+            return (String) BinarySerialiser.deserialize(key);
+        }
+        return KeyEncoder.decode(key);
+    }
+
+    /**
+     * Copy the value in the thread confined value buffer, which is grown when needed.
+     */
+    protected ByteBuffer valueBuffer(byte[] value) {
+        ByteBuffer buffer = valueBuffer.get();
+        if (buffer == null || buffer.capacity() < value.length) {
+            buffer = allocateDirect(Math.max(value.length, buffer == null ? INITIAL_VALUE_BUFFER_SIZE : buffer.capacity() * 2));
+            valueBuffer.set(buffer);
+        }
+        buffer.clear();
+        buffer.put(value).flip();
+        return buffer;
+    }
+
+    public Env<ByteBuffer> getEnvironment() {
+        return environment;
+    }
+}
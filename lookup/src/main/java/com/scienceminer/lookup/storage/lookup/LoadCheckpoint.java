@@ -0,0 +1,54 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Position of a load committed in the store: the number of lines of the input whose records are all stored, and
+ * the number of records stored. It is saved in the environment metadata with each batch of the load.
+ */
+public class LoadCheckpoint {
+
+    private static final char SEPARATOR = '\t';
+
+    private final String input;
+    private final long lines;
+    private final long records;
+
+    public LoadCheckpoint(String input, long lines, long records) {
+        this.input = input;
+        this.lines = lines;
+        this.records = records;
+    }
+
+    public String getInput() {
+        return input;
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Parse the checkpoint saved with {@link #toString()}, null if there is no checkpoint or it is not valid.
+     */
+    public static LoadCheckpoint parse(String value) {
+        final String[] fields = StringUtils.split(value, SEPARATOR);
+        if (fields == null || fields.length != 3) {
+            return null;
+        }
+        try {
+            return new LoadCheckpoint(fields[2], Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(lines) + SEPARATOR + records + SEPARATOR + input;
+    }
+}
@@ -0,0 +1,303 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Staged pipeline of the loaders: one thread reads the lines of the input, a pool of workers parses and encodes
+ * them into records, and the calling thread writes the records, in the order of the input, so that it remains the
+ * single LMDB writer committing its batches.
+ * <p>
+ * The stages are connected with bounded queues of chunks of lines, the slowest stage then sets the pace of the
+ * load. The throughput of the read and parse stages, and the fill of the queues, are reported in the metric
+ * registry under the name of the pipeline.
+ * <p>
+ * The writer can get the index of the input line of the record it is writing, e.g. to checkpoint the load, and an
+ * interrupted load can be resumed by skipping the lines already loaded.
+ */
+public class LoadPipeline {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadPipeline.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final String name;
+    private final int workers;
+    private final int chunkSize;
+    private final Meter readMeter;
+    private final Meter parseMeter;
+
+    private final BlockingQueue<Chunk<String>> lines;
+    private final BlockingQueue<Chunk<?>> records;
+
+    private long skipLines;
+    private long lineIndex;
+
+    /**
+     * @param workers number of parse/encode workers
+     */
+    public LoadPipeline(MetricRegistry metrics, String name, int workers) {
+        this(metrics, name, workers, DEFAULT_CHUNK_SIZE);
+    }
+
+    public LoadPipeline(MetricRegistry metrics, String name, int workers, int chunkSize) {
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.chunkSize = chunkSize;
+        this.lines = new ArrayBlockingQueue<>(this.workers * 4);
+        this.records = new ArrayBlockingQueue<>(this.workers * 4);
+
+        this.readMeter = metrics.meter(MetricRegistry.name(name, "read"));
+        this.parseMeter = metrics.meter(MetricRegistry.name(name, "parse"));
+        metrics.register(MetricRegistry.name(name, "pendingLineChunks"), (Gauge<Integer>) lines::size);
+        metrics.register(MetricRegistry.name(name, "pendingRecordChunks"), (Gauge<Integer>) records::size);
+    }
+
+    /**
+     * Skip the first lines of the input, without parsing them, e.g. the lines loaded before a load was interrupted.
+     */
+    public void setSkipLines(long skipLines) {
+        this.skipLines = skipLines;
+    }
+
+    /**
+     * Index of the input line of the record being written, counting the skipped lines: to be called by the writer,
+     * this is the number of input lines whose records have all been written before this one.
+     */
+    public long getLineIndex() {
+        return lineIndex;
+    }
+
+    /**
+     * Number of workers to use by default, leaving a core to the reader and one to the writer.
+     */
+    public static int defaultWorkers() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+    }
+
+    /**
+     * Load the input: each line is parsed into a record by the workers, the lines parsed to null are skipped, and
+     * the records are written by the calling thread. Returns when all the records are written.
+     *
+     * @throws RuntimeException the first failure of a stage, the other stages are then stopped
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void run(InputStream input, Function<String, T> parse, Consumer<T> write) {
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        final Thread reader = new Thread(() -> read(input, failure), name + "-reader");
+        threads.add(reader);
+        for (int i = 0; i < workers; i++) {
+            threads.add(new Thread(() -> parse(parse, failure), name + "-worker-" + i));
+        }
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            // the chunks are parsed in any order, they are put back in the order of the input before being written
+            final Map<Long, Chunk<T>> pending = new HashMap<>();
+            long next = 0;
+            int finishedWorkers = 0;
+            while (finishedWorkers < workers) {
+                final Chunk<?> chunk = records.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                checkFailure(failure);
+                if (chunk == null) {
+                    continue;
+                }
+                if (chunk.isEnd()) {
+                    finishedWorkers++;
+                    continue;
+                }
+                pending.put(chunk.sequence, (Chunk<T>) chunk);
+                Chunk<T> ready;
+                while ((ready = pending.remove(next)) != null) {
+                    final long firstLine = skipLines + ready.sequence * chunkSize;
+                    for (int i = 0; i < ready.items.size(); i++) {
+                        lineIndex = firstLine + ready.lines[i];
+                        write.accept(ready.items.get(i));
+                    }
+                    next++;
+                }
+            }
+            if (!pending.isEmpty()) {
+                throw new IllegalStateException("The load ended with " + pending.size() + " chunks not written");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+            throw new IllegalStateException("The load has been interrupted", e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            lines.clear();
+            records.clear();
+        }
+    }
+
+    private void read(InputStream input, AtomicReference<Throwable> failure) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(input, UTF_8), 1 << 16)) {
+            for (long i = 0; i < skipLines; i++) {
+                if (br.readLine() == null) {
+                    throw new IllegalStateException("The input has only " + i + " lines, " + skipLines
+                            + " lines cannot be skipped");
+                }
+            }
+            long sequence = 0;
+            List<String> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = br.readLine()) != null) {
+                chunk.add(line);
+                if (chunk.size() == chunkSize) {
+                    if (!offer(lines, new Chunk<>(sequence++, chunk), failure)) {
+                        return;
+                    }
+                    readMeter.mark(chunk.size());
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                if (!offer(lines, new Chunk<>(sequence, chunk), failure)) {
+                    return;
+                }
+                readMeter.mark(chunk.size());
+            }
+        } catch (IOException e) {
+            LOGGER.error("Some serious error when reading the input file.", e);
+            failure.compareAndSet(null, new UncheckedIOException(e));
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                if (!offer(lines, Chunk.end(), failure)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private <T> void parse(Function<String, T> parse, AtomicReference<Throwable> failure) {
+        try {
+            while (true) {
+                final Chunk<String> chunk = lines.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (failure.get() != null) {
+                    return;
+                }
+                if (chunk == null) {
+                    continue;
+                }
+                if (chunk.isEnd()) {
+                    offer(records, Chunk.end(), failure);
+                    return;
+                }
+                final List<T> parsed = new ArrayList<>(chunk.items.size());
+                final int[] lines = new int[chunk.items.size()];
+                for (int i = 0; i < chunk.items.size(); i++) {
+                    final T record = parse.apply(chunk.items.get(i));
+                    if (record != null) {
+                        lines[parsed.size()] = i;
+                        parsed.add(record);
+                    }
+                }
+                if (!offer(records, new Chunk<>(chunk.sequence, parsed, lines), failure)) {
+                    return;
+                }
+                parseMeter.mark(chunk.items.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Put the chunk in the queue, waiting for room as long as no stage failed.
+     *
+     * @return false if a stage failed
+     */
+    private static <C> boolean offer(BlockingQueue<C> queue, C chunk, AtomicReference<Throwable> failure) {
+        try {
+            while (failure.get() == null) {
+                if (queue.offer(chunk, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+        return false;
+    }
+
+    private static void checkFailure(AtomicReference<Throwable> failure) {
+        final Throwable throwable = failure.get();
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable != null) {
+            throw new IllegalStateException("The load failed", throwable);
+        }
+    }
+
+    /**
+     * Lines or records of consecutive lines of the input, the end of the input is marked with an empty chunk
+     * without sequence. The records keep the index of their line in the chunk.
+     */
+    private static class Chunk<I> {
+        private final long sequence;
+        private final List<I> items;
+        private final int[] lines;
+
+        Chunk(long sequence, List<I> items) {
+            this(sequence, items, null);
+        }
+
+        Chunk(long sequence, List<I> items, int[] lines) {
+            this.sequence = sequence;
+            this.items = items;
+            this.lines = lines;
+        }
+
+        static <I> Chunk<I> end() {
+            return new Chunk<>(-1, Collections.emptyList());
+        }
+
+        boolean isEnd() {
+            return sequence < 0;
+        }
+    }
+}
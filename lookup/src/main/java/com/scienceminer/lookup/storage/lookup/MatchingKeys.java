@@ -0,0 +1,215 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.scienceminer.lookup.data.BlockingFields;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static com.scienceminer.lookup.storage.lookup.MetadataMatching.*;
+import static org.apache.commons.lang3.StringUtils.isBlank;
+
+/**
+ * Blocking keys of the exact matching, looked up in LMDB before searching the matching index: the publication
+ * place of an article (journal, volume, first page), and its title with its first author. The metadata are
+ * normalised (case, accents and punctuation folded) then hashed, so that the keys have a fixed length whatever
+ * the length of the titles: a key is followed by the fatcat ident of each release sharing it, and the releases of
+ * a key are found with a prefix scan.
+ */
+public class MatchingKeys {
+
+    /**
+     * Length of the hexadecimal hash prefix of the keys
+     **/
+    public static final int KEY_LENGTH = 32;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    private static final Pattern FIRST_PAGE_SEPARATORS = Pattern.compile("[,\\- ]");
+    private static final Pattern ISSN = Pattern.compile("\\d{7}[\\dX]");
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private MatchingKeys() {
+    }
+
+    /**
+     * Key of a publication place: the journal, given by its title, its abbreviated title or its ISSN, the volume
+     * and the first page. Null when one of them is empty once normalised.
+     */
+    public static String journalKey(String journal, String volume, String firstPage) {
+        final String issn = normalizeIssn(journal);
+        final String normalizedJournal = issn != null ? issn : normalize(journal);
+        final String normalizedVolume = normalize(volume);
+        final String normalizedPage = firstPage == null ? "" : normalize(FIRST_PAGE_SEPARATORS.split(firstPage.trim(), -1)[0]);
+        if (normalizedJournal.isEmpty() || normalizedVolume.isEmpty() || normalizedPage.isEmpty()) {
+            return null;
+        }
+        return hash("journal", normalizedJournal, normalizedVolume, normalizedPage);
+    }
+
+    /**
+     * Journal keys of a fatcat release, one for each ISSN of its container, for its journal title and for its
+     * abbreviated title.
+     */
+    public static Set<String> journalKeys(BlockingFields fields) {
+        final Set<String> keys = new LinkedHashSet<>();
+        final String volume = fields.getVolume();
+        final String firstPage = fields.getFirstPage();
+        if (isBlank(volume) || isBlank(firstPage)) {
+            return keys;
+        }
+
+        for (String issn : fields.getIssns()) {
+            addKey(keys, issn, volume, firstPage);
+        }
+        addKey(keys, fields.getJournal(), volume, firstPage);
+        addKey(keys, fields.getAbbreviatedJournal(), volume, firstPage);
+        return keys;
+    }
+
+    /**
+     * Key of an article given by its title and the surname of its first author. Null when one of them is empty
+     * once normalised.
+     */
+    public static String titleKey(String title, String firstAuthor) {
+        final String normalizedTitle = normalize(title);
+        final String normalizedAuthor = normalize(firstAuthor);
+        if (normalizedTitle.isEmpty() || normalizedAuthor.isEmpty()) {
+            return null;
+        }
+        return hash("title", normalizedTitle, normalizedAuthor);
+    }
+
+    /**
+     * Title keys of a fatcat release, with its first author, for its title, its title followed by its subtitle
+     * and its original title.
+     */
+    public static Set<String> titleKeys(BlockingFields fields) {
+        final Set<String> keys = new LinkedHashSet<>();
+        final String firstAuthor = fields.getFirstAuthor();
+        if (isBlank(firstAuthor)) {
+            return keys;
+        }
+
+        final String title = fields.getTitle();
+        final String subtitle = fields.getSubtitle();
+        addTitleKey(keys, title, firstAuthor);
+        if (!isBlank(title) && !isBlank(subtitle)) {
+            addTitleKey(keys, title + " " + subtitle, firstAuthor);
+        }
+        addTitleKey(keys, fields.getOriginalTitle(), firstAuthor);
+        return keys;
+    }
+
+    /**
+     * Metadata of the blocking keys of a fatcat release given as a tree, taken from its fields in the matching
+     * index. Null when the release is not in the matching index (e.g. a component). When loading a dump, they are
+     * picked while parsing the release instead, see {@link com.scienceminer.lookup.reader.FatcatJsonReader#parseRelease}.
+     */
+    public static BlockingFields blockingFields(JsonNode release) {
+        final Map<String, Object> document = MetadataIndexer.toIndexDocument(release);
+        if (document == null) {
+            return null;
+        }
+
+        final BlockingFields fields = new BlockingFields();
+        fields.setTitle(release.path("title").asText(null));
+        fields.setSubtitle(release.path("subtitle").asText(null));
+        fields.setOriginalTitle(release.path("original_title").asText(null));
+        fields.setFirstAuthor((String) document.get(INDEX_FIELD_NAME_FIRST_AUTHOR));
+        fields.setJournal((String) document.get(INDEX_FIELD_NAME_JOURNAL_TITLE));
+        fields.setAbbreviatedJournal((String) document.get(INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE));
+        fields.setVolume((String) document.get(INDEX_FIELD_NAME_VOLUME));
+        fields.setFirstPage((String) document.get(INDEX_FIELD_NAME_FIRST_PAGE));
+
+        final JsonNode container = release.get("container");
+        if (container != null && container.isObject()) {
+            for (String field : new String[]{"issnl", "issne", "issnp"}) {
+                addIssn(fields, container.path(field).asText(null));
+                addIssn(fields, container.path("extra").path(field).asText(null));
+            }
+        }
+        return fields;
+    }
+
+    private static void addIssn(BlockingFields fields, String issn) {
+        if (!isBlank(issn)) {
+            fields.addIssn(issn);
+        }
+    }
+
+    private static void addTitleKey(Set<String> keys, String title, String firstAuthor) {
+        final String key = titleKey(title, firstAuthor);
+        if (key != null) {
+            keys.add(key);
+        }
+    }
+
+    private static void addKey(Set<String> keys, String journal, String volume, String firstPage) {
+        if (isBlank(journal)) {
+            return;
+        }
+        final String key = journalKey(journal, volume, firstPage);
+        if (key != null) {
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Lower case, without accents, the words separated by one space and without punctuation.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        final String folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return SEPARATORS.matcher(folded).replaceAll(" ").trim();
+    }
+
+    /**
+     * ISSN in the form 1234-567X, null if the text is not an ISSN.
+     */
+    static String normalizeIssn(String text) {
+        if (text == null) {
+            return null;
+        }
+        final String compact = text.trim().toUpperCase(Locale.ROOT).replace("-", "");
+        if (!ISSN.matcher(compact).matches()) {
+            return null;
+        }
+        return "issn " + compact.substring(0, 4) + "-" + compact.substring(4);
+    }
+
+    static String hash(String... parts) {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        final byte[] bytes = digest.digest();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,335 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.reader.FatcatJsonReader;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.admin.indices.create.CreateIndexRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.get.GetIndexRequest;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.scienceminer.lookup.storage.lookup.MetadataMatching.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.commons.lang3.StringUtils.isNotEmpty;
+
+/**
+ * Build the Elasticsearch index used by {@link MetadataMatching} from the fatcat releases, replacing the node.js
+ * indexer of matching_fatcat. The documents are sent by a bulk processor: several bulks are in flight at the same
+ * time, adding a document blocks while all of them are pending, and the bulks rejected by an overloaded cluster
+ * are retried with an exponential backoff.
+ */
+public class MetadataIndexer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataIndexer.class);
+
+    public static final String INDEX_FIELD_NAME_AUTHOR = "author";
+    public static final String INDEX_FIELD_NAME_ISSUE = "issue";
+    public static final String INDEX_FIELD_NAME_YEAR = "year";
+
+    public static final int DEFAULT_CONCURRENT_BULKS = 4;
+    public static final int DEFAULT_BULK_ACTIONS = 1000;
+
+    private static final int BULK_SIZE_MB = 10;
+    private static final int RETRIES = 8;
+
+    private final RestHighLevelClient client;
+    private final BulkProcessor bulkProcessor;
+    private final String index;
+    private final String type;
+
+    private final Meter indexed;
+    private final Meter failed;
+    private final AtomicInteger pendingBulks = new AtomicInteger(0);
+    private final AtomicReference<String> firstFailure = new AtomicReference<>();
+
+    public MetadataIndexer(LookupConfiguration configuration, MetricRegistry metrics, String name,
+                           int concurrentBulks, int bulkActions) {
+        this.index = configuration.getElastic().getIndex();
+        this.type = configuration.getElastic().getType();
+
+        this.client = new RestHighLevelClient(
+                RestClient.builder(
+                        HttpHost.create(configuration.getElastic().getHost()))
+                        .setRequestConfigCallback(
+                                requestConfigBuilder -> requestConfigBuilder
+                                        .setConnectTimeout(30000)
+                                        .setSocketTimeout(120000))
+                        .setMaxRetryTimeoutMillis(240000));
+
+        this.indexed = metrics.meter(name + ".indexed");
+        this.failed = metrics.meter(name + ".failed");
+        metrics.register(name + ".pendingBulks", (Gauge<Integer>) pendingBulks::get);
+
+        this.bulkProcessor = BulkProcessor.builder(
+                (request, listener) -> client.bulkAsync(request, RequestOptions.DEFAULT, listener),
+                new BulkProcessor.Listener() {
+                    @Override
+                    public void beforeBulk(long executionId, BulkRequest request) {
+                        pendingBulks.incrementAndGet();
+                    }
+
+                    @Override
+                    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                        pendingBulks.decrementAndGet();
+                        int failures = 0;
+                        for (BulkItemResponse item : response) {
+                            if (item.isFailed()) {
+                                failures++;
+                                firstFailure.compareAndSet(null, item.getId() + ": " + item.getFailureMessage());
+                            }
+                        }
+                        indexed.mark(request.numberOfActions() - failures);
+                        failed.mark(failures);
+                    }
+
+                    @Override
+                    public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                        pendingBulks.decrementAndGet();
+                        failed.mark(request.numberOfActions());
+                        LOGGER.error("The bulk of " + request.numberOfActions() + " documents cannot be indexed", failure);
+                        firstFailure.compareAndSet(null, String.valueOf(failure.getMessage()));
+                    }
+                })
+                .setBulkActions(bulkActions)
+                .setBulkSize(new ByteSizeValue(BULK_SIZE_MB, ByteSizeUnit.MB))
+                .setConcurrentRequests(concurrentBulks)
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(TimeValue.timeValueSeconds(1), RETRIES))
+                .build();
+    }
+
+    /**
+     * Create the index with the settings and the mapping of matching_fatcat, when it does not exist or when it
+     * is recreated, in which case the existing one is deleted.
+     */
+    public void prepareIndex(Path settings, Path mapping, boolean recreate) throws IOException {
+        boolean exists = client.indices().exists(new GetIndexRequest().indices(index), RequestOptions.DEFAULT);
+        if (exists && recreate) {
+            client.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT);
+            LOGGER.info("Index " + index + " deleted");
+            exists = false;
+        }
+        if (exists) {
+            LOGGER.info("Appending to the existing index " + index);
+            return;
+        }
+
+        client.indices().create(new CreateIndexRequest(index)
+                .source(new String(Files.readAllBytes(settings), UTF_8), XContentType.JSON), RequestOptions.DEFAULT);
+        client.indices().putMapping(new PutMappingRequest(index)
+                .type(type)
+                .source(new String(Files.readAllBytes(mapping), UTF_8), XContentType.JSON), RequestOptions.DEFAULT);
+        LOGGER.info("Index " + index + " created");
+    }
+
+    /**
+     * Index the releases of the fatcat dump, parsed by the workers of the pipeline which add the documents to
+     * the bulks themselves: the calling thread only paces the pipeline.
+     */
+    public void indexFromFile(InputStream is, FatcatJsonReader reader, LoadPipeline pipeline) {
+        pipeline.run(is, line -> {
+            final JsonNode release = reader.parse(line);
+            if (release != null) {
+                index(release);
+            }
+            return null;
+        }, release -> {
+        });
+    }
+
+    /**
+     * Add the document of the release to the current bulk, blocking while all the concurrent bulks are pending.
+     */
+    public void index(JsonNode release) {
+        final Map<String, Object> document = toIndexDocument(release);
+        if (document == null) {
+            return;
+        }
+        bulkProcessor.add(new IndexRequest(index, type, (String) document.get(INDEX_FIELD_NAME_FATCAT))
+                .source(document));
+    }
+
+    /**
+     * Document of the matching index for a fatcat release, with the fields built by matching_fatcat/main.js, null
+     * when the release is a component of another publication.
+     */
+    public static Map<String, Object> toIndexDocument(JsonNode release) {
+        if (release == null || release.get("ident") == null) {
+            return null;
+        }
+        // component entities are a part of a publication (e.g. a figure with its own DOI)
+        if ("component".equals(text(release, "type")) || "component".equals(text(release, "release_type"))) {
+            return null;
+        }
+
+        final Map<String, Object> document = new LinkedHashMap<>();
+        final List<String> titles = new ArrayList<>();
+        titles.add(text(release, "title"));
+        if (text(release, "subtitle") != null) {
+            titles.add(text(release, "subtitle"));
+        }
+        if (text(release, "original_title") != null) {
+            titles.add(text(release, "original_title"));
+        }
+        document.put(INDEX_FIELD_NAME_TITLE, titles);
+        putIfNotNull(document, INDEX_FIELD_NAME_DOI, text(release.get("ext_ids"), "doi"));
+        document.put(INDEX_FIELD_NAME_FATCAT, "release_" + release.get("ident").asText());
+
+        final JsonNode contribs = release.get("contribs");
+        if (contribs != null && !contribs.isNull()) {
+            final StringBuilder authors = new StringBuilder();
+            for (JsonNode contrib : contribs) {
+                final String surname = text(contrib, "surname");
+                final String rawName = text(contrib, "raw_name");
+                if (contrib.path("index").isNumber() && contrib.get("index").asInt() == 0) {
+                    if (text(contrib, "family") != null) {
+                        putIfNotNull(document, INDEX_FIELD_NAME_FIRST_AUTHOR, surname);
+                    } else if (rawName != null) {
+                        document.put(INDEX_FIELD_NAME_FIRST_AUTHOR, lastToken(rawName));
+                    }
+                }
+                if (surname != null) {
+                    authors.append(surname).append(' ');
+                } else if (rawName != null) {
+                    authors.append(lastToken(rawName)).append(' ');
+                }
+            }
+            document.put(INDEX_FIELD_NAME_AUTHOR, authors.toString().trim());
+        }
+
+        final String pages = text(release, "pages");
+        if (pages != null) {
+            document.put(INDEX_FIELD_NAME_FIRST_PAGE, pages.split("[,\\- ]", -1)[0]);
+        }
+
+        final JsonNode container = release.get("container");
+        if (container != null && !container.isNull()) {
+            putIfNotNull(document, INDEX_FIELD_NAME_JOURNAL_TITLE, text(container, "name"));
+            putIfNotNull(document, INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE, text(container.get("extra"), "abbrev"));
+        } else if (release.get("extra") != null && !release.get("extra").isNull()) {
+            putIfNotNull(document, INDEX_FIELD_NAME_JOURNAL_TITLE, text(release.get("extra"), "container_name"));
+        }
+
+        putIfNotNull(document, INDEX_FIELD_NAME_VOLUME, text(release, "volume"));
+        putIfNotNull(document, INDEX_FIELD_NAME_ISSUE, text(release, "issue"));
+        final JsonNode year = release.get("release_year");
+        if (year != null && year.isNumber() && year.asLong() != 0) {
+            document.put(INDEX_FIELD_NAME_YEAR, year.asLong());
+        }
+
+        final String bibliographic = buildBibliographicField(document, titles);
+        if (!bibliographic.isEmpty()) {
+            document.put(INDEX_FIELD_NAME_BIBLIOGRAPHIC, bibliographic);
+        }
+        return document;
+    }
+
+    /**
+     * Concatenation of the usual bibliographic metadata, the titles being joined with commas.
+     */
+    private static String buildBibliographicField(Map<String, Object> document, List<String> titles) {
+        final StringBuilder sb = new StringBuilder();
+        if (isNotEmpty((String) document.get(INDEX_FIELD_NAME_AUTHOR))) {
+            sb.append(document.get(INDEX_FIELD_NAME_AUTHOR));
+        } else if (isNotEmpty((String) document.get(INDEX_FIELD_NAME_FIRST_AUTHOR))) {
+            sb.append(document.get(INDEX_FIELD_NAME_FIRST_AUTHOR));
+        }
+        sb.append(' ');
+        for (int i = 0; i < titles.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            if (titles.get(i) != null) {
+                sb.append(titles.get(i));
+            }
+        }
+        for (String field : new String[]{INDEX_FIELD_NAME_JOURNAL_TITLE, INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE,
+                INDEX_FIELD_NAME_VOLUME, INDEX_FIELD_NAME_ISSUE, INDEX_FIELD_NAME_FIRST_PAGE, INDEX_FIELD_NAME_YEAR}) {
+            final Object value = document.get(field);
+            if (value != null && isNotEmpty(value.toString())) {
+                sb.append(' ').append(value);
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    /**
+     * Text of the field, null when it is missing, null or empty.
+     */
+    private static String text(JsonNode node, String field) {
+        if (node == null || node.get(field) == null || node.get(field).isNull()) {
+            return null;
+        }
+        final String value = node.get(field).asText();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String lastToken(String name) {
+        final String[] tokens = name.split(" ", -1);
+        return tokens[tokens.length - 1];
+    }
+
+    private static void putIfNotNull(Map<String, Object> document, String field, Object value) {
+        if (value != null) {
+            document.put(field, value);
+        }
+    }
+
+    public long getFailedCount() {
+        return failed.getCount();
+    }
+
+    public String getFirstFailure() {
+        return firstFailure.get();
+    }
+
+    /**
+     * Flush the last bulk, wait for the pending ones and refresh the index.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!bulkProcessor.awaitClose(10, TimeUnit.MINUTES)) {
+                LOGGER.error("Some bulks were still pending after 10 minutes");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            client.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+        } finally {
+            client.close();
+        }
+        LOGGER.info("Indexed " + indexed.getCount() + " documents in " + index + ", " + failed.getCount() + " failed");
+    }
+}
@@ -1,14 +1,19 @@
 package com.scienceminer.lookup.storage.lookup;
 
 import com.codahale.metrics.Meter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.data.BlockingFields;
+import com.scienceminer.lookup.data.FatcatRelease;
 import com.scienceminer.lookup.data.MatchingDocument;
 import com.scienceminer.lookup.exception.NotFoundException;
 import com.scienceminer.lookup.exception.ServiceException;
-import com.scienceminer.lookup.exception.ServiceOverloadedException;
 import com.scienceminer.lookup.reader.FatcatJsonReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
 import com.scienceminer.lookup.utils.BinarySerialiser;
+import com.scienceminer.lookup.utils.Compressors;
+import com.scienceminer.lookup.utils.ValueCompressor;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.lmdbjava.*;
@@ -19,45 +24,238 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import static com.scienceminer.lookup.web.resource.DataController.DEFAULT_MAX_SIZE_LIST;
-import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.lowerCase;
 
 /**
  * Lookup metadata -> fatcatIdent
+ * <p>
+ * The blocking indexes map the keys of each release to its fatcat ident: the key of its publication place (journal
+ * or ISSN, volume, first page, see {@link MatchingKeys#journalKey}) and the keys of its title with its first author
+ * (see {@link MatchingKeys#titleKey}). A key is followed by the ident, so that the releases sharing a key are all
+ * kept and found with a prefix scan.
  */
-public class MetadataLookup {
+public class MetadataLookup extends LmdbStore {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataLookup.class);
 
-    private Env<ByteBuffer> environment;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private Dbi<ByteBuffer> dbFatcatJson;
     private Dbi<ByteBuffer> dbDoiToFatcat;
+    private Dbi<ByteBuffer> dbJournalToFatcat;
+    private Dbi<ByteBuffer> dbTitleToFatcat;
 
     public static final String ENV_NAME = "fatcat";
 
     public static final String NAME_FATCAT_JSON = ENV_NAME + "_Jsondoc";
     public static final String NAME_DOI2FATCAT = ENV_NAME + "_doi2fatcat";
-    private final int batchSize;
+    public static final String NAME_JOURNAL2FATCAT = ENV_NAME + "_journal2fatcat";
+    public static final String NAME_TITLE2FATCAT = ENV_NAME + "_title2fatcat";
+
+    private static final byte[] EMPTY_VALUE = new byte[0];
+
+    /**
+     * Key of the trained zstd dictionary in the metadata of the environment
+     **/
+    public static final String METADATA_ZSTD_DICTIONARY = "zstdDictionary";
+
+    public static final int DICTIONARY_SIZE = 112640;
+    public static final int DICTIONARY_SAMPLES_SIZE = 100 * DICTIONARY_SIZE;
 
     private LookupConfiguration configuration;
+    private volatile ValueCompressor compressor;
 
     public MetadataLookup(StorageEnvFactory storageEnvFactory) {
-        this.environment = storageEnvFactory.getEnv(ENV_NAME);
+        super(storageEnvFactory, ENV_NAME);
 
         configuration = storageEnvFactory.getConfiguration();
-        batchSize = configuration.getBatchSize();
         dbFatcatJson = this.environment.openDbi(NAME_FATCAT_JSON, DbiFlags.MDB_CREATE);
         dbDoiToFatcat = this.environment.openDbi(NAME_DOI2FATCAT, DbiFlags.MDB_CREATE);
+        dbJournalToFatcat = this.environment.openDbi(NAME_JOURNAL2FATCAT, DbiFlags.MDB_CREATE);
+        dbTitleToFatcat = this.environment.openDbi(NAME_TITLE2FATCAT, DbiFlags.MDB_CREATE);
+
+        compressor = new ValueCompressor(ValueCompressor.Codec.fromName(configuration.getFatcatCompression()));
+        final byte[] dictionary = storageMetadata.get(METADATA_ZSTD_DICTIONARY);
+        if (dictionary != null) {
+            compressor.setDictionary(dictionary);
+        }
+    }
+
+    /**
+     * The lines are parsed with the streaming parser of the reader, and the records compressed, by the workers of
+     * the pipeline while the calling thread writes them. When the records are compressed with a zstd dictionary
+     * and the environment has none yet, the first records are kept aside until enough samples are collected to
+     * train it, then stored with it: the records prepared until then are compressed by the writer.
+     */
+    public void loadFromFile(InputStream is, FatcatJsonReader reader, LoadPipeline pipeline, Meter meter) {
+        loadFromFile(is, reader, pipeline, null, meter);
+    }
+
+    /**
+     * Load the dump like {@link #loadFromFile(InputStream, FatcatJsonReader, LoadPipeline, Meter)}, the workers
+     * also adding the releases to the matching index when an indexer is given, in the same pass over the dump.
+     */
+    public void loadFromFile(InputStream is, FatcatJsonReader reader, LoadPipeline pipeline, MetadataIndexer indexer,
+                             Meter meter) {
+        pipeline.setSkipLines(getResumeLine());
+        final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
+        final AtomicInteger counter = new AtomicInteger(0);
+        final List<Pair<String, String>> samples = new ArrayList<>();
+        final AtomicInteger samplesSize = new AtomicInteger(0);
+        final AtomicBoolean sampling = new AtomicBoolean(compressor.getCodec() == ValueCompressor.Codec.ZSTD_DICTIONARY
+                && !compressor.hasDictionary());
+
+        pipeline.run(is, line -> {
+            final FatcatRelease release = reader.parseRelease(line);
+            // the tree of the release is only built for the indexer, the blocking keys are picked while parsing
+            if (indexer != null && release != null) {
+                final JsonNode releaseNode = fromJson(release.getJson());
+                if (releaseNode != null) {
+                    indexer.index(releaseNode);
+                }
+            }
+            return prepareRelease(release, !sampling.get());
+        }, release -> {
+            if (counter.get() == batchSize) {
+                if (!sampling.get()) {
+                    saveLoadCheckpoint(transactionWrapper.tx, pipeline.getLineIndex(), meter.getCount());
+                }
+                transactionWrapper.tx.commit();
+                transactionWrapper.tx.close();
+                transactionWrapper.tx = environment.txnWrite();
+                counter.set(0);
+            }
+
+            if (sampling.get()) {
+                samples.add(new ImmutablePair<>(release.key, release.jsonDocument));
+                if (samplesSize.addAndGet(release.jsonDocument.length()) >= DICTIONARY_SAMPLES_SIZE) {
+                    trainDictionary(samples, transactionWrapper.tx);
+                    sampling.set(false);
+                }
+            } else if (release.value != null) {
+                put(dbFatcatJson, transactionWrapper.tx, release.key, release.value);
+            } else {
+                storeDocument(release.key, release.jsonDocument, transactionWrapper.tx);
+            }
+
+            if (release.doi != null) {
+                store(release.doi, release.key, dbDoiToFatcat, transactionWrapper.tx);
+            }
+            for (String journalKey : release.blockingKeys.journal) {
+                put(dbJournalToFatcat, transactionWrapper.tx, journalKey + release.key, EMPTY_VALUE);
+            }
+            for (String titleKey : release.blockingKeys.title) {
+                put(dbTitleToFatcat, transactionWrapper.tx, titleKey + release.key, EMPTY_VALUE);
+            }
+            meter.mark();
+            counter.incrementAndGet();
+        });
+        if (!samples.isEmpty()) {
+            trainDictionary(samples, transactionWrapper.tx);
+        }
+        clearLoadCheckpoint(transactionWrapper.tx);
+        transactionWrapper.tx.commit();
+        transactionWrapper.tx.close();
+        finishBulkLoad();
+
+        LOGGER.info("Cross checking number of records processed: " + meter.getCount());
+    }
+
+    /**
+     * Release record ready to be written, the value is null when it is left to the writer to compress.
+     */
+    private static class PreparedRelease {
+        private final String key;
+        private final String jsonDocument;
+        private final String doi;
+        private final byte[] value;
+        private final BlockingKeys blockingKeys;
+
+        PreparedRelease(String key, String jsonDocument, String doi, byte[] value, BlockingKeys blockingKeys) {
+            this.key = key;
+            this.jsonDocument = jsonDocument;
+            this.doi = doi;
+            this.value = value;
+            this.blockingKeys = blockingKeys;
+        }
     }
 
-    public void loadFromFile(InputStream is, FatcatJsonReader reader, Meter meter) {
+    /**
+     * Keys of a release in the blocking indexes, none for the releases which are not in the matching index
+     * (e.g. components).
+     */
+    private static class BlockingKeys {
+        private static final BlockingKeys NONE = new BlockingKeys(Collections.emptySet(), Collections.emptySet());
+
+        private final Set<String> journal;
+        private final Set<String> title;
+
+        BlockingKeys(Set<String> journal, Set<String> title) {
+            this.journal = journal;
+            this.title = title;
+        }
+
+        static BlockingKeys of(BlockingFields fields) {
+            if (fields == null) {
+                return NONE;
+            }
+            return new BlockingKeys(MatchingKeys.journalKeys(fields), MatchingKeys.titleKeys(fields));
+        }
+    }
+
+    private PreparedRelease prepareRelease(FatcatRelease release, boolean compress) {
+        if (release == null) {
+            return null;
+        }
+        final String key = "release_" + lowerCase(release.getIdent());
+        final String jsonDocument = release.getJson();
+        byte[] value = null;
+        if (compress) {
+            try {
+                value = compressor.compress(jsonDocument.getBytes(UTF_8));
+            } catch (Exception e) {
+                // left to the writer, which reports the entry it cannot store
+                value = null;
+            }
+        }
+        return new PreparedRelease(key, jsonDocument, lowerCase(release.getDoi()), value,
+                BlockingKeys.of(release.getBlockingFields()));
+    }
+
+    /**
+     * Apply a fatcat release change feed: each record replaces the stored release, releases whose state is not
+     * active are deleted. The DOI mapping follows the release: when a release loses or changes its DOI, the
+     * previous mapping is removed if it still points to this release (the DOI may have moved to another one).
+     * The position of the feed is recorded with the last batch.
+     *
+     * @return false if the feed position has already been applied
+     */
+    public boolean applyChanges(InputStream is, FatcatJsonReader reader, String position, Meter meter) {
+        if (!isNewFeedPosition(position)) {
+            LOGGER.warn("The change feed " + position + " is not after the last applied one " + getFeedPosition() + ", skipping it.");
+            return false;
+        }
+        if (formatVersion < StorageEnvFactory.FORMAT_VERSION_CODEC_HEADER) {
+            throw new IllegalStateException("Change feeds cannot be applied to the format version " + formatVersion
+                    + ", run the migrate command first.");
+        }
+        if (compressor.getCodec() == ValueCompressor.Codec.ZSTD_DICTIONARY && !compressor.hasDictionary()) {
+            // a change feed is too small to train a dictionary
+            compressor = new ValueCompressor(ValueCompressor.Codec.ZSTD);
+        }
+
         final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
         final AtomicInteger counter = new AtomicInteger(0);
 
@@ -68,86 +266,169 @@ public class MetadataLookup {
                 transactionWrapper.tx = environment.txnWrite();
                 counter.set(0);
             }
-            String key = "release_" + lowerCase(fatcatData.get("ident").asText());
+            final Txn<ByteBuffer> tx = transactionWrapper.tx;
+            final String key = "release_" + lowerCase(fatcatData.get("ident").asText());
+
+            final String previousDocument = get(tx, dbFatcatJson, key, this::decode);
+            final JsonNode previousNode = previousDocument == null ? null : fromJson(previousDocument);
+            final String previousDoi = getDoi(previousNode);
+            final boolean active = fatcatData.get("state") == null || "active".equals(fatcatData.get("state").asText());
+            final String doi = active ? getDoi(fatcatData) : null;
+
+            if (active) {
+                storeDocument(key, fatcatData.toString(), tx);
+            } else if (previousDocument != null) {
+                delete(dbFatcatJson, tx, key);
+            }
 
-            store(key, fatcatData.toString(), dbFatcatJson, transactionWrapper.tx);
-            // ext_ids is always set; doi is never empty if defined
-            if(fatcatData.get("ext_ids").get("doi") != null) {
-                store(lowerCase(fatcatData.get("ext_ids").get("doi").asText()), key, dbDoiToFatcat, transactionWrapper.tx);
+            if (previousDoi != null && !previousDoi.equals(doi) && key.equals(get(tx, dbDoiToFatcat, previousDoi, this::decode))) {
+                delete(dbDoiToFatcat, tx, previousDoi);
             }
+            if (doi != null) {
+                store(doi, key, dbDoiToFatcat, tx);
+            }
+
+            final BlockingKeys previousKeys = BlockingKeys.of(MatchingKeys.blockingFields(previousNode));
+            final BlockingKeys blockingKeys = active
+                    ? BlockingKeys.of(MatchingKeys.blockingFields(fatcatData)) : BlockingKeys.NONE;
+            updateBlockingKeys(dbJournalToFatcat, tx, key, previousKeys.journal, blockingKeys.journal);
+            updateBlockingKeys(dbTitleToFatcat, tx, key, previousKeys.title, blockingKeys.title);
             meter.mark();
             counter.incrementAndGet();
-
         });
+        setFeedPosition(transactionWrapper.tx, position);
         transactionWrapper.tx.commit();
         transactionWrapper.tx.close();
 
-        LOGGER.info("Cross checking number of records processed: " + meter.getCount());
+        LOGGER.info("Change feed " + position + " applied, " + meter.getCount() + " records processed.");
+        return true;
+    }
+
+    private void updateBlockingKeys(Dbi<ByteBuffer> db, Txn<ByteBuffer> tx, String key, Set<String> previousKeys,
+                                    Set<String> blockingKeys) {
+        for (String previousKey : previousKeys) {
+            if (!blockingKeys.contains(previousKey)) {
+                delete(db, tx, previousKey + key);
+            }
+        }
+        for (String blockingKey : blockingKeys) {
+            put(db, tx, blockingKey + key, EMPTY_VALUE);
+        }
+    }
+
+    private static String getDoi(JsonNode fatcatData) {
+        if (fatcatData == null || fatcatData.get("ext_ids") == null || fatcatData.get("ext_ids").get("doi") == null) {
+            return null;
+        }
+        return lowerCase(fatcatData.get("ext_ids").get("doi").asText());
+    }
+
+    private static JsonNode fromJson(String jsonDocument) {
+        try {
+            return OBJECT_MAPPER.readTree(jsonDocument);
+        } catch (IOException e) {
+            LOGGER.warn("Cannot parse the stored fatcat record: " + jsonDocument, e);
+            return null;
+        }
+    }
+
+    /**
+     * Train the zstd dictionary from the sampled records, save it in the environment metadata within the
+     * current transaction and store the sampled records with it.
+     */
+    private void trainDictionary(List<Pair<String, String>> samples, Txn<ByteBuffer> tx) {
+        final List<byte[]> sampleBytes = new ArrayList<>(samples.size());
+        for (Pair<String, String> sample : samples) {
+            sampleBytes.add(sample.getRight().getBytes(UTF_8));
+        }
+        try {
+            final byte[] dictionary = Compressors.trainZstdDictionary(sampleBytes, DICTIONARY_SIZE);
+            storageMetadata.put(tx, METADATA_ZSTD_DICTIONARY, dictionary);
+            compressor.setDictionary(dictionary);
+            LOGGER.info("Trained a zstd dictionary of " + dictionary.length + " bytes from " + samples.size() + " records");
+        } catch (RuntimeException e) {
+            LOGGER.warn("Cannot train the zstd dictionary from " + samples.size()
+                    + " records, the records are compressed with zstd without dictionary.", e);
+            compressor = new ValueCompressor(ValueCompressor.Codec.ZSTD);
+        }
+
+        for (Pair<String, String> sample : samples) {
+            storeDocument(sample.getLeft(), sample.getRight(), tx);
+        }
+        samples.clear();
+    }
+
+    private void storeDocument(String key, String jsonDocument, Txn<ByteBuffer> tx) {
+        try {
+            put(dbFatcatJson, tx, key, compressor.compress(jsonDocument.getBytes(UTF_8)));
+        } catch (Exception e) {
+            LOGGER.error("Cannot store the entry " + key + ", " + jsonDocument, e);
+        }
     }
 
     private void store(String key, String value, Dbi<ByteBuffer> db, Txn<ByteBuffer> tx) {
         try {
-            final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-            keyBuffer.put(BinarySerialiser.serialize(key)).flip();
-            final byte[] serializedValue = BinarySerialiser.serializeAndCompress(value);
-            final ByteBuffer valBuffer = allocateDirect(serializedValue.length);
-            valBuffer.put(serializedValue).flip();
-            db.put(tx, keyBuffer, valBuffer);
+            put(db, tx, key, compressor.compress(value.getBytes(UTF_8), ValueCompressor.Codec.NONE));
         } catch (Exception e) {
             LOGGER.error("Cannot store the entry " + key + ", " + value, e);
         }
     }
 
+    /**
+     * Storage built before the codec header was introduced contains FST serialised strings compressed with snappy.
+     */
+    private String decode(ByteBuffer value) throws IOException {
+        if (formatVersion < StorageEnvFactory.FORMAT_VERSION_CODEC_HEADER) {
+            return (String) BinarySerialiser.deserializeAndDecompress(value);
+        }
+        return new String(compressor.decompress(value), UTF_8);
+    }
+
     public Map<String, Long> getSize() {
 
         Map<String, Long> sizes = new HashMap<>();
-        try (final Txn<ByteBuffer> txn = this.environment.txnRead()) {
+        read(txn -> {
             sizes.put(NAME_FATCAT_JSON, dbFatcatJson.stat(txn).entries);
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            sizes.put(NAME_JOURNAL2FATCAT, dbJournalToFatcat.stat(txn).entries);
+            sizes.put(NAME_TITLE2FATCAT, dbTitleToFatcat.stat(txn).entries);
+            return sizes;
+        });
 
         return sizes;
     }
 
     public String retrieveJsonDocument(String fatcatIdent) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        String record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(fatcatIdent)).flip();
-            cachedData = dbFatcatJson.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (String) BinarySerialiser.deserializeAndDecompress(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve Fatcat document by ident:  " + fatcatIdent, e);
-        }
-
-        return record;
-
+        return get(dbFatcatJson, fatcatIdent, this::decode);
     }
 
     public String retrieveFatcatByDoi(String doi) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        String record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(doi)).flip();
-            cachedData = dbDoiToFatcat.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (String) BinarySerialiser.deserializeAndDecompress(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve Fatcat ident by DOI:  " + doi, e);
-        }
+        return get(dbDoiToFatcat, doi, this::decode);
+    }
 
-        return record;
+    /**
+     * Fatcat idents of the releases published at the given place, at most max of them, from the journal blocking
+     * index.
+     *
+     * @param journal journal title, abbreviated title or ISSN
+     */
+    public List<String> retrieveFatcatByJournal(String journal, String volume, String firstPage, int max) {
+        final String journalKey = MatchingKeys.journalKey(journal, volume, firstPage);
+        if (journalKey == null) {
+            return Collections.emptyList();
+        }
+        return getKeySuffixes(dbJournalToFatcat, journalKey, max);
+    }
 
+    /**
+     * Fatcat idents of the releases with the given title and first author surname, at most max of them, from the
+     * title blocking index.
+     */
+    public List<String> retrieveFatcatByTitle(String title, String firstAuthor, int max) {
+        final String titleKey = MatchingKeys.titleKey(title, firstAuthor);
+        if (titleKey == null) {
+            return Collections.emptyList();
+        }
+        return getKeySuffixes(dbTitleToFatcat, titleKey, max);
     }
 
     /**
@@ -174,6 +455,26 @@ public class MetadataLookup {
         return retrieveByFatcat(fatcatIdent);
     }
 
+    /**
+     * Iterate over all the DOI -> fatcat ident entries within a single read transaction.
+     */
+    public void forEachDoi(BiConsumer<String, String> consumer) {
+        read(txn -> {
+            try (CursorIterator<ByteBuffer> it = dbDoiToFatcat.iterate(txn, KeyRange.all())) {
+                for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
+                    String doi = null;
+                    try {
+                        doi = decodeKey(kv.key());
+                        consumer.accept(doi, decode(kv.val()));
+                    } catch (IOException e) {
+                        LOGGER.error("Cannot decompress fatcat ident with DOI: " + doi, e);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
     public List<Pair<String, String>> retrieveList(Integer total) {
         return retrieveList(total, dbFatcatJson);
     }
@@ -184,28 +485,27 @@ public class MetadataLookup {
         }
 
         List<Pair<String, String>> values = new ArrayList<>();
-        int counter = 0;
+        final int max = total;
 
-        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+        read(txn -> {
+            int counter = 0;
             try (CursorIterator<ByteBuffer> it = db.iterate(txn, KeyRange.all())) {
                 for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
                     String key = null;
                     try {
-                        key = (String) BinarySerialiser.deserialize(kv.key());
-                        values.add(new ImmutablePair<>(key, (String) BinarySerialiser.deserializeAndDecompress(kv.val())));
+                        key = decodeKey(kv.key());
+                        values.add(new ImmutablePair<>(key, decode(kv.val())));
                     } catch (IOException e) {
                         LOGGER.error("Cannot decompress document with key: " + key, e);
                     }
-                    if (counter == total) {
-                        txn.close();
+                    if (counter == max) {
                         break;
                     }
                     counter++;
                 }
             }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            return values;
+        });
 
         return values;
     }
@@ -2,31 +2,25 @@ package com.scienceminer.lookup.storage.lookup;
 
 import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.data.MatchingDocument;
+import com.scienceminer.lookup.exception.NoMatchException;
 import com.scienceminer.lookup.exception.NotFoundException;
 import com.scienceminer.lookup.exception.ServiceException;
-import com.scienceminer.lookup.storage.lookup.async.ESClientWrapper;
+import com.scienceminer.lookup.storage.lookup.async.MultiSearchMetrics;
+import com.scienceminer.lookup.storage.lookup.matching.ElasticsearchMatchingBackend;
+import com.scienceminer.lookup.storage.lookup.matching.LuceneMatchingBackend;
+import com.scienceminer.lookup.storage.lookup.matching.MatchingBackend;
+import com.scienceminer.lookup.storage.lookup.matching.MatchingQuery;
 import org.apache.commons.collections4.CollectionUtils;
-import org.apache.http.HttpHost;
-import org.elasticsearch.action.search.SearchRequest;
-import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.search.SearchType;
-import org.elasticsearch.client.RequestOptions;
-import org.elasticsearch.client.RestClient;
-import org.elasticsearch.client.RestHighLevelClient;
-import org.elasticsearch.index.query.BoolQueryBuilder;
-import org.elasticsearch.index.query.MatchQueryBuilder;
-import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
-import org.elasticsearch.search.SearchHit;
-import org.elasticsearch.search.SearchHits;
-import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 import com.fasterxml.jackson.core.*;
 import com.fasterxml.jackson.databind.*;
@@ -39,9 +33,15 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 public class MetadataMatching {
     private static final Logger LOGGER = LoggerFactory.getLogger(MetadataMatching.class);
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private LookupConfiguration configuration;
-    private ESClientWrapper esClient;
+    private MatchingBackend backend;
     private MetadataLookup metadataLookup;
+    private final int matchingCandidates;
+
+    public static final String BACKEND_ELASTICSEARCH = "elasticsearch";
+    public static final String BACKEND_LUCENE = "lucene";
 
     public static final String INDEX_FIELD_NAME_ID = "id";
     public static final String INDEX_FIELD_NAME_TITLE = "title";
@@ -59,60 +59,88 @@ public class MetadataMatching {
 
 
     public MetadataMatching(LookupConfiguration configuration, MetadataLookup metadataLookup) {
-        this.configuration = configuration;
-
-        RestHighLevelClient esClient = new RestHighLevelClient(
-                RestClient.builder(
-                        HttpHost.create(configuration.getElastic().getHost()))
-                        .setRequestConfigCallback(
-                                requestConfigBuilder -> requestConfigBuilder
-                                        .setConnectTimeout(30000)
-                                        .setSocketTimeout(60000))
-                        .setMaxRetryTimeoutMillis(120000));
-
-
-        this.esClient = new ESClientWrapper(esClient, configuration.getMaxAcceptedRequests());
+        this(configuration, metadataLookup, createBackend(configuration));
+    }
 
+    public MetadataMatching(LookupConfiguration configuration, MetadataLookup metadataLookup, MatchingBackend backend) {
+        this.configuration = configuration;
+        this.backend = backend;
         this.metadataLookup = metadataLookup;
+        this.matchingCandidates = Math.max(1, configuration.getElastic().getMatchingCandidates());
+    }
 
+    /**
+     * Backend selected by matchingBackend in the configuration: the Elasticsearch index by default, or the
+     * embedded Lucene index.
+     */
+    private static MatchingBackend createBackend(LookupConfiguration configuration) {
+        if (BACKEND_LUCENE.equalsIgnoreCase(configuration.getMatchingBackend())) {
+            return new LuceneMatchingBackend(Paths.get(configuration.getLuceneIndex()),
+                    Runtime.getRuntime().availableProcessors(), configuration.getMaxAcceptedRequests());
+        }
+        if (configuration.getMatchingBackend() != null
+                && !BACKEND_ELASTICSEARCH.equalsIgnoreCase(configuration.getMatchingBackend())) {
+            throw new ServiceException(500, "Unknown matching backend " + configuration.getMatchingBackend()
+                    + ", expected " + BACKEND_ELASTICSEARCH + " or " + BACKEND_LUCENE);
+        }
+        return new ElasticsearchMatchingBackend(configuration);
     }
 
-    public long getSize() {
-        try {
-            SearchRequest searchRequest = new SearchRequest(configuration.getElastic().getIndex());
+    public void close() {
+        backend.close();
+    }
 
-            SearchResponse response = esClient.searchSync(searchRequest, RequestOptions.DEFAULT);
-            return response.getHits().getTotalHits();
-        } catch (IOException e) {
-            LOGGER.error("Error while contacting Elasticsearch to fetch the size of "
-                    + configuration.getElastic().getIndex() + " index.", e);
+    /**
+     * Record the batches of searches, when they are gathered in _msearch requests, in the shared metrics.
+     */
+    public void setMultiSearchMetrics(MultiSearchMetrics metrics) {
+        if (backend instanceof ElasticsearchMatchingBackend) {
+            ((ElasticsearchMatchingBackend) backend).setMultiSearchMetrics(metrics);
         }
+    }
 
-        return 0L;
+    public long getSize() {
+        return backend.getSize();
     }
 
     /**
      * Lookup by title, firstAuthor
      **/
     public MatchingDocument retrieveByMetadata(String title, String firstAuthor) {
+        return retrieveByMetadata(title, firstAuthor, (ToDoubleFunction<MatchingDocument>) null);
+    }
+
+    /**
+     * Lookup by title, firstAuthor, the candidates being scored with the given post-validation
+     *
+     * @param scorer score of a candidate, negative when it does not pass the post-validation, null to return
+     *               the first hit
+     **/
+    public MatchingDocument retrieveByMetadata(String title, String firstAuthor,
+                                               ToDoubleFunction<MatchingDocument> scorer) {
         validateInput(title, firstAuthor);
 
-        final BoolQueryBuilder query = QueryBuilders.boolQuery()
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_NAME_TITLE, title))
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_NAME_FIRST_AUTHOR, firstAuthor));
+        final MatchingQuery query = new MatchingQuery()
+                .should(INDEX_FIELD_NAME_TITLE, title)
+                .should(INDEX_FIELD_NAME_FIRST_AUTHOR, firstAuthor);
 
-        return executeQuery(query);
+        return executeQuery(query, scorer);
     }
 
     public void retrieveByMetadataAsync(String title, String firstAuthor,
                                         Consumer<MatchingDocument> callback) {
+        retrieveByMetadataAsync(title, firstAuthor, (ToDoubleFunction<MatchingDocument>) null, callback);
+    }
+
+    public void retrieveByMetadataAsync(String title, String firstAuthor, ToDoubleFunction<MatchingDocument> scorer,
+                                        Consumer<MatchingDocument> callback) {
         validateInput(title, firstAuthor);
 
-        final BoolQueryBuilder query = QueryBuilders.boolQuery()
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_NAME_TITLE, title))
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_NAME_FIRST_AUTHOR, firstAuthor));
+        final MatchingQuery query = new MatchingQuery()
+                .should(INDEX_FIELD_NAME_TITLE, title)
+                .should(INDEX_FIELD_NAME_FIRST_AUTHOR, firstAuthor);
 
-        executeQueryAsync(query, callback);
+        executeQueryAsync(query, scorer, callback);
     }
 
     private void validateInput(String title, String firstAuthor) {
@@ -129,29 +157,101 @@ public class MetadataMatching {
 
         validateInput(title, volume, firstPage);
 
-        BoolQueryBuilder query = getQueryBuilderJournal(title, volume, firstPage);
+        final MatchingDocument blockingMatch = retrieveByJournalKey(title, volume, firstPage, null);
+        if (blockingMatch != null) {
+            return blockingMatch;
+        }
+
+        MatchingQuery query = getQueryBuilderJournal(title, volume, firstPage);
 
-        return executeQuery(query);
+        return executeQuery(query, null);
     }
 
     public void retrieveByMetadataAsync(String title, String volume,
                                         String firstPage,
                                         Consumer<MatchingDocument> callback) {
+        retrieveByMetadataAsync(title, volume, firstPage, (ToDoubleFunction<MatchingDocument>) null, callback);
+    }
+
+    public void retrieveByMetadataAsync(String title, String volume,
+                                        String firstPage, ToDoubleFunction<MatchingDocument> scorer,
+                                        Consumer<MatchingDocument> callback) {
 
         validateInput(title, volume, firstPage);
 
-        BoolQueryBuilder query = getQueryBuilderJournal(title, volume, firstPage);
+        final MatchingDocument blockingMatch = retrieveByJournalKey(title, volume, firstPage, scorer);
+        if (blockingMatch != null) {
+            callback.accept(blockingMatch);
+            return;
+        }
+
+        MatchingQuery query = getQueryBuilderJournal(title, volume, firstPage);
 
-        executeQueryAsync(query, callback);
+        executeQueryAsync(query, scorer, callback);
     }
 
-    private BoolQueryBuilder getQueryBuilderJournal(String title, String volume, String firstPage) {
+    /**
+     * Release of the journal blocking index, when it is the only one published at this place (journal title,
+     * abbreviated title or ISSN, volume, first page) and it passes the post-validation. Null otherwise, the
+     * matching index being then searched.
+     */
+    private MatchingDocument retrieveByJournalKey(String title, String volume, String firstPage,
+                                                  ToDoubleFunction<MatchingDocument> scorer) {
+        if (metadataLookup == null) {
+            return null;
+        }
+        return resolveUniqueRelease(metadataLookup.retrieveFatcatByJournal(title, volume, firstPage, 2), scorer);
+    }
 
-        return QueryBuilders.boolQuery()
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_NAME_JOURNAL_TITLE, title))
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE, title))
-                .must(QueryBuilders.termQuery(INDEX_FIELD_NAME_VOLUME, volume))
-                .must(QueryBuilders.termQuery(INDEX_FIELD_NAME_FIRST_PAGE, firstPage));
+    /**
+     * Release of the title blocking index, when it is the only one with this title and first author surname,
+     * once normalised, and it passes the post-validation. Null otherwise, the matching index being then searched.
+     */
+    public MatchingDocument retrieveByExactMetadata(String title, String firstAuthor,
+                                                    ToDoubleFunction<MatchingDocument> scorer) {
+        if (metadataLookup == null || isBlank(title) || isBlank(firstAuthor)) {
+            return null;
+        }
+        return resolveUniqueRelease(metadataLookup.retrieveFatcatByTitle(title, firstAuthor, 2), scorer);
+    }
+
+    private MatchingDocument resolveUniqueRelease(List<String> fatcatIdents, ToDoubleFunction<MatchingDocument> scorer) {
+        if (fatcatIdents.size() != 1) {
+            return null;
+        }
+        final String jsonObject = metadataLookup.retrieveJsonDocument(fatcatIdents.get(0));
+        if (jsonObject == null) {
+            return null;
+        }
+
+        final JsonNode release;
+        try {
+            release = OBJECT_MAPPER.readTree(jsonObject);
+        } catch (IOException e) {
+            LOGGER.warn("Invalid JSON object of " + fatcatIdents.get(0), e);
+            return null;
+        }
+        final Map<String, Object> hit = MetadataIndexer.toIndexDocument(release);
+        if (hit == null) {
+            return null;
+        }
+        // scored here rather than by processResponse, which would read and decompress the JSON object again
+        final MatchingDocument matchingDocument = toMatchingDocument(hit);
+        if (scorer != null && scorer.applyAsDouble(matchingDocument) < 0) {
+            return null;
+        }
+        setJsonObject(matchingDocument, jsonObject, release);
+        return matchingDocument;
+    }
+
+
+    private MatchingQuery getQueryBuilderJournal(String title, String volume, String firstPage) {
+
+        return new MatchingQuery()
+                .should(INDEX_FIELD_NAME_JOURNAL_TITLE, title)
+                .should(INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE, title)
+                .mustTerm(INDEX_FIELD_NAME_VOLUME, volume)
+                .mustTerm(INDEX_FIELD_NAME_FIRST_PAGE, firstPage);
     }
 
     private void validateInput(String title, String volume, String firstPage) {
@@ -171,9 +271,14 @@ public class MetadataMatching {
 
         validateInput(title, volume, firstPage, firstAuthor);
 
-        final BoolQueryBuilder query = getQueryBuilderJournal(title, volume, firstPage, firstAuthor);
+        final MatchingDocument blockingMatch = retrieveByJournalKey(title, volume, firstPage, null);
+        if (blockingMatch != null) {
+            return blockingMatch;
+        }
+
+        final MatchingQuery query = getQueryBuilderJournal(title, volume, firstPage, firstAuthor);
 
-        return executeQuery(query);
+        return executeQuery(query, null);
     }
 
     private void validateInput(String title, String volume, String firstPage, String firstAuthor) {
@@ -191,18 +296,24 @@ public class MetadataMatching {
 
         validateInput(title, volume, firstPage, firstAuthor);
 
-        final BoolQueryBuilder query = getQueryBuilderJournal(title, volume, firstPage, firstAuthor);
+        final MatchingDocument blockingMatch = retrieveByJournalKey(title, volume, firstPage, null);
+        if (blockingMatch != null) {
+            callback.accept(blockingMatch);
+            return;
+        }
+
+        final MatchingQuery query = getQueryBuilderJournal(title, volume, firstPage, firstAuthor);
 
-        executeQueryAsync(query, callback);
+        executeQueryAsync(query, null, callback);
     }
 
-    private BoolQueryBuilder getQueryBuilderJournal(String title, String volume, String firstPage, String firstAuthor) {
-        return QueryBuilders.boolQuery()
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_NAME_JOURNAL_TITLE, title))
-                .should(QueryBuilders.matchQuery(INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE, title))
-                .must(QueryBuilders.termQuery(INDEX_FIELD_NAME_VOLUME, volume))
-                .must(QueryBuilders.termQuery(INDEX_FIELD_NAME_FIRST_PAGE, firstPage))
-                .should(QueryBuilders.termQuery(INDEX_FIELD_NAME_FIRST_AUTHOR, firstAuthor));
+    private MatchingQuery getQueryBuilderJournal(String title, String volume, String firstPage, String firstAuthor) {
+        return new MatchingQuery()
+                .should(INDEX_FIELD_NAME_JOURNAL_TITLE, title)
+                .should(INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE, title)
+                .mustTerm(INDEX_FIELD_NAME_VOLUME, volume)
+                .mustTerm(INDEX_FIELD_NAME_FIRST_PAGE, firstPage)
+                .shouldTerm(INDEX_FIELD_NAME_FIRST_AUTHOR, firstAuthor);
     }
 
     public MatchingDocument retrieveByBiblio(String biblio) {
@@ -210,28 +321,32 @@ public class MetadataMatching {
             throw new ServiceException(400, "Supplied bibliographical string is empty.");
         }
 
-        final MatchQueryBuilder query = QueryBuilders.matchQuery(INDEX_FIELD_NAME_BIBLIOGRAPHIC, biblio);
+        final MatchingQuery query = new MatchingQuery().should(INDEX_FIELD_NAME_BIBLIOGRAPHIC, biblio);
 
-        return executeQuery(query);
+        return executeQuery(query, null);
     }
 
     public void retrieveByBiblioAsync(String biblio, Consumer<MatchingDocument> callback) {
+        retrieveByBiblioAsync(biblio, null, callback);
+    }
+
+    public void retrieveByBiblioAsync(String biblio, ToDoubleFunction<MatchingDocument> scorer,
+                                      Consumer<MatchingDocument> callback) {
         if (isBlank(biblio)) {
             throw new ServiceException(400, "Supplied bibliographical string is empty.");
         }
 
-        final MatchQueryBuilder query = QueryBuilders.matchQuery(INDEX_FIELD_NAME_BIBLIOGRAPHIC, biblio);
+        final MatchingQuery query = new MatchingQuery().should(INDEX_FIELD_NAME_BIBLIOGRAPHIC, biblio);
 
-        executeQueryAsync(query, callback);
+        executeQueryAsync(query, scorer, callback);
     }
 
-    private MatchingDocument executeQuery(QueryBuilder query) {
-        SearchRequest request = prepareQueryExecution(query);
+    private MatchingDocument executeQuery(MatchingQuery query, ToDoubleFunction<MatchingDocument> scorer) {
         final MatchingDocument matchingDocument;
         try {
-            final SearchResponse searchResponse = esClient.searchSync(request, RequestOptions.DEFAULT);
+            final List<Map<String, Object>> hits = backend.search(query, scorer != null ? matchingCandidates : 1);
 
-            matchingDocument = processResponse(searchResponse);
+            matchingDocument = processResponse(hits, scorer);
 
             if (matchingDocument.isException()) {
                 if(matchingDocument.getException() instanceof NotFoundException) {
@@ -241,21 +356,21 @@ public class MetadataMatching {
                 throw (Exception) matchingDocument.getException();
             }
         } catch (IOException e) {
-            throw new ServiceException(500, "No response from Elasticsearch. ", e);
+            throw new ServiceException(500, "No response from the matching index. ", e);
         } catch (Exception e) {
-            throw new ServiceException(500, "Elasticsearch server error. ", e);
+            throw new ServiceException(500, "Matching index server error. ", e);
         }
 
         return matchingDocument;
     }
 
 
-    private void executeQueryAsync(QueryBuilder query, Consumer<MatchingDocument> callback) {
-        SearchRequest searchRequest = prepareQueryExecution(query);
+    private void executeQueryAsync(MatchingQuery query, ToDoubleFunction<MatchingDocument> scorer,
+                                   Consumer<MatchingDocument> callback) {
         try {
-            esClient.searchAsync(searchRequest, RequestOptions.DEFAULT, (response, exception) -> {
+            backend.searchAsync(query, scorer != null ? matchingCandidates : 1, (hits, exception) -> {
                 if (exception == null) {
-                    callback.accept(processResponse(response));
+                    callback.accept(processResponse(hits, scorer));
                 } else {
                     callback.accept(new MatchingDocument(exception));
                 }
@@ -265,87 +380,98 @@ public class MetadataMatching {
         }
     }
 
-    private SearchRequest prepareQueryExecution(QueryBuilder query) {
-        SearchSourceBuilder builder = new SearchSourceBuilder();
-        builder.query(query);
-        builder.from(0);
-        builder.size(1);
-
-        String[] includeFields = new String[]
-                {
-                        INDEX_FIELD_NAME_ID,
-                        INDEX_FIELD_NAME_FATCAT,
-                        INDEX_FIELD_NAME_DOI,
-                        INDEX_FIELD_NAME_FIRST_AUTHOR,
-                        INDEX_FIELD_NAME_TITLE
-                };
-        String[] excludeFields = new String[]{"*"};
-        builder.fetchSource(includeFields, null);
-
-        final SearchRequest searchRequest = new SearchRequest(configuration.getElastic().getIndex());
-        searchRequest.searchType(SearchType.DFS_QUERY_THEN_FETCH);
-        searchRequest.source(builder);
-
-        return searchRequest;
-    }
-
-    private MatchingDocument processResponse(SearchResponse response) {
-        SearchHits hits = response.getHits();
-        Iterator<SearchHit> it = hits.iterator();
-        final MatchingDocument matchingDocument = new MatchingDocument();
+    /**
+     * Select the matching document among the hits: the first one without scorer, otherwise the best scored hit
+     * passing the post-validation. Only the JSON document of the selected hit is read from the storage.
+     */
+    private MatchingDocument processResponse(List<Map<String, Object>> hits, ToDoubleFunction<MatchingDocument> scorer) {
+        Iterator<Map<String, Object>> it = hits.iterator();
+        MatchingDocument matchingDocument = null;
+        Map<String, Object> selectedHit = null;
+        double bestScore = -1;
+        int candidates = 0;
 
         while (it.hasNext()) {
-            SearchHit hit = it.next();
-
-            String fatcatIdent = (String) hit.getSourceAsMap().get(INDEX_FIELD_NAME_FATCAT);
-            String DOI = (String) hit.getSourceAsMap().get(INDEX_FIELD_NAME_DOI);
-            String firstAuthor = (String) hit.getSourceAsMap().get(INDEX_FIELD_NAME_FIRST_AUTHOR);
-
-            final List<String> titles = (List<String>) hit.getSourceAsMap().get(INDEX_FIELD_NAME_TITLE);
-            String title = "";
-            if (CollectionUtils.isNotEmpty(titles)) {
-                title = titles.get(0);
+            Map<String, Object> hit = it.next();
+            candidates++;
+            final MatchingDocument candidate = toMatchingDocument(hit);
+            if (scorer == null) {
+                matchingDocument = candidate;
+                selectedHit = hit;
+                break;
             }
+            final double score = scorer.applyAsDouble(candidate);
+            if (score >= 0 && score > bestScore) {
+                bestScore = score;
+                matchingDocument = candidate;
+                selectedHit = hit;
+            }
+        }
 
-            matchingDocument.setFatcatIdent(fatcatIdent);
-            matchingDocument.setDOI(DOI);
-            matchingDocument.setFirstAuthor(firstAuthor);
-            matchingDocument.setTitle(title);
+        if (matchingDocument != null) {
+            final String fatcatIdent = matchingDocument.getFatcatIdent();
+            final String DOI = matchingDocument.getDOI();
             final String jsonObject = metadataLookup.retrieveJsonDocument(fatcatIdent);
             if (jsonObject == null) {
-                matchingDocument.setException(new NotFoundException("The index returned a result but the body cannot be fetched. fatcat: " + fatcatIdent + " (doi:" + DOI + ", hit=" + hit.toString() + ")"));
+                matchingDocument.setException(new NotFoundException("The index returned a result but the body cannot be fetched. fatcat: " + fatcatIdent + " (doi:" + DOI + ", hit=" + selectedHit.toString() + ")"));
                 return matchingDocument;
             }
-            matchingDocument.setJsonObject(jsonObject);
-
             try {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode item = mapper.readTree(jsonObject);
-                if (item.isObject()) {
-                    JsonNode authorsNode = item.get("author");
-                    if (authorsNode != null && (!authorsNode.isMissingNode()) && 
-                        authorsNode.isArray() && (((ArrayNode)authorsNode).size() > 0)) {
-                        Iterator<JsonNode> authorIt = ((ArrayNode)authorsNode).elements();
-                        while (authorIt.hasNext()) {
-                            JsonNode authorNode = authorIt.next();
-
-                            if (authorNode.get("family") != null && !authorNode.get("family").isMissingNode()) {
-                                matchingDocument.setFirstAuthor(authorNode.get("family").asText());
-                                break;
-                            }
-                        }
-                    }
-                }
+                setJsonObject(matchingDocument, jsonObject, OBJECT_MAPPER.readTree(jsonObject));
             } catch (Exception e) {
+                matchingDocument.setJsonObject(jsonObject);
                 LOGGER.warn("Invalid JSON object", e);
             }
 
-
             return matchingDocument;
         }
 
+        matchingDocument = new MatchingDocument();
         matchingDocument.setIsException(true);
-        matchingDocument.setException(new NotFoundException("Cannot find records for the input query."));
+        if (candidates == 0) {
+            matchingDocument.setException(new NoMatchException("Cannot find records for the input query."));
+        } else {
+            matchingDocument.setException(new NoMatchException("None of the " + candidates
+                    + " best bibliographical records passed the post-validation"));
+        }
+        return matchingDocument;
+    }
+
+    /**
+     * Set the JSON object of the selected record, and its first author from the authors of this object.
+     */
+    private static void setJsonObject(MatchingDocument matchingDocument, String jsonObject, JsonNode item) {
+        matchingDocument.setJsonObject(jsonObject);
+        if (item.isObject()) {
+            JsonNode authorsNode = item.get("author");
+            if (authorsNode != null && (!authorsNode.isMissingNode()) && 
+                authorsNode.isArray() && (((ArrayNode)authorsNode).size() > 0)) {
+                Iterator<JsonNode> authorIt = ((ArrayNode)authorsNode).elements();
+                while (authorIt.hasNext()) {
+                    JsonNode authorNode = authorIt.next();
+
+                    if (authorNode.get("family") != null && !authorNode.get("family").isMissingNode()) {
+                        matchingDocument.setFirstAuthor(authorNode.get("family").asText());
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private MatchingDocument toMatchingDocument(Map<String, Object> hit) {
+        final MatchingDocument matchingDocument = new MatchingDocument();
+
+        matchingDocument.setFatcatIdent((String) hit.get(INDEX_FIELD_NAME_FATCAT));
+        matchingDocument.setDOI((String) hit.get(INDEX_FIELD_NAME_DOI));
+        matchingDocument.setFirstAuthor((String) hit.get(INDEX_FIELD_NAME_FIRST_AUTHOR));
+
+        final List<String> titles = (List<String>) hit.get(INDEX_FIELD_NAME_TITLE);
+        String title = "";
+        if (CollectionUtils.isNotEmpty(titles)) {
+            title = titles.get(0);
+        }
+        matchingDocument.setTitle(title);
         return matchingDocument;
     }
 }
@@ -1,7 +1,6 @@
 package com.scienceminer.lookup.storage.lookup;
 
 import com.codahale.metrics.Meter;
-import com.scienceminer.lookup.exception.ServiceOverloadedException;
 import com.scienceminer.lookup.reader.UnpayWallReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
 import com.scienceminer.lookup.utils.BinarySerialiser;
@@ -20,39 +19,34 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.scienceminer.lookup.web.resource.DataController.DEFAULT_MAX_SIZE_LIST;
-import static java.nio.ByteBuffer.allocateDirect;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.lowerCase;
 
 /**
  * Lookup doi -> best OA Location
  */
-public class OALookup {
+public class OALookup extends LmdbStore {
     private static final Logger LOGGER = LoggerFactory.getLogger(OALookup.class);
 
-    private Env<ByteBuffer> environment;
     private Dbi<ByteBuffer> dbDoiOAUrl;
 
     public static final String ENV_NAME = "unpayWall";
 
     public static final String NAME_DOI_OA_URL = ENV_NAME + "_doiOAUrl";
-    private final int batchSize;
 
 
     public OALookup(StorageEnvFactory storageEnvFactory) {
-        this.environment = storageEnvFactory.getEnv(ENV_NAME);
-        batchSize = storageEnvFactory.getConfiguration().getBatchSize();
+        super(storageEnvFactory, ENV_NAME);
 
-        dbDoiOAUrl = this.environment.openDbi(NAME_DOI_OA_URL, DbiFlags.MDB_CREATE);
+        dbDoiOAUrl = withFilter(this.environment.openDbi(NAME_DOI_OA_URL, DbiFlags.MDB_CREATE));
     }
 
     public Map<String, Long> getSize() {
         Map<String, Long> size = new HashMap<>();
-        try (final Txn<ByteBuffer> txn = this.environment.txnRead()) {
+        read(txn -> {
             size.put(NAME_DOI_OA_URL, dbDoiOAUrl.stat(txn).entries);
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            return size;
+        });
 
         return size;
     }
@@ -63,52 +57,38 @@ public class OALookup {
         }
 
         List<Pair<String, String>> values = new ArrayList<>();
+        final int max = total;
 
-        int counter = 0;
-
-        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+        read(txn -> {
+            int counter = 0;
             try (CursorIterator<ByteBuffer> it = dbDoiOAUrl.iterate(txn, KeyRange.all())) {
                 for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
-                    values.add(new ImmutablePair(BinarySerialiser.deserialize(kv.key()), BinarySerialiser.deserialize(kv.val())));
-                    if (counter == total) {
-                        txn.close();
+                    values.add(new ImmutablePair<>(decodeKey(kv.key()), (String) BinarySerialiser.deserialize(kv.val())));
+                    if (counter == max) {
                         break;
                     }
                     counter++;
                 }
             }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            return values;
+        });
         return values;
     }
 
 
     public String retrieveOALinkByDoi(String doi) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        String record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(lowerCase(doi))).flip();
-            cachedData = dbDoiOAUrl.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (String) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve OA url having doi: " + doi, e);
-        }
-
-        return record;
+        return get(dbDoiOAUrl, lowerCase(doi), value -> (String) BinarySerialiser.deserialize(value));
     }
 
-    public void loadFromFile(InputStream is, UnpayWallReader reader, Meter meter) {
+    public void loadFromFile(InputStream is, UnpayWallReader reader, LoadPipeline pipeline, Meter meter) {
+        dropFilters();
+        pipeline.setSkipLines(getResumeLine());
         final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
         final AtomicInteger counter = new AtomicInteger(0);
 
-        reader.load(is, unpayWallMetadata -> {
+        pipeline.run(is, reader::fromJson, unpayWallMetadata -> {
             if (counter.get() == batchSize) {
+                saveLoadCheckpoint(transactionWrapper.tx, pipeline.getLineIndex(), meter.getCount());
                 transactionWrapper.tx.commit();
                 transactionWrapper.tx.close();
                 transactionWrapper.tx = environment.txnWrite();
@@ -124,20 +104,59 @@ public class OALookup {
                 }
             }
         });
+        clearLoadCheckpoint(transactionWrapper.tx);
         transactionWrapper.tx.commit();
         transactionWrapper.tx.close();
+        finishBulkLoad();
+        buildFilters();
 
         LOGGER.info("Cross checking number of records processed: " + meter.getCount());
     }
 
+    /**
+     * Apply an Unpaywall change file: the OA link of each record is replaced, or removed when the record has
+     * no longer any OA PDF link. The filter is rebuilt and the position of the feed is recorded with the last batch.
+     *
+     * @return false if the feed position has already been applied
+     */
+    public boolean applyChanges(InputStream is, UnpayWallReader reader, String position, Meter meter) {
+        if (!isNewFeedPosition(position)) {
+            LOGGER.warn("The change feed " + position + " is not after the last applied one " + getFeedPosition() + ", skipping it.");
+            return false;
+        }
+        dropFilters();
+        final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
+        final AtomicInteger counter = new AtomicInteger(0);
+
+        reader.load(is, unpayWallMetadata -> {
+            if (counter.get() == batchSize) {
+                transactionWrapper.tx.commit();
+                transactionWrapper.tx.close();
+                transactionWrapper.tx = environment.txnWrite();
+                counter.set(0);
+            }
+            String key = lowerCase(unpayWallMetadata.getDoi());
+            String value = unpayWallMetadata.getBestOALocation() != null ? unpayWallMetadata.getBestOALocation().getPdfUrl() : null;
+            if (isNotBlank(value)) {
+                store(key, value, dbDoiOAUrl, transactionWrapper.tx);
+            } else {
+                delete(dbDoiOAUrl, transactionWrapper.tx, key);
+            }
+            meter.mark();
+            counter.incrementAndGet();
+        });
+        setFeedPosition(transactionWrapper.tx, position);
+        transactionWrapper.tx.commit();
+        transactionWrapper.tx.close();
+        buildFilters();
+
+        LOGGER.info("Change feed " + position + " applied, " + meter.getCount() + " records processed.");
+        return true;
+    }
+
     private void store(String key, String value, Dbi<ByteBuffer> db, Txn<ByteBuffer> tx) {
         try {
-            final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-            keyBuffer.put(BinarySerialiser.serialize(key)).flip();
-            final byte[] serializedValue = BinarySerialiser.serialize(value);
-            final ByteBuffer valBuffer = allocateDirect(serializedValue.length);
-            valBuffer.put(serializedValue).flip();
-            db.put(tx, keyBuffer, valBuffer);
+            put(db, tx, key, BinarySerialiser.serialize(value));
         } catch (Exception e) {
             LOGGER.error("Error when storing the entry " + key + ", " + value, e);
         }
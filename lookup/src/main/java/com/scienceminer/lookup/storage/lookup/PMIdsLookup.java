@@ -2,10 +2,11 @@ package com.scienceminer.lookup.storage.lookup;
 
 import com.codahale.metrics.Meter;
 import com.scienceminer.lookup.data.PmidData;
-import com.scienceminer.lookup.exception.ServiceOverloadedException;
 import com.scienceminer.lookup.reader.PmidReader;
 import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.codec.PmidDataCodec;
 import com.scienceminer.lookup.utils.BinarySerialiser;
+import com.scienceminer.lookup.utils.KeyEncoder;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.lmdbjava.*;
@@ -21,11 +22,19 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.scienceminer.lookup.web.resource.DataController.DEFAULT_MAX_SIZE_LIST;
-import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.apache.commons.lang3.StringUtils.lowerCase;
-
-public class PMIdsLookup {
+import static org.apache.commons.lang3.StringUtils.startsWithIgnoreCase;
+
+/**
+ * Lookup doi, pmid, pmc -> PubMed identifiers.
+ * <p>
+ * The pmid and pmc databases are keyed by the numeric identifier as a native integer (MDB_INTEGERKEY): keys are
+ * compared as integers by LMDB and the records are ordered by PMID, which allows range scans. Storage built before
+ * {@link StorageEnvFactory#FORMAT_VERSION_INTEGER_KEYS} keeps the string keys.
+ */
+public class PMIdsLookup extends LmdbStore {
     private static final Logger LOGGER = LoggerFactory.getLogger(PMIdsLookup.class);
 
     public static final String ENV_NAME = "pmid";
@@ -34,28 +43,53 @@ public class PMIdsLookup {
     public static final String NAME_PMID2IDS = ENV_NAME + "_pmid2ids";
     public static final String NAME_PMC2IDS = ENV_NAME + "_pmc2ids";
 
-    protected Env<ByteBuffer> environment;
     protected Dbi<ByteBuffer> dbDoiToIds;
     protected Dbi<ByteBuffer> dbPmidToIds;
     protected Dbi<ByteBuffer> dbPmcToIds;
 
-    private final int batchSize;
+    private final boolean integerKeys;
 
     public PMIdsLookup(StorageEnvFactory storageEnvFactory) {
-        this.environment = storageEnvFactory.getEnv(ENV_NAME);
-        batchSize = storageEnvFactory.getConfiguration().getBatchSize();
+        super(storageEnvFactory, ENV_NAME);
+
+        integerKeys = formatVersion >= StorageEnvFactory.FORMAT_VERSION_INTEGER_KEYS;
+        dbDoiToIds = withFilter(this.environment.openDbi(NAME_DOI2IDS, DbiFlags.MDB_CREATE));
+        if (integerKeys) {
+            dbPmidToIds = withFilter(openIntegerKeyDbi(NAME_PMID2IDS));
+            dbPmcToIds = withFilter(openIntegerKeyDbi(NAME_PMC2IDS));
+        } else {
+            dbPmidToIds = withFilter(this.environment.openDbi(NAME_PMID2IDS, DbiFlags.MDB_CREATE));
+            dbPmcToIds = withFilter(this.environment.openDbi(NAME_PMC2IDS, DbiFlags.MDB_CREATE));
+        }
+    }
 
-        dbDoiToIds = this.environment.openDbi(NAME_DOI2IDS, DbiFlags.MDB_CREATE);
-        dbPmidToIds = this.environment.openDbi(NAME_PMID2IDS, DbiFlags.MDB_CREATE);
-        dbPmcToIds = this.environment.openDbi(NAME_PMC2IDS, DbiFlags.MDB_CREATE);
+    /**
+     * Normalise a PMID into its integer key, -1 if it is not a valid PMID
+     */
+    public static int toPmidKey(String pmid) {
+        return KeyEncoder.parseInteger(pmid);
+    }
+
+    /**
+     * Normalise a PMC identifier, with or without the PMC prefix, into its integer key, -1 if it is not valid
+     */
+    public static int toPmcKey(String pmc) {
+        if (pmc == null) {
+            return -1;
+        }
+        final String trimmed = pmc.trim();
+        return KeyEncoder.parseInteger(startsWithIgnoreCase(trimmed, "PMC") ? trimmed.substring(3) : trimmed);
     }
 
-    public void loadFromFile(InputStream is, PmidReader reader, Meter metric) {
+    public void loadFromFile(InputStream is, PmidReader reader, LoadPipeline pipeline, Meter metric) {
+        dropFilters();
+        pipeline.setSkipLines(getResumeLine());
         final TransactionWrapper transactionWrapper = new TransactionWrapper(environment.txnWrite());
         final AtomicInteger counter = new AtomicInteger(0);
 
-        reader.load(is, pmidData -> {
+        pipeline.run(is, reader::fromCSV, pmidData -> {
                     if (counter.get() == batchSize) {
+                        saveLoadCheckpoint(transactionWrapper.tx, pipeline.getLineIndex(), metric.getCount());
                         transactionWrapper.tx.commit();
                         transactionWrapper.tx.close();
                         transactionWrapper.tx = environment.txnWrite();
@@ -67,98 +101,125 @@ public class PMIdsLookup {
                     }
 
                     if (isNotBlank(pmidData.getPmid())) {
-                        store(dbPmidToIds, pmidData.getPmid(), pmidData, transactionWrapper.tx);
+                        storeIdentifier(dbPmidToIds, pmidData.getPmid(), toPmidKey(pmidData.getPmid()), pmidData, transactionWrapper.tx);
                     }
 
                     if (isNotBlank(pmidData.getPmcid())) {
-                        store(dbPmcToIds, pmidData.getPmcid(), pmidData, transactionWrapper.tx);
+                        storeIdentifier(dbPmcToIds, pmidData.getPmcid(), toPmcKey(pmidData.getPmcid()), pmidData, transactionWrapper.tx);
                     }
                     metric.mark();
                     counter.incrementAndGet();
                 }
         );
+        clearLoadCheckpoint(transactionWrapper.tx);
         transactionWrapper.tx.commit();
         transactionWrapper.tx.close();
+        finishBulkLoad();
+        buildFilters();
 
         LOGGER.info("Cross checking number of records processed:: " + metric.getCount());
     }
 
-    public PmidData retrieveIdsByDoi(String doi) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        PmidData record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(lowerCase(doi))).flip();
-            cachedData = dbDoiToIds.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (PmidData) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve PubMed Ids by DOI: " + doi, e);
+    private byte[] encode(PmidData value) {
+        if (formatVersion < StorageEnvFactory.FORMAT_VERSION_COMPACT_VALUES) {
+            return BinarySerialiser.serialize(value);
+        }
+        return PmidDataCodec.encode(value);
+    }
+
+    private PmidData decode(ByteBuffer value) {
+        if (formatVersion < StorageEnvFactory.FORMAT_VERSION_COMPACT_VALUES) {
+            return (PmidData) BinarySerialiser.deserialize(value);
         }
+        return PmidDataCodec.decode(value);
+    }
 
-        return record;
+    public PmidData retrieveIdsByDoi(String doi) {
+        return get(dbDoiToIds, lowerCase(doi), this::decode);
     }
 
     public PmidData retrieveIdsByPmid(String pmid) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        PmidData record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(pmid)).flip();
-            cachedData = dbPmidToIds.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (PmidData) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve PubMed Ids by PMID: " + pmid, e);
+        if (!integerKeys) {
+            return get(dbPmidToIds, pmid, this::decode);
         }
-
-        return record;
+        final int key = toPmidKey(pmid);
+        return key < 0 ? null : get(dbPmidToIds, key, this::decode);
     }
 
     public PmidData retrieveIdsByPmc(String pmc) {
-        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-        ByteBuffer cachedData = null;
-        PmidData record = null;
-        try (Txn<ByteBuffer> tx = environment.txnRead()) {
-            keyBuffer.put(BinarySerialiser.serialize(pmc)).flip();
-            cachedData = dbPmcToIds.get(tx, keyBuffer);
-            if (cachedData != null) {
-                record = (PmidData) BinarySerialiser.deserialize(cachedData);
-            }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        } catch (Exception e) {
-            LOGGER.error("Cannot retrieve PubMed Ids by PMC ID: " + pmc, e);
+        if (!integerKeys) {
+            return get(dbPmcToIds, pmc, this::decode);
         }
+        final int key = toPmcKey(pmc);
+        return key < 0 ? null : get(dbPmcToIds, key, this::decode);
+    }
 
-        return record;
+    /**
+     * Return the records whose PMID is within [from, to], in PMID order, at most total records.
+     */
+    public List<Pair<String, PmidData>> retrieveIdsByPmidRange(int from, int to, Integer total) {
+        if (!integerKeys) {
+            throw new IllegalStateException("Range scans require the integer keys of the format version "
+                    + StorageEnvFactory.FORMAT_VERSION_INTEGER_KEYS + ", run the migrate command.");
+        }
+        if (total == null || total == 0) {
+            total = DEFAULT_MAX_SIZE_LIST;
+        }
+
+        List<Pair<String, PmidData>> values = new ArrayList<>();
+        final int max = total;
+
+        read(txn -> {
+            try (Cursor<ByteBuffer> cursor = dbPmidToIds.openCursor(txn)) {
+                // the cursor compares the keys with the integer comparator of the database
+                boolean found = cursor.get(keyBuffer(Math.max(from, 0)), GetOp.MDB_SET_RANGE);
+                while (found && values.size() < max) {
+                    final int pmid = KeyEncoder.decodeInteger(cursor.key());
+                    if (pmid > to) {
+                        break;
+                    }
+                    values.add(new ImmutablePair<>(String.valueOf(pmid), decode(cursor.val())));
+                    found = cursor.next();
+                }
+            }
+            return values;
+        });
+
+        return values;
     }
 
     public Map<String, Long> getSize() {
         Map<String, Long> size = new HashMap<>();
-        try (final Txn<ByteBuffer> txn = this.environment.txnRead()) {
+        read(txn -> {
             size.put(NAME_DOI2IDS, dbDoiToIds.stat(txn).entries);
             size.put(NAME_PMID2IDS, dbPmidToIds.stat(txn).entries);
             size.put(NAME_PMC2IDS, dbPmcToIds.stat(txn).entries);
-        }
+            return size;
+        });
 
         return size;
     }
 
+    private void storeIdentifier(Dbi<ByteBuffer> db, String identifier, int key, PmidData value, Txn<ByteBuffer> tx) {
+        if (!integerKeys) {
+            store(db, identifier, value, tx);
+            return;
+        }
+        if (key < 0) {
+            LOGGER.warn("Invalid identifier, not stored in " + new String(db.getName(), UTF_8) + ": " + identifier);
+            return;
+        }
+        try {
+            put(db, tx, key, encode(value));
+        } catch (Exception e) {
+            LOGGER.warn("Some serious issues when writing on LMDB database "
+                    + db.toString() + " key: " + key + ", value: " + value, e);
+        }
+    }
+
     private void store(Dbi<ByteBuffer> db, String key, PmidData value, Txn<ByteBuffer> tx) {
         try {
-            final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
-            keyBuffer.put(BinarySerialiser.serialize(key)).flip();
-            final byte[] serializedValue = BinarySerialiser.serialize(value);
-            final ByteBuffer valBuffer = allocateDirect(serializedValue.length);
-            valBuffer.put(serializedValue).flip();
-            db.put(tx, keyBuffer, valBuffer);
+            put(db, tx, key, encode(value));
         } catch (Exception e) {
             LOGGER.warn("Some serious issues when writing on LMDB database "
                     + db.toString() + " key: " + key + ", value: " + value, e);
@@ -180,22 +241,23 @@ public class PMIdsLookup {
         }
 
         List<Pair<String, PmidData>> values = new ArrayList<>();
-        int counter = 0;
+        final int max = total;
 
-        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+        read(txn -> {
+            int counter = 0;
             try (CursorIterator<ByteBuffer> it = db.iterate(txn, KeyRange.all())) {
                 for (final CursorIterator.KeyVal<ByteBuffer> kv : it.iterable()) {
-                    values.add(new ImmutablePair<>((String) BinarySerialiser.deserialize(kv.key()), (PmidData) BinarySerialiser.deserialize(kv.val())));
-                    if (counter == total) {
-                        txn.close();
+                    final String key = integerKeys && db != dbDoiToIds
+                            ? String.valueOf(KeyEncoder.decodeInteger(kv.key())) : decodeKey(kv.key());
+                    values.add(new ImmutablePair<>(key, decode(kv.val())));
+                    if (counter == max) {
                         break;
                     }
                     counter++;
                 }
             }
-        } catch (Env.ReadersFullException e) {
-            throw new ServiceOverloadedException("Not enough readers for LMDB access, increase them or reduce the parallel request rate. ", e);
-        }
+            return values;
+        });
 
         return values;
     }
@@ -0,0 +1,239 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.scienceminer.lookup.utils.KeyEncoder;
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.Dbi;
+import org.lmdbjava.Env;
+import org.lmdbjava.PutFlags;
+import org.lmdbjava.Txn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bulk writer of one database: the records are accumulated in memory, spilled to sorted runs on disk, then merged
+ * and appended to the database in key order with MDB_APPEND, which produces fully packed pages without any
+ * page split.
+ * <p>
+ * When the same key is added several times, the last added value is kept, as with successive puts.
+ */
+public class SortedBulkWriter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SortedBulkWriter.class);
+
+    public static final long DEFAULT_RUN_SIZE = 256L * 1024L * 1024L;
+
+    /**
+     * Order of the keys in LMDB with the default comparator: unsigned lexicographic, shorter key first
+     **/
+    public static final Comparator<byte[]> KEY_ORDER = (a, b) -> {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            final int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    };
+
+    /**
+     * Order of the keys in a MDB_INTEGERKEY database: unsigned native integers
+     **/
+    public static final Comparator<byte[]> INTEGER_KEY_ORDER = (a, b) ->
+            Integer.compareUnsigned(KeyEncoder.decodeInteger(ByteBuffer.wrap(a)), KeyEncoder.decodeInteger(ByteBuffer.wrap(b)));
+
+    private final File directory;
+    private final long runSize;
+    private final Comparator<byte[]> keyOrder;
+
+    private final List<byte[][]> buffer = new ArrayList<>();
+    private long bufferSize = 0;
+    private final List<File> runs = new ArrayList<>();
+
+    public SortedBulkWriter(File directory) {
+        this(directory, KEY_ORDER);
+    }
+
+    public SortedBulkWriter(File directory, Comparator<byte[]> keyOrder) {
+        this(directory, keyOrder, DEFAULT_RUN_SIZE);
+    }
+
+    public SortedBulkWriter(File directory, Comparator<byte[]> keyOrder, long runSize) {
+        this.directory = directory;
+        this.keyOrder = keyOrder;
+        this.runSize = runSize;
+    }
+
+    public void add(byte[] key, byte[] value) {
+        buffer.add(new byte[][]{key, value});
+        bufferSize += key.length + value.length;
+        if (bufferSize >= runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Sort the buffered records, keeping only the last value of each key, and write them in a new run file.
+     */
+    private void spill() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        // the sort is stable, the last added value of a key is then the last of its group
+        buffer.sort((a, b) -> keyOrder.compare(a[0], b[0]));
+
+        directory.mkdirs();
+        final File run = new File(directory, "run-" + runs.size());
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 20))) {
+            for (int i = 0; i < buffer.size(); i++) {
+                final byte[][] record = buffer.get(i);
+                if (i + 1 < buffer.size() && keyOrder.compare(record[0], buffer.get(i + 1)[0]) == 0) {
+                    continue;
+                }
+                output.writeInt(record[0].length);
+                output.write(record[0]);
+                output.writeInt(record[1].length);
+                output.write(record[1]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the sorted run " + run.getPath(), e);
+        }
+        runs.add(run);
+        buffer.clear();
+        bufferSize = 0;
+    }
+
+    /**
+     * Merge the sorted runs and write them in the database, the run files are deleted afterwards.
+     * When the database is not empty, the records cannot be appended and are put normally.
+     *
+     * @return the number of records written
+     */
+    public long write(Env<ByteBuffer> environment, Dbi<ByteBuffer> db, int batchSize) {
+        spill();
+
+        final boolean append;
+        try (Txn<ByteBuffer> txn = environment.txnRead()) {
+            append = db.stat(txn).entries == 0;
+        }
+        if (!append) {
+            LOGGER.warn("The database " + new String(db.getName(), UTF_8) + " is not empty, the records are not appended.");
+        }
+
+        final PriorityQueue<RunReader> queue = new PriorityQueue<>((a, b) -> {
+            final int order = keyOrder.compare(a.key, b.key);
+            // for a same key, the most recent run first
+            return order != 0 ? order : b.index - a.index;
+        });
+
+        final ByteBuffer keyBuffer = allocateDirect(environment.getMaxKeySize());
+        ByteBuffer valueBuffer = allocateDirect(4096);
+        long written = 0;
+        int counter = 0;
+
+        Txn<ByteBuffer> txn = environment.txnWrite();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                final RunReader reader = new RunReader(runs.get(i), i);
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+
+            byte[] previousKey = null;
+            while (!queue.isEmpty()) {
+                final RunReader reader = queue.poll();
+                if (previousKey == null || keyOrder.compare(previousKey, reader.key) != 0) {
+                    if (counter == batchSize) {
+                        txn.commit();
+                        txn.close();
+                        txn = environment.txnWrite();
+                        counter = 0;
+                    }
+                    if (valueBuffer.capacity() < reader.value.length) {
+                        valueBuffer = allocateDirect(Math.max(reader.value.length, valueBuffer.capacity() * 2));
+                    }
+                    keyBuffer.clear();
+                    keyBuffer.put(reader.key).flip();
+                    valueBuffer.clear();
+                    valueBuffer.put(reader.value).flip();
+                    if (append) {
+                        db.put(txn, keyBuffer, valueBuffer, PutFlags.MDB_APPEND);
+                    } else {
+                        db.put(txn, keyBuffer, valueBuffer);
+                    }
+                    previousKey = reader.key;
+                    written++;
+                    counter++;
+                }
+
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            txn.commit();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the sorted runs in " + directory.getPath(), e);
+        } finally {
+            txn.close();
+            for (RunReader reader : queue) {
+                reader.close();
+            }
+            for (File run : runs) {
+                FileUtils.deleteQuietly(run);
+            }
+            runs.clear();
+        }
+
+        return written;
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream input;
+        private final int index;
+
+        private byte[] key;
+        private byte[] value;
+
+        RunReader(File run, int index) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 1 << 20));
+            this.index = index;
+        }
+
+        boolean next() throws IOException {
+            final int keyLength;
+            try {
+                keyLength = input.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            key = new byte[keyLength];
+            input.readFully(key);
+            value = new byte[input.readInt()];
+            input.readFully(value);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot close the sorted run", e);
+            }
+        }
+    }
+}
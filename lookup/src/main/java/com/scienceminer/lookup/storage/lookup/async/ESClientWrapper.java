@@ -22,8 +22,18 @@ public class ESClientWrapper {
 
     private final AtomicInteger counter;
 
+    private MultiSearchBatcher multiSearchBatcher;
+
     public ESClientWrapper(RestHighLevelClient esClient, int poolSize) {
+        this(esClient, poolSize, null);
+    }
+
+    /**
+     * @param multiSearchBatcher when not null, the asynchronous searches are gathered in _msearch requests
+     */
+    public ESClientWrapper(RestHighLevelClient esClient, int poolSize, MultiSearchBatcher multiSearchBatcher) {
         this.esClient = esClient;
+        this.multiSearchBatcher = multiSearchBatcher;
         this.counter = new AtomicInteger(poolSize);
         this.executorService = new ThreadPoolExecutor(poolSize, poolSize,
                 0L, TimeUnit.MILLISECONDS,
@@ -33,6 +43,24 @@ public class ESClientWrapper {
 
     }
 
+    public void setMultiSearchMetrics(MultiSearchMetrics metrics) {
+        if (multiSearchBatcher != null) {
+            multiSearchBatcher.setMetrics(metrics);
+        }
+    }
+
+    public void close() {
+        executorService.shutdown();
+        if (multiSearchBatcher != null) {
+            multiSearchBatcher.close();
+        }
+        try {
+            esClient.close();
+        } catch (IOException e) {
+            LOGGER.warn("Cannot close the Elasticsearch client", e);
+        }
+    }
+
     public SearchResponse searchSync(final SearchRequest request, final RequestOptions options) throws IOException {
         return esClient.search(request, options);
     }
@@ -70,7 +98,13 @@ public class ESClientWrapper {
         }
 
         final CompletableFuture<Void> searchResponseCompletableFuture = CompletableFuture
-                .runAsync(() -> esClient.searchAsync(request, options, listener), executorService);
+                .runAsync(() -> {
+                    if (multiSearchBatcher != null) {
+                        multiSearchBatcher.search(request, listener);
+                    } else {
+                        esClient.searchAsync(request, options, listener);
+                    }
+                }, executorService);
 
         searchResponseCompletableFuture.exceptionally(throwable -> {
             throw new ServiceException(500, "Error when completing the task", throwable);
@@ -0,0 +1,165 @@
+package com.scienceminer.lookup.storage.lookup.async;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Gather the searches submitted at the same time and send them to Elasticsearch in one _msearch request. A batch
+ * is sent when the window opened by its first search is elapsed, or as soon as it holds the maximum number of
+ * searches. The response of each search, or its failure, is given back to its own listener.
+ */
+public class MultiSearchBatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiSearchBatcher.class);
+
+    private final BiConsumer<MultiSearchRequest, ActionListener<MultiSearchResponse>> multiSearch;
+    private final long windowMillis;
+    private final int maxSearches;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile MultiSearchMetrics metrics = new MultiSearchMetrics();
+
+    private List<PendingSearch> batch = new ArrayList<>();
+
+    /**
+     * @param multiSearch the asynchronous _msearch call, e.g. {@code RestHighLevelClient::msearchAsync} with the
+     *                    request options
+     * @param windowMillis time a search waits for other searches to be sent with
+     * @param maxSearches  maximum number of searches of a batch
+     */
+    public MultiSearchBatcher(BiConsumer<MultiSearchRequest, ActionListener<MultiSearchResponse>> multiSearch,
+                              long windowMillis, int maxSearches) {
+        this.multiSearch = multiSearch;
+        this.windowMillis = windowMillis;
+        this.maxSearches = Math.max(1, maxSearches);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "msearch-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void setMetrics(MultiSearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void search(SearchRequest request, ActionListener<SearchResponse> listener) {
+        List<PendingSearch> full = null;
+        synchronized (this) {
+            batch.add(new PendingSearch(request, listener));
+            if (batch.size() >= maxSearches) {
+                full = batch;
+                batch = new ArrayList<>();
+            } else if (batch.size() == 1) {
+                final List<PendingSearch> opened = batch;
+                scheduler.schedule(() -> flush(opened), windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+    }
+
+    /**
+     * Send the batch, unless it was already sent because it was full.
+     */
+    private void flush(List<PendingSearch> opened) {
+        synchronized (this) {
+            if (batch != opened) {
+                return;
+            }
+            batch = new ArrayList<>();
+        }
+        send(opened);
+    }
+
+    private void send(List<PendingSearch> searches) {
+        final MultiSearchRequest request = new MultiSearchRequest();
+        for (PendingSearch search : searches) {
+            request.add(search.request);
+        }
+        final MultiSearchMetrics batchMetrics = metrics;
+        batchMetrics.batchSent(searches.size(), searches.get(0).queuedNanos);
+        final long sentNanos = System.nanoTime();
+
+        final ActionListener<MultiSearchResponse> listener = new ActionListener<MultiSearchResponse>() {
+            @Override
+            public void onResponse(MultiSearchResponse response) {
+                batchMetrics.batchCompleted(sentNanos, false);
+                final MultiSearchResponse.Item[] items = response.getResponses();
+                for (int i = 0; i < searches.size(); i++) {
+                    if (i >= items.length) {
+                        notifyFailure(searches.get(i), new IllegalStateException("No response for the search in the _msearch response"));
+                    } else if (items[i].isFailure()) {
+                        notifyFailure(searches.get(i), items[i].getFailure());
+                    } else {
+                        try {
+                            searches.get(i).listener.onResponse(items[i].getResponse());
+                        } catch (Exception e) {
+                            LOGGER.error("Error while processing the response of a search", e);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                batchMetrics.batchCompleted(sentNanos, true);
+                for (PendingSearch search : searches) {
+                    notifyFailure(search, e);
+                }
+            }
+        };
+
+        try {
+            multiSearch.accept(request, listener);
+        } catch (Exception e) {
+            listener.onFailure(e);
+        }
+    }
+
+    private static void notifyFailure(PendingSearch search, Exception e) {
+        try {
+            search.listener.onFailure(e);
+        } catch (Exception listenerException) {
+            LOGGER.error("Error while processing the failure of a search", listenerException);
+        }
+    }
+
+    /**
+     * Send the pending searches and stop the timer of the windows.
+     */
+    public void close() {
+        final List<PendingSearch> pending;
+        synchronized (this) {
+            pending = batch;
+            batch = new ArrayList<>();
+        }
+        if (!pending.isEmpty()) {
+            send(pending);
+        }
+        scheduler.shutdownNow();
+    }
+
+    private static class PendingSearch {
+        private final SearchRequest request;
+        private final ActionListener<SearchResponse> listener;
+        private final long queuedNanos = System.nanoTime();
+
+        PendingSearch(SearchRequest request, ActionListener<SearchResponse> listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.scienceminer.lookup.storage.lookup.async;
+
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of the matching searches sent together to Elasticsearch, shared by the snapshots of the storage:
+ * - the number of searches per _msearch request
+ * - the time spent by the searches waiting for their batch to be sent
+ * - the round trip of the _msearch requests
+ */
+public class MultiSearchMetrics {
+
+    private final Histogram batchSizes = new Histogram(new ExponentiallyDecayingReservoir());
+    private final Timer waits = new Timer();
+    private final Timer latencies = new Timer();
+    private final Meter searches = new Meter();
+    private final Meter failedBatches = new Meter();
+
+    void batchSent(int size, long oldestQueuedNanos) {
+        batchSizes.update(size);
+        searches.mark(size);
+        waits.update(System.nanoTime() - oldestQueuedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void batchCompleted(long sentNanos, boolean failed) {
+        latencies.update(System.nanoTime() - sentNanos, TimeUnit.NANOSECONDS);
+        if (failed) {
+            failedBatches.mark();
+        }
+    }
+
+    public Histogram getBatchSizes() {
+        return batchSizes;
+    }
+
+    public Meter getSearches() {
+        return searches;
+    }
+
+    public void registerMetrics(MetricRegistry metrics) {
+        final String prefix = MetricRegistry.name(MultiSearchBatcher.class);
+        metrics.register(MetricRegistry.name(prefix, "batchSize"), batchSizes);
+        metrics.register(MetricRegistry.name(prefix, "wait"), waits);
+        metrics.register(MetricRegistry.name(prefix, "latency"), latencies);
+        metrics.register(MetricRegistry.name(prefix, "searches"), searches);
+        metrics.register(MetricRegistry.name(prefix, "failedBatches"), failedBatches);
+    }
+}
@@ -0,0 +1,151 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.storage.lookup.async.ESClientWrapper;
+import com.scienceminer.lookup.storage.lookup.async.MultiSearchBatcher;
+import com.scienceminer.lookup.storage.lookup.async.MultiSearchMetrics;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static com.scienceminer.lookup.storage.lookup.MetadataMatching.*;
+
+/**
+ * Matching backend searching the Elasticsearch index built from fatcat, for the deployments with a cluster.
+ */
+public class ElasticsearchMatchingBackend implements MatchingBackend {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ElasticsearchMatchingBackend.class);
+
+    private final LookupConfiguration configuration;
+    private final ESClientWrapper esClient;
+
+    public ElasticsearchMatchingBackend(LookupConfiguration configuration) {
+        this.configuration = configuration;
+
+        RestHighLevelClient esClient = new RestHighLevelClient(
+                RestClient.builder(
+                        HttpHost.create(configuration.getElastic().getHost()))
+                        .setRequestConfigCallback(
+                                requestConfigBuilder -> requestConfigBuilder
+                                        .setConnectTimeout(30000)
+                                        .setSocketTimeout(60000))
+                        .setMaxRetryTimeoutMillis(120000));
+
+
+        MultiSearchBatcher multiSearchBatcher = null;
+        final long multiSearchWindow = configuration.getElastic().getMultiSearchWindow().toMilliseconds();
+        if (multiSearchWindow > 0) {
+            multiSearchBatcher = new MultiSearchBatcher(
+                    (request, listener) -> esClient.msearchAsync(request, RequestOptions.DEFAULT, listener),
+                    multiSearchWindow, configuration.getElastic().getMultiSearchMaxSearches());
+        }
+
+        this.esClient = new ESClientWrapper(esClient, configuration.getMaxAcceptedRequests(), multiSearchBatcher);
+    }
+
+    @Override
+    public List<Map<String, Object>> search(MatchingQuery query, int size) throws IOException {
+        return toHits(esClient.searchSync(prepareQueryExecution(query, size), RequestOptions.DEFAULT));
+    }
+
+    @Override
+    public void searchAsync(MatchingQuery query, int size, BiConsumer<List<Map<String, Object>>, Throwable> callback) {
+        esClient.searchAsync(prepareQueryExecution(query, size), RequestOptions.DEFAULT, (response, exception) -> {
+            if (exception == null) {
+                callback.accept(toHits(response), null);
+            } else {
+                callback.accept(null, exception);
+            }
+        });
+    }
+
+    private List<Map<String, Object>> toHits(SearchResponse response) {
+        final List<Map<String, Object>> hits = new ArrayList<>();
+        for (SearchHit hit : response.getHits()) {
+            hits.add(hit.getSourceAsMap());
+        }
+        return hits;
+    }
+
+    private SearchRequest prepareQueryExecution(MatchingQuery query, int size) {
+        SearchSourceBuilder builder = new SearchSourceBuilder();
+        builder.query(toQueryBuilder(query));
+        builder.from(0);
+        builder.size(size);
+
+        String[] includeFields = new String[]
+                {
+                        INDEX_FIELD_NAME_ID,
+                        INDEX_FIELD_NAME_FATCAT,
+                        INDEX_FIELD_NAME_DOI,
+                        INDEX_FIELD_NAME_FIRST_AUTHOR,
+                        INDEX_FIELD_NAME_TITLE
+                };
+        builder.fetchSource(includeFields, null);
+
+        final SearchRequest searchRequest = new SearchRequest(configuration.getElastic().getIndex());
+        searchRequest.searchType(SearchType.DFS_QUERY_THEN_FETCH);
+        searchRequest.source(builder);
+
+        return searchRequest;
+    }
+
+    static BoolQueryBuilder toQueryBuilder(MatchingQuery query) {
+        final BoolQueryBuilder builder = QueryBuilders.boolQuery();
+        for (MatchingQuery.Clause clause : query.getClauses()) {
+            final QueryBuilder clauseBuilder = clause.isAnalyzed()
+                    ? QueryBuilders.matchQuery(clause.getField(), clause.getValue())
+                    : QueryBuilders.termQuery(clause.getField(), clause.getValue());
+            if (clause.isRequired()) {
+                builder.must(clauseBuilder);
+            } else {
+                builder.should(clauseBuilder);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Record the batches of searches, when they are gathered in _msearch requests, in the shared metrics.
+     */
+    public void setMultiSearchMetrics(MultiSearchMetrics metrics) {
+        esClient.setMultiSearchMetrics(metrics);
+    }
+
+    @Override
+    public long getSize() {
+        try {
+            SearchRequest searchRequest = new SearchRequest(configuration.getElastic().getIndex());
+
+            SearchResponse response = esClient.searchSync(searchRequest, RequestOptions.DEFAULT);
+            return response.getHits().getTotalHits();
+        } catch (IOException e) {
+            LOGGER.error("Error while contacting Elasticsearch to fetch the size of "
+                    + configuration.getElastic().getIndex() + " index.", e);
+        }
+
+        return 0L;
+    }
+
+    @Override
+    public void close() {
+        esClient.close();
+    }
+}
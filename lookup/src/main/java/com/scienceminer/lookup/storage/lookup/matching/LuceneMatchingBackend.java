@@ -0,0 +1,138 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import com.scienceminer.lookup.exception.ServiceException;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.QueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static com.scienceminer.lookup.storage.lookup.MetadataMatching.INDEX_FIELD_NAME_TITLE;
+
+/**
+ * Matching backend searching an embedded Lucene index, built by {@link LuceneMatchingIndexer}, for the
+ * deployments without an Elasticsearch cluster: the searches are run in the process, without network round trip.
+ * The reader of the index and its searcher are opened once and shared by all the requests.
+ */
+public class LuceneMatchingBackend implements MatchingBackend {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneMatchingBackend.class);
+
+    private final DirectoryReader reader;
+    private final IndexSearcher searcher;
+    private final Analyzer analyzer;
+    private final QueryBuilder queryBuilder;
+    private final ExecutorService executorService;
+
+    /**
+     * @param directory  directory of the index
+     * @param threads    number of threads running the asynchronous searches
+     * @param maxPending number of asynchronous searches waiting for a thread, beyond which they are rejected
+     */
+    public LuceneMatchingBackend(Path directory, int threads, int maxPending) {
+        try {
+            this.reader = DirectoryReader.open(FSDirectory.open(directory));
+        } catch (IOException e) {
+            throw new ServiceException(500, "Cannot open the Lucene matching index " + directory
+                    + ", it can be built with the fatcatLuceneIndex command", e);
+        }
+        this.searcher = new IndexSearcher(reader);
+        this.analyzer = LuceneMatchingIndex.createAnalyzer();
+        this.queryBuilder = new QueryBuilder(analyzer);
+        this.executorService = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxPending), (r, executor) -> {
+            throw new ServiceException(503, "Rejected request, try later");
+        });
+        LOGGER.info("Lucene matching index " + directory + " opened, " + reader.numDocs() + " documents");
+    }
+
+    @Override
+    public List<Map<String, Object>> search(MatchingQuery query, int size) throws IOException {
+        final TopDocs topDocs = searcher.search(toQuery(query), size);
+
+        final List<Map<String, Object>> hits = new ArrayList<>();
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            final Document document = searcher.doc(scoreDoc.doc, LuceneMatchingIndex.STORED_FIELDS);
+            final Map<String, Object> hit = new HashMap<>();
+            for (String field : LuceneMatchingIndex.STORED_FIELDS) {
+                if (INDEX_FIELD_NAME_TITLE.equals(field)) {
+                    hit.put(field, Arrays.asList(document.getValues(field)));
+                } else {
+                    hit.put(field, document.get(field));
+                }
+            }
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    @Override
+    public void searchAsync(MatchingQuery query, int size, BiConsumer<List<Map<String, Object>>, Throwable> callback) {
+        executorService.execute(() -> {
+            final List<Map<String, Object>> hits;
+            try {
+                hits = search(query, size);
+            } catch (Exception e) {
+                callback.accept(null, e);
+                return;
+            }
+            callback.accept(hits, null);
+        });
+    }
+
+    /**
+     * Same boolean query as Elasticsearch: the analyzed clauses are analyzed with the analyzer of their field
+     * and match any of their terms, the other clauses are exact terms, normalized as the terms of their field.
+     */
+    Query toQuery(MatchingQuery query) {
+        final BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (MatchingQuery.Clause clause : query.getClauses()) {
+            final Query clauseQuery = clause.isAnalyzed()
+                    ? queryBuilder.createBooleanQuery(clause.getField(), clause.getValue())
+                    : new TermQuery(new Term(clause.getField(), analyzer.normalize(clause.getField(), clause.getValue())));
+            // null when the analyzed text has no term, e.g. only stop words
+            if (clauseQuery != null) {
+                builder.add(clauseQuery, clause.isRequired() ? BooleanClause.Occur.MUST : BooleanClause.Occur.SHOULD);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public long getSize() {
+        return reader.numDocs();
+    }
+
+    @Override
+    public void close() {
+        executorService.shutdown();
+        try {
+            reader.close();
+        } catch (IOException e) {
+            LOGGER.warn("Cannot close the Lucene matching index", e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.StopFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.core.KeywordTokenizer;
+import org.apache.lucene.analysis.core.StopAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.scienceminer.lookup.storage.lookup.MetadataIndexer.*;
+import static com.scienceminer.lookup.storage.lookup.MetadataMatching.*;
+
+/**
+ * Fields and analyzers of the embedded Lucene matching index, the same as the Elasticsearch index defined by
+ * matching_fatcat/resources/settings.json and fatcat_glutton_mapping.json.
+ */
+public class LuceneMatchingIndex {
+
+    /**
+     * Fields returned with the hits, the other fields are only indexed
+     */
+    public static final Set<String> STORED_FIELDS = new HashSet<>(Arrays.asList(
+            INDEX_FIELD_NAME_FATCAT, INDEX_FIELD_NAME_DOI, INDEX_FIELD_NAME_FIRST_AUTHOR, INDEX_FIELD_NAME_TITLE));
+
+    private LuceneMatchingIndex() {
+    }
+
+    /**
+     * Analyzer of each field of the mapping:
+     * - case_insensitive_keyword: fatcat, DOI
+     * - case_insensitive_folding_keyword: first_author, first_page, abbreviated_journal, volume, issue, year
+     * - case_insensitive_folding_text: author, query
+     * - case_insensitive_folding_text_stopwords: title, journal, bibliographic
+     * and the standard analyzer of Elasticsearch for the other fields.
+     */
+    public static Analyzer createAnalyzer() {
+        final Analyzer keyword = analyzer(true, false, false);
+        final Analyzer foldingKeyword = analyzer(true, true, false);
+        final Analyzer foldingText = analyzer(false, true, false);
+        final Analyzer foldingTextStopwords = analyzer(false, true, true);
+
+        final Map<String, Analyzer> analyzers = new HashMap<>();
+        analyzers.put(INDEX_FIELD_NAME_FATCAT, keyword);
+        analyzers.put(INDEX_FIELD_NAME_DOI, keyword);
+        analyzers.put(INDEX_FIELD_NAME_FIRST_AUTHOR, foldingKeyword);
+        analyzers.put(INDEX_FIELD_NAME_FIRST_PAGE, foldingKeyword);
+        analyzers.put(INDEX_FIELD_ABBREVIATED_JOURNAL_TITLE, foldingKeyword);
+        analyzers.put(INDEX_FIELD_NAME_VOLUME, foldingKeyword);
+        analyzers.put(INDEX_FIELD_NAME_ISSUE, foldingKeyword);
+        analyzers.put(INDEX_FIELD_NAME_YEAR, foldingKeyword);
+        analyzers.put(INDEX_FIELD_NAME_AUTHOR, foldingText);
+        analyzers.put("query", foldingText);
+        analyzers.put(INDEX_FIELD_NAME_TITLE, foldingTextStopwords);
+        analyzers.put(INDEX_FIELD_NAME_JOURNAL_TITLE, foldingTextStopwords);
+        analyzers.put(INDEX_FIELD_NAME_BIBLIOGRAPHIC, foldingTextStopwords);
+
+        return new PerFieldAnalyzerWrapper(analyzer(false, false, false), analyzers);
+    }
+
+    private static Analyzer analyzer(boolean keyword, boolean folding, boolean stopwords) {
+        return new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                final Tokenizer tokenizer = keyword ? new KeywordTokenizer() : new StandardTokenizer();
+                TokenStream stream = new LowerCaseFilter(tokenizer);
+                if (folding) {
+                    stream = new ASCIIFoldingFilter(stream);
+                }
+                if (stopwords) {
+                    stream = new StopFilter(stream, StopAnalyzer.ENGLISH_STOP_WORDS_SET);
+                }
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+
+            /**
+             * Normalization of the exact terms of the queries, like the keyword normalizer of Elasticsearch.
+             */
+            @Override
+            protected TokenStream normalize(String fieldName, TokenStream in) {
+                TokenStream stream = new LowerCaseFilter(in);
+                if (folding) {
+                    stream = new ASCIIFoldingFilter(stream);
+                }
+                return stream;
+            }
+        };
+    }
+
+    /**
+     * Lucene document of the fields of a release, as built by {@link com.scienceminer.lookup.storage.lookup.MetadataIndexer#toIndexDocument}.
+     */
+    public static Document toDocument(Map<String, Object> fields) {
+        final Document document = new Document();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            final Field.Store store = STORED_FIELDS.contains(field.getKey()) ? Field.Store.YES : Field.Store.NO;
+            if (field.getValue() instanceof Collection) {
+                for (Object value : (Collection<?>) field.getValue()) {
+                    if (value != null) {
+                        document.add(new TextField(field.getKey(), value.toString(), store));
+                    }
+                }
+            } else if (field.getValue() != null) {
+                document.add(new TextField(field.getKey(), field.getValue().toString(), store));
+            }
+        }
+        return document;
+    }
+}
@@ -0,0 +1,82 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.scienceminer.lookup.reader.FatcatJsonReader;
+import com.scienceminer.lookup.storage.lookup.LoadPipeline;
+import com.scienceminer.lookup.storage.lookup.MetadataIndexer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Build the embedded Lucene index of {@link LuceneMatchingBackend} from the fatcat releases, with the documents of
+ * the Elasticsearch index. The index writer is shared by the workers of the load pipeline, which add the documents
+ * concurrently.
+ */
+public class LuceneMatchingIndexer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LuceneMatchingIndexer.class);
+
+    public static final int DEFAULT_RAM_BUFFER_MB = 256;
+
+    private final IndexWriter writer;
+    private final Meter indexed;
+
+    /**
+     * @param directory   directory of the index, an existing index being replaced
+     * @param ramBufferMb memory used to buffer the documents before writing a segment
+     */
+    public LuceneMatchingIndexer(Path directory, MetricRegistry metrics, String name, int ramBufferMb) throws IOException {
+        final IndexWriterConfig config = new IndexWriterConfig(LuceneMatchingIndex.createAnalyzer())
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                .setRAMBufferSizeMB(ramBufferMb);
+        this.writer = new IndexWriter(FSDirectory.open(directory), config);
+        this.indexed = metrics.meter(name + ".indexed");
+    }
+
+    /**
+     * Index the releases of the fatcat dump, parsed and written by the workers of the pipeline.
+     */
+    public void indexFromFile(InputStream is, FatcatJsonReader reader, LoadPipeline pipeline) {
+        pipeline.run(is, line -> {
+            final JsonNode release = reader.parse(line);
+            if (release != null) {
+                index(release);
+            }
+            return null;
+        }, release -> {
+        });
+    }
+
+    public void index(JsonNode release) {
+        final Map<String, Object> document = MetadataIndexer.toIndexDocument(release);
+        if (document == null) {
+            return;
+        }
+        try {
+            writer.addDocument(LuceneMatchingIndex.toDocument(document));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot index the release " + release.get("ident"), e);
+        }
+        indexed.mark();
+    }
+
+    /**
+     * Commit the index, which becomes visible to the readers opened afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.commit();
+        LOGGER.info("Lucene matching index committed, " + writer.numDocs() + " documents");
+        writer.close();
+    }
+}
@@ -0,0 +1,30 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Search engine of the metadata matching. A hit is given by the stored fields of the matched document:
+ * fatcat, DOI, first_author and title (the list of the titles).
+ */
+public interface MatchingBackend {
+
+    /**
+     * Best hits of the query, the best first.
+     */
+    List<Map<String, Object>> search(MatchingQuery query, int size) throws IOException;
+
+    /**
+     * Search the best hits of the query, the callback receives either the hits or the failure of the search.
+     */
+    void searchAsync(MatchingQuery query, int size, BiConsumer<List<Map<String, Object>>, Throwable> callback);
+
+    /**
+     * Number of documents in the index.
+     */
+    long getSize();
+
+    void close();
+}
@@ -0,0 +1,83 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Boolean query of the metadata matching, independent of the backend: analyzed matches and exact terms on the
+ * fields of the index, which are either required or only raising the score. At least one optional clause has
+ * to match when there is no required clause.
+ */
+public class MatchingQuery {
+
+    private final List<Clause> clauses = new ArrayList<>();
+
+    /**
+     * Optional match of the text, analyzed like the field, any of its terms matching.
+     */
+    public MatchingQuery should(String field, String text) {
+        clauses.add(new Clause(field, text, true, false));
+        return this;
+    }
+
+    /**
+     * Optional exact term, not analyzed.
+     */
+    public MatchingQuery shouldTerm(String field, String term) {
+        clauses.add(new Clause(field, term, false, false));
+        return this;
+    }
+
+    /**
+     * Required exact term, not analyzed.
+     */
+    public MatchingQuery mustTerm(String field, String term) {
+        clauses.add(new Clause(field, term, false, true));
+        return this;
+    }
+
+    public List<Clause> getClauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+
+    @Override
+    public String toString() {
+        return clauses.toString();
+    }
+
+    public static class Clause {
+        private final String field;
+        private final String value;
+        private final boolean analyzed;
+        private final boolean required;
+
+        Clause(String field, String value, boolean analyzed, boolean required) {
+            this.field = field;
+            this.value = value;
+            this.analyzed = analyzed;
+            this.required = required;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isAnalyzed() {
+            return analyzed;
+        }
+
+        public boolean isRequired() {
+            return required;
+        }
+
+        @Override
+        public String toString() {
+            return (required ? "+" : "") + field + (analyzed ? ":" : ":=") + value;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.scienceminer.lookup.utils;
 
 import org.nustaq.serialization.FSTConfiguration;
+import org.nustaq.serialization.FSTObjectOutput;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 
 public class BinarySerialiser {
@@ -13,11 +15,31 @@ public class BinarySerialiser {
      */
     private static FSTConfiguration singletonConf = FSTConfiguration.createDefaultConfiguration();
 
+    /**
+     * Per thread scratch areas, so that values can be decoded from LMDB memory mapped buffers without
+     * allocating intermediate arrays for each record.
+     */
+    private static final ThreadLocal<byte[]> scratchArray = ThreadLocal.withInitial(() -> new byte[4096]);
+    private static final ThreadLocal<ByteBuffer> scratchBuffer = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(16384));
+
     public static byte[] serialize(Object obj) {
         byte data[] = singletonConf.asByteArray(obj);
         return data;
     }
 
+    /**
+     * Serialise the object directly into the target buffer, starting at its current position.
+     */
+    public static void serialize(Object obj, ByteBuffer target) {
+        final FSTObjectOutput objectOutput = singletonConf.getObjectOutput();
+        try {
+            objectOutput.writeObject(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        target.put(objectOutput.getBuffer(), 0, objectOutput.getWritten());
+    }
+
     public static byte[] serializeAndCompress(Object obj) throws IOException {
         byte data[] = singletonConf.asByteArray(obj);
         return Compressors.compressSnappy(data);
@@ -28,9 +50,18 @@ public class BinarySerialiser {
     }
 
     public static Object deserialize(ByteBuffer data) {
-        byte[] b = new byte[data.remaining()];
-        data.get(b);
-        return deserialize(b);
+        final int length = data.remaining();
+        byte[] b = scratchArray.get();
+        if (b.length < length) {
+            b = new byte[Math.max(length, b.length * 2)];
+            scratchArray.set(b);
+        }
+        data.get(b, 0, length);
+        try {
+            return singletonConf.getObjectInput(b, length).readObject();
+        } catch (Exception e) {
+            throw new RuntimeException("Cannot deserialise the object", e);
+        }
     }
 
 
@@ -39,9 +70,21 @@ public class BinarySerialiser {
     }
 
     public static Object deserializeAndDecompress(ByteBuffer data) throws IOException {
-        byte[] b = new byte[data.remaining()];
-        data.get(b);
-        return deserializeAndDecompress(b);
+        if (!data.isDirect()) {
+            byte[] b = new byte[data.remaining()];
+            data.get(b);
+            return deserializeAndDecompress(b);
+        }
+
+        final int length = Compressors.uncompressedLengthSnappy(data);
+        ByteBuffer uncompressed = scratchBuffer.get();
+        if (uncompressed.capacity() < length) {
+            uncompressed = ByteBuffer.allocateDirect(Math.max(length, uncompressed.capacity() * 2));
+            scratchBuffer.set(uncompressed);
+        }
+        uncompressed.clear();
+        Compressors.decompressSnappy(data, uncompressed);
+        return deserialize(uncompressed);
     }
 
 }
@@ -1,10 +1,16 @@
 package com.scienceminer.lookup.utils;
 
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
 import org.xerial.snappy.Snappy;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -17,6 +23,61 @@ public class Compressors {
         return Snappy.uncompress(input);
     }
 
+    /**
+     * Decompress between two direct buffers, the output position and limit are set to the uncompressed data.
+     */
+    public static int decompressSnappy(ByteBuffer input, ByteBuffer output) throws IOException {
+        return Snappy.uncompress(input, output);
+    }
+
+    public static int uncompressedLengthSnappy(ByteBuffer input) throws IOException {
+        return Snappy.uncompressedLength(input);
+    }
+
+    public static byte[] compressZstd(byte[] input, int level) {
+        return Zstd.compress(input, level);
+    }
+
+    public static byte[] compressZstd(byte[] input, ZstdDictCompress dictionary) {
+        return Zstd.compress(input, dictionary);
+    }
+
+    public static byte[] decompressZstd(byte[] input) throws IOException {
+        return Zstd.decompress(input, decompressedSizeZstd(input));
+    }
+
+    public static byte[] decompressZstd(byte[] input, ZstdDictDecompress dictionary) throws IOException {
+        return Zstd.decompress(input, dictionary, decompressedSizeZstd(input));
+    }
+
+    /**
+     * Size written in the frame header, 0 for an empty value. A frame of unknown size also gives 0, it is then
+     * rejected by the decompression as too large for the empty output.
+     */
+    private static int decompressedSizeZstd(byte[] input) throws IOException {
+        final long size = Zstd.decompressedSize(input);
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Cannot read the decompressed size of the zstd frame");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Train a zstd dictionary from a list of samples, the total size of the samples should be at least
+     * a hundred times the size of the dictionary to get a useful one.
+     */
+    public static byte[] trainZstdDictionary(List<byte[]> samples, int dictionarySize) {
+        int samplesSize = 0;
+        for (byte[] sample : samples) {
+            samplesSize += sample.length;
+        }
+        final ZstdDictTrainer trainer = new ZstdDictTrainer(samplesSize, dictionarySize);
+        for (byte[] sample : samples) {
+            trainer.addSample(sample);
+        }
+        return trainer.trainSamples();
+    }
+
     public static byte[] compressGzip(byte[] input) throws IOException {
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         GZIPOutputStream gzip = new GZIPOutputStream(output);
@@ -0,0 +1,272 @@
+package com.scienceminer.lookup.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Opening of the dumps to load, decompressed according to their extension (.gz, .xz or plain text).
+ * <p>
+ * The compressed files made of independent blocks are decompressed in parallel:
+ * - gzip files written by bgzip (BGZF), whose members record their compressed size
+ * - xz files with several blocks, e.g. written with xz -T or pixz
+ * The other compressed files are decompressed by a dedicated thread ahead of the reader.
+ */
+public class DumpInputStreams {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DumpInputStreams.class);
+
+    /**
+     * Compressed size of the BGZF members decompressed together by a thread
+     */
+    public static final int BGZF_BATCH_SIZE = 4 << 20;
+
+    private static final int GZIP_HEADER_SIZE = 12;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int FEXTRA = 4;
+
+    /**
+     * Default number of decompression threads, the others being left to parse and write the records.
+     */
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    }
+
+    /**
+     * @param threads number of threads decompressing the blocks of the file when it is splittable
+     */
+    public static InputStream open(Path path, int threads) throws IOException {
+        final String fileName = path.getFileName().toString();
+        if (fileName.endsWith(".xz")) {
+            return openXz(path.toFile(), threads);
+        } else if (fileName.endsWith(".gz")) {
+            if (threads > 1 && isBgzf(path)) {
+                LOGGER.info("Decompressing the BGZF blocks of " + path + " with " + threads + " threads");
+                return new BgzfInputStream(path, threads);
+            }
+            return new ReadAheadInputStream(new GZIPInputStream(Files.newInputStream(path), 1 << 16));
+        }
+        return new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+    }
+
+    private static InputStream openXz(File file, int threads) throws IOException {
+        if (threads > 1) {
+            final SeekableXZInputStream xz = new SeekableXZInputStream(new SeekableFileInputStream(file));
+            if (xz.getBlockCount() > 1 && xz.getLargestBlockSize() < Integer.MAX_VALUE) {
+                LOGGER.info("Decompressing the " + xz.getBlockCount() + " xz blocks of " + file + " with "
+                        + threads + " threads");
+                return new XzBlockInputStream(file, xz, threads);
+            }
+            xz.close();
+        }
+        return new ReadAheadInputStream(new XZInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), 1 << 16)));
+    }
+
+    /**
+     * The file is a BGZF file if its first gzip member has the BC extra subfield giving the size of the member.
+     */
+    static boolean isBgzf(Path path) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return readBgzfHeader(input) != null;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read the header of a BGZF member.
+     *
+     * @return the header followed by its extra field, the size of the member being given by {@link #bgzfSize(byte[])},
+     * null if the member is not a BGZF member
+     */
+    private static byte[] readBgzfHeader(DataInputStream input) throws IOException {
+        final byte[] fixed = new byte[GZIP_HEADER_SIZE];
+        input.readFully(fixed);
+        if ((fixed[0] & 0xff) != 31 || (fixed[1] & 0xff) != 139 || fixed[2] != 8 || (fixed[3] & FEXTRA) == 0) {
+            return null;
+        }
+        final int extraLength = (fixed[10] & 0xff) | (fixed[11] & 0xff) << 8;
+        final byte[] header = new byte[GZIP_HEADER_SIZE + extraLength];
+        System.arraycopy(fixed, 0, header, 0, GZIP_HEADER_SIZE);
+        input.readFully(header, GZIP_HEADER_SIZE, extraLength);
+        return bgzfSize(header) < 0 ? null : header;
+    }
+
+    /**
+     * Size of the BGZF member from its BC extra subfield, -1 if it has none.
+     */
+    private static int bgzfSize(byte[] header) {
+        int position = GZIP_HEADER_SIZE;
+        while (position + 4 <= header.length) {
+            final int subfieldLength = (header[position + 2] & 0xff) | (header[position + 3] & 0xff) << 8;
+            if (header[position] == 'B' && header[position + 1] == 'C' && subfieldLength == 2
+                    && position + 6 <= header.length) {
+                return ((header[position + 4] & 0xff) | (header[position + 5] & 0xff) << 8) + 1;
+            }
+            position += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Decompression of the BGZF members: the members are read in batches by the reader and inflated in parallel.
+     */
+    private static class BgzfInputStream extends ParallelBlockInputStream {
+        private final DataInputStream input;
+        private long offset;
+
+        BgzfInputStream(Path path, int threads) throws IOException {
+            super(threads);
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        }
+
+        @Override
+        protected Callable<byte[]> nextBlock() throws IOException {
+            final List<byte[]> members = new ArrayList<>();
+            int batchSize = 0;
+            while (batchSize < BGZF_BATCH_SIZE) {
+                final byte[] header;
+                try {
+                    header = readBgzfHeader(input);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (header == null) {
+                    throw new IOException("The gzip member at the offset " + offset + " is not a BGZF member");
+                }
+                final byte[] member = new byte[bgzfSize(header)];
+                System.arraycopy(header, 0, member, 0, header.length);
+                input.readFully(member, header.length, member.length - header.length);
+                members.add(member);
+                batchSize += member.length;
+                offset += member.length;
+            }
+            if (members.isEmpty()) {
+                return null;
+            }
+            return () -> inflate(members);
+        }
+
+        private static byte[] inflate(List<byte[]> members) throws IOException {
+            int size = 0;
+            for (byte[] member : members) {
+                size += uncompressedSize(member);
+            }
+            final byte[] output = new byte[size];
+            final Inflater inflater = new Inflater(true);
+            final CRC32 crc = new CRC32();
+            try {
+                int offset = 0;
+                for (byte[] member : members) {
+                    final int dataOffset = GZIP_HEADER_SIZE + ((member[10] & 0xff) | (member[11] & 0xff) << 8);
+                    final int length = uncompressedSize(member);
+                    inflater.reset();
+                    inflater.setInput(member, dataOffset, member.length - dataOffset - GZIP_TRAILER_SIZE);
+                    int inflated = 0;
+                    while (inflated < length) {
+                        final int count = inflater.inflate(output, offset + inflated, length - inflated);
+                        if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                            throw new IOException("Truncated BGZF member");
+                        }
+                        inflated += count;
+                    }
+                    crc.reset();
+                    crc.update(output, offset, length);
+                    if ((int) crc.getValue() != readInt(member, member.length - GZIP_TRAILER_SIZE)) {
+                        throw new IOException("Corrupt BGZF member, CRC mismatch");
+                    }
+                    offset += length;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt BGZF member", e);
+            } finally {
+                inflater.end();
+            }
+            return output;
+        }
+
+        private static int uncompressedSize(byte[] member) {
+            return readInt(member, member.length - 4);
+        }
+
+        private static int readInt(byte[] data, int offset) {
+            return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8
+                    | (data[offset + 2] & 0xff) << 16 | (data[offset + 3] & 0xff) << 24;
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            input.close();
+        }
+    }
+
+    /**
+     * Decompression of the blocks of an xz file, each thread seeking to its block with its own stream.
+     */
+    private static class XzBlockInputStream extends ParallelBlockInputStream {
+        private final int blocks;
+        private final BlockingQueue<SeekableXZInputStream> streams;
+        private final List<SeekableXZInputStream> opened = new ArrayList<>();
+        private int next;
+
+        XzBlockInputStream(File file, SeekableXZInputStream first, int threads) throws IOException {
+            super(threads);
+            this.blocks = first.getBlockCount();
+            this.streams = new ArrayBlockingQueue<>(threads);
+            this.streams.add(first);
+            this.opened.add(first);
+            for (int i = 1; i < threads; i++) {
+                final SeekableXZInputStream stream = new SeekableXZInputStream(new SeekableFileInputStream(file));
+                streams.add(stream);
+                opened.add(stream);
+            }
+        }
+
+        @Override
+        protected Callable<byte[]> nextBlock() {
+            if (next == blocks) {
+                return null;
+            }
+            final int block = next++;
+            return () -> {
+                final SeekableXZInputStream stream = streams.take();
+                try {
+                    stream.seekToBlock(block);
+                    final byte[] output = new byte[(int) stream.getBlockSize(block)];
+                    new DataInputStream(stream).readFully(output);
+                    return output;
+                } finally {
+                    streams.put(stream);
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            for (SeekableXZInputStream stream : opened) {
+                stream.close();
+            }
+        }
+    }
+}
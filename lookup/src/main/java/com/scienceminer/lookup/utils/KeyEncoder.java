@@ -0,0 +1,115 @@
+package com.scienceminer.lookup.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Raw UTF-8 encoding of the LMDB keys. Keys are written without any header, so that the byte order of the
+ * stored keys follows the order of the (normalised) identifiers and prefix scans with a cursor are possible.
+ * <p>
+ * Numeric identifiers stored in MDB_INTEGERKEY databases are encoded as 4 bytes unsigned integers in the native
+ * byte order, as expected by LMDB.
+ */
+public class KeyEncoder {
+
+    public static final int INTEGER_KEY_SIZE = 4;
+
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Encode the key in UTF-8 directly into the target buffer, starting at its current position.
+     * Unpaired surrogates are replaced by '?', as {@link String#getBytes(java.nio.charset.Charset)} does.
+     *
+     * @throws java.nio.BufferOverflowException if the encoded key does not fit in the buffer
+     */
+    public static void encode(String key, ByteBuffer target) {
+        final int length = key.length();
+        for (int i = 0; i < length; i++) {
+            final char c = key.charAt(i);
+            if (c < 0x80) {
+                target.put((byte) c);
+            } else if (c < 0x800) {
+                target.put((byte) (0xC0 | (c >> 6)));
+                target.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(key.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, key.charAt(++i));
+                    target.put((byte) (0xF0 | (codePoint >> 18)));
+                    target.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                    target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                    target.put((byte) (0x80 | (codePoint & 0x3F)));
+                } else {
+                    target.put((byte) '?');
+                }
+            } else {
+                target.put((byte) (0xE0 | (c >> 12)));
+                target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                target.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    public static String decode(ByteBuffer key) {
+        return UTF_8.decode(key).toString();
+    }
+
+    /**
+     * Encode the integer key in native byte order into the target buffer, starting at its current position.
+     */
+    public static void encodeInteger(int key, ByteBuffer target) {
+        if (LITTLE_ENDIAN) {
+            target.put((byte) key);
+            target.put((byte) (key >> 8));
+            target.put((byte) (key >> 16));
+            target.put((byte) (key >> 24));
+        } else {
+            target.put((byte) (key >> 24));
+            target.put((byte) (key >> 16));
+            target.put((byte) (key >> 8));
+            target.put((byte) key);
+        }
+    }
+
+    public static byte[] encodeInteger(int key) {
+        final ByteBuffer buffer = ByteBuffer.allocate(INTEGER_KEY_SIZE);
+        encodeInteger(key, buffer);
+        return buffer.array();
+    }
+
+    public static int decodeInteger(ByteBuffer key) {
+        final int position = key.position();
+        final int b0 = key.get(position) & 0xFF;
+        final int b1 = key.get(position + 1) & 0xFF;
+        final int b2 = key.get(position + 2) & 0xFF;
+        final int b3 = key.get(position + 3) & 0xFF;
+        if (LITTLE_ENDIAN) {
+            return b0 | (b1 << 8) | (b2 << 16) | (b3 << 24);
+        }
+        return (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+    }
+
+    /**
+     * Parse a numeric identifier (PMID, PMC number) into an integer key, -1 when the identifier is not
+     * a positive integer fitting in the key.
+     */
+    public static int parseInteger(String identifier) {
+        if (identifier == null) {
+            return -1;
+        }
+        final String trimmed = identifier.trim();
+        if (trimmed.isEmpty() || trimmed.length() > 10) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < trimmed.length(); i++) {
+            final char c = trimmed.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+}
@@ -0,0 +1,108 @@
+package com.scienceminer.lookup.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stream of blocks decoded in parallel, e.g. the independent blocks of a compressed file, returned in order.
+ * The blocks are decoded up to a window of blocks ahead of the reader, bounding the memory used.
+ */
+public abstract class ParallelBlockInputStream extends InputStream {
+
+    private final ExecutorService executor;
+    private final int window;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean ended;
+
+    protected ParallelBlockInputStream(int threads) {
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "decompress-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.window = threads * 2;
+    }
+
+    /**
+     * Return the decoding of the next block, called in the order of the blocks by the reader thread, null at the
+     * end of the input.
+     */
+    protected abstract Callable<byte[]> nextBlock() throws IOException;
+
+    /**
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            while (!ended && pending.size() < window) {
+                final Callable<byte[]> block = nextBlock();
+                if (block == null) {
+                    ended = true;
+                } else {
+                    pending.add(executor.submit(block));
+                }
+            }
+            final Future<byte[]> next = pending.poll();
+            if (next == null) {
+                return false;
+            }
+            try {
+                current = next.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Cannot decompress a block of the input", e.getCause());
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int length = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        executor.shutdownNow();
+    }
+}
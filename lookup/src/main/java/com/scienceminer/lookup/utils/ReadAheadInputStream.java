@@ -0,0 +1,132 @@
+package com.scienceminer.lookup.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Stream reading its source ahead on a dedicated thread, e.g. to decompress the input of a load while the records
+ * are parsed. The source is read in buffers, up to a fixed number of buffers ahead of the reader.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_BUFFERS = 16;
+
+    private static final byte[] END = new byte[0];
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> buffers;
+    private final Thread thread;
+
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean ended;
+
+    public ReadAheadInputStream(InputStream source) {
+        this(source, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    }
+
+    public ReadAheadInputStream(InputStream source, int bufferSize, int aheadBuffers) {
+        this.source = source;
+        this.buffers = new ArrayBlockingQueue<>(aheadBuffers);
+        this.thread = new Thread(() -> readAhead(bufferSize), "read-ahead");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void readAhead(int bufferSize) {
+        try {
+            while (!closed) {
+                final byte[] buffer = new byte[bufferSize];
+                int length = 0;
+                int read;
+                while (length < bufferSize && (read = source.read(buffer, length, bufferSize - length)) > 0) {
+                    length += read;
+                }
+                if (length == 0) {
+                    break;
+                }
+                buffers.put(length == bufferSize ? buffer : Arrays.copyOf(buffer, length));
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            return;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        }
+        try {
+            buffers.put(END);
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return false at the end of the source
+     */
+    private boolean fill() throws IOException {
+        while (position == current.length) {
+            if (ended) {
+                return false;
+            }
+            try {
+                current = buffers.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading ahead");
+            }
+            position = 0;
+            if (current == END) {
+                ended = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        final int length = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        buffers.clear();
+        source.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.scienceminer.lookup.utils;
+
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compression of the stored values with a selectable codec. Each compressed value starts with a header byte
+ * identifying the codec, so that values written with different codecs can be read back from the same database.
+ * <p>
+ * The zstd dictionary, when used, is shared by all the values of the database and must be set
+ * with {@link #setDictionary(byte[])} before reading or writing them.
+ */
+public class ValueCompressor {
+
+    public static final int DEFAULT_ZSTD_LEVEL = 3;
+
+    public enum Codec {
+        NONE((byte) 0, "none"),
+        SNAPPY((byte) 1, "snappy"),
+        ZSTD((byte) 2, "zstd"),
+        ZSTD_DICTIONARY((byte) 3, "zstd-dictionary");
+
+        private final byte header;
+        private final String name;
+
+        Codec(byte header, String name) {
+            this.header = header;
+            this.name = name;
+        }
+
+        public byte getHeader() {
+            return header;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Codec fromHeader(byte header) throws IOException {
+            for (Codec codec : values()) {
+                if (codec.header == header) {
+                    return codec;
+                }
+            }
+            throw new IOException("Unknown compression codec: " + header);
+        }
+
+        public static Codec fromName(String name) {
+            for (Codec codec : values()) {
+                if (codec.name.equalsIgnoreCase(name)) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Unknown compression codec: " + name);
+        }
+    }
+
+    private final Codec codec;
+    private final int level;
+
+    private ZstdDictCompress dictionaryCompress;
+    private ZstdDictDecompress dictionaryDecompress;
+
+    public ValueCompressor(Codec codec) {
+        this(codec, DEFAULT_ZSTD_LEVEL);
+    }
+
+    public ValueCompressor(Codec codec, int level) {
+        this.codec = codec;
+        this.level = level;
+    }
+
+    public void setDictionary(byte[] dictionary) {
+        this.dictionaryCompress = new ZstdDictCompress(dictionary, level);
+        this.dictionaryDecompress = new ZstdDictDecompress(dictionary);
+    }
+
+    public boolean hasDictionary() {
+        return dictionaryCompress != null;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Compress with the default codec of this compressor.
+     */
+    public byte[] compress(byte[] data) throws IOException {
+        return compress(data, codec);
+    }
+
+    public byte[] compress(byte[] data, Codec codec) throws IOException {
+        final byte[] payload;
+        switch (codec) {
+            case NONE:
+                payload = data;
+                break;
+            case SNAPPY:
+                payload = Compressors.compressSnappy(data);
+                break;
+            case ZSTD:
+                payload = Compressors.compressZstd(data, level);
+                break;
+            case ZSTD_DICTIONARY:
+                if (dictionaryCompress == null) {
+                    throw new IOException("No zstd dictionary has been set");
+                }
+                payload = Compressors.compressZstd(data, dictionaryCompress);
+                break;
+            default:
+                throw new IOException("Unsupported compression codec: " + codec);
+        }
+
+        final byte[] result = new byte[payload.length + 1];
+        result[0] = codec.getHeader();
+        System.arraycopy(payload, 0, result, 1, payload.length);
+        return result;
+    }
+
+    public byte[] decompress(byte[] data) throws IOException {
+        return decompress(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decompress the value, using the codec indicated by its header byte.
+     */
+    public byte[] decompress(ByteBuffer data) throws IOException {
+        final Codec valueCodec = Codec.fromHeader(data.get());
+        final byte[] payload = new byte[data.remaining()];
+        data.get(payload);
+
+        switch (valueCodec) {
+            case NONE:
+                return payload;
+            case SNAPPY:
+                return Compressors.decompressSnappy(payload);
+            case ZSTD:
+                return Compressors.decompressZstd(payload);
+            case ZSTD_DICTIONARY:
+                if (dictionaryDecompress == null) {
+                    throw new IOException("The value is compressed with a zstd dictionary but none has been set");
+                }
+                return Compressors.decompressZstd(payload, dictionaryDecompress);
+            default:
+                throw new IOException("Unsupported compression codec: " + valueCodec);
+        }
+    }
+}
@@ -5,17 +5,26 @@ import com.google.common.collect.Lists;
 import com.google.inject.Module;
 import com.hubspot.dropwizard.guicier.GuiceBundle;
 //import com.scienceminer.lookup.command.LoadCrossrefCommand;
+import com.scienceminer.lookup.command.LoadAllCommand;
+import com.scienceminer.lookup.command.IndexFatcatCommand;
+import com.scienceminer.lookup.command.IndexFatcatLuceneCommand;
 import com.scienceminer.lookup.command.LoadFatcatCommand;
 import com.scienceminer.lookup.command.LoadIstexIdsCommand;
 import com.scienceminer.lookup.command.LoadPMIDCommand;
 import com.scienceminer.lookup.command.LoadUnpayWallCommand;
+import com.scienceminer.lookup.command.BuildCrosswalkCommand;
+import com.scienceminer.lookup.command.MigrateStorageCommand;
+import com.scienceminer.lookup.command.CompactStorageCommand;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.storage.StorageSnapshots;
 import com.scienceminer.lookup.utils.grobid.GrobidClient;
 import com.scienceminer.lookup.web.healthcheck.LookupHealthCheck;
 import com.scienceminer.lookup.web.module.LookupServiceModule;
 import com.scienceminer.lookup.web.module.NotFoundExceptionMapper;
 import com.scienceminer.lookup.web.module.ServiceExceptionMapper;
 import com.scienceminer.lookup.web.module.ServiceOverloadedExceptionMapper;
+import com.scienceminer.lookup.web.task.CompactStorageTask;
+import com.scienceminer.lookup.web.task.SwitchStorageTask;
 import io.dropwizard.Application;
 import io.dropwizard.client.HttpClientBuilder;
 import io.dropwizard.forms.MultiPartBundle;
@@ -28,6 +37,8 @@ import java.util.List;
 public final class LookupServiceApplication extends Application<LookupConfiguration> {
     private static final String RESOURCES = "/service";
 
+    private GuiceBundle<LookupConfiguration> guiceBundle;
+
     // ========== Application ==========
     @Override
     public String getName() {
@@ -42,7 +53,19 @@ public final class LookupServiceApplication extends Application<LookupConfigurat
         environment.jersey().register(new NotFoundExceptionMapper());
         environment.jersey().register(new ServiceOverloadedExceptionMapper());
 
-        final LookupHealthCheck healthCheck = new LookupHealthCheck(configuration);
+        final StorageSnapshots storageSnapshots = guiceBundle.getInjector().getInstance(StorageSnapshots.class);
+        environment.admin().addTask(new SwitchStorageTask(storageSnapshots));
+        environment.admin().addTask(new CompactStorageTask(storageSnapshots));
+        if (storageSnapshots.getResponseCache() != null) {
+            storageSnapshots.getResponseCache().registerMetrics(environment.metrics());
+        }
+        storageSnapshots.getNegativeCache().registerMetrics(environment.metrics());
+        storageSnapshots.getFastPathMetrics().registerMetrics(environment.metrics());
+        if (configuration.getElastic().getMultiSearchWindow().toMilliseconds() > 0) {
+            storageSnapshots.getMultiSearchMetrics().registerMetrics(environment.metrics());
+        }
+
+        final LookupHealthCheck healthCheck = new LookupHealthCheck(storageSnapshots);
         environment.healthChecks().register("HealthCheck", healthCheck);
     }
 
@@ -53,7 +76,7 @@ public final class LookupServiceApplication extends Application<LookupConfigurat
 
     @Override
     public void initialize(Bootstrap<LookupConfiguration> bootstrap) {
-        GuiceBundle<LookupConfiguration> guiceBundle = GuiceBundle.defaultBuilder(LookupConfiguration.class)
+        guiceBundle = GuiceBundle.defaultBuilder(LookupConfiguration.class)
                 .modules(getGuiceModules())
                 .build();
         bootstrap.addBundle(guiceBundle);
@@ -62,6 +85,12 @@ public final class LookupServiceApplication extends Application<LookupConfigurat
         bootstrap.addCommand(new LoadIstexIdsCommand());
         bootstrap.addCommand(new LoadPMIDCommand());
         bootstrap.addCommand(new LoadFatcatCommand());
+        bootstrap.addCommand(new LoadAllCommand());
+        bootstrap.addCommand(new IndexFatcatCommand());
+        bootstrap.addCommand(new IndexFatcatLuceneCommand());
+        bootstrap.addCommand(new BuildCrosswalkCommand());
+        bootstrap.addCommand(new MigrateStorageCommand());
+        bootstrap.addCommand(new CompactStorageCommand());
         //bootstrap.addCommand(new LoadCrossrefCommand());
     }
 
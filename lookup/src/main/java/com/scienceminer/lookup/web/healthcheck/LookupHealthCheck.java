@@ -2,9 +2,7 @@ package com.scienceminer.lookup.web.healthcheck;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import com.scienceminer.lookup.configuration.LookupConfiguration;
-import com.scienceminer.lookup.storage.StorageEnvFactory;
-import com.scienceminer.lookup.storage.lookup.*;
+import com.scienceminer.lookup.storage.StorageSnapshots;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -17,13 +15,11 @@ import javax.ws.rs.core.Response;
 @Produces("application/json;charset=UTF-8")
 public class LookupHealthCheck extends com.codahale.metrics.health.HealthCheck {
 
-    private LookupConfiguration configuration;
-    private StorageEnvFactory storageEnvFactory;
+    private StorageSnapshots storageSnapshots;
 
     @Inject
-    public LookupHealthCheck(LookupConfiguration configuration) {
-        this.configuration = configuration;
-        this.storageEnvFactory = new StorageEnvFactory(configuration);
+    public LookupHealthCheck(StorageSnapshots storageSnapshots) {
+        this.storageSnapshots = storageSnapshots;
     }
 
     @GET
@@ -34,13 +30,9 @@ public class LookupHealthCheck extends com.codahale.metrics.health.HealthCheck {
     @Override
     protected Result check() throws Exception {
 
-        try {
-            new OALookup(storageEnvFactory).getSize();
-            new IstexIdsLookup(storageEnvFactory).getSize();
-            final MetadataLookup metadataLookup = new MetadataLookup(storageEnvFactory);
-            metadataLookup.getSize();
-            new MetadataMatching(configuration, metadataLookup).getSize();
-            new PMIdsLookup(storageEnvFactory).getSize();
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            // the lookups of the snapshot, the ones serving the requests, without mapping the storage again
+            lease.getDataEngine().getDataInformation();
             return Result.healthy();
         } catch (Exception e) {
             return Result.unhealthy(e);
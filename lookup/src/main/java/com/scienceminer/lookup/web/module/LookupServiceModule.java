@@ -6,7 +6,7 @@ import com.google.inject.Binder;
 import com.google.inject.Provides;
 import com.hubspot.dropwizard.guicier.DropwizardAwareModule;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
-import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageSnapshots;
 import com.scienceminer.lookup.web.resource.DataController;
 import com.scienceminer.lookup.web.resource.LookupController;
 import com.scienceminer.lookup.web.resource.OAController;
@@ -25,7 +25,7 @@ public class LookupServiceModule extends DropwizardAwareModule<LookupConfigurati
         binder.bind(OAController.class);
 
         //LMDB
-        binder.bind(StorageEnvFactory.class);
+        binder.bind(StorageSnapshots.class);
     }
 
     @Provides
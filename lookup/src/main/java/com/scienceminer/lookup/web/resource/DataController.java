@@ -6,8 +6,7 @@ import com.google.inject.Singleton;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.data.IstexData;
 import com.scienceminer.lookup.data.PmidData;
-import com.scienceminer.lookup.storage.DataEngine;
-import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageSnapshots;
 import org.apache.commons.lang3.tuple.Pair;
 
 import javax.ws.rs.GET;
@@ -25,55 +24,78 @@ public class DataController {
 
     public static final int DEFAULT_MAX_SIZE_LIST = 100;
 
-    private DataEngine storage = null;
     private LookupConfiguration configuration;
+    private final StorageSnapshots storageSnapshots;
 
     @Inject
-    public DataController(LookupConfiguration configuration, StorageEnvFactory storageEnvFactory) {
+    public DataController(LookupConfiguration configuration, StorageSnapshots storageSnapshots) {
         this.configuration = configuration;
-        this.storage = new DataEngine(storageEnvFactory);
+        this.storageSnapshots = storageSnapshots;
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pmid/id")
     public List<Pair<String, PmidData>> getDoiData_pmidToIds(@QueryParam("total") Integer total) {
-        return storage.retrievePmid_pmidToIds(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrievePmid_pmidToIds(total);
+        }
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/pmid/range")
+    public List<Pair<String, PmidData>> getPmidData_range(@QueryParam("from") Integer from,
+                                                          @QueryParam("to") Integer to,
+                                                          @QueryParam("total") Integer total) {
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrievePmid_pmidRange(from == null ? 0 : from, to == null ? Integer.MAX_VALUE : to, total);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pmid/doi")
     public List<Pair<String, PmidData>> getDoiData_doiToIds(@QueryParam("total") Integer total) {
-        return storage.retrievePmid_doiToIds(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrievePmid_doiToIds(total);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/istex/doi")
     public List<Pair<String, IstexData>> getIstexData_doiToIds(@QueryParam("total") Integer total) {
-        return storage.retrieveIstexRecords_doiToIds(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrieveIstexRecords_doiToIds(total);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/istex/id")
     public List<Pair<String, IstexData>> getIstexData_istexIdToIds(@QueryParam("total") Integer total) {
-        return storage.retrieveIstexRecords_istexToIds(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrieveIstexRecords_istexToIds(total);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/istex/pii")
     public List<Pair<String, IstexData>> getIstexData_istexpiiToIds(@QueryParam("total") Integer total) {
-        return storage.retrieveIstexRecords_piiToIds(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrieveIstexRecords_piiToIds(total);
+        }
     }
     
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/oa")
     public List<Pair<String, String>> getDoiByMetadata(@QueryParam("total") Integer total) {
-        return storage.retrieveOaRecords(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrieveOaRecords(total);
+        }
     }
 
 /*
@@ -89,13 +111,17 @@ public class DataController {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/fatcat")
     public List<Pair<String, String>> getMetadataSamples(@QueryParam("total") Integer total) {
-        return storage.retrieveFatcatRecords(total);
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().retrieveFatcatRecords(total);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/")
     public Map<String, String> getDocumentSize() {
-        return storage.getDataInformation();
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return lease.getDataEngine().getDataInformation();
+        }
     }
 }
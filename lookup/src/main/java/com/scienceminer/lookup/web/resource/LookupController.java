@@ -5,11 +5,12 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.data.MatchingDocument;
+import com.scienceminer.lookup.exception.NoMatchException;
 import com.scienceminer.lookup.exception.NotFoundException;
 import com.scienceminer.lookup.exception.ServiceException;
 import com.scienceminer.lookup.storage.LookupEngine;
-import com.scienceminer.lookup.storage.StorageEnvFactory;
-import com.scienceminer.lookup.utils.grobid.GrobidClient;
+import com.scienceminer.lookup.storage.NegativeCache;
+import com.scienceminer.lookup.storage.StorageSnapshots;
 import io.dropwizard.client.HttpClientBuilder;
 import io.dropwizard.setup.Environment;
 import org.apache.http.client.HttpClient;
@@ -18,6 +19,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
 import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -29,7 +31,7 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 /**
  * retrieve a DOI based on some key metadata: journal title (alternatively short title or ISSN) + volume + first page
- * (the key would be a hash of these metadata, the value is the DOI)
+ * (the key is a hash of these metadata, see MatchingKeys, the value is the fatcat ident)
  * retrieve an ISTEX ID and/or a PMID based on a DOI
  * retrieve the URL of the open access version based on a DOI and/or a PMID
  */
@@ -42,7 +44,9 @@ public class LookupController {
 
     private LookupConfiguration configuration;
 
-    private StorageEnvFactory storageEnvFactory;
+    private StorageSnapshots storageSnapshots;
+
+    private NegativeCache negativeCache;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LookupController.class);
 
@@ -50,11 +54,10 @@ public class LookupController {
     }
 
     @Inject
-    public LookupController(LookupConfiguration configuration, StorageEnvFactory storageEnvFactory) {
+    public LookupController(LookupConfiguration configuration, StorageSnapshots storageSnapshots) {
         this.configuration = configuration;
-        this.storageEnvFactory = storageEnvFactory;
-        this.lookupEngine = new LookupEngine(storageEnvFactory);
-        this.lookupEngine.setGrobidClient(new GrobidClient(configuration.getGrobidPath()));
+        this.storageSnapshots = storageSnapshots;
+        this.negativeCache = storageSnapshots.getNegativeCache();
     }
 
     @GET
@@ -97,11 +100,40 @@ public class LookupController {
         if (postValidate == null) postValidate = Boolean.TRUE;
         if (parseReference == null) parseReference = Boolean.TRUE;
 
-        getByQuery(fatcatIdent, doi, pmid, pmc, pii, istexid, firstAuthor, atitle,
-                postValidate, jtitle, volume, firstPage, biblio, parseReference, asyncResponse);
+        final StorageSnapshots.Lease lease = acquireStorage();
+        releaseOnCompletion(asyncResponse, lease);
+        try {
+            getByQuery(getLookupEngine(lease), fatcatIdent, doi, pmid, pmc, pii, istexid, firstAuthor, atitle,
+                    postValidate, jtitle, volume, firstPage, biblio, parseReference, asyncResponse);
+        } catch (RuntimeException e) {
+            release(lease);
+            throw e;
+        }
     }
 
     protected void getByQuery(
+            String fatcatIdent,
+            String doi,
+            String pmid,
+            String pmc,
+            String pii,
+            String istexid,
+            String firstAuthor,
+            String atitle,
+            final Boolean postValidate,
+            String jtitle,
+            String volume,
+            String firstPage,
+            String biblio,
+            final Boolean parseReference,
+            AsyncResponse asyncResponse
+    ) {
+        getByQuery(lookupEngine, fatcatIdent, doi, pmid, pmc, pii, istexid, firstAuthor, atitle,
+                postValidate, jtitle, volume, firstPage, biblio, parseReference, asyncResponse);
+    }
+
+    private void getByQuery(
+            final LookupEngine lookupEngine,
             String fatcatIdent,
             String doi,
             String pmid,
@@ -213,6 +245,18 @@ public class LookupController {
             }
         }
 
+        final int matchingQueries = countMatchingQueries(atitle, firstAuthor, jtitle, volume, firstPage, biblio);
+        final String matchingKey = NegativeCache.matchingKey(atitle, firstAuthor, jtitle, volume, firstPage, biblio,
+                postValidate, parseReference);
+        if (matchingQueries > 0 && negativeCache != null) {
+            final String miss = negativeCache.getMatchingMiss(matchingKey, matchingQueries);
+            if (miss != null) {
+                LOGGER.debug("Known matching miss, skipping the matching");
+                asyncResponse.resume(new NotFoundException(miss));
+                return;
+            }
+        }
+
         if (isNotBlank(atitle) && isNotBlank(firstAuthor)) {
             LOGGER.debug("Match with metadata");
             lookupEngine.retrieveByArticleMetadataAsync(atitle, firstAuthor, postValidate, matchingDocument -> {
@@ -227,15 +271,11 @@ public class LookupController {
                                 LOGGER.debug("Error with journal title, trying to match with biblio string");
                                 if (isNotBlank(biblio)) {
                                     lookupEngine.retrieveByBiblioAsync(biblio, postValidate, firstAuthor, atitle, parseReference, MatchingDocumentBiblio -> {
-                                        if (MatchingDocumentBiblio.isException()) {
-                                            asyncResponse.resume(MatchingDocumentBiblio.getException());
-                                        } else {
-                                            asyncResponse.resume(MatchingDocumentBiblio.getFinalJsonObject());
-                                        }
+                                        dispatchResponseOrException(asyncResponse, MatchingDocumentBiblio, matchingKey);
                                     });
                                     return;
                                 } else {
-                                    asyncResponse.resume(matchingDocument.getException());
+                                    dispatchResponseOrException(asyncResponse, matchingDocument, matchingKey);
                                 }
                             } else {
                                 asyncResponse.resume(matchingDocumentJournal.getFinalJsonObject());
@@ -254,15 +294,11 @@ public class LookupController {
                                 LOGGER.debug("Error with journal info, trying to match with biblio string");
                                 if (isNotBlank(biblio)) {
                                     lookupEngine.retrieveByBiblioAsync(biblio, postValidate, firstAuthor, atitle, parseReference, matchingDocumentBiblio -> {
-                                        if (matchingDocumentBiblio.isException()) {
-                                            asyncResponse.resume(matchingDocumentBiblio.getException());
-                                        } else {
-                                            asyncResponse.resume(matchingDocumentBiblio.getFinalJsonObject());
-                                        }
+                                        dispatchResponseOrException(asyncResponse, matchingDocumentBiblio, matchingKey);
                                     });
                                     return;
                                 } else {
-                                    asyncResponse.resume(matchingDocument.getException());
+                                    dispatchResponseOrException(asyncResponse, matchingDocument, matchingKey);
                                 }
                             } else {
                                 asyncResponse.resume(matchingDocumentJournal.getFinalJsonObject());
@@ -276,15 +312,11 @@ public class LookupController {
                     LOGGER.debug("Error with title/first author, trying to match with biblio string");
                     if (isNotBlank(biblio)) {
                         lookupEngine.retrieveByBiblioAsync(biblio, postValidate, firstAuthor, atitle, parseReference, matchingDocumentBiblio -> {
-                            if (matchingDocumentBiblio.isException()) {
-                                asyncResponse.resume(matchingDocumentBiblio.getException());
-                            } else {
-                                asyncResponse.resume(matchingDocumentBiblio.getFinalJsonObject());
-                            }
+                            dispatchResponseOrException(asyncResponse, matchingDocumentBiblio, matchingKey);
                         });
                         return;
                     } else {
-                        asyncResponse.resume(matchingDocument.getException());
+                        dispatchResponseOrException(asyncResponse, matchingDocument, matchingKey);
                     }
                 } else {
                     asyncResponse.resume(matchingDocument.getFinalJsonObject());
@@ -300,15 +332,11 @@ public class LookupController {
                     //error with journal info - trying to match biblio
                     if (isNotBlank(biblio)) {
                         lookupEngine.retrieveByBiblioAsync(biblio, postValidate, firstAuthor, atitle, parseReference, matchingDocumentBiblio -> {
-                            if (matchingDocumentBiblio.isException()) {
-                                asyncResponse.resume(matchingDocumentBiblio.getException());
-                            } else {
-                                asyncResponse.resume(matchingDocumentBiblio.getFinalJsonObject());
-                            }
+                            dispatchResponseOrException(asyncResponse, matchingDocumentBiblio, matchingKey);
                         });
                         return;
                     } else {
-                        asyncResponse.resume(matchingDocument.getException());
+                        dispatchResponseOrException(asyncResponse, matchingDocument, matchingKey);
                     }
                 } else {
                     asyncResponse.resume(matchingDocument.getFinalJsonObject());
@@ -324,15 +352,11 @@ public class LookupController {
                     //error with journal info - trying to match biblio
                     if (isNotBlank(biblio)) {
                         lookupEngine.retrieveByBiblioAsync(biblio, postValidate, firstAuthor, atitle, parseReference, matchingDocumentBiblio -> {
-                            if (matchingDocumentBiblio.isException()) {
-                                asyncResponse.resume(matchingDocumentBiblio.getException());
-                            } else {
-                                asyncResponse.resume(matchingDocumentBiblio.getFinalJsonObject());
-                            }
+                            dispatchResponseOrException(asyncResponse, matchingDocumentBiblio, matchingKey);
                         });
                         return;
                     } else {
-                        asyncResponse.resume(matchingDocument.getException());
+                        dispatchResponseOrException(asyncResponse, matchingDocument, matchingKey);
                     }
                 } else {
                     asyncResponse.resume(matchingDocument.getFinalJsonObject());
@@ -344,11 +368,7 @@ public class LookupController {
         if (isNotBlank(biblio)) {
             LOGGER.debug("Match with biblio string");
             lookupEngine.retrieveByBiblioAsync(biblio, postValidate, firstAuthor, atitle, parseReference, matchingDocumentBiblio -> {
-                if (matchingDocumentBiblio.isException()) {
-                    asyncResponse.resume(matchingDocumentBiblio.getException());
-                } else {
-                    asyncResponse.resume(matchingDocumentBiblio.getFinalJsonObject());
-                }
+                dispatchResponseOrException(asyncResponse, matchingDocumentBiblio, matchingKey);
             });
             return;
         }
@@ -360,6 +380,38 @@ public class LookupController {
         }
     }
 
+    /**
+     * Number of Elasticsearch queries run by the matching of the request when nothing matches: each matching
+     * strategy the parameters allow is tried in turn.
+     */
+    protected static int countMatchingQueries(String atitle, String firstAuthor, String jtitle, String volume,
+                                              String firstPage, String biblio) {
+        int queries = 0;
+        if (isNotBlank(atitle) && isNotBlank(firstAuthor)) {
+            queries++;
+        }
+        if (isNotBlank(jtitle) && isNotBlank(volume) && isNotBlank(firstPage)) {
+            queries++;
+        }
+        if (isNotBlank(biblio)) {
+            queries++;
+        }
+        return queries;
+    }
+
+    /**
+     * Dispatches the response or the exception of the matching, recording the request in the negative cache when
+     * nothing matched.
+     */
+    private void dispatchResponseOrException(AsyncResponse asyncResponse, MatchingDocument matchingDocument, String matchingKey) {
+        // only the queries without match are recorded, not the failures of GROBID or of the storage
+        if (negativeCache != null && matchingDocument.isException()
+                && matchingDocument.getException() instanceof NoMatchException) {
+            negativeCache.putMatchingMiss(matchingKey, matchingDocument.getException().getMessage());
+        }
+        dispatchResponseOrException(asyncResponse, matchingDocument);
+    }
+
     /**
      * Dispatches the response or the exception according to the information contained in the matching document
      * object.
@@ -389,35 +441,45 @@ public class LookupController {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/doi/{doi}")
     public String getByDoi(@PathParam("doi") String doi) {
-        return lookupEngine.retrieveByDoi(doi, false, null, null);
+        try (StorageSnapshots.Lease lease = acquireStorage()) {
+            return getLookupEngine(lease).retrieveByDoi(doi, false, null, null);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pmid/{pmid}")
     public String getByPmid(@PathParam("pmid") String pmid) {
-        return lookupEngine.retrieveByPmid(pmid, false, null, null);
+        try (StorageSnapshots.Lease lease = acquireStorage()) {
+            return getLookupEngine(lease).retrieveByPmid(pmid, false, null, null);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pii/{pii}")
     public String getByPii(@PathParam("pii") String pii) {
-        return lookupEngine.retrieveByPii(pii, false, null, null);
+        try (StorageSnapshots.Lease lease = acquireStorage()) {
+            return getLookupEngine(lease).retrieveByPii(pii, false, null, null);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pmc/{pmc}")
     public String getByPmc(@PathParam("pmc") String pmc) {
-        return lookupEngine.retrieveByPmc(pmc, false, null, null);
+        try (StorageSnapshots.Lease lease = acquireStorage()) {
+            return getLookupEngine(lease).retrieveByPmc(pmc, false, null, null);
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/istexid/{istexid}")
     public String getByIstexid(@PathParam("istexid") String istexid) {
-        return lookupEngine.retrieveByIstexid(istexid, false, null, null);
+        try (StorageSnapshots.Lease lease = acquireStorage()) {
+            return getLookupEngine(lease).retrieveByIstexid(istexid, false, null, null);
+        }
     }
 
     @POST
@@ -426,16 +488,59 @@ public class LookupController {
     @Path("/")
     public void getByBiblioStringWithPost(String biblio, @Suspended final AsyncResponse asyncResponse) {
         if (isNotBlank(biblio)) {
-            lookupEngine.retrieveByBiblioAsync(biblio, matchingDocument -> {
-                dispatchResponseOrException(asyncResponse, matchingDocument);
-            });
+            final String matchingKey = NegativeCache.matchingKey(null, null, null, null, null, biblio, false, false);
+            if (negativeCache != null) {
+                final String miss = negativeCache.getMatchingMiss(matchingKey, 1);
+                if (miss != null) {
+                    asyncResponse.resume(new NotFoundException(miss));
+                    return;
+                }
+            }
+
+            final StorageSnapshots.Lease lease = acquireStorage();
+            releaseOnCompletion(asyncResponse, lease);
+            try {
+                getLookupEngine(lease).retrieveByBiblioAsync(biblio, matchingDocument -> {
+                    dispatchResponseOrException(asyncResponse, matchingDocument, matchingKey);
+                });
+            } catch (RuntimeException e) {
+                release(lease);
+                throw e;
+            }
             return;
         }
 
         throw new ServiceException(400, "Missing or empty biblio parameter");
     }
 
+    /**
+     * Lease the current storage snapshot, null when the lookup engine is set directly.
+     */
+    private StorageSnapshots.Lease acquireStorage() {
+        return storageSnapshots == null ? null : storageSnapshots.acquire();
+    }
+
+    private LookupEngine getLookupEngine(StorageSnapshots.Lease lease) {
+        return lease == null ? lookupEngine : lease.getLookupEngine();
+    }
+
+    private void releaseOnCompletion(AsyncResponse asyncResponse, StorageSnapshots.Lease lease) {
+        if (lease != null) {
+            asyncResponse.register((CompletionCallback) throwable -> lease.close());
+        }
+    }
+
+    private void release(StorageSnapshots.Lease lease) {
+        if (lease != null) {
+            lease.close();
+        }
+    }
+
     protected void setLookupEngine(LookupEngine lookupEngine) {
         this.lookupEngine = lookupEngine;
     }
+
+    protected void setNegativeCache(NegativeCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
 }
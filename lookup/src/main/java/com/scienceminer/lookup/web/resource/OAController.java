@@ -7,7 +7,7 @@ import com.scienceminer.lookup.configuration.LookupConfiguration;
 import com.scienceminer.lookup.data.OAResource;
 import com.scienceminer.lookup.exception.ServiceException;
 import com.scienceminer.lookup.storage.LookupEngine;
-import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageSnapshots;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
@@ -19,15 +19,13 @@ import static org.apache.commons.lang3.StringUtils.isNotBlank;
 @Singleton
 public class OAController {
 
-    private LookupEngine storage = null;
     private LookupConfiguration configuration;
-    private final StorageEnvFactory storageEnvFactory;
+    private final StorageSnapshots storageSnapshots;
 
     @Inject
-    public OAController(LookupConfiguration configuration, StorageEnvFactory storageEnvFactory) {
+    public OAController(LookupConfiguration configuration, StorageSnapshots storageSnapshots) {
         this.configuration = configuration;
-        this.storageEnvFactory = storageEnvFactory;
-        this.storage = new LookupEngine(storageEnvFactory);
+        this.storageSnapshots = storageSnapshots;
     }
 
     @GET
@@ -40,20 +38,23 @@ public class OAController {
             @QueryParam("pii") String pii
 
     ) {
-        if (isNotBlank(doi)) {
-            return new OAResource(storage.retrieveOAUrlByDoi(doi));
-        }
-
-        if (isNotBlank(pmid)) {
-            return new OAResource(storage.retrieveOAUrlByPmid(pmid));
-        }
-
-        if (isNotBlank(pmc)) {
-            return new OAResource(storage.retrieveOAUrlByPmc(pmc));
-        }
-
-        if (isNotBlank(pii)) {
-            return new OAResource(storage.retrieveOAUrlByPii(pii));
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            final LookupEngine storage = lease.getLookupEngine();
+            if (isNotBlank(doi)) {
+                return new OAResource(storage.retrieveOAUrlByDoi(doi));
+            }
+
+            if (isNotBlank(pmid)) {
+                return new OAResource(storage.retrieveOAUrlByPmid(pmid));
+            }
+
+            if (isNotBlank(pmc)) {
+                return new OAResource(storage.retrieveOAUrlByPmc(pmc));
+            }
+
+            if (isNotBlank(pii)) {
+                return new OAResource(storage.retrieveOAUrlByPii(pii));
+            }
         }
 
         throw new ServiceException(400, "The supplied parameters were not sufficient to select the query");
@@ -64,27 +65,35 @@ public class OAController {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/doi/{doi}")
     public OAResource getDoiByMetadataDoi(@PathParam("doi") String doi) {
-        return new OAResource(storage.retrieveOAUrlByDoi(doi));
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return new OAResource(lease.getLookupEngine().retrieveOAUrlByDoi(doi));
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pmid/{pmid}")
     public OAResource getDoiByMetadataPmid(@PathParam("pmid") String pmid) {
-        return new OAResource(storage.retrieveOAUrlByPmid(pmid));
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return new OAResource(lease.getLookupEngine().retrieveOAUrlByPmid(pmid));
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pmc/{pmc}")
     public OAResource getDoiByMetadataPmc(@PathParam("pmc") String pmc) {
-        return new OAResource(storage.retrieveOAUrlByPmc(pmc));
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return new OAResource(lease.getLookupEngine().retrieveOAUrlByPmc(pmc));
+        }
     }
 
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/pii/{pii}")
     public OAResource getDoiByMetadataPii(@PathParam("pii") String pii) {
-        return new OAResource(storage.retrieveOAUrlByPii(pii));
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            return new OAResource(lease.getLookupEngine().retrieveOAUrlByPii(pii));
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.scienceminer.lookup.web.task;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.scienceminer.lookup.storage.StorageCompactor;
+import com.scienceminer.lookup.storage.StorageEnvFactory;
+import com.scienceminer.lookup.storage.StorageSnapshots;
+import io.dropwizard.servlets.tasks.Task;
+import org.apache.commons.io.FileUtils;
+import org.lmdbjava.Env;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Admin task writing a compacted copy of the environments opened by the service into a new storage directory,
+ * while the service keeps serving the current one:
+ * POST /tasks/compact-storage?target=/path/to/the/compacted/storage
+ * <p>
+ * The service can then be switched to the compacted copy with the switch-storage task.
+ */
+public class CompactStorageTask extends Task {
+
+    public static final String PARAMETER_TARGET = "target";
+
+    private final StorageSnapshots storageSnapshots;
+
+    public CompactStorageTask(StorageSnapshots storageSnapshots) {
+        super("compact-storage");
+        this.storageSnapshots = storageSnapshots;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        try (StorageSnapshots.Lease lease = storageSnapshots.acquire()) {
+            final StorageEnvFactory storageEnvFactory = lease.getStorageEnvFactory();
+            final File targetStorage = new File(parameters.containsKey(PARAMETER_TARGET)
+                    ? parameters.get(PARAMETER_TARGET).iterator().next()
+                    : storageEnvFactory.getStoragePath() + ".compacted");
+
+            final StorageCompactor compactor = new StorageCompactor(storageEnvFactory);
+            for (Map.Entry<String, Env<ByteBuffer>> environment : storageEnvFactory.getOpenedEnvironments().entrySet()) {
+                final StorageCompactor.Report report = compactor.compact(environment.getValue(),
+                        storageEnvFactory.getMainDb(environment.getKey()),
+                        storageEnvFactory.getEnvDirectory(environment.getKey()),
+                        new File(targetStorage, environment.getKey()));
+                output.println(report);
+                output.flush();
+            }
+            output.println("Compacted copy written in " + targetStorage.getPath()
+                    + ", size: " + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(targetStorage))
+                    + ". Switch to it with /tasks/switch-storage?path=" + targetStorage.getPath());
+        }
+    }
+}
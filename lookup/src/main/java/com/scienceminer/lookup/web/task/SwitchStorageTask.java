@@ -0,0 +1,35 @@
+package com.scienceminer.lookup.web.task;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.scienceminer.lookup.storage.StorageSnapshots;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * Admin task switching the service to another storage directory, built offline, without restarting:
+ * POST /tasks/switch-storage?path=/path/to/the/new/storage
+ */
+public class SwitchStorageTask extends Task {
+
+    public static final String PARAMETER_PATH = "path";
+
+    private final StorageSnapshots storageSnapshots;
+
+    public SwitchStorageTask(StorageSnapshots storageSnapshots) {
+        super("switch-storage");
+        this.storageSnapshots = storageSnapshots;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (!parameters.containsKey(PARAMETER_PATH)) {
+            output.println("Current storage: " + storageSnapshots.getStoragePath());
+            return;
+        }
+        final String storagePath = parameters.get(PARAMETER_PATH).iterator().next();
+        final String previousPath = storageSnapshots.switchTo(storagePath);
+        output.println("Storage switched from " + previousPath + " to " + storagePath
+                + ", the previous storage is closed once the requests in progress are completed.");
+    }
+}
@@ -0,0 +1,102 @@
+package com.scienceminer.lookup.reader;
+
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.data.FatcatRelease;
+import com.scienceminer.lookup.storage.lookup.MatchingKeys;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FatcatJsonReaderTest {
+
+    private static final String RELEASE = "{\"ident\":\"aaaqvjf2ivfgrktk7m6gh3ndfa\",\"revision\":\"a2c2a4a4\"," +
+            "\"refs\":[{\"index\":0,\"title\":\"A reference\",\"extra\":{\"unstructured\":\"[1] a, b\"}}]," +
+            "\"title\":\"Caf\\u00e9 \\\"quoted\\\"\",\"release_type\":\"article-journal\",\"volume\":\"12\"," +
+            "\"ext_ids\":{\"doi\":\"10.1000/ABC\",\"pmid\":\"1234\"},\"abstracts\":[{\"content\":\"long\"}]," +
+            "\"release_year\":2001,\"extra\":{\"score\":0.5,\"oa\":true,\"tags\":null}}";
+
+    private static final String ARTICLE = "{\"ident\":\"abc\",\"title\":\"Haloalkenes activated\"," +
+            "\"subtitle\":\"reactions\",\"pages\":\"279-293\",\"volume\":67,\"release_type\":\"article-journal\"," +
+            "\"container\":{\"name\":\"Russian Chemical Reviews\",\"issnl\":\"0036-021X\"," +
+            "\"extra\":{\"abbrev\":\"Russ. Chem. Rev.\",\"issne\":\"1468-4837\",\"tags\":[1,{\"a\":null}]}}," +
+            "\"contribs\":[{\"index\":0,\"raw_name\":\"Alexander Yu Rulev\",\"extra\":{\"seq\":\"first\"}}," +
+            "{\"index\":1,\"surname\":\"Other\",\"family\":\"Other\"},null]," +
+            "\"extra\":{\"container_name\":\"Ignored with a container\"}}";
+
+    FatcatJsonReader target;
+
+    @Before
+    public void setUp() {
+        final LookupConfiguration configuration = new LookupConfiguration();
+        configuration.setIgnoreFatcatFields(Arrays.asList("refs", "abstracts"));
+        target = new FatcatJsonReader(configuration);
+    }
+
+    @Test
+    public void testParseRelease_shouldExtractTheIdentifiers() throws Exception {
+        final FatcatRelease release = target.parseRelease(RELEASE);
+
+        assertThat(release, is(not(nullValue())));
+        assertThat(release.getIdent(), is("aaaqvjf2ivfgrktk7m6gh3ndfa"));
+        assertThat(release.getDoi(), is("10.1000/ABC"));
+        assertThat(release.getReleaseType(), is("article-journal"));
+    }
+
+    @Test
+    public void testParseRelease_shouldWriteTheSameJsonAsTheTreeParser() throws Exception {
+        final FatcatRelease release = target.parseRelease(RELEASE);
+
+        assertThat(release.getJson(), is(target.parse(RELEASE).toString()));
+        assertThat(release.getJson().contains("refs"), is(false));
+        assertThat(release.getJson().contains("abstracts"), is(false));
+    }
+
+    @Test
+    public void testParseRelease_noDoi_shouldBeKept() throws Exception {
+        final FatcatRelease release = target.parseRelease("{\"ident\":\"abc\",\"ext_ids\":{}}");
+
+        assertThat(release.getDoi(), is(nullValue()));
+        assertThat(release.getJson(), is("{\"ident\":\"abc\",\"ext_ids\":{}}"));
+    }
+
+    @Test
+    public void testParseRelease_stubOrAbstract_shouldBeIgnored() throws Exception {
+        assertThat(target.parseRelease("{\"ident\":\"abc\",\"release_type\":\"stub\",\"ext_ids\":{}}"), is(nullValue()));
+        assertThat(target.parseRelease("{\"ident\":\"abc\",\"release_type\":\"abstract\",\"ext_ids\":{}}"), is(nullValue()));
+    }
+
+    @Test
+    public void testParseRelease_invalidLine_shouldReturnNull() throws Exception {
+        assertThat(target.parseRelease("{\"ident\":\"abc\",\"ext_ids\":"), is(nullValue()));
+        assertThat(target.parseRelease("[1, 2]"), is(nullValue()));
+    }
+
+    @Test
+    public void testParseRelease_shouldPickTheBlockingFieldsLikeTheTreeParser() throws Exception {
+        final FatcatRelease release = target.parseRelease(ARTICLE);
+
+        assertThat(release.getJson(), is(target.parse(ARTICLE).toString()));
+        assertThat(release.getBlockingFields().getFirstAuthor(), is("Rulev"));
+        assertThat(release.getBlockingFields().getJournal(), is("Russian Chemical Reviews"));
+        assertThat(release.getBlockingFields().getFirstPage(), is("279"));
+        assertThat(MatchingKeys.journalKeys(release.getBlockingFields()),
+                is(MatchingKeys.journalKeys(MatchingKeys.blockingFields(target.parse(ARTICLE)))));
+        assertThat(MatchingKeys.journalKeys(release.getBlockingFields()).size(), is(4));
+        assertThat(MatchingKeys.titleKeys(release.getBlockingFields()),
+                is(MatchingKeys.titleKeys(MatchingKeys.blockingFields(target.parse(ARTICLE)))));
+    }
+
+    @Test
+    public void testParseRelease_component_shouldHaveNoBlockingFields() throws Exception {
+        final FatcatRelease release = target.parseRelease("{\"ident\":\"abc\",\"release_type\":\"component\"," +
+                "\"title\":\"Figure 1\",\"contribs\":[{\"index\":0,\"raw_name\":\"Jane Doe\"}]}");
+
+        assertThat(release.getBlockingFields(), is(nullValue()));
+    }
+}
@@ -3,8 +3,12 @@ package com.scienceminer.lookup.storage;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.scienceminer.lookup.data.CrosswalkData;
 import com.scienceminer.lookup.data.IstexData;
+import com.scienceminer.lookup.data.MatchingDocument;
 import com.scienceminer.lookup.data.PmidData;
+import com.scienceminer.lookup.storage.lookup.CrosswalkLookup;
+import com.scienceminer.lookup.storage.lookup.MetadataLookup;
 import com.scienceminer.lookup.storage.lookup.OALookup;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -164,4 +168,84 @@ public class LookupEngineTest {
 
         assertThat(output, is(input));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void injectIds_crosswalkAvailable_shouldUseOnlyTheCrosswalk() {
+        String input = "{\"title\":\"Haloalkenes activated by geminal groups in reactions with N-nucleophiles\"}";
+        String doi = "10.1070/rc1998v067n04abeh000372";
+        final String fakeOAurl = "http://my.open.access.link.com/paper.pdf";
+
+        final CrosswalkLookup mockCrosswalkLookup = createMock(CrosswalkLookup.class);
+        target.setCrosswalkLookup(mockCrosswalkLookup);
+        final CrosswalkData crosswalkData = new CrosswalkData();
+        crosswalkData.setDoi(doi);
+        crosswalkData.setIstexId("istexid");
+        crosswalkData.setPmid("pmid1");
+        crosswalkData.setOaLink(fakeOAurl);
+        expect(mockCrosswalkLookup.isAvailable()).andReturn(true);
+        expect(mockCrosswalkLookup.retrieveByDoi(doi)).andReturn(crosswalkData);
+
+        replay(mockCrosswalkLookup, mockPmidLookup, mockIstexLookup, mockOALookup);
+        String output = target.injectIdsByDoi(input, doi);
+        verify(mockCrosswalkLookup, mockPmidLookup, mockIstexLookup, mockOALookup);
+
+        JsonElement jelement = new JsonParser().parse(output);
+        JsonObject jobject = jelement.getAsJsonObject();
+        assertThat(jobject.get("title").getAsString(), is("Haloalkenes activated by geminal groups in reactions with N-nucleophiles"));
+        assertThat(jobject.get("istexId").getAsString(), is("istexid"));
+        assertThat(jobject.get("pmid").getAsString(), is("pmid1"));
+        assertThat(jobject.get("oaLink").getAsString(), is(fakeOAurl));
+        assertThat(jobject.has("ark"), is(false));
+    }
+
+    @Test
+    public void retrieveByIstexid_paddedIdentifier_shouldNotHideTheRecordOfTheIdentifier() {
+        final String doi = "10.1070/rc1998v067n04abeh000372";
+        final MetadataLookup mockMetadataLookup = createMock(MetadataLookup.class);
+        target.setMetadataLookup(mockMetadataLookup);
+        target.setNegativeCache(new NegativeCache(100, 60000, 60000, new StorageGeneration(() -> 1)));
+
+        final IstexData istexData = new IstexData();
+        istexData.setIstexId("istexid");
+        istexData.setDoi(Collections.singletonList(doi));
+        expect(mockIstexLookup.retrieveByIstexId("istexid")).andReturn(istexData).times(2);
+        expect(mockMetadataLookup.retrieveByDoi(doi)).andReturn(new MatchingDocument("release_abc", "{\"DOI\":\"" + doi + "\"}")).times(2);
+        expect(mockOALookup.retrieveOALinkByDoi(doi)).andReturn(null).times(2);
+
+        replay(mockMetadataLookup, mockPmidLookup, mockIstexLookup, mockOALookup);
+        final String padded = target.retrieveByIstexid(" istexid ", false, null, null);
+        final String output = target.retrieveByIstexid("istexid", false, null, null);
+        verify(mockMetadataLookup, mockPmidLookup, mockIstexLookup, mockOALookup);
+
+        assertThat(output, is(padded));
+        assertThat(new JsonParser().parse(output).getAsJsonObject().get("istexId").getAsString(), is("istexid"));
+    }
+
+    @Test
+    public void matchingScore_shouldRankTheCandidatesPassingThePostValidation() {
+        final String title = "Haloalkenes activated by geminal groups in reactions with N-nucleophiles";
+
+        final double exact = target.matchingScore(title, "Rulev", candidate(title, "Rulev"), false);
+        final double close = target.matchingScore(title, "Rulev", candidate("Haloalkenes activated by geminal groups in reaction with N-nucleophiles", "Rulev"), false);
+        final double otherAuthor = target.matchingScore(title, "Rulev", candidate(title, "Smith"), false);
+        final double otherTitle = target.matchingScore(title, "Rulev", candidate("Protein folding in the cell", "Rulev"), false);
+
+        assertThat(exact, is(2.0));
+        assertThat(close >= 0 && close < exact, is(true));
+        assertThat(otherAuthor < 0, is(true));
+        assertThat(otherTitle < 0, is(true));
+    }
+
+    @Test
+    public void matchingScore_noTitle_shouldOnlyScoreTheAuthorWhenTheTitleIsIgnored() {
+        assertThat(target.matchingScore(null, "Rulev", candidate("A title", "Rulev"), true), is(1.0));
+        assertThat(target.matchingScore(null, "Rulev", candidate("A title", "Rulev"), false) < 0, is(true));
+    }
+
+    private static MatchingDocument candidate(String title, String firstAuthor) {
+        final MatchingDocument candidate = new MatchingDocument();
+        candidate.setTitle(title);
+        candidate.setFirstAuthor(firstAuthor);
+        return candidate;
+    }
+}
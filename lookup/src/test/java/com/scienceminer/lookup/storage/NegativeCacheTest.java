@@ -0,0 +1,58 @@
+package com.scienceminer.lookup.storage;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class NegativeCacheTest {
+
+    private final AtomicLong lastTransactionIds = new AtomicLong(1);
+
+    private final StorageGeneration storageGeneration = new StorageGeneration(lastTransactionIds::get);
+
+    private final NegativeCache target = new NegativeCache(100, 60000, 60000, storageGeneration);
+
+    @Test
+    public void testMatchingKey_shouldIgnoreCaseAndSpaces() throws Exception {
+        assertThat(NegativeCache.matchingKey("A  Title ", "Author", null, null, null, null, true, true),
+                is(NegativeCache.matchingKey("a title", " author", "", null, null, null, true, true)));
+        assertThat(NegativeCache.matchingKey(null, null, null, null, null, " ", true, true), is(nullValue()));
+    }
+
+    @Test
+    public void testMatchingKey_differentPostValidation_shouldDiffer() throws Exception {
+        assertThat(NegativeCache.matchingKey("a title", "author", null, null, null, null, true, true)
+                .equals(NegativeCache.matchingKey("a title", "author", null, null, null, null, false, true)), is(false));
+    }
+
+    @Test
+    public void testIdentifierMiss_shouldBeFoundWithAnotherVariantOfTheIdentifier() throws Exception {
+        target.putIdentifierMiss(ResponseCache.DOI, "10.1000/ABC", "No bibliographical record found", target.getGeneration());
+
+        assertThat(target.getIdentifierMiss(ResponseCache.DOI, "10.1000/abc"), is("No bibliographical record found"));
+        assertThat(target.getIdentifierMiss(ResponseCache.DOI, "10.1000/abcd"), is(nullValue()));
+    }
+
+    @Test
+    public void testIdentifierMiss_storageUpdated_shouldBeInvalidated() throws Exception {
+        target.putIdentifierMiss(ResponseCache.PMID, "123", "Cannot find bibliographical record with PMID 123", target.getGeneration());
+        lastTransactionIds.incrementAndGet();
+        storageGeneration.refresh();
+
+        assertThat(target.getIdentifierMiss(ResponseCache.PMID, "123"), is(nullValue()));
+    }
+
+    @Test
+    public void testMatchingMiss_shouldCountTheSavedQueries() throws Exception {
+        final String key = NegativeCache.matchingKey("a title", "author", "journal", "1", "2", null, true, true);
+        target.putMatchingMiss(key, "Cannot find records for the input query.");
+
+        assertThat(target.getMatchingMiss(key, 2), is("Cannot find records for the input query."));
+        assertThat(target.getMatchingMiss(key, 2), is("Cannot find records for the input query."));
+        assertThat(target.getSavedQueries(), is(4L));
+    }
+}
@@ -0,0 +1,66 @@
+package com.scienceminer.lookup.storage;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ResponseCacheTest {
+
+    private final AtomicLong lastTransactionIds = new AtomicLong(1);
+
+    private final StorageGeneration storageGeneration = new StorageGeneration(lastTransactionIds::get);
+
+    private final ResponseCache target = new ResponseCache(1024 * 1024, 1024, storageGeneration);
+
+    @Test
+    public void testKey_shouldNormaliseTheIdentifiers() throws Exception {
+        assertThat(ResponseCache.key(ResponseCache.DOI, " 10.1000/ABC "), is("doi:10.1000/abc"));
+        assertThat(ResponseCache.key(ResponseCache.PMID, "00123"), is("pmid:123"));
+        assertThat(ResponseCache.key(ResponseCache.PMC, "pmc456"), is(ResponseCache.key(ResponseCache.PMC, "PMC456")));
+        assertThat(ResponseCache.key(ResponseCache.PMID, "abc"), is(nullValue()));
+        assertThat(ResponseCache.key(ResponseCache.DOI, " "), is(nullValue()));
+    }
+
+    @Test
+    public void testNormalise_shouldGiveTheIdentifierLookedUp() throws Exception {
+        assertThat(ResponseCache.normalise(ResponseCache.ISTEX, " ABC123 "), is("ABC123"));
+        assertThat(ResponseCache.normalise(ResponseCache.PMC, " pmc456 "), is("PMC456"));
+        assertThat(ResponseCache.normalise(ResponseCache.PMID, " 00123 "), is("123"));
+    }
+
+    @Test
+    public void testPut_shouldBeFoundWithAnotherVariantOfTheIdentifier() throws Exception {
+        target.put(ResponseCache.DOI, "10.1000/ABC", "{\"title\":\"t\"}", target.getGeneration());
+
+        assertThat(target.get(ResponseCache.DOI, "10.1000/abc"), is("{\"title\":\"t\"}"));
+        assertThat(target.get(ResponseCache.PMID, "123"), is(nullValue()));
+    }
+
+    @Test
+    public void testPut_storageUpdatedDuringTheLookup_shouldNotCache() throws Exception {
+        final long generation = target.getGeneration();
+        lastTransactionIds.incrementAndGet();
+        storageGeneration.refresh();
+
+        target.put(ResponseCache.DOI, "10.1000/abc", "{\"title\":\"t\"}", generation);
+
+        assertThat(target.get(ResponseCache.DOI, "10.1000/abc"), is(nullValue()));
+    }
+
+    @Test
+    public void testPut_responseLargerThanTheEntryBudget_shouldNotCache() throws Exception {
+        final StringBuilder response = new StringBuilder("{\"title\":\"");
+        for (int i = 0; i < 1024; i++) {
+            response.append('a');
+        }
+        response.append("\"}");
+
+        target.put(ResponseCache.DOI, "10.1000/abc", response.toString(), target.getGeneration());
+
+        assertThat(target.get(ResponseCache.DOI, "10.1000/abc"), is(nullValue()));
+    }
+}
@@ -0,0 +1,54 @@
+package com.scienceminer.lookup.storage.codec;
+
+import com.scienceminer.lookup.data.IstexData;
+import com.scienceminer.lookup.data.PmidData;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class IstexDataCodecTest {
+
+    @Test
+    public void testEncodeDecode_istexData() throws Exception {
+        IstexData istexData = new IstexData();
+        istexData.setCorpusName("elsevier");
+        istexData.setIstexId("0000131C5C4D7D1E2D2D67CAB1E4A1B1D5E68E06");
+        istexData.setDoi(Arrays.asList("10.1016/s0140-6736(99)01234-5", "10.1016/s0140-6736(99)01234-6"));
+        istexData.setArk(Arrays.asList("ark:/67375/6H6-DJGHCW2V-Q"));
+        istexData.setPii(new ArrayList<>());
+
+        IstexData decoded = IstexDataCodec.decode(toDirectBuffer(IstexDataCodec.encode(istexData)));
+
+        assertThat(decoded.getFirstDoi(), is("10.1016/s0140-6736(99)01234-5"));
+        assertThat(decoded.getCorpusName(), is("elsevier"));
+        assertThat(decoded.getIstexId(), is("0000131C5C4D7D1E2D2D67CAB1E4A1B1D5E68E06"));
+        assertThat(decoded.getDoi(), is(istexData.getDoi()));
+        assertThat(decoded.getArk(), is(istexData.getArk()));
+        assertThat(decoded.getPii().size(), is(0));
+        assertThat(decoded.getPmid(), is(nullValue()));
+        assertThat(decoded.getFirstPmid(), is(nullValue()));
+    }
+
+    @Test
+    public void testEncodeDecode_pmidData() throws Exception {
+        PmidData pmidData = new PmidData("9999996", null, "10.1136/bmj.1.4766.744");
+
+        PmidData decoded = PmidDataCodec.decode(toDirectBuffer(PmidDataCodec.encode(pmidData)));
+
+        assertThat(decoded.getPmid(), is("9999996"));
+        assertThat(decoded.getPmcid(), is(nullValue()));
+        assertThat(decoded.getDoi(), is("10.1136/bmj.1.4766.744"));
+    }
+
+    private ByteBuffer toDirectBuffer(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,88 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class BloomFilterTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("glutton", ".bloom");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void testAddedKeys_shouldAlwaysBeFound() throws Exception {
+        BloomFilter filter = BloomFilter.create(file, 10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(key("10.1000/" + i));
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain(key("10.1000/" + i)), is(true));
+        }
+        assertThat(filter.getKeyCount(), is(10000L));
+    }
+
+    @Test
+    public void testMissingKeys_shouldBeMostlyRejected() throws Exception {
+        BloomFilter filter = BloomFilter.create(file, 10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.add(key("10.1000/" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(key("10.2000/" + i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives, lessThan(300));
+    }
+
+    @Test
+    public void testOpen_shouldReadThePersistedFilter() throws Exception {
+        BloomFilter filter = BloomFilter.create(file, 100, 0.01);
+        filter.add(key("10.1000/abc"));
+        filter.force();
+
+        BloomFilter reopened = BloomFilter.open(file);
+
+        assertThat(reopened, is(notNullValue()));
+        assertThat(reopened.getKeyCount(), is(1L));
+        assertThat(reopened.mightContain(key("10.1000/abc")), is(true));
+    }
+
+    @Test
+    public void testMightContain_shouldNotMoveTheKeyPosition() throws Exception {
+        BloomFilter filter = BloomFilter.create(file, 100, 0.01);
+        ByteBuffer key = key("10.1000/abc");
+        filter.add(key);
+        filter.mightContain(key);
+
+        assertThat(key.position(), is(0));
+    }
+
+    private ByteBuffer key(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+}
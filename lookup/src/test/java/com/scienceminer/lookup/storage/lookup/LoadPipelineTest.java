@@ -0,0 +1,87 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LoadPipelineTest {
+
+    private final MetricRegistry metrics = new MetricRegistry();
+
+    @Test
+    public void testRun_shouldWriteTheRecordsInTheOrderOfTheInput() throws Exception {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10007; i++) {
+            input.append(i).append('\n');
+        }
+        final LoadPipeline target = new LoadPipeline(metrics, "test", 4, 10);
+
+        final List<Integer> written = new ArrayList<>();
+        target.run(new ByteArrayInputStream(input.toString().getBytes(UTF_8)), line -> {
+            final int value = Integer.parseInt(line);
+            // the odd lines are skipped
+            return value % 2 == 0 ? value : null;
+        }, written::add);
+
+        assertThat(written.size(), is(5004));
+        for (int i = 0; i < written.size(); i++) {
+            assertThat(written.get(i), is(i * 2));
+        }
+        assertThat(metrics.meter("test.read").getCount(), is(10007L));
+        assertThat(metrics.meter("test.parse").getCount(), is(10007L));
+    }
+
+    @Test
+    public void testRun_skipLines_shouldResumeAfterTheSkippedLines() throws Exception {
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            input.append(i).append('\n');
+        }
+        final LoadPipeline target = new LoadPipeline(metrics, "test", 3, 7);
+        target.setSkipLines(500);
+
+        final List<Integer> written = new ArrayList<>();
+        target.run(new ByteArrayInputStream(input.toString().getBytes(UTF_8)), line -> {
+            final int value = Integer.parseInt(line);
+            return value % 3 == 0 ? value : null;
+        }, value -> {
+            // the index of the line of the record, counting the skipped lines
+            assertThat(target.getLineIndex(), is((long) value));
+            written.add(value);
+        });
+
+        assertThat(written.size(), is(167));
+        assertThat(written.get(0), is(501));
+    }
+
+    @Test
+    public void testRun_emptyInput_shouldWriteNothing() throws Exception {
+        final LoadPipeline target = new LoadPipeline(metrics, "test", 2);
+
+        final List<String> written = new ArrayList<>();
+        target.run(new ByteArrayInputStream(new byte[0]), line -> line, written::add);
+
+        assertThat(written.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRun_parseFailure_shouldBeRethrown() throws Exception {
+        final LoadPipeline target = new LoadPipeline(metrics, "test", 2, 1);
+
+        try {
+            target.run(new ByteArrayInputStream("1\n2\nthree\n4\n".getBytes(UTF_8)), Integer::parseInt, value -> {
+            });
+            fail("The parse failure should be rethrown");
+        } catch (NumberFormatException e) {
+            assertThat(e.getMessage().contains("three"), is(true));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MatchingKeysTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testNormalize_shouldFoldCaseAccentsAndPunctuation() throws Exception {
+        assertThat(MatchingKeys.normalize("  J. Biol. Chem. "), is("j biol chem"));
+        assertThat(MatchingKeys.normalize("Revista Española de Cardiología"), is("revista espanola de cardiologia"));
+    }
+
+    @Test
+    public void testJournalKey_shouldIgnoreTheFormOfTheMetadata() throws Exception {
+        assertThat(MatchingKeys.journalKey("J Biol Chem", "12", "113-118"),
+                is(MatchingKeys.journalKey("J. Biol. Chem.", " 12", "113")));
+        assertThat(MatchingKeys.journalKey("0021-9258", "12", "113"),
+                is(MatchingKeys.journalKey("00219258", "12", "113")));
+        assertThat(MatchingKeys.journalKey("J Biol Chem", "12", "113"),
+                is(not(MatchingKeys.journalKey("J Biol Chem", "12", "114"))));
+        assertThat(MatchingKeys.journalKey("J Biol Chem", "", "113"), is(nullValue()));
+    }
+
+    @Test
+    public void testJournalKeys_shouldIndexTheIssnsAndTheJournalTitles() throws Exception {
+        final String release = "{\"ident\":\"abc\",\"title\":\"A title\",\"pages\":\"113-118\",\"volume\":\"12\"," +
+                "\"container\":{\"name\":\"Journal of Biological Chemistry\",\"issnl\":\"0021-9258\"," +
+                "\"extra\":{\"abbrev\":\"J Biol Chem\",\"issne\":\"1083-351X\",\"issnp\":\"0021-9258\"}}}";
+        final Set<String> keys = MatchingKeys.journalKeys(MatchingKeys.blockingFields(mapper.readTree(release)));
+
+        assertThat(keys.size(), is(4));
+        assertThat(keys.contains(MatchingKeys.journalKey("1083-351x", "12", "113")), is(true));
+        assertThat(keys.contains(MatchingKeys.journalKey("J. Biol. Chem.", "12", "113")), is(true));
+        assertThat(keys.contains(MatchingKeys.journalKey("journal of biological chemistry", "12", "113")), is(true));
+    }
+
+    @Test
+    public void testTitleKeys_shouldIndexTheTitleVariantsWithTheFirstAuthor() throws Exception {
+        final String release = "{\"ident\":\"abc\",\"title\":\"Haloalkenes activated by geminal groups\"," +
+                "\"subtitle\":\"reactions with N-nucleophiles\",\"contribs\":[{\"raw_name\":\"Alexander Yu Rulev\",\"index\":0}]}";
+        final Set<String> keys = MatchingKeys.titleKeys(MatchingKeys.blockingFields(mapper.readTree(release)));
+
+        assertThat(keys.size(), is(2));
+        assertThat(keys.contains(MatchingKeys.titleKey("Haloalkenes Activated by Geminal Groups.", "RULEV")), is(true));
+        assertThat(keys.contains(MatchingKeys.titleKey("Haloalkenes activated by geminal groups: reactions with N-nucleophiles", "Rulev")), is(true));
+        assertThat(MatchingKeys.titleKey("Haloalkenes activated by geminal groups", " "), is(nullValue()));
+    }
+}
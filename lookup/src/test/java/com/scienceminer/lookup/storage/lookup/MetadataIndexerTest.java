@@ -0,0 +1,60 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MetadataIndexerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testToIndexDocument_shouldBuildTheMatchingFields() throws Exception {
+        final String release = "{\"ident\":\"abc\",\"title\":\"A title\",\"subtitle\":\"the subtitle\"," +
+                "\"ext_ids\":{\"doi\":\"10.1/xyz\"},\"pages\":\"113-118\",\"volume\":\"12\",\"issue\":\"3\"," +
+                "\"release_year\":2001,\"container\":{\"name\":\"Journal of Tests\",\"extra\":{\"abbrev\":\"J. Tests\"}}," +
+                "\"contribs\":[{\"index\":0,\"raw_name\":\"John Smith\",\"surname\":\"Smith\"}," +
+                "{\"index\":1,\"raw_name\":\"Jane Doe\"}]}";
+
+        final Map<String, Object> document = MetadataIndexer.toIndexDocument(mapper.readTree(release));
+
+        assertThat(document.get("title"), is(Arrays.asList("A title", "the subtitle")));
+        assertThat(document.get("DOI"), is("10.1/xyz"));
+        assertThat(document.get("fatcat"), is("release_abc"));
+        assertThat(document.get("first_author"), is("Smith"));
+        assertThat(document.get("author"), is("Smith Doe"));
+        assertThat(document.get("first_page"), is("113"));
+        assertThat(document.get("journal"), is("Journal of Tests"));
+        assertThat(document.get("abbreviated_journal"), is("J. Tests"));
+        assertThat(document.get("volume"), is("12"));
+        assertThat(document.get("year"), is(2001L));
+        assertThat(document.get("bibliographic"),
+                is("Smith Doe A title,the subtitle Journal of Tests J. Tests 12 3 113 2001"));
+    }
+
+    @Test
+    public void testToIndexDocument_noContainer_shouldTakeTheJournalFromExtra() throws Exception {
+        final String release = "{\"ident\":\"abc\",\"title\":\"A title\",\"ext_ids\":{}," +
+                "\"extra\":{\"container_name\":\"Annals\"}}";
+
+        final Map<String, Object> document = MetadataIndexer.toIndexDocument(mapper.readTree(release));
+
+        assertThat(document.get("journal"), is("Annals"));
+        assertThat(document.containsKey("DOI"), is(false));
+        assertThat(document.containsKey("author"), is(false));
+        assertThat(document.get("bibliographic"), is("A title Annals"));
+    }
+
+    @Test
+    public void testToIndexDocument_component_shouldBeIgnored() throws Exception {
+        final String release = "{\"ident\":\"abc\",\"title\":\"Table 2\",\"release_type\":\"component\"}";
+
+        assertThat(MetadataIndexer.toIndexDocument(mapper.readTree(release)), is(nullValue()));
+    }
+}
@@ -0,0 +1,71 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.scienceminer.lookup.configuration.LookupConfiguration;
+import com.scienceminer.lookup.data.MatchingDocument;
+import com.scienceminer.lookup.storage.lookup.matching.MatchingBackend;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.easymock.EasyMock.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class MetadataMatchingTest {
+
+    private static final String JSON_OBJECT = "{\"ident\":\"abc\",\"title\":\"A title\"," +
+            "\"contribs\":[{\"raw_name\":\"Alexander Yu Rulev\",\"index\":0}]}";
+
+    private MetadataLookup mockMetadataLookup;
+    private MatchingBackend mockBackend;
+    private MetadataMatching target;
+
+    @Before
+    public void setUp() throws Exception {
+        final LookupConfiguration mockConfiguration = createMock(LookupConfiguration.class);
+        expect(mockConfiguration.getElastic()).andReturn(new LookupConfiguration().new Elastic());
+        replay(mockConfiguration);
+
+        mockMetadataLookup = createMock(MetadataLookup.class);
+        mockBackend = createMock(MatchingBackend.class);
+        target = new MetadataMatching(mockConfiguration, mockMetadataLookup, mockBackend);
+    }
+
+    @Test
+    public void testRetrieveByExactMetadata_uniqueRelease_shouldReadItsJsonObjectOnce() throws Exception {
+        expect(mockMetadataLookup.retrieveFatcatByTitle("A title", "Rulev", 2))
+                .andReturn(Collections.singletonList("release_abc"));
+        expect(mockMetadataLookup.retrieveJsonDocument("release_abc")).andReturn(JSON_OBJECT);
+        replay(mockMetadataLookup, mockBackend);
+
+        final MatchingDocument matchingDocument = target.retrieveByExactMetadata("A title", "Rulev", document -> 1.0);
+
+        verify(mockMetadataLookup, mockBackend);
+        assertThat(matchingDocument.getFatcatIdent(), is("release_abc"));
+        assertThat(matchingDocument.getJsonObject(), is(JSON_OBJECT));
+    }
+
+    @Test
+    public void testRetrieveByExactMetadata_notPassingThePostValidation_shouldReturnNull() throws Exception {
+        expect(mockMetadataLookup.retrieveFatcatByTitle("A title", "Rulev", 2))
+                .andReturn(Collections.singletonList("release_abc"));
+        expect(mockMetadataLookup.retrieveJsonDocument("release_abc")).andReturn(JSON_OBJECT);
+        replay(mockMetadataLookup, mockBackend);
+
+        assertThat(target.retrieveByExactMetadata("A title", "Rulev", document -> -1.0), is(nullValue()));
+        verify(mockMetadataLookup, mockBackend);
+    }
+
+    @Test
+    public void testRetrieveByExactMetadata_severalReleases_shouldReturnNull() throws Exception {
+        expect(mockMetadataLookup.retrieveFatcatByTitle("A title", "Rulev", 2))
+                .andReturn(Arrays.asList("release_abc", "release_def"));
+        replay(mockMetadataLookup, mockBackend);
+
+        assertThat(target.retrieveByExactMetadata("A title", "Rulev", document -> 1.0), is(nullValue()));
+        verify(mockMetadataLookup, mockBackend);
+    }
+}
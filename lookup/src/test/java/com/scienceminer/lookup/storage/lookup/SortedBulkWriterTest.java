@@ -0,0 +1,41 @@
+package com.scienceminer.lookup.storage.lookup;
+
+import com.scienceminer.lookup.utils.KeyEncoder;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SortedBulkWriterTest {
+
+    @Test
+    public void testKeyOrder_shouldCompareUnsignedBytes() throws Exception {
+        // 0xC3 (first byte of e acute in UTF-8) is negative as a java byte, but sorts after ASCII in LMDB
+        byte[] ascii = "10.1000/z".getBytes(UTF_8);
+        byte[] nonAscii = "10.1000/\u00e9".getBytes(UTF_8);
+
+        assertThat(SortedBulkWriter.KEY_ORDER.compare(ascii, nonAscii) < 0, is(true));
+        assertThat(SortedBulkWriter.KEY_ORDER.compare(nonAscii, ascii) > 0, is(true));
+    }
+
+    @Test
+    public void testKeyOrder_prefix_shouldSortFirst() throws Exception {
+        byte[] shorter = "release_abc".getBytes(UTF_8);
+        byte[] longer = "release_abcd".getBytes(UTF_8);
+
+        assertThat(SortedBulkWriter.KEY_ORDER.compare(shorter, longer) < 0, is(true));
+        assertThat(SortedBulkWriter.KEY_ORDER.compare(shorter, shorter.clone()), is(0));
+    }
+
+    @Test
+    public void testIntegerKeyOrder_shouldCompareNumerically() throws Exception {
+        // in little endian, 256 starts with a lower byte than 1
+        byte[] one = KeyEncoder.encodeInteger(1);
+        byte[] twoHundredFiftySix = KeyEncoder.encodeInteger(256);
+
+        assertThat(SortedBulkWriter.INTEGER_KEY_ORDER.compare(one, twoHundredFiftySix) < 0, is(true));
+        assertThat(SortedBulkWriter.INTEGER_KEY_ORDER.compare(twoHundredFiftySix, one) > 0, is(true));
+        assertThat(SortedBulkWriter.INTEGER_KEY_ORDER.compare(one, KeyEncoder.encodeInteger(1)), is(0));
+    }
+}
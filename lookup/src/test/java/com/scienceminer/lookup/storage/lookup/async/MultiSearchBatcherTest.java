@@ -0,0 +1,119 @@
+package com.scienceminer.lookup.storage.lookup.async;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.easymock.EasyMock.createMock;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class MultiSearchBatcherTest {
+
+    private final BlockingQueue<MultiSearchRequest> requests = new LinkedBlockingQueue<>();
+    private final BlockingQueue<ActionListener<MultiSearchResponse>> listeners = new LinkedBlockingQueue<>();
+
+    private MultiSearchBatcher target;
+
+    @After
+    public void tearDown() throws Exception {
+        target.close();
+    }
+
+    @Test
+    public void testSearch_fullBatch_shouldBeSentWithoutWaitingForTheWindow() throws Exception {
+        target = new MultiSearchBatcher(this::capture, TimeUnit.HOURS.toMillis(1), 3);
+
+        for (int i = 0; i < 7; i++) {
+            target.search(new SearchRequest("index"), new RecordingListener());
+        }
+
+        assertThat(requests.poll(1, TimeUnit.SECONDS).requests().size(), is(3));
+        assertThat(requests.poll(1, TimeUnit.SECONDS).requests().size(), is(3));
+        // the last search waits for its window
+        assertThat(requests.poll(100, TimeUnit.MILLISECONDS), is(nullValue()));
+    }
+
+    @Test
+    public void testSearch_shouldBeSentAtTheEndOfTheWindow() throws Exception {
+        final MultiSearchMetrics metrics = new MultiSearchMetrics();
+        target = new MultiSearchBatcher(this::capture, 50, 100);
+        target.setMetrics(metrics);
+
+        target.search(new SearchRequest("index"), new RecordingListener());
+        target.search(new SearchRequest("index"), new RecordingListener());
+
+        assertThat(requests.poll(5, TimeUnit.SECONDS).requests().size(), is(2));
+        assertThat(metrics.getSearches().getCount(), is(2L));
+        assertThat(metrics.getBatchSizes().getSnapshot().getMax(), is(2L));
+    }
+
+    @Test
+    public void testSearch_shouldGiveEachItemToItsListener() throws Exception {
+        target = new MultiSearchBatcher(this::capture, TimeUnit.HOURS.toMillis(1), 2);
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+        final SearchResponse response = createMock(SearchResponse.class);
+        final Exception failure = new IllegalStateException("shard failure");
+
+        target.search(new SearchRequest("index"), first);
+        target.search(new SearchRequest("index"), second);
+        listeners.take().onResponse(new MultiSearchResponse(new MultiSearchResponse.Item[]{
+                new MultiSearchResponse.Item(response, null),
+                new MultiSearchResponse.Item(null, failure)
+        }, 1L));
+
+        assertThat(first.responses.get(0), is(sameInstance(response)));
+        assertThat(first.failures.isEmpty(), is(true));
+        assertThat(second.responses.isEmpty(), is(true));
+        assertThat(second.failures.get(0), is(sameInstance(failure)));
+    }
+
+    @Test
+    public void testSearch_failedBatch_shouldFailAllTheSearches() throws Exception {
+        target = new MultiSearchBatcher(this::capture, TimeUnit.HOURS.toMillis(1), 2);
+        final RecordingListener first = new RecordingListener();
+        final RecordingListener second = new RecordingListener();
+
+        target.search(new SearchRequest("index"), first);
+        target.search(new SearchRequest("index"), second);
+        listeners.take().onFailure(new IOException("connection refused"));
+
+        assertThat(first.failures.get(0), is(notNullValue()));
+        assertThat(second.failures.get(0), is(notNullValue()));
+    }
+
+    private void capture(MultiSearchRequest request, ActionListener<MultiSearchResponse> listener) {
+        requests.add(request);
+        listeners.add(listener);
+    }
+
+    private static class RecordingListener implements ActionListener<SearchResponse> {
+        private final List<SearchResponse> responses = new ArrayList<>();
+        private final List<Exception> failures = new ArrayList<>();
+
+        @Override
+        public void onResponse(SearchResponse searchResponse) {
+            responses.add(searchResponse);
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            failures.add(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.scienceminer.lookup.storage.lookup.matching;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LuceneMatchingBackendTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Path directory;
+    private LuceneMatchingBackend target;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("glutton-lucene");
+        try (LuceneMatchingIndexer indexer = new LuceneMatchingIndexer(directory, new MetricRegistry(), "test", 16)) {
+            indexer.index(mapper.readTree("{\"ident\":\"abc\",\"title\":\"The structure of the proteins\"," +
+                    "\"ext_ids\":{\"doi\":\"10.1/xyz\"},\"pages\":\"113-118\",\"volume\":\"12\"," +
+                    "\"container\":{\"name\":\"Journal of Tésts\"}," +
+                    "\"contribs\":[{\"index\":0,\"raw_name\":\"José Müller\",\"surname\":\"Müller\",\"family\":\"Müller\"}]}"));
+            indexer.index(mapper.readTree("{\"ident\":\"def\",\"title\":\"Proteins in the cell\",\"ext_ids\":{}," +
+                    "\"pages\":\"e5-e9\",\"volume\":\"IV\",\"container\":{\"name\":\"Cell Reports\"}," +
+                    "\"contribs\":[{\"index\":0,\"raw_name\":\"Jane Doe\"}]}"));
+            indexer.index(mapper.readTree("{\"ident\":\"ghi\",\"title\":\"Figure 1\",\"release_type\":\"component\"}"));
+        }
+        target = new LuceneMatchingBackend(directory, 2, 10);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        target.close();
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+
+    @Test
+    public void testSearch_titleAndAuthor_shouldFoldTheAccentsAndIgnoreTheStopWords() throws Exception {
+        final List<Map<String, Object>> hits = target.search(new MatchingQuery()
+                .should("title", "the STRUCTURE of proteins")
+                .should("first_author", "Muller"), 2);
+
+        assertThat(target.getSize(), is(2L));
+        assertThat(hits.size(), is(2));
+        assertThat(hits.get(0).get("fatcat"), is("release_abc"));
+        assertThat(hits.get(0).get("DOI"), is("10.1/xyz"));
+        assertThat(hits.get(0).get("first_author"), is("Müller"));
+        assertThat(hits.get(0).get("title"), is(Arrays.asList("The structure of the proteins")));
+    }
+
+    @Test
+    public void testSearch_journal_shouldRequireTheVolumeAndFirstPage() throws Exception {
+        final MatchingQuery query = new MatchingQuery()
+                .should("journal", "journal of tests")
+                .mustTerm("volume", "12")
+                .mustTerm("first_page", "113");
+
+        assertThat(target.search(query, 1).get(0).get("fatcat"), is("release_abc"));
+
+        final MatchingQuery otherVolume = new MatchingQuery()
+                .should("journal", "journal of tests")
+                .mustTerm("volume", "13")
+                .mustTerm("first_page", "113");
+
+        assertThat(target.search(otherVolume, 1).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testSearch_exactTerms_shouldBeNormalizedLikeTheIndex() throws Exception {
+        final MatchingQuery query = new MatchingQuery()
+                .should("journal", "cell reports")
+                .mustTerm("volume", "iv")
+                .mustTerm("first_page", "E5");
+
+        assertThat(target.search(query, 1).get(0).get("fatcat"), is("release_def"));
+
+        final MatchingQuery author = new MatchingQuery()
+                .should("title", "structure of proteins")
+                .mustTerm("first_author", "MÜLLER");
+
+        assertThat(target.search(author, 1).get(0).get("fatcat"), is("release_abc"));
+    }
+}
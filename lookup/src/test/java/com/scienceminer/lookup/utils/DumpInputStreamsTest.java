@@ -0,0 +1,111 @@
+package com.scienceminer.lookup.utils;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DumpInputStreamsTest {
+
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append("{\"ident\":\"").append(i).append("\",\"title\":\"Title of the release ").append(i * 31).append("\"}\n");
+        }
+        content = sb.toString().getBytes(UTF_8);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOpen_bgzf_shouldDecompressTheBlocksInOrder() throws Exception {
+        file = File.createTempFile("glutton", ".gz");
+        try (OutputStream output = new FileOutputStream(file)) {
+            for (int offset = 0; offset < content.length; offset += 65280) {
+                output.write(bgzfMember(Arrays.copyOfRange(content, offset, Math.min(content.length, offset + 65280))));
+            }
+            output.write(bgzfMember(new byte[0]));
+        }
+
+        assertThat(DumpInputStreams.isBgzf(file.toPath()), is(true));
+        assertThat(read(DumpInputStreams.open(file.toPath(), 4)), is(content));
+        assertThat(read(DumpInputStreams.open(file.toPath(), 1)), is(content));
+    }
+
+    @Test
+    public void testOpen_gzip_shouldBeReadAhead() throws Exception {
+        file = File.createTempFile("glutton", ".gz");
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(file))) {
+            output.write(content);
+        }
+
+        assertThat(DumpInputStreams.isBgzf(file.toPath()), is(false));
+        assertThat(read(DumpInputStreams.open(file.toPath(), 4)), is(content));
+    }
+
+    @Test
+    public void testOpen_plainText() throws Exception {
+        file = File.createTempFile("glutton", ".json");
+        Files.write(file.toPath(), content);
+
+        assertThat(read(DumpInputStreams.open(file.toPath(), 4)), is(content));
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        try (InputStream is = input) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    /**
+     * Gzip member with the BC extra subfield, as written by bgzip.
+     */
+    private static byte[] bgzfMember(byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[65536];
+        while (!deflater.finished()) {
+            compressed.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final ByteBuffer member = ByteBuffer.allocate(18 + compressed.size() + 8).order(ByteOrder.LITTLE_ENDIAN);
+        member.put(new byte[]{31, (byte) 139, 8, 4, 0, 0, 0, 0, 0, (byte) 255});
+        member.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+        member.putShort((short) (member.capacity() - 1));
+        member.put(compressed.toByteArray());
+        member.putInt((int) crc.getValue()).putInt(data.length);
+        return member.array();
+    }
+}
@@ -0,0 +1,77 @@
+package com.scienceminer.lookup.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class KeyEncoderTest {
+
+    @Test
+    public void testEncode_asciiDoi_shouldMatchUtf8() throws Exception {
+        String input = "10.1070/rc1998v067n04abeh000372";
+
+        assertThat(encode(input), is(input.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testEncode_nonAscii_shouldMatchUtf8() throws Exception {
+        String input = "10.1002/(sici)1097-4636(199706)35:4<425::aid-jbm2>3.0.co;2-\u00e9\u20ac\uD83D\uDE00";
+
+        assertThat(encode(input), is(input.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testEncode_unpairedSurrogate_shouldMatchUtf8() throws Exception {
+        String input = "abc\uD83Ddef";
+
+        assertThat(encode(input), is(input.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        String input = "release_aaaaabbbbbccccc";
+        ByteBuffer buffer = ByteBuffer.allocateDirect(511);
+        KeyEncoder.encode(input, buffer);
+        buffer.flip();
+
+        assertThat(KeyEncoder.decode(buffer), is(input));
+    }
+
+    @Test
+    public void testEncodeDecodeInteger() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(511);
+        KeyEncoder.encodeInteger(30586460, buffer);
+        buffer.flip();
+
+        assertThat(buffer.remaining(), is(KeyEncoder.INTEGER_KEY_SIZE));
+        assertThat(KeyEncoder.decodeInteger(buffer), is(30586460));
+    }
+
+    @Test
+    public void testParseInteger() throws Exception {
+        assertThat(KeyEncoder.parseInteger(" 0030586460 "), is(30586460));
+        assertThat(KeyEncoder.parseInteger("2147483647"), is(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testParseInteger_invalid_shouldReturnMinusOne() throws Exception {
+        assertThat(KeyEncoder.parseInteger("PMC1234"), is(-1));
+        assertThat(KeyEncoder.parseInteger("-12"), is(-1));
+        assertThat(KeyEncoder.parseInteger(""), is(-1));
+        assertThat(KeyEncoder.parseInteger("2147483648"), is(-1));
+        assertThat(KeyEncoder.parseInteger(null), is(-1));
+    }
+
+    private byte[] encode(String input) {
+        ByteBuffer buffer = ByteBuffer.allocate(511);
+        KeyEncoder.encode(input, buffer);
+        buffer.flip();
+        byte[] output = new byte[buffer.remaining()];
+        buffer.get(output);
+        return output;
+    }
+}
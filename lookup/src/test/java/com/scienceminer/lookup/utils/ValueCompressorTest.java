@@ -0,0 +1,53 @@
+package com.scienceminer.lookup.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ValueCompressorTest {
+
+    private static final String INPUT = "{\"ident\":\"aaaaabbbbbccccc\",\"title\":\"Haloalkenes activated by geminal groups in reactions with N-nucleophiles\",\"ext_ids\":{\"doi\":\"10.1070/rc1998v067n04abeh000372\"},\"release_type\":\"article-journal\",\"volume\":\"67\",\"pages\":\"279-293\"}";
+
+    @Test
+    public void testCompressDecompress_snappy() throws Exception {
+        ValueCompressor compressor = new ValueCompressor(ValueCompressor.Codec.SNAPPY);
+
+        byte[] compressed = compressor.compress(INPUT.getBytes(UTF_8));
+
+        assertThat(compressed[0], is(ValueCompressor.Codec.SNAPPY.getHeader()));
+        assertThat(new String(compressor.decompress(compressed), UTF_8), is(INPUT));
+    }
+
+    @Test
+    public void testDecompress_shouldUseTheCodecOfTheHeader() throws Exception {
+        ValueCompressor compressor = new ValueCompressor(ValueCompressor.Codec.SNAPPY);
+
+        byte[] compressed = compressor.compress(INPUT.getBytes(UTF_8), ValueCompressor.Codec.ZSTD);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(compressed.length);
+        buffer.put(compressed).flip();
+
+        assertThat(compressed[0], is(ValueCompressor.Codec.ZSTD.getHeader()));
+        assertThat(new String(compressor.decompress(buffer), UTF_8), is(INPUT));
+    }
+
+    @Test
+    public void testCompressDecompress_zstdDictionary() throws Exception {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            samples.add(INPUT.replace("aaaaabbbbbccccc", "release" + i).replace("279-293", i + "-" + (i + 14)).getBytes(UTF_8));
+        }
+        ValueCompressor compressor = new ValueCompressor(ValueCompressor.Codec.ZSTD_DICTIONARY);
+        compressor.setDictionary(Compressors.trainZstdDictionary(samples, 4096));
+
+        byte[] compressed = compressor.compress(INPUT.getBytes(UTF_8));
+
+        assertThat(compressed[0], is(ValueCompressor.Codec.ZSTD_DICTIONARY.getHeader()));
+        assertThat(new String(compressor.decompress(compressed), UTF_8), is(INPUT));
+    }
+}
@@ -1,15 +1,24 @@
 package com.scienceminer.lookup.web.resource;
 
 import com.scienceminer.lookup.data.MatchingDocument;
+import com.scienceminer.lookup.exception.NoMatchException;
+import com.scienceminer.lookup.exception.NotFoundException;
 import com.scienceminer.lookup.storage.LookupEngine;
+import com.scienceminer.lookup.storage.NegativeCache;
+import com.scienceminer.lookup.storage.StorageGeneration;
 import com.scienceminer.lookup.storage.lookup.*;
 import org.easymock.EasyMock;
 import org.junit.Before;
 import org.junit.Test;
 
 import javax.ws.rs.container.AsyncResponse;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
 import static org.easymock.EasyMock.*;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
 
 public class LookupControllerTest {
 
@@ -114,7 +123,8 @@ public class LookupControllerTest {
         final MatchingDocument response = new MatchingDocument(myFatcat, jsonOutput);
 
         expect(mockMetadataLookup.retrieveByFatcat(myFatcat)).andReturn(response);
-        mockMetadataMatching.retrieveByMetadataAsync(eq(atitle), eq(firstAuthor), anyObject());
+        expect(mockMetadataMatching.retrieveByExactMetadata(eq(atitle), eq(firstAuthor), anyObject(ToDoubleFunction.class))).andReturn(null);
+        mockMetadataMatching.retrieveByMetadataAsync(eq(atitle), eq(firstAuthor), anyObject(ToDoubleFunction.class), anyObject());
 //        expect(mockIstexLookup.retrieveByDoi(myFatcat)).andReturn(null);
 //        expect(mockPmidsLookup.retrieveIdsByDoi(myFatcat)).andReturn(null);
 //        expect(mockedAsyncResponse.resume(response.getJsonObject())).andReturn(true);
@@ -146,7 +156,8 @@ public class LookupControllerTest {
         final MatchingDocument response = new MatchingDocument(myFatcat, jsonOutput);
 
         expect(mockMetadataLookup.retrieveByFatcat(myFatcat)).andReturn(new MatchingDocument());
-        mockMetadataMatching.retrieveByMetadataAsync(eq(atitle), eq(firstAuthor), anyObject());
+        expect(mockMetadataMatching.retrieveByExactMetadata(eq(atitle), eq(firstAuthor), anyObject(ToDoubleFunction.class))).andReturn(null);
+        mockMetadataMatching.retrieveByMetadataAsync(eq(atitle), eq(firstAuthor), anyObject(ToDoubleFunction.class), anyObject());
 
         replay(mockMetadataLookup, mockedAsyncResponse, mockPmidsLookup, mockOALookup, mockIstexLookup, mockMetadataMatching);
         target.getByQuery(myFatcat, null, null, null, null, null, firstAuthor, atitle,
@@ -154,4 +165,61 @@ public class LookupControllerTest {
 
         verify(mockMetadataLookup, mockedAsyncResponse, mockPmidsLookup, mockOALookup, mockIstexLookup, mockMetadataMatching);
     }
+
+    /**
+     * title and first author already known not to match
+     * -> 404 without querying the index
+     */
+    @Test
+    public void getByQuery_knownMatchingMiss_shouldNotQueryTheIndex() {
+        final String atitle = "atitle";
+        final String firstAuthor = "firstAuthor";
+        final NegativeCache negativeCache = new NegativeCache(100, 60000, 60000, new StorageGeneration(() -> 1L));
+        negativeCache.putMatchingMiss(NegativeCache.matchingKey(atitle, firstAuthor, null, null, null, null, true, true),
+                "Cannot find records for the input query.");
+        target.setNegativeCache(negativeCache);
+
+        expect(mockedAsyncResponse.resume(anyObject(NotFoundException.class))).andReturn(true);
+
+        replay(mockMetadataLookup, mockedAsyncResponse, mockPmidsLookup, mockOALookup, mockIstexLookup, mockMetadataMatching);
+        target.getByQuery(null, null, null, null, null, null, " FirstAuthor", "ATitle ",
+                true, null, null, null, null, true, mockedAsyncResponse);
+
+        verify(mockMetadataLookup, mockedAsyncResponse, mockPmidsLookup, mockOALookup, mockIstexLookup, mockMetadataMatching);
+        assertThat(negativeCache.getSavedQueries(), is(1L));
+    }
+
+    /**
+     * biblio string matching nothing, or failing for another reason
+     * -> only the query without match is recorded in the negative cache
+     */
+    @Test
+    public void getByBiblioStringWithPost_noMatch_shouldBeCachedUnlikeTheOtherFailures() {
+        final NegativeCache negativeCache = new NegativeCache(100, 60000, 60000, new StorageGeneration(() -> 1L));
+        target.setNegativeCache(negativeCache);
+
+        mockMetadataMatching.retrieveByBiblioAsync(eq("unavailable"), anyObject());
+        expectLastCall().andAnswer(() -> {
+            ((Consumer<MatchingDocument>) getCurrentArguments()[1])
+                    .accept(new MatchingDocument(new NotFoundException("GROBID is not available.")));
+            return null;
+        });
+        mockMetadataMatching.retrieveByBiblioAsync(eq("unmatched"), anyObject());
+        expectLastCall().andAnswer(() -> {
+            ((Consumer<MatchingDocument>) getCurrentArguments()[1])
+                    .accept(new MatchingDocument(new NoMatchException("Cannot find records for the input query.")));
+            return null;
+        });
+        expect(mockedAsyncResponse.resume(anyObject(NotFoundException.class))).andReturn(true).times(2);
+
+        replay(mockMetadataLookup, mockedAsyncResponse, mockPmidsLookup, mockOALookup, mockIstexLookup, mockMetadataMatching);
+        target.getByBiblioStringWithPost("unavailable", mockedAsyncResponse);
+        target.getByBiblioStringWithPost("unmatched", mockedAsyncResponse);
+        verify(mockMetadataLookup, mockedAsyncResponse, mockPmidsLookup, mockOALookup, mockIstexLookup, mockMetadataMatching);
+
+        assertThat(negativeCache.getMatchingMiss(NegativeCache.matchingKey(null, null, null, null, null, "unavailable", false, false), 1),
+                is(nullValue()));
+        assertThat(negativeCache.getMatchingMiss(NegativeCache.matchingKey(null, null, null, null, null, "unmatched", false, false), 1),
+                is("Cannot find records for the input query."));
+    }
 }